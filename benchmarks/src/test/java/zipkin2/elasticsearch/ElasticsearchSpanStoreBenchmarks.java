@@ -0,0 +1,145 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.server.Server;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin2.Endpoint;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.storage.QueryRequest;
+import zipkin2.storage.SpanStore;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares finding trace IDs by aggregation to collapsing, against a stand-in Elasticsearch server
+ * with canned responses. Both get spans in a second request, so this only shows the client's cost
+ * of each. Their cost in the cluster needs a real one to compare.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Threads(2)
+public class ElasticsearchSpanStoreBenchmarks {
+  static final int TRACE_COUNT = 10;
+
+  /** Simulated latency of each search request, as if the cluster were remote. */
+  @Param({"0", "1"}) public long latencyMillis;
+
+  @Param({"10", "150"}) public int spansPerTrace;
+
+  Server server;
+  ElasticsearchStorage aggregateStorage, collapseStorage;
+  SpanStore aggregate, collapse;
+  QueryRequest request;
+
+  @Setup public void start() {
+    long now = System.currentTimeMillis();
+    StringBuilder traceIds = new StringBuilder("{\"aggregations\":{\"traceId_agg\":{\"buckets\":[");
+    StringBuilder spans = new StringBuilder("{\"hits\":{\"hits\":[");
+    StringBuilder collapsed = new StringBuilder("{\"hits\":{\"hits\":[");
+    for (int t = 1; t <= TRACE_COUNT; t++) {
+      String traceId = "%032x".formatted(t);
+      List<String> sources = new ArrayList<>();
+      for (int s = 1; s <= spansPerTrace; s++) {
+        Span span = Span.newBuilder().traceId(traceId).id(s).name("get")
+          .localEndpoint(Endpoint.newBuilder().serviceName("frontend").build())
+          .timestamp((now - s) * 1000L).duration(1000L)
+          .putTag("http.path", "/api")
+          .build();
+        sources.add("{\"_source\":" + new String(SpanBytesEncoder.JSON_V2.encode(span), UTF_8) + "}");
+      }
+      String separator = t == 1 ? "" : ",";
+      traceIds.append(separator).append("{\"key\":\"").append(traceId).append("\"}");
+      spans.append(separator).append(String.join(",", sources));
+      collapsed.append(separator)
+        .append("{\"fields\":{\"traceId\":[\"").append(traceId).append("\"]}}");
+    }
+    String traceIdsResponse = traceIds.append("]}}}").toString();
+    String spansResponse = spans.append("]}}").toString();
+    String collapsedResponse = collapsed.append("]}}").toString();
+
+    server = Server.builder().http(0).serviceUnder("/", (ctx, req) -> {
+      HttpResponse response = HttpResponse.of(req.aggregate().thenApply(r -> {
+        String body = r.contentUtf8();
+        String content;
+        if (body.contains("\"collapse\"")) {
+          content = collapsedResponse;
+        } else if (body.contains("\"aggs\"")) {
+          content = traceIdsResponse;
+        } else {
+          content = spansResponse;
+        }
+        return HttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8, content);
+      }));
+      if (latencyMillis == 0) return response;
+      return HttpResponse.delayed(response, Duration.ofMillis(latencyMillis), ctx.eventLoop());
+    }).build();
+    server.start().join();
+
+    String url = "http://127.0.0.1:" + server.activeLocalPort();
+    aggregateStorage = ElasticsearchStorage.newBuilder(() -> WebClient.of(url))
+      .ensureTemplates(false)
+      .build();
+    collapseStorage = aggregateStorage.toBuilder().collapseTraceSearch(true).build();
+    aggregate = aggregateStorage.spanStore();
+    collapse = collapseStorage.spanStore();
+    request = QueryRequest.newBuilder()
+      .endTs(now).lookback(TimeUnit.HOURS.toMillis(1)).limit(TRACE_COUNT).build();
+  }
+
+  @TearDown public void stop() {
+    aggregateStorage.close();
+    collapseStorage.close();
+    server.stop().join();
+  }
+
+  @Benchmark public List<List<Span>> getTraces_aggregate() throws IOException {
+    return aggregate.getTraces(request).execute();
+  }
+
+  @Benchmark public List<List<Span>> getTraces_collapse() throws IOException {
+    return collapse.getTraces(request).execute();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .addProfiler("gc")
+      .include(".*" + ElasticsearchSpanStoreBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin2.Endpoint;
+import zipkin2.Span;
+
+/**
+ * Measures the time to fill {@link InMemoryStorage} to its {@link
+ * InMemoryStorage.Builder#maxSpanCount(int) span limit}, and the heap retained by it once full.
+ *
+ * <p>Spans are created up-front and referenced by the benchmark, so {@link RetainedHeapProfiler}
+ * reports the overhead of the indexes per span, not the size of the spans themselves. When {@link
+ * InMemoryStorage.Builder#offHeapBytes(long) off-heap}, the storage doesn't reference these spans,
+ * so what's reported is the total heap cost per span.
+ */
+@Measurement(iterations = 5)
+@Warmup(iterations = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class InMemoryStorageBenchmarks {
+  static final int SPANS_PER_TRACE = 5;
+
+  /** Holds the storage filled by the last invocation, so that its heap can be measured. */
+  static volatile InMemoryStorage retained;
+
+  @Param({"500000"}) int spanCount;
+  @Param({"false", "true"}) boolean concurrent;
+  @Param({"0", "134217728"}) long offHeapBytes;
+
+  final List<List<Span>> traces = new ArrayList<>();
+
+  @Setup public void createSpans() {
+    Random random = new Random(0);
+    Endpoint[] services = new Endpoint[20];
+    for (int i = 0; i < services.length; i++) {
+      services[i] = Endpoint.newBuilder().serviceName("service" + i).ip("10.0.0." + i).build();
+    }
+    long timestamp = System.currentTimeMillis() * 1000L;
+    for (int t = 0; t < spanCount / SPANS_PER_TRACE; t++) {
+      String traceId = Long.toHexString(random.nextLong() | 1L);
+      List<Span> trace = new ArrayList<>();
+      for (int s = 0; s < SPANS_PER_TRACE; s++) {
+        trace.add(Span.newBuilder()
+          .traceId(traceId)
+          .parentId(s == 0 ? null : Long.toHexString(s))
+          .id(Long.toHexString(s + 1))
+          .name("get /api/" + s)
+          .kind(Span.Kind.SERVER)
+          .localEndpoint(services[random.nextInt(services.length)])
+          .timestamp(timestamp += 1000L) // one span per millisecond
+          .duration(1000L)
+          .build());
+      }
+      traces.add(trace);
+    }
+  }
+
+  @Benchmark public InMemoryStorage fillToMaxSpanCount() throws IOException {
+    InMemoryStorage storage = InMemoryStorage.newBuilder()
+      .maxSpanCount(spanCount)
+      .concurrent(concurrent)
+      .offHeapBytes(offHeapBytes)
+      .build();
+    for (List<Span> trace : traces) {
+      storage.accept(trace).execute();
+    }
+    return retained = storage;
+  }
+
+  /** Reports the heap retained by the storage filled in an iteration, divided by its spans. */
+  public static final class RetainedHeapProfiler implements InternalProfiler {
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    long baseline;
+
+    @Override public String getDescription() {
+      return "Heap retained by InMemoryStorage per span";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+      retained = null;
+      baseline = usedHeapAfterGc();
+    }
+
+    @Override public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+      IterationParams iterationParams, IterationResult result) {
+      long spanCount = Long.parseLong(benchmarkParams.getParam("spanCount"));
+      double bytesPerSpan = (double) (usedHeapAfterGc() - baseline) / spanCount;
+      return List.of(new ScalarResult(
+        "retained", bytesPerSpan, "bytes/span", AggregationPolicy.AVG));
+    }
+
+    long usedHeapAfterGc() {
+      for (int i = 0; i < 3; i++) System.gc();
+      return memory.getHeapMemoryUsage().getUsed();
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .addProfiler(RetainedHeapProfiler.class)
+      .include(".*" + InMemoryStorageBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import zipkin2.Endpoint;
+import zipkin2.Span;
+import zipkin2.storage.QueryRequest;
+import zipkin2.storage.SpanStore;
+import zipkin2.storage.Traces;
+
+import static org.testcontainers.utility.DockerImageName.parse;
+
+/**
+ * Compares reading spans of many traces with one query to a query per trace, against a local
+ * Cassandra started with Docker. Sample time mode reports p99 latency of each.
+ *
+ * <p>Latency doesn't show the load on the coordinator. To see that, run {@code nodetool
+ * proxyhistograms} in the container after each trial. A query per trace moves work from a
+ * coordinator gathering many partitions to replicas each reading one.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 5, time = 1)
+@Fork(1)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Threads(1)
+public class CassandraSpanStoreBenchmarks {
+  static final int TRACE_COUNT = 1000, SPANS_PER_TRACE = 10;
+
+  @Param({"10", "100", "1000"}) public int limit;
+
+  /** Zero reads spans of all traces with one query. */
+  @Param({"0", "16"}) public int traceReadParallelism;
+
+  GenericContainer<?> cassandra;
+  CassandraStorage storage;
+  SpanStore spanStore;
+  Traces traces;
+  QueryRequest request;
+  List<String> traceIds;
+
+  @Setup public void start() throws IOException {
+    cassandra = new GenericContainer<>(parse("ghcr.io/openzipkin/zipkin-cassandra:3.4.0"))
+      .withExposedPorts(9042)
+      .waitingFor(Wait.forHealthcheck());
+    cassandra.start();
+
+    storage = CassandraStorage.newBuilder()
+      .contactPoints(cassandra.getHost() + ":" + cassandra.getMappedPort(9042))
+      .traceReadParallelism(traceReadParallelism)
+      .build();
+
+    long now = System.currentTimeMillis();
+    Endpoint frontend = Endpoint.newBuilder().serviceName("frontend").build();
+    Endpoint backend = Endpoint.newBuilder().serviceName("backend").build();
+    List<String> allTraceIds = new ArrayList<>();
+    for (int t = 1; t <= TRACE_COUNT; t++) {
+      String traceId = "%032x".formatted(t);
+      List<Span> trace = new ArrayList<>();
+      for (int s = 1; s <= SPANS_PER_TRACE; s++) {
+        // Only the root is from the searched service, so its index has one row per trace
+        trace.add(Span.newBuilder().traceId(traceId).id(s).name("get")
+          .localEndpoint(s == 1 ? frontend : backend)
+          .timestamp((now - t) * 1000L).duration(1000L)
+          .putTag("http.path", "/api")
+          .build());
+      }
+      storage.spanConsumer().accept(trace).execute();
+      allTraceIds.add(traceId);
+    }
+
+    spanStore = storage.spanStore();
+    traces = storage.traces();
+    traceIds = allTraceIds.subList(0, limit);
+    request = QueryRequest.newBuilder().serviceName("frontend")
+      .endTs(now).lookback(TimeUnit.HOURS.toMillis(1)).limit(limit).build();
+  }
+
+  @TearDown public void stop() {
+    storage.close();
+    cassandra.stop();
+  }
+
+  @Benchmark public List<List<Span>> getTraces() throws IOException {
+    return spanStore.getTraces(request).execute();
+  }
+
+  @Benchmark public List<List<Span>> getTraces_byIds() throws IOException {
+    return traces.getTraces(traceIds).execute();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(".*" + CassandraSpanStoreBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
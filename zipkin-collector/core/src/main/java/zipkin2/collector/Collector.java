@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +18,10 @@ import zipkin2.Span;
 import zipkin2.SpanBytesDecoderDetector;
 import zipkin2.codec.BytesDecoder;
 import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.internal.Nullable;
+import zipkin2.internal.Proto3Span;
+import zipkin2.internal.Proto3SpanConsumer;
+import zipkin2.storage.SpanConsumer;
 import zipkin2.storage.StorageComponent;
 
 import static zipkin2.Call.propagateIfFatal;
@@ -49,6 +54,8 @@ public class Collector { // not final for mock
     StorageComponent storage;
     CollectorSampler sampler;
     CollectorMetrics metrics;
+    int batchSize, batchBytes, batchMaxInFlight = 4;
+    long batchLingerMillis = 100;
 
     Builder(Logger logger) {
       this.logger = logger;
@@ -75,6 +82,51 @@ public class Collector { // not final for mock
       return this;
     }
 
+    /**
+     * When positive, spans accepted from separate messages are coalesced into storage requests of
+     * up to this count. Defaults to zero, which stores each message's spans separately.
+     *
+     * <p>This reduces storage requests when messages are small, at the cost of delaying spans up
+     * to {@link #batchLingerMillis(long) the linger time}.
+     */
+    public Builder batchSize(int batchSize) {
+      if (batchSize < 0) throw new IllegalArgumentException("batchSize < 0");
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * When positive and {@link #batchSize(int) batching} is enabled, a batch is sent before its
+     * spans would exceed this size in bytes, as encoded in proto3. Defaults to zero, which doesn't
+     * limit size.
+     */
+    public Builder batchBytes(int batchBytes) {
+      if (batchBytes < 0) throw new IllegalArgumentException("batchBytes < 0");
+      this.batchBytes = batchBytes;
+      return this;
+    }
+
+    /**
+     * When {@link #batchSize(int) batching} is enabled, a batch is sent when its first span has
+     * waited this long, even if it isn't full. Defaults to 100 milliseconds.
+     */
+    public Builder batchLingerMillis(long batchLingerMillis) {
+      if (batchLingerMillis <= 0) throw new IllegalArgumentException("batchLingerMillis <= 0");
+      this.batchLingerMillis = batchLingerMillis;
+      return this;
+    }
+
+    /**
+     * When {@link #batchSize(int) batching} is enabled, threads accepting spans block while this
+     * many batches are awaiting storage. This pushes back on transports such as Kafka, so that
+     * they consume no faster than storage accepts spans. Defaults to 4.
+     */
+    public Builder batchMaxInFlight(int batchMaxInFlight) {
+      if (batchMaxInFlight <= 0) throw new IllegalArgumentException("batchMaxInFlight <= 0");
+      this.batchMaxInFlight = batchMaxInFlight;
+      return this;
+    }
+
     public Collector build() {
       return new Collector(this);
     }
@@ -84,6 +136,7 @@ public class Collector { // not final for mock
   final CollectorMetrics metrics;
   final CollectorSampler sampler;
   final StorageComponent storage;
+  @Nullable final SpanBatcher batcher;
 
   Collector(Builder builder) {
     if (builder.logger == null) throw new NullPointerException("logger == null");
@@ -92,6 +145,19 @@ public class Collector { // not final for mock
     if (builder.storage == null) throw new NullPointerException("storage == null");
     this.storage = builder.storage;
     this.sampler = builder.sampler == null ? CollectorSampler.ALWAYS_SAMPLE : builder.sampler;
+    this.batcher = builder.batchSize > 0
+      ? new SpanBatcher(this, builder.batchSize, builder.batchBytes, builder.batchLingerMillis,
+      builder.batchMaxInFlight)
+      : null;
+  }
+
+  /**
+   * Sends spans pending in a batch, waiting up to {@code timeoutMillis} for batches to be stored.
+   * Transports that enable {@link Builder#batchSize(int) batching} should call this when they stop
+   * accepting spans, so that spans aren't lost on shutdown. This has no effect otherwise.
+   */
+  public void close(long timeoutMillis) {
+    if (batcher != null) batcher.close(timeoutMillis);
   }
 
   public void accept(List<Span> spans, Callback<Void> callback) {
@@ -122,7 +188,11 @@ public class Collector { // not final for mock
     // errors on this bundle of spans in the same log category. This allows people to only turn on
     // debug logging in one place.
     try {
-      executor.execute(new StoreSpans(sampledSpans));
+      if (batcher != null) {
+        executor.execute(() -> batcher.add(sampledSpans));
+      } else {
+        executor.execute(new StoreSpans(sampledSpans));
+      }
       callback.onSuccess(null);
     } catch (Throwable unexpected) { // ensure if a future is supplied we always set value or error
       callback.onError(unexpected);
@@ -133,6 +203,14 @@ public class Collector { // not final for mock
   /** Like {@link #acceptSpans(byte[], BytesDecoder, Callback)}, except using a byte buffer. */
   public void acceptSpans(ByteBuffer encoded, SpanBytesDecoder decoder, Callback<Void> callback,
     Executor executor) {
+    Proto3SpanConsumer proto3SpanConsumer = proto3SpanConsumer(decoder);
+    if (proto3SpanConsumer != null) {
+      // Copy, as callers such as the HTTP collector release the buffer when this returns.
+      byte[] copy = new byte[encoded.remaining()];
+      encoded.duplicate().get(copy);
+      acceptProto3(proto3SpanConsumer, copy, callback, executor);
+      return;
+    }
     List<Span> spans;
     try {
       spans = decoder.decodeList(encoded);
@@ -143,6 +221,79 @@ public class Collector { // not final for mock
     accept(spans, callback, executor);
   }
 
+  /**
+   * Like {@link #acceptSpans(ByteBuffer, SpanBytesDecoder, Callback, Executor)}, except the
+   * callback completes after storage does, on the calling thread or a storage thread. This allows
+   * transports to acknowledge a message only once its spans are stored, for example by committing
+   * a Kafka offset.
+   *
+   * <p>Errors storing spans are logged and counted in metrics before they are passed to the
+   * callback, so that the transport can deliver the message again. A message which can't be decoded
+   * is logged and counted as dropped, then completes the callback successfully, as delivering it
+   * again wouldn't help.
+   */
+  public void storeSpans(ByteBuffer encoded, SpanBytesDecoder decoder, Callback<Void> callback) {
+    Proto3SpanConsumer proto3SpanConsumer = proto3SpanConsumer(decoder);
+    if (proto3SpanConsumer != null) {
+      List<Proto3Span> spans;
+      try {
+        spans = Proto3Span.readList(encoded);
+      } catch (RuntimeException | Error e) {
+        handleDecodeError(e, NOOP_CALLBACK);
+        callback.onSuccess(null);
+        return;
+      }
+      acceptProto3(proto3SpanConsumer, spans, callback, null);
+      return;
+    }
+    List<Span> spans;
+    try {
+      spans = decoder.decodeList(encoded);
+    } catch (RuntimeException | Error e) {
+      handleDecodeError(e, NOOP_CALLBACK);
+      callback.onSuccess(null);
+      return;
+    }
+    storeSpans(spans, callback);
+  }
+
+  /**
+   * Like {@link #accept(List, Callback)}, except the callback completes after storage does. See
+   * {@link #storeSpans(ByteBuffer, SpanBytesDecoder, Callback)}.
+   */
+  public void storeSpans(List<Span> spans, Callback<Void> callback) {
+    if (spans.isEmpty()) {
+      callback.onSuccess(null);
+      return;
+    }
+    metrics.incrementSpans(spans.size());
+
+    List<Span> sampledSpans = sample(spans);
+    if (sampledSpans.isEmpty()) {
+      callback.onSuccess(null);
+      return;
+    }
+
+    if (batcher != null) {
+      batcher.add(sampledSpans, callback);
+      return;
+    }
+    Callback<Void> storageCallback = new Callback<>() {
+      @Override public void onSuccess(Void value) {
+        callback.onSuccess(null);
+      }
+
+      @Override public void onError(Throwable t) {
+        handleStorageError(sampledSpans, t, callback);
+      }
+    };
+    try {
+      store(sampledSpans, storageCallback);
+    } catch (RuntimeException | Error e) {
+      storageCallback.onError(e);
+    }
+  }
+
   /**
    * Before calling this, call {@link CollectorMetrics#incrementMessages()}, and {@link
    * CollectorMetrics#incrementBytes(int)}. Do not call any other metrics callbacks as those are
@@ -170,6 +321,11 @@ public class Collector { // not final for mock
    */
   public void acceptSpans(
     byte[] serializedSpans, BytesDecoder<Span> decoder, Callback<Void> callback) {
+    Proto3SpanConsumer proto3SpanConsumer = proto3SpanConsumer(decoder);
+    if (proto3SpanConsumer != null) {
+      acceptProto3(proto3SpanConsumer, serializedSpans, callback, Runnable::run);
+      return;
+    }
     List<Span> spans;
     try {
       spans = decodeList(decoder, serializedSpans);
@@ -180,6 +336,59 @@ public class Collector { // not final for mock
     accept(spans, callback);
   }
 
+  /**
+   * Returns the storage's consumer when it accepts proto3 spans as they were encoded, and spans
+   * don't need to be decoded for other reasons, such as {@link Builder#batchSize(int) batching}.
+   */
+  @Nullable Proto3SpanConsumer proto3SpanConsumer(BytesDecoder<Span> decoder) {
+    if (decoder != SpanBytesDecoder.PROTO3 || batcher != null) return null;
+    SpanConsumer spanConsumer = storage.spanConsumer();
+    return spanConsumer instanceof Proto3SpanConsumer ? (Proto3SpanConsumer) spanConsumer : null;
+  }
+
+  void acceptProto3(Proto3SpanConsumer spanConsumer, byte[] serializedSpans,
+    Callback<Void> callback, Executor executor) {
+    List<Proto3Span> spans;
+    try {
+      spans = Proto3Span.readList(serializedSpans);
+    } catch (RuntimeException | Error e) {
+      handleDecodeError(e, callback);
+      return;
+    }
+    acceptProto3(spanConsumer, spans, callback, executor);
+  }
+
+  /**
+   * Samples and stores spans without decoding them. When the executor is null, the callback
+   * completes after storage does, like {@link #storeSpans(List, Callback)}.
+   */
+  void acceptProto3(Proto3SpanConsumer spanConsumer, List<Proto3Span> spans,
+    Callback<Void> callback, @Nullable Executor executor) {
+    if (spans.isEmpty()) {
+      callback.onSuccess(null);
+      return;
+    }
+    metrics.incrementSpans(spans.size());
+
+    List<Proto3Span> sampledSpans = sampleProto3(spans);
+    if (sampledSpans.isEmpty()) {
+      callback.onSuccess(null);
+      return;
+    }
+
+    if (executor == null) {
+      new StoreProto3Spans(spanConsumer, sampledSpans, callback).run();
+      return;
+    }
+    try {
+      executor.execute(new StoreProto3Spans(spanConsumer, sampledSpans, NOOP_CALLBACK));
+      callback.onSuccess(null);
+    } catch (Throwable unexpected) { // ensure if a future is supplied we always set value or error
+      callback.onError(unexpected);
+      throw unexpected;
+    }
+  }
+
   List<Span> decodeList(BytesDecoder<Span> decoder, byte[] serialized) {
     List<Span> out = new ArrayList<>();
     decoder.decodeList(serialized, out);
@@ -207,6 +416,19 @@ public class Collector { // not final for mock
     return sampled;
   }
 
+  List<Proto3Span> sampleProto3(List<Proto3Span> input) {
+    List<Proto3Span> sampled = new ArrayList<>(input.size());
+    for (int i = 0, length = input.size(); i < length; i++) {
+      Proto3Span s = input.get(i);
+      if (sampler.isSampled(s.traceId(), Boolean.TRUE.equals(s.debug()))) {
+        sampled.add(s);
+      }
+    }
+    int dropped = input.size() - sampled.size();
+    if (dropped > 0) metrics.incrementSpansDropped(dropped);
+    return sampled;
+  }
+
   class StoreSpans implements Callback<Void>, Runnable {
     final List<Span> spans;
 
@@ -237,6 +459,44 @@ public class Collector { // not final for mock
     }
   }
 
+  class StoreProto3Spans implements Callback<Void>, Runnable {
+    final Proto3SpanConsumer spanConsumer;
+    final List<Proto3Span> spans;
+    final Callback<Void> callback;
+
+    StoreProto3Spans(Proto3SpanConsumer spanConsumer, List<Proto3Span> spans,
+      Callback<Void> callback) {
+      this.spanConsumer = spanConsumer;
+      this.spans = spans;
+      this.callback = callback;
+    }
+
+    @Override public void run() {
+      try {
+        spanConsumer.acceptProto3(spans).enqueue(this);
+      } catch (RuntimeException | Error e) {
+        onError(e);
+      }
+    }
+
+    @Override public void onSuccess(Void value) {
+      callback.onSuccess(null);
+    }
+
+    @Override public void onError(Throwable t) {
+      metrics.incrementSpansDropped(spans.size());
+      handleError(t, () -> appendSpanIds(new StringBuilder("Cannot store spans ")), callback);
+    }
+
+    String appendSpanIds(StringBuilder message) {
+      return appendIds(spans, span -> span.traceId() + "/" + span.id(), message);
+    }
+
+    @Override public String toString() {
+      return appendSpanIds(new StringBuilder("StoreProto3Spans(")) + ")";
+    }
+  }
+
   void handleDecodeError(Throwable e, Callback<Void> callback) {
     metrics.incrementMessagesDropped();
     handleError(e, "Cannot decode spans"::toString, callback);
@@ -272,11 +532,16 @@ public class Collector { // not final for mock
   // TODO: this logic needs to be redone as service names are more important than span IDs. Also,
   // span IDs repeat between client and server!
   String appendSpanIds(List<Span> spans, StringBuilder message) {
+    return appendIds(spans, this::idString, message);
+  }
+
+  static <S> String appendIds(List<S> spans, Function<S, String> idString,
+    StringBuilder message) {
     message.append("[");
     int i = 0;
-    Iterator<Span> iterator = spans.iterator();
+    Iterator<S> iterator = spans.iterator();
     while (iterator.hasNext() && i++ < 3) {
-      message.append(idString(iterator.next()));
+      message.append(idString.apply(iterator.next()));
       if (iterator.hasNext()) message.append(", ");
     }
     if (iterator.hasNext()) message.append("...");
@@ -89,6 +89,16 @@ public interface CollectorMetrics {
    */
   void incrementSpansDropped(int quantity);
 
+  /**
+   * Records a batch of spans sent to storage, when {@link Collector.Builder#batchSize(int)
+   * batching} is enabled. Spans in a batch may have been accepted from many messages.
+   *
+   * @param quantity count of spans in the batch
+   * @param lingerNanos how long the first span in the batch waited before it was sent
+   */
+  default void recordBatch(int quantity, long lingerNanos) {
+  }
+
   CollectorMetrics NOOP_METRICS =
       new CollectorMetrics() {
 
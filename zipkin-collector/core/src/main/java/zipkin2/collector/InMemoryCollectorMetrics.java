@@ -15,6 +15,8 @@ public final class InMemoryCollectorMetrics implements CollectorMetrics {
   private final String bytes;
   private final String spans;
   private final String spansDropped;
+  private final String batches;
+  private final String batchedSpans;
 
   public InMemoryCollectorMetrics() {
     this(new ConcurrentHashMap<>(), null);
@@ -27,6 +29,8 @@ public final class InMemoryCollectorMetrics implements CollectorMetrics {
     this.bytes = scope("bytes", transport);
     this.spans = scope("spans", transport);
     this.spansDropped = scope("spansDropped", transport);
+    this.batches = scope("batches", transport);
+    this.batchedSpans = scope("batchedSpans", transport);
   }
 
   @Override
@@ -80,6 +84,20 @@ public final class InMemoryCollectorMetrics implements CollectorMetrics {
     return get(spansDropped);
   }
 
+  @Override
+  public void recordBatch(int quantity, long lingerNanos) {
+    increment(batches, 1);
+    increment(batchedSpans, quantity);
+  }
+
+  public int batches() {
+    return get(batches);
+  }
+
+  public int batchedSpans() {
+    return get(batchedSpans);
+  }
+
   public void clear() {
     metrics.clear();
   }
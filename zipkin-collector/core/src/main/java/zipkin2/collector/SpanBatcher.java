@@ -0,0 +1,246 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import zipkin2.Callback;
+import zipkin2.Span;
+import zipkin2.internal.Nullable;
+
+import static zipkin2.codec.SpanBytesEncoder.PROTO3;
+
+/**
+ * Coalesces spans accepted from separate messages into batches for storage. A batch is sent when it
+ * reaches {@link Collector.Builder#batchSize(int) a count of spans}, {@link
+ * Collector.Builder#batchBytes(int) a size} or when its first span has waited {@link
+ * Collector.Builder#batchLingerMillis(long) the linger time}.
+ *
+ * <p>When {@link Collector.Builder#batchMaxInFlight(int) too many batches} are awaiting storage,
+ * {@link #add(List)} blocks the calling thread. As transports like Kafka call the collector on
+ * their polling thread, this slows consumption to the rate storage can keep up with. Linger
+ * flushes never block: they are retried shortly until a batch can be sent.
+ */
+final class SpanBatcher {
+  /** How long to wait before retrying a linger flush, when too many batches are in flight. */
+  static final long FLUSH_RETRY_MILLIS = 10L;
+
+  /** Shared as linger flushes are rare, never block and only enqueue a storage request. */
+  static final class LingerScheduler {
+    static final ScheduledExecutorService INSTANCE =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "zipkin-collector-batch-linger");
+        thread.setDaemon(true);
+        return thread;
+      });
+  }
+
+  final Collector collector;
+  final int maxSpans, maxBytes, maxInFlight;
+  final long lingerMillis;
+  final Semaphore inFlight;
+
+  // guarded by this
+  ArrayList<Span> pending;
+  ArrayList<StoredCallback> pendingCallbacks = new ArrayList<>();
+  int pendingBytes;
+  long firstSpanNanos, batchCount;
+  boolean closed;
+
+  SpanBatcher(Collector collector, int maxSpans, int maxBytes, long lingerMillis, int maxInFlight) {
+    this.collector = collector;
+    this.maxSpans = maxSpans;
+    this.maxBytes = maxBytes;
+    this.lingerMillis = lingerMillis;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.pending = new ArrayList<>(maxSpans);
+  }
+
+  /** Adds the spans to the current batch, sending any batches that became full. */
+  void add(List<Span> spans) {
+    add(spans, null);
+  }
+
+  /**
+   * Like {@link #add(List)}, except the callback completes after all batches including these spans
+   * are stored.
+   */
+  void add(List<Span> spans, @Nullable Callback<Void> stored) {
+    StoredCallback storedCallback = stored != null ? new StoredCallback(stored) : null;
+    List<Batch> ready = null;
+    synchronized (this) {
+      for (int i = 0, length = spans.size(); i < length; i++) {
+        Span span = spans.get(i);
+        int sizeInBytes = maxBytes > 0 ? PROTO3.sizeInBytes(span) : 0;
+        if (!pending.isEmpty() && maxBytes > 0 && pendingBytes + sizeInBytes > maxBytes) {
+          if (ready == null) ready = new ArrayList<>(2);
+          ready.add(drain());
+        }
+        if (pending.isEmpty()) startBatch();
+        pending.add(span);
+        pendingBytes += sizeInBytes;
+        if (storedCallback != null && !endsWith(pendingCallbacks, storedCallback)) {
+          pendingCallbacks.add(storedCallback);
+          storedCallback.remaining.incrementAndGet();
+        }
+        if (pending.size() == maxSpans) {
+          if (ready == null) ready = new ArrayList<>(2);
+          ready.add(drain());
+        }
+      }
+    }
+    if (ready == null) return;
+    for (Batch batch : ready) send(batch);
+  }
+
+  // spans of one message are added together, so only the last callback can be the same
+  static boolean endsWith(List<StoredCallback> callbacks, StoredCallback callback) {
+    return !callbacks.isEmpty() && callbacks.get(callbacks.size() - 1) == callback;
+  }
+
+  void startBatch() {
+    firstSpanNanos = System.nanoTime();
+    scheduleFlush(++batchCount, lingerMillis);
+  }
+
+  // Nothing waits on the flush, and errors storing its batch are reported to the batch callbacks.
+  @SuppressWarnings("FutureReturnValueIgnored")
+  void scheduleFlush(long batchId, long delayMillis) {
+    LingerScheduler.INSTANCE.schedule(() -> flush(batchId), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sends the pending batch if it is still the one that started linger time as {@code batchId}.
+   *
+   * <p>This runs on the linger thread shared by all collectors, so it doesn't wait for a batch in
+   * flight to complete. Instead, it tries again later.
+   */
+  void flush(long batchId) {
+    Batch batch;
+    synchronized (this) {
+      if (batchCount != batchId || pending.isEmpty()) return; // already sent
+      if (!inFlight.tryAcquire()) {
+        scheduleFlush(batchId, Math.min(lingerMillis, FLUSH_RETRY_MILLIS));
+        return;
+      }
+      batch = drain();
+    }
+    sendAcquired(batch);
+  }
+
+  /**
+   * Sends the pending batch, then waits up to {@code timeoutMillis} for batches in flight to be
+   * stored. If the pending batch can't be sent by then, its spans are dropped.
+   */
+  void close(long timeoutMillis) {
+    Batch batch;
+    synchronized (this) {
+      if (closed) return;
+      closed = true;
+      batch = pending.isEmpty() ? null : drain();
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    try {
+      if (batch != null) {
+        if (inFlight.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+          sendAcquired(batch);
+        } else {
+          batch.fail(new IllegalStateException("Timed out sending batch on close"));
+        }
+      }
+      long remainingNanos = deadline - System.nanoTime();
+      if (inFlight.tryAcquire(maxInFlight, remainingNanos, TimeUnit.NANOSECONDS)) {
+        inFlight.release(maxInFlight);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  Batch drain() {
+    Batch result = new Batch(pending, pendingCallbacks, System.nanoTime() - firstSpanNanos);
+    pending = new ArrayList<>(maxSpans);
+    pendingCallbacks = new ArrayList<>();
+    pendingBytes = 0;
+    batchCount++; // invalidates the linger task for the drained batch
+    return result;
+  }
+
+  void send(Batch batch) {
+    inFlight.acquireUninterruptibly();
+    sendAcquired(batch);
+  }
+
+  /** Sends the batch after a permit to do so was acquired. */
+  void sendAcquired(Batch batch) {
+    try {
+      collector.store(batch.spans, batch);
+    } catch (RuntimeException | Error e) {
+      // While unexpected, invoking the storage command could raise an error synchronously.
+      batch.onError(e);
+    }
+    collector.metrics.recordBatch(batch.spans.size(), batch.lingerNanos);
+  }
+
+  final class Batch implements Callback<Void> {
+    final List<Span> spans;
+    final List<StoredCallback> storedCallbacks;
+    final long lingerNanos;
+
+    Batch(List<Span> spans, List<StoredCallback> storedCallbacks, long lingerNanos) {
+      this.spans = spans;
+      this.storedCallbacks = storedCallbacks;
+      this.lingerNanos = lingerNanos;
+    }
+
+    @Override public void onSuccess(Void value) {
+      inFlight.release();
+      for (StoredCallback storedCallback : storedCallbacks) storedCallback.batchStored(null);
+    }
+
+    @Override public void onError(Throwable t) {
+      inFlight.release();
+      fail(t);
+    }
+
+    /** Drops the spans, failing the callbacks of messages they were accepted from. */
+    void fail(Throwable t) {
+      collector.handleStorageError(spans, t, Collector.NOOP_CALLBACK);
+      for (StoredCallback storedCallback : storedCallbacks) storedCallback.batchStored(t);
+    }
+
+    @Override public String toString() {
+      return collector.appendSpanIds(spans, new StringBuilder("Batch(")) + ")";
+    }
+  }
+
+  /** Completes once each batch holding spans from the same message is stored. */
+  static final class StoredCallback {
+    final Callback<Void> delegate;
+    final AtomicInteger remaining = new AtomicInteger();
+    volatile Throwable error;
+
+    StoredCallback(Callback<Void> delegate) {
+      this.delegate = delegate;
+    }
+
+    void batchStored(@Nullable Throwable t) {
+      if (t != null) error = t;
+      if (remaining.decrementAndGet() != 0) return;
+      Throwable e = error;
+      if (e == null) {
+        delegate.onSuccess(null);
+      } else {
+        delegate.onError(e);
+      }
+    }
+  }
+}
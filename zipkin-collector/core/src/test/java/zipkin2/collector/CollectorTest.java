@@ -5,6 +5,9 @@
 package zipkin2.collector;
 
 import com.github.valfirst.slf4jtest.TestLoggerFactoryExtension;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.RejectedExecutionException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,25 +16,35 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.event.Level;
+import zipkin2.Call;
 import zipkin2.Callback;
 import zipkin2.Span;
 import zipkin2.codec.SpanBytesDecoder;
 import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.internal.Proto3Span;
+import zipkin2.internal.Proto3SpanConsumer;
 import zipkin2.storage.InMemoryStorage;
+import zipkin2.storage.SpanConsumer;
 import zipkin2.storage.StorageComponent;
 
 import static com.github.valfirst.slf4jtest.TestLoggerFactory.getLoggingEvents;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static zipkin2.TestObjects.CLIENT_SPAN;
 import static zipkin2.TestObjects.TRACE;
 import static zipkin2.TestObjects.UTF_8;
+import static zipkin2.codec.SpanBytesEncoder.PROTO3;
 
 @ExtendWith(TestLoggerFactoryExtension.class)
 class CollectorTest {
@@ -131,6 +144,272 @@ class CollectorTest {
     verify(metrics).incrementSpansDropped(4);
   }
 
+  @Test void batchSize_coalescesSpansAcrossMessages() {
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(storage)
+      .batchSize(4)
+      .batchLingerMillis(60_000)
+      .build();
+
+    for (Span span : TRACE) {
+      assertThat(storage.getTraces()).isEmpty();
+      collector.accept(List.of(span), callback);
+    }
+
+    verify(callback, times(4)).onSuccess(null);
+    verify(metrics, times(4)).incrementSpans(1);
+    verify(metrics).recordBatch(eq(4), anyLong());
+    assertThat(storage.getTraces()).containsOnly(TRACE);
+  }
+
+  @Test void batchBytes_sendsBeforeExceedingSize() {
+    int twoSpans = PROTO3.sizeInBytes(TRACE.get(0)) + PROTO3.sizeInBytes(TRACE.get(1));
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(storage)
+      .batchSize(10)
+      .batchBytes(twoSpans)
+      .batchLingerMillis(60_000)
+      .build();
+
+    collector.accept(TRACE, callback);
+
+    verify(callback).onSuccess(null);
+    verify(metrics).incrementSpans(4);
+    verify(metrics).recordBatch(eq(2), anyLong());
+    assertThat(storage.getTraces()).containsOnly(TRACE.subList(0, 2));
+  }
+
+  @Test void batchLinger_sendsPartialBatch() {
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(storage)
+      .batchSize(10)
+      .batchLingerMillis(10)
+      .build();
+
+    collector.accept(TRACE, callback);
+
+    verify(callback).onSuccess(null);
+    verify(metrics).incrementSpans(4);
+    verify(metrics, timeout(1000)).recordBatch(eq(4), anyLong());
+    assertThat(storage.getTraces()).containsOnly(TRACE);
+  }
+
+  @Test void batch_storageError() {
+    StorageComponent storage = mock(StorageComponent.class);
+    when(storage.spanConsumer()).thenThrow(new RuntimeException("storage disabled"));
+    collector = new Collector.Builder(LoggerFactory.getLogger(""))
+      .metrics(metrics)
+      .storage(storage)
+      .batchSize(4)
+      .build();
+
+    collector.accept(TRACE, callback);
+
+    verify(callback).onSuccess(null); // error is async
+    assertDebugLogIs("Cannot store spans [1, 2, 2, ...] due to RuntimeException(storage disabled)");
+    verify(metrics).incrementSpans(4);
+    verify(metrics).recordBatch(eq(4), anyLong());
+    verify(metrics).incrementSpansDropped(4);
+  }
+
+  /** Transports block accepting spans while the storage hasn't completed prior batches. */
+  @Test void batchMaxInFlight_blocksUntilStored() throws InterruptedException {
+    List<Callback<Void>> pending = new CopyOnWriteArrayList<>();
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(pendingStorage(pending))
+      .batchSize(1)
+      .batchMaxInFlight(1)
+      .build();
+
+    collector.accept(List.of(TRACE.get(0)), callback);
+    Thread second = new Thread(() -> collector.accept(List.of(TRACE.get(1)), callback));
+    second.start();
+    second.join(100);
+    assertThat(second.isAlive()).isTrue();
+
+    pending.get(0).onSuccess(null);
+    second.join(1000);
+    assertThat(second.isAlive()).isFalse();
+    assertThat(pending).hasSize(2);
+
+    verify(callback, times(2)).onSuccess(null);
+    verify(metrics, times(2)).incrementSpans(1);
+    verify(metrics, times(2)).recordBatch(eq(1), anyLong());
+  }
+
+  /** Linger flushes share a thread, so they must not block on storage of one collector. */
+  @Test void batchLinger_doesntBlockWhileInFlight() {
+    List<Callback<Void>> pending = new CopyOnWriteArrayList<>();
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(pendingStorage(pending))
+      .batchSize(2)
+      .batchLingerMillis(10)
+      .batchMaxInFlight(1)
+      .build();
+    collector.accept(TRACE.subList(0, 2), callback); // sent as full
+    collector.accept(TRACE.subList(2, 3), callback); // lingers, but can't be sent
+
+    Collector other = new Collector.Builder(testLogger).metrics(metrics).storage(storage)
+      .batchSize(10)
+      .batchLingerMillis(10)
+      .build();
+    other.accept(TRACE, callback);
+    verify(metrics, timeout(1000)).recordBatch(eq(4), anyLong());
+    assertThat(storage.getTraces()).containsOnly(TRACE);
+    assertThat(pending).hasSize(1);
+
+    pending.get(0).onSuccess(null); // the lingering batch can now be sent
+    verify(metrics, timeout(1000)).recordBatch(eq(1), anyLong());
+    assertThat(pending).hasSize(2);
+
+    verify(callback, times(3)).onSuccess(null);
+    verify(metrics).incrementSpans(2);
+    verify(metrics).incrementSpans(1);
+    verify(metrics).incrementSpans(4);
+    verify(metrics).recordBatch(eq(2), anyLong());
+  }
+
+  @Test void close_sendsPendingBatch() {
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(storage)
+      .batchSize(10)
+      .batchLingerMillis(60_000)
+      .build();
+    collector.accept(TRACE, callback);
+
+    collector.close(1000L);
+
+    verify(callback).onSuccess(null);
+    verify(metrics).incrementSpans(4);
+    verify(metrics).recordBatch(eq(4), anyLong());
+    assertThat(storage.getTraces()).containsOnly(TRACE);
+  }
+
+  @Test void close_dropsPendingBatchWhenStorageBacklogged() {
+    List<Callback<Void>> pending = new CopyOnWriteArrayList<>();
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(pendingStorage(pending))
+      .batchSize(2)
+      .batchLingerMillis(60_000)
+      .batchMaxInFlight(1)
+      .build();
+    collector.accept(TRACE.subList(0, 2), callback); // sent as full, but never stored
+    Callback<Void> stored = mock(Callback.class);
+    collector.storeSpans(TRACE.subList(2, 3), stored);
+
+    collector.close(10L);
+
+    assertThat(pending).hasSize(1);
+    verify(stored).onError(any(IllegalStateException.class));
+    verify(callback).onSuccess(null);
+    verify(metrics).incrementSpans(2);
+    verify(metrics).incrementSpans(1);
+    verify(metrics).recordBatch(eq(2), anyLong());
+    verify(metrics).incrementSpansDropped(1);
+  }
+
+  @Test void storeSpans_callbackAfterStored() {
+    List<Callback<Void>> pending = new CopyOnWriteArrayList<>();
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(pendingStorage(pending))
+      .build();
+
+    collector.storeSpans(ByteBuffer.wrap(PROTO3.encodeList(TRACE)), SpanBytesDecoder.PROTO3,
+      callback);
+    verify(metrics).incrementSpans(4);
+    assertThat(pending).hasSize(1);
+
+    pending.get(0).onSuccess(null);
+    verify(callback).onSuccess(null);
+  }
+
+  @Test void storeSpans_storageError() {
+    List<Callback<Void>> pending = new CopyOnWriteArrayList<>();
+    collector = new Collector.Builder(LoggerFactory.getLogger("")).metrics(metrics)
+      .storage(pendingStorage(pending))
+      .build();
+
+    collector.storeSpans(ByteBuffer.wrap(PROTO3.encodeList(TRACE)), SpanBytesDecoder.PROTO3,
+      callback);
+    RuntimeException error = new RuntimeException("storage disabled");
+    pending.get(0).onError(error);
+
+    verify(callback).onError(error);
+    assertDebugLogIs("Cannot store spans [1, 2, 2, ...] due to RuntimeException(storage disabled)");
+    verify(metrics).incrementSpans(4);
+    verify(metrics).incrementSpansDropped(4);
+  }
+
+  /** Malformed messages are dropped, as delivering them again wouldn't help. */
+  @Test void storeSpans_decodingError() {
+    collector.storeSpans(ByteBuffer.wrap(new byte[] {'[', '"'}), SpanBytesDecoder.JSON_V2,
+      callback);
+
+    verify(callback).onSuccess(null);
+    verify(callback, never()).onError(any());
+    verify(metrics).incrementMessagesDropped();
+    assertThat(getLoggingEvents()).hasSize(1);
+  }
+
+  /** When a message is split across batches, its callback completes after the last is stored. */
+  @Test void storeSpans_batched_callbackAfterAllBatchesStored() {
+    List<Callback<Void>> pending = new CopyOnWriteArrayList<>();
+    collector = new Collector.Builder(testLogger).metrics(metrics).storage(pendingStorage(pending))
+      .batchSize(3)
+      .batchLingerMillis(60_000)
+      .build();
+
+    collector.storeSpans(ByteBuffer.wrap(PROTO3.encodeList(TRACE)), SpanBytesDecoder.PROTO3,
+      callback);
+    assertThat(pending).hasSize(1); // the last span is waiting for the next batch
+
+    pending.get(0).onSuccess(null);
+    verify(callback, never()).onSuccess(null);
+
+    Callback<Void> secondCallback = mock(Callback.class);
+    collector.storeSpans(ByteBuffer.wrap(PROTO3.encodeList(TRACE.subList(0, 2))),
+      SpanBytesDecoder.PROTO3, secondCallback);
+    assertThat(pending).hasSize(2);
+
+    pending.get(1).onSuccess(null);
+    verify(callback).onSuccess(null);
+    verify(secondCallback).onSuccess(null);
+
+    verify(metrics).incrementSpans(4);
+    verify(metrics).incrementSpans(2);
+    verify(metrics, times(2)).recordBatch(eq(3), anyLong());
+  }
+
+  /** Storage that accepts proto3 gets the bytes received, without a decode and re-encode. */
+  @Test void acceptSpans_proto3PassThrough() {
+    List<List<Proto3Span>> stored = new CopyOnWriteArrayList<>();
+    collector = new Collector.Builder(testLogger).metrics(metrics)
+      .storage(proto3Storage(stored))
+      .build();
+    byte[] encoded = PROTO3.encodeList(TRACE);
+
+    collector.acceptSpans(ByteBuffer.wrap(encoded), SpanBytesDecoder.PROTO3, callback,
+      Runnable::run);
+
+    verify(callback).onSuccess(null);
+    verify(metrics).incrementSpans(4);
+    assertThat(stored).hasSize(1);
+    ByteBuffer received = ByteBuffer.allocate(encoded.length);
+    for (Proto3Span span : stored.get(0)) span.writeTo(received);
+    assertThat(received.array()).isEqualTo(encoded);
+    assertThat(stored.get(0)).extracting(Proto3Span::decode).isEqualTo(TRACE);
+  }
+
+  @Test void storeSpans_proto3PassThrough_sampled() {
+    List<List<Proto3Span>> stored = new CopyOnWriteArrayList<>();
+    collector = new Collector.Builder(testLogger).metrics(metrics)
+      .storage(proto3Storage(stored))
+      .sampler(CollectorSampler.create(0.0f))
+      .build();
+    Span debug = CLIENT_SPAN.toBuilder().debug(true).build();
+
+    collector.storeSpans(ByteBuffer.wrap(PROTO3.encodeList(List.of(CLIENT_SPAN, debug))),
+      SpanBytesDecoder.PROTO3, callback);
+
+    verify(callback).onSuccess(null);
+    verify(metrics).incrementSpans(2);
+    verify(metrics).incrementSpansDropped(1);
+    assertThat(stored).hasSize(1);
+    assertThat(stored.get(0)).extracting(Proto3Span::decode).containsExactly(debug);
+  }
+
   @Test void acceptSpans_emptyMessageOk() {
     byte[] bytes = new byte[] {'[', ']'};
     collector.acceptSpans(bytes, callback);
@@ -238,6 +517,48 @@ class CollectorTest {
     verify(metrics).incrementMessagesDropped();
   }
 
+  /** Returns storage that doesn't complete until callbacks added to the list are invoked. */
+  static StorageComponent pendingStorage(List<Callback<Void>> pending) {
+    StorageComponent storage = mock(StorageComponent.class);
+    when(storage.spanConsumer()).thenReturn(spans -> new Call.Base<>() {
+      @Override protected Void doExecute() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override protected void doEnqueue(Callback<Void> callback) {
+        pending.add(callback);
+      }
+
+      @Override public Call<Void> clone() {
+        throw new UnsupportedOperationException();
+      }
+    });
+    return storage;
+  }
+
+  static StorageComponent proto3Storage(List<List<Proto3Span>> stored) {
+    StorageComponent storage = mock(StorageComponent.class);
+    when(storage.spanConsumer()).thenReturn(new Proto3Consumer(stored));
+    return storage;
+  }
+
+  static final class Proto3Consumer implements SpanConsumer, Proto3SpanConsumer {
+    final List<List<Proto3Span>> stored;
+
+    Proto3Consumer(List<List<Proto3Span>> stored) {
+      this.stored = stored;
+    }
+
+    @Override public Call<Void> accept(List<Span> spans) {
+      throw new AssertionError("expected spans to pass through encoded");
+    }
+
+    @Override public Call<Void> acceptProto3(List<Proto3Span> spans) {
+      stored.add(spans);
+      return Call.create(null);
+    }
+  }
+
   private String unprefixIdString(String msg) {
     return msg.replaceAll("7180c278b62e8f6a216a2aea45d08fc9/000000000000000", "");
   }
@@ -19,6 +19,7 @@ import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.InterruptException;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteBufferDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import zipkin2.Call;
@@ -56,6 +57,7 @@ public final class KafkaCollector extends CollectorComponent {
     CollectorMetrics metrics = CollectorMetrics.NOOP_METRICS;
     String topic = "zipkin";
     int streams = 1;
+    int parallelism;
 
     @Override
     public Builder storage(StorageComponent storage) {
@@ -107,6 +109,47 @@ public final class KafkaCollector extends CollectorComponent {
       return this;
     }
 
+    /**
+     * When positive, each consumer thread decodes and stores messages on a pool of this many
+     * threads. Offsets are committed only after storage of a message and all prior in its
+     * partition succeeds. This gives at-least-once delivery: messages whose storage didn't complete
+     * are consumed again after a restart or rebalance, and a partition whose storage failed is
+     * paused and consumed again from the failed message after a backoff.
+     *
+     * <p>Defaults to zero: each consumer thread decodes messages in order on one other thread.
+     * Offsets are still committed only after storage of prior messages completes, but messages
+     * whose storage failed are skipped.
+     */
+    public Builder parallelism(int parallelism) {
+      if (parallelism < 0) throw new IllegalArgumentException("parallelism < 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /** Sets {@link Collector.Builder#batchSize(int)}. Defaults to zero, which disables batching */
+    public Builder batchSize(int batchSize) {
+      delegate.batchSize(batchSize);
+      return this;
+    }
+
+    /** Sets {@link Collector.Builder#batchBytes(int)} */
+    public Builder batchBytes(int batchBytes) {
+      delegate.batchBytes(batchBytes);
+      return this;
+    }
+
+    /** Sets {@link Collector.Builder#batchLingerMillis(long)} */
+    public Builder batchLingerMillis(long batchLingerMillis) {
+      delegate.batchLingerMillis(batchLingerMillis);
+      return this;
+    }
+
+    /** Sets {@link Collector.Builder#batchMaxInFlight(int)} */
+    public Builder batchMaxInFlight(int batchMaxInFlight) {
+      delegate.batchMaxInFlight(batchMaxInFlight);
+      return this;
+    }
+
     /**
      * By default, a consumer will be built from properties derived from builder defaults, as well
      * as "auto.offset.reset" -> "earliest". Any properties set here will override the consumer
@@ -139,7 +182,7 @@ public final class KafkaCollector extends CollectorComponent {
       properties.put(GROUP_ID_CONFIG, "zipkin");
       properties.put(AUTO_OFFSET_RESET_CONFIG, "earliest");
       properties.put(KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
-      properties.put(VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+      properties.put(VALUE_DESERIALIZER_CLASS_CONFIG, ByteBufferDeserializer.class.getName());
     }
   }
 
@@ -4,38 +4,61 @@
  */
 package zipkin2.collector.kafka;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import zipkin2.Callback;
 import zipkin2.Span;
+import zipkin2.SpanBytesDecoderDetector;
 import zipkin2.codec.SpanBytesDecoder;
 import zipkin2.collector.Collector;
 import zipkin2.collector.CollectorMetrics;
+import zipkin2.internal.Nullable;
 
-/** Consumes spans from Kafka messages, ignoring malformed input */
+import static org.apache.kafka.clients.consumer.ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG;
+
+/**
+ * Consumes spans from Kafka messages, ignoring malformed input. Messages are read as {@link
+ * ByteBuffer} views of the fetched records, and decoded without copying them into arrays.
+ *
+ * <p>Messages are decoded and stored off the polling thread, so offsets are committed manually:
+ * the offset of a partition is committed once all prior messages in that partition completed
+ * storage. By default, messages are decoded and stored in order on one thread, and a message whose
+ * storage failed is skipped. When {@link KafkaCollector.Builder#parallelism(int) parallelism} is
+ * set, messages are decoded and stored concurrently. When storage of a message fails, its partition
+ * is paused, then consumed again from that message after a backoff.
+ */
 final class KafkaCollectorWorker implements Runnable {
   static final Logger LOG = LoggerFactory.getLogger(KafkaCollectorWorker.class);
-  static final Callback<Void> NOOP =
-      new Callback<Void>() {
-        @Override
-        public void onSuccess(Void value) {}
-
-        @Override
-        public void onError(Throwable t) {}
-      };
+  /** Messages polled, but not yet stored, before the polling thread blocks. */
+  static final int MAX_IN_FLIGHT = 1000;
+  static final long POLL_TIMEOUT_MILLIS = 1000L;
+  static final long MIN_RETRY_BACKOFF_MILLIS = 100L, MAX_RETRY_BACKOFF_MILLIS = 30_000L;
 
   final Properties properties;
   final List<String> topics;
@@ -45,23 +68,56 @@ final class KafkaCollectorWorker implements Runnable {
   final AtomicReference<List<TopicPartition>> assignedPartitions =
       new AtomicReference<>(List.of());
   final AtomicBoolean running = new AtomicBoolean(true);
+  /** Decodes and stores messages, so that the polling thread isn't blocked by storage. */
+  final ExecutorService decodeExecutor;
+  /** Binary formats don't change often, so we remember them to skip detection. */
+  final Map<TopicPartition, SpanBytesDecoder> partitionDecoders = new HashMap<>();
+  /** Bounds messages polled, but not yet stored, as their offsets aren't committed until then. */
+  final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+  /** When false, messages whose storage failed are skipped, instead of consumed again. */
+  final boolean retryFailed;
+  /** Messages of each partition in offset order, until they and all prior are stored. */
+  final Map<TopicPartition, ArrayDeque<StoredMessage>> uncommitted = new LinkedHashMap<>();
+  /** Partitions paused after a storage failure, until they are consumed again. */
+  final Map<TopicPartition, Retry> retries = new LinkedHashMap<>();
+  /** Last backoff of partitions which failed storage, until their offset is committed again. */
+  final Map<TopicPartition, Long> retryBackoffMillis = new HashMap<>();
 
   KafkaCollectorWorker(KafkaCollector.Builder builder) {
-    properties = builder.properties;
     topics = Arrays.asList(builder.topic.split(","));
     collector = builder.delegate.build();
     metrics = builder.metrics;
+    // Automatic commits could include messages queued for decoding, which a crash would lose.
+    properties = new Properties();
+    properties.putAll(builder.properties);
+    properties.put(ENABLE_AUTO_COMMIT_CONFIG, "false");
+    retryFailed = builder.parallelism > 0;
+    if (builder.parallelism > 0) {
+      decodeExecutor = new ForkJoinPool(builder.parallelism);
+    } else {
+      // The queue is bounded by inFlight, which blocks the polling thread when full.
+      decodeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "zipkin-kafka-decoder");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
   }
 
   @Override
   public void run() {
-    try (KafkaConsumer<byte[], byte[]> kafkaConsumer = new KafkaConsumer<>(properties)) {
+    try (KafkaConsumer<byte[], ByteBuffer> kafkaConsumer = new KafkaConsumer<>(properties)) {
       kafkaConsumer.subscribe(
         topics,
         // added for integration tests only, see ITKafkaCollector
         new ConsumerRebalanceListener() {
           @Override
           public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            partitionDecoders.keySet().removeAll(partitions);
+            commitStored(kafkaConsumer, true);
+            uncommitted.keySet().removeAll(partitions);
+            retries.keySet().removeAll(partitions);
+            retryBackoffMillis.keySet().removeAll(partitions);
             // technically we should remove only the revoked partitions but for test purposes it
             // does not matter
             assignedPartitions.set(List.of());
@@ -74,42 +130,199 @@ final class KafkaCollectorWorker implements Runnable {
         });
       LOG.debug("Kafka consumer starting polling loop.");
       while (running.get()) {
-        final ConsumerRecords<byte[], byte[]> consumerRecords = kafkaConsumer.poll(Duration.of(1000, ChronoUnit.MILLIS));
+        resumeRetries(kafkaConsumer);
+        final ConsumerRecords<byte[], ByteBuffer> consumerRecords =
+          kafkaConsumer.poll(Duration.of(pollTimeoutMillis(), ChronoUnit.MILLIS));
         LOG.debug("Kafka polling returned batch of {} messages.", consumerRecords.count());
-        for (ConsumerRecord<byte[], byte[]> record : consumerRecords) {
-          final byte[] bytes = record.value();
-          metrics.incrementMessages();
-          metrics.incrementBytes(bytes.length);
-
-          if (bytes.length == 0) continue; // lenient on empty messages
-
-          if (bytes.length < 2) { // need two bytes to check if protobuf
-            metrics.incrementMessagesDropped();
-          } else {
-            // If we received legacy single-span encoding, decode it into a singleton list
-            if (!protobuf3(bytes) && bytes[0] <= 16 && bytes[0] != 12 /* thrift, but not list */) {
-              Span span;
-              try {
-                span = SpanBytesDecoder.THRIFT.decodeOne(bytes);
-              } catch (RuntimeException e) {
-                metrics.incrementMessagesDropped();
-                continue;
-              }
-              collector.accept(List.of(span), NOOP);
-            } else {
-              collector.acceptSpans(bytes, NOOP);
-            }
+        for (TopicPartition partition : consumerRecords.partitions()) {
+          SpanBytesDecoder decoder = partitionDecoders.get(partition);
+          ArrayDeque<StoredMessage> messages =
+            uncommitted.computeIfAbsent(partition, p -> new ArrayDeque<>());
+          for (ConsumerRecord<byte[], ByteBuffer> record : consumerRecords.records(partition)) {
+            StoredMessage message = new StoredMessage(record.offset());
+            messages.add(message);
+            decoder = accept(record.value(), decoder, message);
           }
+          if (decoder != null) partitionDecoders.put(partition, decoder);
         }
+        commitStored(kafkaConsumer, false);
+        pauseFailed(kafkaConsumer);
       }
+      stopDecoding();
+      awaitInFlightAndCommit(kafkaConsumer);
     } catch (RuntimeException | Error e) {
       LOG.warn("Unexpected error in polling loop spans", e);
       throw e;
     } finally {
+      stopDecoding();
       LOG.debug("Kafka consumer polling loop stopped. Kafka consumer closed.");
     }
   }
 
+  /** Lets messages already polled be decoded, then sends spans pending in a batch. */
+  void stopDecoding() {
+    decodeExecutor.shutdown();
+    try {
+      decodeExecutor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    collector.close(1000L);
+  }
+
+  /**
+   * Schedules the message for decoding, returning the binary decoder to try first on the next
+   * message of the same partition, or null if there is none.
+   *
+   * @param stored completes once the message is stored or dropped
+   */
+  @Nullable SpanBytesDecoder accept(@Nullable ByteBuffer bytes, @Nullable SpanBytesDecoder last,
+    Callback<Void> stored) {
+    int length = bytes != null ? bytes.remaining() : 0;
+    metrics.incrementMessages();
+    metrics.incrementBytes(length);
+    inFlight.acquireUninterruptibly(); // released when stored
+
+    if (length == 0) { // lenient on empty messages
+      stored.onSuccess(null);
+      return last;
+    }
+
+    if (length < 2) { // need two bytes to check if protobuf
+      metrics.incrementMessagesDropped();
+      stored.onSuccess(null);
+      return last;
+    }
+
+    // If we received legacy single-span encoding, decode it into a singleton list
+    byte first = bytes.get(bytes.position());
+    if (!protobuf3(bytes) && first <= 16 && first != 12 /* thrift, but not list */) {
+      decodeExecutor.execute(() -> {
+        Span span;
+        try {
+          span = SpanBytesDecoder.THRIFT.decodeOne(bytes);
+        } catch (RuntimeException e) {
+          metrics.incrementMessagesDropped();
+          stored.onSuccess(null);
+          return;
+        }
+        collector.storeSpans(List.of(span), stored);
+      });
+      return last;
+    }
+
+    SpanBytesDecoder decoder = last;
+    if (decoder == null || !sameBinaryFormat(decoder, bytes)) {
+      try {
+        decoder = (SpanBytesDecoder) SpanBytesDecoderDetector.decoderForListMessage(bytes);
+      } catch (RuntimeException e) {
+        metrics.incrementMessagesDropped();
+        stored.onSuccess(null);
+        return last;
+      }
+    }
+    SpanBytesDecoder listDecoder = decoder;
+    decodeExecutor.execute(() -> collector.storeSpans(bytes, listDecoder, stored));
+
+    // Json v1 and v2 can only be distinguished by scanning the message, so aren't remembered.
+    return decoder == SpanBytesDecoder.PROTO3 || decoder == SpanBytesDecoder.THRIFT
+      ? decoder
+      : null;
+  }
+
+  /**
+   * Commits the offset after the last message of each partition which, along with all prior
+   * messages, completed storage. Offsets never advance past a message whose storage failed.
+   */
+  void commitStored(Consumer<?, ?> kafkaConsumer, boolean sync) {
+    Map<TopicPartition, OffsetAndMetadata> offsets = new LinkedHashMap<>();
+    for (Map.Entry<TopicPartition, ArrayDeque<StoredMessage>> entry : uncommitted.entrySet()) {
+      ArrayDeque<StoredMessage> messages = entry.getValue();
+      long nextOffset = -1L;
+      while (!messages.isEmpty() && messages.peek().done) {
+        nextOffset = messages.poll().offset + 1;
+      }
+      if (nextOffset == -1L) continue;
+      offsets.put(entry.getKey(), new OffsetAndMetadata(nextOffset));
+      retryBackoffMillis.remove(entry.getKey());
+    }
+    if (offsets.isEmpty()) return;
+    if (sync) {
+      kafkaConsumer.commitSync(offsets);
+    } else {
+      kafkaConsumer.commitAsync(offsets, (committed, e) -> {
+        // a later commit includes these offsets, so only log the failure
+        if (e != null) LOG.debug("Failed to commit offsets {}", committed, e);
+      });
+    }
+  }
+
+  /**
+   * Pauses each partition whose oldest uncommitted message failed storage. After a backoff, which
+   * doubles while storage keeps failing, {@link #resumeRetries} consumes it again from that
+   * message. Later messages of the partition are consumed again as well.
+   */
+  void pauseFailed(Consumer<?, ?> kafkaConsumer) {
+    long now = System.nanoTime();
+    for (Map.Entry<TopicPartition, ArrayDeque<StoredMessage>> entry : uncommitted.entrySet()) {
+      ArrayDeque<StoredMessage> messages = entry.getValue();
+      StoredMessage oldest = messages.peek();
+      if (oldest == null || !oldest.failed) continue;
+
+      TopicPartition partition = entry.getKey();
+      long backoffMillis = retryBackoffMillis.merge(partition, MIN_RETRY_BACKOFF_MILLIS,
+        (last, min) -> Math.min(last * 2, MAX_RETRY_BACKOFF_MILLIS));
+      LOG.debug("Storage failed at offset {} of {}, retrying in {}ms", oldest.offset, partition,
+        backoffMillis);
+      kafkaConsumer.pause(List.of(partition));
+      retries.put(partition,
+        new Retry(oldest.offset, now + TimeUnit.MILLISECONDS.toNanos(backoffMillis)));
+      messages.clear();
+    }
+  }
+
+  /** Resumes paused partitions whose backoff elapsed, from the message that failed storage. */
+  void resumeRetries(Consumer<?, ?> kafkaConsumer) {
+    long now = System.nanoTime();
+    for (Iterator<Map.Entry<TopicPartition, Retry>> i = retries.entrySet().iterator();
+      i.hasNext(); ) {
+      Map.Entry<TopicPartition, Retry> entry = i.next();
+      if (now - entry.getValue().resumeNanos < 0) continue;
+      kafkaConsumer.seek(entry.getKey(), entry.getValue().offset);
+      kafkaConsumer.resume(List.of(entry.getKey()));
+      i.remove();
+    }
+  }
+
+  /** Polls no longer than until the next paused partition should be resumed. */
+  long pollTimeoutMillis() {
+    long timeoutMillis = POLL_TIMEOUT_MILLIS;
+    long now = System.nanoTime();
+    for (Retry retry : retries.values()) {
+      long untilResume = TimeUnit.NANOSECONDS.toMillis(retry.resumeNanos - now);
+      timeoutMillis = Math.max(0L, Math.min(timeoutMillis, untilResume));
+    }
+    return timeoutMillis;
+  }
+
+  /** Gives in-flight messages a chance to complete, so they aren't consumed again on restart. */
+  void awaitInFlightAndCommit(Consumer<?, ?> kafkaConsumer) {
+    try {
+      if (inFlight.tryAcquire(MAX_IN_FLIGHT, 1, TimeUnit.SECONDS)) inFlight.release(MAX_IN_FLIGHT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    commitStored(kafkaConsumer, true);
+  }
+
+  /** Returns true when the message has the same leading byte as prior ones in a binary format. */
+  static boolean sameBinaryFormat(SpanBytesDecoder decoder, ByteBuffer bytes) {
+    if (decoder == SpanBytesDecoder.PROTO3) return protobuf3(bytes);
+    if (decoder != SpanBytesDecoder.THRIFT) return false;
+    byte first = bytes.get(bytes.position());
+    return first == 12 /* List[ThriftSpan] */ || first == 11 /* reporter-java#133 */;
+  }
+
   /**
    * Stop the polling loop
    */
@@ -118,7 +331,51 @@ final class KafkaCollectorWorker implements Runnable {
   }
 
   /* span key or trace ID key */
-  static boolean protobuf3(byte[] bytes) {
-    return bytes[0] == 10 && bytes[1] != 0; // varint follows and won't be zero
+  static boolean protobuf3(ByteBuffer bytes) {
+    int position = bytes.position();
+    // varint follows and won't be zero
+    return bytes.get(position) == 10 && bytes.get(position + 1) != 0;
+  }
+
+  /**
+   * Completes when a message is stored or dropped. When {@link #retryFailed}, a storage failure
+   * leaves the message not done, so that its offset isn't committed until it is consumed again and
+   * stored. Otherwise, the message is skipped.
+   */
+  final class StoredMessage implements Callback<Void> {
+    final long offset;
+    volatile boolean done, failed;
+
+    StoredMessage(long offset) {
+      this.offset = offset;
+    }
+
+    @Override public void onSuccess(Void value) {
+      complete();
+    }
+
+    @Override public void onError(Throwable t) {
+      if (!retryFailed) {
+        complete();
+        return;
+      }
+      failed = true;
+      inFlight.release();
+    }
+
+    void complete() {
+      done = true;
+      inFlight.release();
+    }
+  }
+
+  /** Where and when to consume a paused partition again. */
+  static final class Retry {
+    final long offset, resumeNanos;
+
+    Retry(long offset, long resumeNanos) {
+      this.offset = offset;
+      this.resumeNanos = resumeNanos;
+    }
   }
 }
@@ -5,16 +5,21 @@
 package zipkin2.collector.kafka;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -33,6 +38,7 @@ import zipkin2.storage.ForwardingStorageComponent;
 import zipkin2.storage.SpanConsumer;
 import zipkin2.storage.StorageComponent;
 
+import static org.apache.kafka.clients.consumer.ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG;
 import static org.assertj.core.api.Assertions.assertThat;
 import static zipkin2.TestObjects.CLIENT_SPAN;
 import static zipkin2.TestObjects.LOTS_OF_SPANS;
@@ -270,6 +276,62 @@ class ITKafkaCollector {
     assertThat(kafkaMetrics.spansDropped()).isZero();
   }
 
+  /** With parallelism, offsets are committed once all prior messages are stored. */
+  @Test void parallelism_commitsOffsetsAfterStored() throws Exception {
+    KafkaCollector.Builder builder = builder("parallelism").parallelism(4);
+
+    byte[] message = JSON_V2.encodeList(spans);
+    for (int i = 0; i < 3; i++) produceSpans(message, builder.topic);
+
+    try (KafkaCollector collector = builder.build()) {
+      collector.start();
+      for (int i = 0; i < 3; i++) {
+        assertThat(receivedSpans.take()).containsExactlyElementsOf(spans);
+      }
+      assertThat(collector.kafkaWorkers.workers.get(0).properties)
+        .containsEntry(ENABLE_AUTO_COMMIT_CONFIG, "false");
+    } // closing commits offsets synchronously
+
+    try (AdminClient admin = AdminClient.create(Map.of(
+      AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.bootstrapServer()))) {
+      Map<TopicPartition, OffsetAndMetadata> offsets =
+        admin.listConsumerGroupOffsets(builder.topic + "_group")
+          .partitionsToOffsetAndMetadata().get();
+      assertThat(offsets).containsEntry(new TopicPartition(builder.topic, 0),
+        new OffsetAndMetadata(3));
+    }
+
+    assertThat(kafkaMetrics.messages()).isEqualTo(3);
+    assertThat(kafkaMetrics.spans()).isEqualTo(spans.size() * 3);
+    assertThat(kafkaMetrics.spansDropped()).isZero();
+  }
+
+  /** Without parallelism, offsets are still only committed once prior messages are stored. */
+  @Test void commitsOffsetsAfterStored() throws Exception {
+    KafkaCollector.Builder builder = builder("commit_after_stored");
+
+    byte[] message = JSON_V2.encodeList(spans);
+    for (int i = 0; i < 3; i++) produceSpans(message, builder.topic);
+
+    try (KafkaCollector collector = builder.build()) {
+      collector.start();
+      for (int i = 0; i < 3; i++) {
+        assertThat(receivedSpans.take()).containsExactlyElementsOf(spans);
+      }
+      assertThat(collector.kafkaWorkers.workers.get(0).properties)
+        .containsEntry(ENABLE_AUTO_COMMIT_CONFIG, "false");
+    } // closing commits offsets synchronously
+
+    try (AdminClient admin = AdminClient.create(Map.of(
+      AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.bootstrapServer()))) {
+      Map<TopicPartition, OffsetAndMetadata> offsets =
+        admin.listConsumerGroupOffsets(builder.topic + "_group")
+          .partitionsToOffsetAndMetadata().get();
+      assertThat(offsets).containsEntry(new TopicPartition(builder.topic, 0),
+        new OffsetAndMetadata(3));
+    }
+  }
+
   @Test void multipleTopicsCommaDelimited() {
     try (KafkaCollector collector = builder("topic1,topic2").build()) {
       collector.start();
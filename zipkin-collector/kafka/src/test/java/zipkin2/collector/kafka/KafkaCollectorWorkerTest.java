@@ -0,0 +1,153 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.collector.kafka;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import zipkin2.Call;
+import zipkin2.Callback;
+import zipkin2.Span;
+import zipkin2.storage.ForwardingStorageComponent;
+import zipkin2.storage.SpanConsumer;
+import zipkin2.storage.StorageComponent;
+
+import static org.apache.kafka.clients.consumer.ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG;
+import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.TestObjects.LOTS_OF_SPANS;
+import static zipkin2.codec.SpanBytesEncoder.JSON_V2;
+import static zipkin2.collector.kafka.KafkaCollectorWorker.MAX_IN_FLIGHT;
+
+class KafkaCollectorWorkerTest {
+  TopicPartition partition = new TopicPartition("zipkin", 0);
+  MockConsumer<byte[], ByteBuffer> kafkaConsumer =
+    new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+  List<Span> spans = List.of(LOTS_OF_SPANS[0], LOTS_OF_SPANS[1]);
+
+  /** Fails to store the second message it is passed. */
+  AtomicInteger storeCount = new AtomicInteger();
+  SpanConsumer spanConsumer = (spans) -> new Call.Base<Void>() {
+    @Override protected Void doExecute() {
+      throw new AssertionError();
+    }
+
+    @Override protected void doEnqueue(Callback<Void> callback) {
+      if (storeCount.getAndIncrement() == 1) {
+        callback.onError(new RuntimeException("storage fell over"));
+      } else {
+        callback.onSuccess(null);
+      }
+    }
+
+    @Override public Call<Void> clone() {
+      throw new AssertionError();
+    }
+  };
+
+  KafkaCollectorWorker worker = new KafkaCollectorWorker(KafkaCollector.builder()
+    .storage(buildStorage(spanConsumer))
+    .parallelism(1));
+
+  @Test void storageFailure_doesntCommitOffset() throws Exception {
+    kafkaConsumer.assign(List.of(partition));
+    kafkaConsumer.updateBeginningOffsets(Map.of(partition, 0L));
+    kafkaConsumer.seek(partition, 3L); // as if offsets 0-2 were polled
+
+    acceptAndAwaitStored(0L, 1L, 2L);
+    worker.commitStored(kafkaConsumer, true);
+
+    // offset 1 failed storage, so only offset 0 is committed, even though offset 2 was stored
+    assertThat(kafkaConsumer.committed(Set.of(partition)))
+      .containsEntry(partition, new OffsetAndMetadata(1L));
+
+    worker.pauseFailed(kafkaConsumer);
+    assertThat(kafkaConsumer.paused()).containsExactly(partition);
+    assertThat(worker.uncommitted.get(partition)).isEmpty();
+
+    while (!worker.retries.isEmpty()) { // resumes after backoff
+      worker.resumeRetries(kafkaConsumer);
+      Thread.sleep(10L);
+    }
+    assertThat(kafkaConsumer.paused()).isEmpty();
+    assertThat(kafkaConsumer.position(partition)).isEqualTo(1L);
+
+    // the failed message and those after it are consumed again, and stored this time
+    acceptAndAwaitStored(1L, 2L);
+    worker.commitStored(kafkaConsumer, true);
+    worker.pauseFailed(kafkaConsumer);
+
+    assertThat(kafkaConsumer.committed(Set.of(partition)))
+      .containsEntry(partition, new OffsetAndMetadata(3L));
+    assertThat(kafkaConsumer.paused()).isEmpty();
+    assertThat(worker.retryBackoffMillis).isEmpty();
+  }
+
+  @Test void defaultMode_skipsStorageFailureAndCommitsOnlyStored() throws Exception {
+    worker = new KafkaCollectorWorker(KafkaCollector.builder().storage(buildStorage(spanConsumer)));
+    assertThat(worker.properties).containsEntry(ENABLE_AUTO_COMMIT_CONFIG, "false");
+    kafkaConsumer.assign(List.of(partition));
+    kafkaConsumer.updateBeginningOffsets(Map.of(partition, 0L));
+    kafkaConsumer.seek(partition, 4L); // as if offsets 0-3 were polled
+
+    acceptAndAwaitStored(0L, 1L, 2L);
+    // offset 3 was polled, but isn't yet stored
+    worker.uncommitted.get(partition).add(worker.new StoredMessage(3L));
+    worker.commitStored(kafkaConsumer, true);
+    worker.pauseFailed(kafkaConsumer);
+
+    // offset 1 failed storage, but is skipped instead of consumed again
+    assertThat(kafkaConsumer.committed(Set.of(partition)))
+      .containsEntry(partition, new OffsetAndMetadata(3L));
+    assertThat(kafkaConsumer.paused()).isEmpty();
+    assertThat(worker.retries).isEmpty();
+  }
+
+  @Test void storageFailure_backoffDoubles() {
+    kafkaConsumer.assign(List.of(partition));
+
+    for (long backoff : List.of(100L, 200L, 400L)) {
+      KafkaCollectorWorker.StoredMessage message = worker.new StoredMessage(0L);
+      worker.inFlight.acquireUninterruptibly();
+      message.onError(new RuntimeException("storage fell over"));
+      worker.uncommitted.computeIfAbsent(partition, p -> new ArrayDeque<>()).add(message);
+
+      worker.pauseFailed(kafkaConsumer);
+      assertThat(worker.retryBackoffMillis).containsEntry(partition, backoff);
+    }
+  }
+
+  void acceptAndAwaitStored(long... offsets) throws InterruptedException {
+    ArrayDeque<KafkaCollectorWorker.StoredMessage> messages =
+      worker.uncommitted.computeIfAbsent(partition, p -> new ArrayDeque<>());
+    for (long offset : offsets) {
+      KafkaCollectorWorker.StoredMessage message = worker.new StoredMessage(offset);
+      messages.add(message);
+      worker.accept(ByteBuffer.wrap(JSON_V2.encodeList(spans)), null, message);
+    }
+    assertThat(worker.inFlight.tryAcquire(MAX_IN_FLIGHT, 1, TimeUnit.SECONDS)).isTrue();
+    worker.inFlight.release(MAX_IN_FLIGHT);
+  }
+
+  static StorageComponent buildStorage(final SpanConsumer spanConsumer) {
+    return new ForwardingStorageComponent() {
+      @Override protected StorageComponent delegate() {
+        throw new AssertionError();
+      }
+
+      @Override public SpanConsumer spanConsumer() {
+        return spanConsumer;
+      }
+    };
+  }
+}
@@ -4,6 +4,7 @@
  */
 package zipkin2.server.internal;
 
+import com.linecorp.armeria.common.AggregatedHttpResponse;
 import com.linecorp.armeria.common.HttpMethod;
 import com.linecorp.armeria.common.HttpRequest;
 import com.linecorp.armeria.common.HttpResponse;
@@ -21,6 +22,11 @@ final class BodyIsExceptionMessage implements ExceptionHandlerFunction {
   static final Logger LOGGER = LoggerFactory.getLogger(BodyIsExceptionMessage.class);
   @Override
   public HttpResponse handleException(ServiceRequestContext ctx, HttpRequest req, Throwable cause) {
+    return toResponse(req, cause).toHttpResponse();
+  }
+
+  /** For responses that complete after the service returned, such as streaming ones. */
+  static AggregatedHttpResponse toResponse(HttpRequest req, Throwable cause) {
     if (req.method() == HttpMethod.POST && req.path().startsWith("/api/v")) {
       ZipkinHttpCollector.metrics.incrementMessagesDropped();
     }
@@ -28,14 +34,14 @@ final class BodyIsExceptionMessage implements ExceptionHandlerFunction {
     String message = cause.getMessage();
     if (message == null) message = cause.getClass().getSimpleName();
     if (cause instanceof IllegalArgumentException) {
-      return HttpResponse.of(BAD_REQUEST, ANY_TEXT_TYPE, message);
+      return AggregatedHttpResponse.of(BAD_REQUEST, ANY_TEXT_TYPE, message);
     } else {
       // Don't fill logs with exceptions about closed components.
       if (!(cause instanceof ClosedComponentException)) {
         LOGGER.warn("Unexpected error handling {} {}", req.method(), req.path());
       }
 
-      return HttpResponse.of(INTERNAL_SERVER_ERROR, ANY_TEXT_TYPE, message);
+      return AggregatedHttpResponse.of(INTERNAL_SERVER_ERROR, ANY_TEXT_TYPE, message);
     }
   }
 }
@@ -5,8 +5,11 @@
 package zipkin2.server.internal;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import zipkin2.collector.CollectorMetrics;
 import zipkin2.internal.Nullable;
@@ -27,6 +30,10 @@ import zipkin2.internal.Nullable;
  * include sampling or storage failures</li>
  *     <li>gauge.zipkin_collector.message_spans.$transport - last count of spans in a message</li>
  *     <li>gauge.zipkin_collector.message_bytes.$transport - last count of bytes in a message</li>
+ *     <li>summary.zipkin_collector.batch_spans.$transport - count of spans per storage batch, when
+ * batching is enabled</li>
+ *     <li>timer.zipkin_collector.batch_linger.$transport - time the first span in a storage batch
+ * waited before it was sent</li>
  * </ul>
  * </pre>
  *
@@ -36,6 +43,8 @@ public final class MicrometerCollectorMetrics implements CollectorMetrics {
   final MeterRegistry registryInstance;
   final Counter messages, messagesDropped, bytes, spans, spansDropped;
   final AtomicInteger messageBytes, messageSpans;
+  final DistributionSummary batchSpans;
+  final Timer batchLinger;
 
   public MicrometerCollectorMetrics(MeterRegistry registry) {
     this(null, registry);
@@ -46,6 +55,8 @@ public final class MicrometerCollectorMetrics implements CollectorMetrics {
     if (transport == null) {
       messages = messagesDropped = bytes = spans = spansDropped = null;
       messageBytes = messageSpans = null;
+      batchSpans = null;
+      batchLinger = null;
       return;
     }
     this.messages =
@@ -87,6 +98,15 @@ public final class MicrometerCollectorMetrics implements CollectorMetrics {
         .tag("transport", transport)
         .baseUnit("bytes")
         .register(registryInstance);
+
+    this.batchSpans = DistributionSummary.builder("zipkin_collector.batch_spans")
+      .description("count of spans per storage batch")
+      .tag("transport", transport)
+      .register(registryInstance);
+    this.batchLinger = Timer.builder("zipkin_collector.batch_linger")
+      .description("time the first span in a storage batch waited before it was sent")
+      .tag("transport", transport)
+      .register(registryInstance);
   }
 
   @Override
@@ -127,6 +147,13 @@ public final class MicrometerCollectorMetrics implements CollectorMetrics {
     spansDropped.increment(quantity);
   }
 
+  @Override
+  public void recordBatch(int quantity, long lingerNanos) {
+    checkScoped();
+    batchSpans.record(quantity);
+    batchLinger.record(lingerNanos, TimeUnit.NANOSECONDS);
+  }
+
   void checkScoped() {
     if (messages == null) {
       throw new IllegalStateException("always scope with ActuateCollectorMetrics.forTransport");
@@ -0,0 +1,108 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal;
+
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpResponseWriter;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+import zipkin2.Call;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.storage.TraceCallback;
+
+import static zipkin2.Call.propagateIfFatal;
+
+/**
+ * Writes a JSON list of traces to the response as storage reads them. Unlike aggregating the
+ * response, this doesn't hold all traces or their encoding in memory, and the first trace is sent
+ * before the last is read.
+ *
+ * <p>Each trace is written after the previous was consumed by the client, so a slow client slows
+ * the query instead of buffering its results. This waits by blocking, so the query is executed on
+ * the {@linkplain ServiceRequestContext#blockingTaskExecutor() blocking executor}, never on an
+ * event loop or storage driver thread. Errors before the first trace are sent like {@link
+ * BodyIsExceptionMessage}, while those after abort the response.
+ *
+ * <p>Storage only reads traces incrementally when it overrides {@code streamTraces}. Disk storage
+ * reads one trace at a time, Cassandra one per query when reading a query per trace, and
+ * Elasticsearch a page of trace IDs at a time. Others, such as MySQL and in-memory storage, still
+ * read all traces into memory before the first is written, though their encoding isn't held at the
+ * same time.
+ */
+final class StreamingTracesResponse implements TraceCallback {
+  static final ResponseHeaders HEADERS = ResponseHeaders.builder(200)
+    .contentType(MediaType.JSON).build();
+
+  /** Executes the streaming query on the blocking executor, returning its response. */
+  static HttpResponse stream(ServiceRequestContext ctx, Function<TraceCallback, Call<Void>> query) {
+    HttpResponseWriter response = HttpResponse.streaming();
+    StreamingTracesResponse traces = new StreamingTracesResponse(ctx, response);
+    ctx.blockingTaskExecutor().execute(() -> traces.execute(query));
+    return response;
+  }
+
+  final ServiceRequestContext ctx;
+  final HttpResponseWriter response;
+  boolean started; // only accessed by the thread executing the query
+
+  StreamingTracesResponse(ServiceRequestContext ctx, HttpResponseWriter response) {
+    this.ctx = ctx;
+    this.response = response;
+  }
+
+  void execute(Function<TraceCallback, Call<Void>> query) {
+    try {
+      query.apply(this).execute();
+    } catch (Throwable t) {
+      propagateIfFatal(t);
+      if (started) {
+        response.abort(t);
+      } else {
+        response.close(BodyIsExceptionMessage.toResponse(ctx.request(), t));
+      }
+      return;
+    }
+    if (!started) {
+      response.write(HEADERS);
+      response.write(HttpData.ofUtf8("[]"));
+    } else {
+      response.write(HttpData.ofUtf8("]"));
+    }
+    response.close();
+  }
+
+  @Override public void onTrace(List<Span> trace) {
+    // Prefix the trace with the start of the list or a comma, to write it in one chunk
+    SpanBytesEncoder encoder = SpanBytesEncoder.JSON_V2;
+    int sizeInBytes = 1 + 2; // prefix and []
+    if (trace.size() > 1) sizeInBytes += trace.size() - 1; // comma to join elements
+    for (Span span : trace) {
+      sizeInBytes += encoder.sizeInBytes(span);
+    }
+    byte[] chunk = new byte[sizeInBytes];
+    chunk[0] = (byte) (started ? ',' : '[');
+    encoder.encodeList(trace, chunk, 1);
+
+    if (!started) {
+      started = true;
+      if (!response.tryWrite(HEADERS)) throw new CancellationException("response closed");
+    }
+    if (!response.tryWrite(HttpData.wrap(chunk))) {
+      throw new CancellationException("response closed");
+    }
+    // Blocks the blocking executor thread, which completes exceptionally if the response is aborted
+    response.whenConsumed().join();
+  }
+
+  @Override public String toString() {
+    return "StreamingTracesResponse{" + ctx.path() + "}";
+  }
+}
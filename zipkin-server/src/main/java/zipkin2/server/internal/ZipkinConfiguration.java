@@ -13,16 +13,21 @@ import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Condition;
 import org.springframework.context.annotation.ConditionContext;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
 import org.springframework.core.type.AnnotatedTypeMetadata;
 import zipkin2.collector.CollectorMetrics;
 import zipkin2.collector.CollectorSampler;
 import zipkin2.server.internal.brave.TracingStorageComponent;
+import zipkin2.server.internal.dependencies.DependencyAggregatingStorageComponent;
+import zipkin2.server.internal.dependencies.DependencyLinkWriter;
+import zipkin2.server.internal.dependencies.ZipkinDependenciesProperties;
 import zipkin2.server.internal.throttle.ThrottledStorageComponent;
 import zipkin2.server.internal.throttle.ZipkinStorageThrottleProperties;
 import zipkin2.storage.InMemoryStorage;
@@ -31,6 +36,7 @@ import zipkin2.storage.StorageComponent;
 /** Base collector and storage configurations needed for higher-level integrations */
 @Import({
   ZipkinConfiguration.InMemoryConfiguration.class,
+  ZipkinConfiguration.DependencyAggregatingStorageComponentEnhancer.class,
   ZipkinConfiguration.ThrottledStorageComponentEnhancer.class,
   ZipkinConfiguration.TracingStorageComponentEnhancer.class
 })
@@ -44,6 +50,45 @@ public class ZipkinConfiguration {
     return new MicrometerCollectorMetrics(registry);
   }
 
+  /**
+   * Ordered, so that this wraps the storage component before other enhancers. Otherwise, the
+   * writer factory wouldn't know the type of storage.
+   */
+  @EnableConfigurationProperties(ZipkinDependenciesProperties.class)
+  @ConditionalOnProperty(name = "zipkin.storage.dependencies.enabled", havingValue = "true")
+  static class DependencyAggregatingStorageComponentEnhancer
+    implements BeanPostProcessor, BeanFactoryAware, Ordered {
+    BeanFactory beanFactory;
+
+    @Override public Object postProcessAfterInitialization(Object bean, String beanName) {
+      if (bean instanceof StorageComponent component) {
+        DependencyLinkWriter.Factory writerFactory =
+          beanFactory.getBeanProvider(DependencyLinkWriter.Factory.class).getIfAvailable();
+        DependencyLinkWriter writer =
+          writerFactory != null ? writerFactory.create(component) : null;
+        if (writer == null) {
+          throw new IllegalStateException(
+            "zipkin.storage.dependencies.enabled is not supported by " + component);
+        }
+        ZipkinDependenciesProperties dependencies =
+          beanFactory.getBean(ZipkinDependenciesProperties.class);
+        return new DependencyAggregatingStorageComponent(component, writer,
+          dependencies.getTraceTimeout(),
+          dependencies.getMaxSpans(),
+          dependencies.getFlushInterval());
+      }
+      return bean;
+    }
+
+    @Override public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+      this.beanFactory = beanFactory;
+    }
+
+    @Override public int getOrder() {
+      return Ordered.HIGHEST_PRECEDENCE;
+    }
+  }
+
   @EnableConfigurationProperties(ZipkinStorageThrottleProperties.class)
   @ConditionalOnThrottledStorage
   static class ThrottledStorageComponentEnhancer implements BeanPostProcessor, BeanFactoryAware {
@@ -115,11 +160,19 @@ public class ZipkinConfiguration {
       @Value("${zipkin.storage.strict-trace-id:true}") boolean strictTraceId,
       @Value("${zipkin.storage.search-enabled:true}") boolean searchEnabled,
       @Value("${zipkin.storage.mem.max-spans:500000}") int maxSpans,
+      @Value("${zipkin.storage.mem.max-age:0}") long maxAge,
+      @Value("${zipkin.storage.mem.max-bytes:0}") long maxBytes,
+      @Value("${zipkin.storage.mem.concurrent:false}") boolean concurrent,
+      @Value("${zipkin.storage.mem.off-heap-bytes:0}") long offHeapBytes,
       @Value("${zipkin.storage.autocomplete-keys:}") List<String> autocompleteKeys) {
       return InMemoryStorage.newBuilder()
         .strictTraceId(strictTraceId)
         .searchEnabled(searchEnabled)
         .maxSpanCount(maxSpans)
+        .maxAge(maxAge)
+        .maxBytes(maxBytes)
+        .concurrent(concurrent)
+        .offHeapBytes(offHeapBytes)
         .autocompleteKeys(autocompleteKeys)
         .build();
     }
@@ -8,6 +8,7 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.linecorp.armeria.common.AggregatedHttpResponse;
 import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.MediaType;
 import com.linecorp.armeria.common.ResponseHeaders;
 import com.linecorp.armeria.common.ResponseHeadersBuilder;
@@ -110,8 +111,7 @@ public class ZipkinQueryApiV2 {
   }
 
   @Get("/api/v2/traces")
-  @Blocking
-  public AggregatedHttpResponse getTraces(
+  public HttpResponse getTraces(
     @Param("serviceName") Optional<String> serviceName,
     @Param("remoteServiceName") Optional<String> remoteServiceName,
     @Param("spanName") Optional<String> spanName,
@@ -120,8 +120,8 @@ public class ZipkinQueryApiV2 {
     @Param("maxDuration") Optional<Long> maxDuration,
     @Param("endTs") Optional<Long> endTs,
     @Param("lookback") Optional<Long> lookback,
-    @Default("10") @Param("limit") int limit)
-    throws IOException {
+    @Default("10") @Param("limit") int limit,
+    ServiceRequestContext ctx) {
     QueryRequest queryRequest =
       QueryRequest.newBuilder()
         .serviceName(serviceName.orElse(null))
@@ -135,8 +135,8 @@ public class ZipkinQueryApiV2 {
         .limit(limit)
         .build();
 
-    List<List<Span>> traces = storage.spanStore().getTraces(queryRequest).execute();
-    return jsonResponse(writeTraces(SpanBytesEncoder.JSON_V2, traces));
+    return StreamingTracesResponse.stream(ctx,
+      callback -> storage.spanStore().streamTraces(queryRequest, callback));
   }
 
   @Get("/api/v2/trace/{traceId}")
@@ -152,25 +152,24 @@ public class ZipkinQueryApiV2 {
   }
 
   @Get("/api/v2/traceMany")
-  @Blocking
-  public AggregatedHttpResponse getTraces(@Param("traceIds") String traceIds) throws IOException {
+  public HttpResponse getTraces(@Param("traceIds") String traceIds, ServiceRequestContext ctx) {
     if (traceIds.isEmpty()) {
-      return AggregatedHttpResponse.of(BAD_REQUEST, ANY_TEXT_TYPE, "traceIds parameter is empty");
+      return HttpResponse.of(BAD_REQUEST, ANY_TEXT_TYPE, "traceIds parameter is empty");
     }
 
     Set<String> normalized = new LinkedHashSet<>();
     for (String traceId : traceIds.split(",", 1000)) {
       if (normalized.add(Span.normalizeTraceId(traceId))) continue;
-      return AggregatedHttpResponse.of(BAD_REQUEST, ANY_TEXT_TYPE, "redundant traceId: " + traceId);
+      return HttpResponse.of(BAD_REQUEST, ANY_TEXT_TYPE, "redundant traceId: " + traceId);
     }
 
     if (normalized.size() == 1) {
-      return AggregatedHttpResponse.of(BAD_REQUEST, ANY_TEXT_TYPE,
+      return HttpResponse.of(BAD_REQUEST, ANY_TEXT_TYPE,
         "Use /api/v2/trace/{traceId} endpoint to retrieve a single trace");
     }
 
-    List<List<Span>> traces = storage.traces().getTraces(normalized).execute();
-    return jsonResponse(writeTraces(SpanBytesEncoder.JSON_V2, traces));
+    return StreamingTracesResponse.stream(ctx,
+      callback -> storage.traces().streamTraces(normalized, callback));
   }
 
   static AggregatedHttpResponse jsonResponse(byte[] body) {
@@ -227,32 +226,4 @@ public class ZipkinQueryApiV2 {
     }
     return AggregatedHttpResponse.of(headers.build(), HttpData.wrap(buf));
   }
-
-  // This is inlined here as there isn't enough re-use to warrant it being in the zipkin2 library
-  static byte[] writeTraces(SpanBytesEncoder codec, List<List<zipkin2.Span>> traces) {
-    // Get the encoded size of the nested list so that we don't need to grow the buffer
-    int length = traces.size();
-    int sizeInBytes = 2; // []
-    if (length > 1) sizeInBytes += length - 1; // comma to join elements
-
-    for (int i = 0; i < length; i++) {
-      List<zipkin2.Span> spans = traces.get(i);
-      int jLength = spans.size();
-      sizeInBytes += 2; // []
-      if (jLength > 1) sizeInBytes += jLength - 1; // comma to join elements
-      for (int j = 0; j < jLength; j++) {
-        sizeInBytes += codec.sizeInBytes(spans.get(j));
-      }
-    }
-
-    byte[] out = new byte[sizeInBytes];
-    int pos = 0;
-    out[pos++] = '['; // start list of traces
-    for (int i = 0; i < length; i++) {
-      pos += codec.encodeList(traces.get(i), out, pos);
-      if (i + 1 < length) out[pos++] = ',';
-    }
-    out[pos] = ']'; // stop list of traces
-    return out;
-  }
 }
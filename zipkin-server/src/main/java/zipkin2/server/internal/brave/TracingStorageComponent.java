@@ -12,6 +12,8 @@ import zipkin2.Call;
 import zipkin2.CheckResult;
 import zipkin2.DependencyLink;
 import zipkin2.Span;
+import zipkin2.internal.Proto3Span;
+import zipkin2.internal.Proto3SpanConsumer;
 import zipkin2.storage.AutocompleteTags;
 import zipkin2.storage.ForwardingStorageComponent;
 import zipkin2.storage.QueryRequest;
@@ -19,6 +21,7 @@ import zipkin2.storage.ServiceAndSpanNames;
 import zipkin2.storage.SpanConsumer;
 import zipkin2.storage.SpanStore;
 import zipkin2.storage.StorageComponent;
+import zipkin2.storage.TraceCallback;
 import zipkin2.storage.Traces;
 
 // public for use in ZipkinServerConfiguration
@@ -51,8 +54,12 @@ public final class TracingStorageComponent extends ForwardingStorageComponent {
     return new TracingAutocompleteTags(tracing, delegate.autocompleteTags());
   }
 
+  /** Keeps proto3 spans encoded when the delegate accepts them, so collectors can pass them. */
   @Override public SpanConsumer spanConsumer() {
-    return new TracingSpanConsumer(tracing, delegate.spanConsumer());
+    SpanConsumer delegate = this.delegate.spanConsumer();
+    return delegate instanceof Proto3SpanConsumer
+      ? new TracingProto3SpanConsumer(tracing, delegate)
+      : new TracingSpanConsumer(tracing, delegate);
   }
 
   @Override public CheckResult check() {
@@ -84,6 +91,10 @@ public final class TracingStorageComponent extends ForwardingStorageComponent {
       return new TracedCall<>(tracer, delegate.getTraces(traceIds), "get-traces");
     }
 
+    @Override public Call<Void> streamTraces(Iterable<String> traceIds, TraceCallback callback) {
+      return new TracedCall<>(tracer, delegate.streamTraces(traceIds, callback), "stream-traces");
+    }
+
     @Override public String toString() {
       return "Traced{" + delegate + "}";
     }
@@ -102,6 +113,10 @@ public final class TracingStorageComponent extends ForwardingStorageComponent {
       return new TracedCall<>(tracer, delegate.getTraces(request), "get-traces");
     }
 
+    @Override public Call<Void> streamTraces(QueryRequest request, TraceCallback callback) {
+      return new TracedCall<>(tracer, delegate.streamTraces(request, callback), "stream-traces");
+    }
+
     @Override @Deprecated public Call<List<Span>> getTrace(String traceId) {
       return new TracedCall<>(tracer, delegate.getTrace(traceId), "get-trace");
     }
@@ -173,7 +188,7 @@ public final class TracingStorageComponent extends ForwardingStorageComponent {
     }
   }
 
-  static final class TracingSpanConsumer implements SpanConsumer {
+  static class TracingSpanConsumer implements SpanConsumer {
     final Tracer tracer;
     final SpanConsumer delegate;
 
@@ -190,4 +205,16 @@ public final class TracingStorageComponent extends ForwardingStorageComponent {
       return "Traced{" + delegate + "}";
     }
   }
+
+  static final class TracingProto3SpanConsumer extends TracingSpanConsumer
+    implements Proto3SpanConsumer {
+    TracingProto3SpanConsumer(Tracing tracing, SpanConsumer delegate) {
+      super(tracing, delegate);
+    }
+
+    @Override public Call<Void> acceptProto3(List<Proto3Span> spans) {
+      return new TracedCall<>(
+        tracer, ((Proto3SpanConsumer) delegate).acceptProto3(spans), "accept-spans");
+    }
+  }
 }
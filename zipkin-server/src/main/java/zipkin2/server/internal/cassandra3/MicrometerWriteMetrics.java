@@ -0,0 +1,43 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.cassandra3;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.atomic.AtomicInteger;
+import zipkin2.server.internal.MicrometerCollectorMetrics;
+import zipkin2.storage.cassandra.WriteMetrics;
+
+/** Follows the same naming convention as {@link MicrometerCollectorMetrics}. */
+final class MicrometerWriteMetrics implements WriteMetrics {
+  final DistributionSummary batchStatements;
+  final AtomicInteger inFlight = new AtomicInteger(), queued = new AtomicInteger();
+
+  MicrometerWriteMetrics(MeterRegistry registryInstance) {
+    batchStatements = DistributionSummary.builder("zipkin_storage.cassandra.batch_statements")
+      .description("count of statements in unlogged batches, each into a single partition")
+      .register(registryInstance);
+    Gauge.builder("zipkin_storage.cassandra.writes_in_flight", inFlight, AtomicInteger::get)
+      .description("count of span and index writes executing")
+      .register(registryInstance);
+    Gauge.builder("zipkin_storage.cassandra.writes_queued", queued, AtomicInteger::get)
+      .description("count of span and index writes waiting for others to complete")
+      .register(registryInstance);
+  }
+
+  @Override public void recordBatch(int statements) {
+    batchStatements.record(statements);
+  }
+
+  @Override public void updateWrites(int inFlight, int queued) {
+    this.inFlight.set(inFlight);
+    this.queued.set(queued);
+  }
+
+  @Override public String toString() {
+    return "MicrometerWriteMetrics{}";
+  }
+}
@@ -4,6 +4,7 @@
  */
 package zipkin2.server.internal.cassandra3;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.List;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
@@ -17,6 +18,7 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import zipkin2.server.internal.ConditionalOnSelfTracing;
+import zipkin2.server.internal.dependencies.DependencyLinkWriter;
 import zipkin2.storage.StorageComponent;
 import zipkin2.storage.cassandra.CassandraStorage;
 import zipkin2.storage.cassandra.CassandraStorage.SessionFactory;
@@ -40,6 +42,7 @@ public class ZipkinCassandra3StorageConfiguration {
   @Bean @ConditionalOnMissingBean StorageComponent storage(
       ZipkinCassandra3StorageProperties properties,
       SessionFactory sessionFactory,
+      MeterRegistry meterRegistry,
       @Value("${zipkin.storage.strict-trace-id:true}") boolean strictTraceId,
       @Value("${zipkin.storage.search-enabled:true}") boolean searchEnabled,
       @Value("${zipkin.storage.autocomplete-keys:}") List<String> autocompleteKeys,
@@ -51,9 +54,16 @@ public class ZipkinCassandra3StorageConfiguration {
       .autocompleteKeys(autocompleteKeys)
       .autocompleteTtl(autocompleteTtl)
       .autocompleteCardinality(autocompleteCardinality)
+      .writeMetrics(new MicrometerWriteMetrics(meterRegistry))
       .sessionFactory(sessionFactory).build();
   }
 
+  @Bean DependencyLinkWriter.Factory dependencyLinkWriterFactory() {
+    return storage -> storage instanceof CassandraStorage cassandra
+      ? cassandra::writeDependencyLinks
+      : null;
+  }
+
   @ConditionalOnSelfTracing
   static class TracingSessionFactoryEnhancer  implements BeanPostProcessor, BeanFactoryAware {
     /**
@@ -23,6 +23,14 @@ class ZipkinCassandra3StorageProperties implements Serializable { // for Spark j
   private String password;
   /** See {@link CassandraStorage.Builder#indexFetchMultiplier(int)} */
   private int indexFetchMultiplier = 3;
+  /** See {@link CassandraStorage.Builder#traceReadParallelism(int)} */
+  private int traceReadParallelism;
+  /** See {@link CassandraStorage.Builder#bucketParallelism(int)} */
+  private int bucketParallelism = 2;
+  /** See {@link CassandraStorage.Builder#serviceParallelism(int)} */
+  private int serviceParallelism = 16;
+  /** See {@link CassandraStorage.Builder#maxInFlightWrites(int)} */
+  private int maxInFlightWrites;
 
   public String getKeyspace() {
     return keyspace;
@@ -104,6 +112,38 @@ class ZipkinCassandra3StorageProperties implements Serializable { // for Spark j
     this.indexFetchMultiplier = indexFetchMultiplier;
   }
 
+  public int getTraceReadParallelism() {
+    return traceReadParallelism;
+  }
+
+  public void setTraceReadParallelism(int traceReadParallelism) {
+    this.traceReadParallelism = traceReadParallelism;
+  }
+
+  public int getBucketParallelism() {
+    return bucketParallelism;
+  }
+
+  public void setBucketParallelism(int bucketParallelism) {
+    this.bucketParallelism = bucketParallelism;
+  }
+
+  public int getServiceParallelism() {
+    return serviceParallelism;
+  }
+
+  public void setServiceParallelism(int serviceParallelism) {
+    this.serviceParallelism = serviceParallelism;
+  }
+
+  public int getMaxInFlightWrites() {
+    return maxInFlightWrites;
+  }
+
+  public void setMaxInFlightWrites(int maxInFlightWrites) {
+    this.maxInFlightWrites = maxInFlightWrites;
+  }
+
   public CassandraStorage.Builder toBuilder() {
     return CassandraStorage.newBuilder()
       .keyspace(keyspace)
@@ -115,6 +155,10 @@ class ZipkinCassandra3StorageProperties implements Serializable { // for Spark j
       .sslHostnameValidation(sslHostnameValidation)
       .username(username)
       .password(password)
-      .indexFetchMultiplier(indexFetchMultiplier);
+      .indexFetchMultiplier(indexFetchMultiplier)
+      .traceReadParallelism(traceReadParallelism)
+      .bucketParallelism(bucketParallelism)
+      .serviceParallelism(serviceParallelism)
+      .maxInFlightWrites(maxInFlightWrites);
   }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.dependencies;
+
+import io.micrometer.core.instrument.util.NamedThreadFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zipkin2.Call;
+import zipkin2.DependencyLink;
+import zipkin2.Span;
+import zipkin2.internal.DependencyLinker;
+import zipkin2.storage.ForwardingStorageComponent;
+import zipkin2.storage.SpanConsumer;
+import zipkin2.storage.StorageComponent;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+
+/**
+ * Delegating implementation that links traces written to the {@link #spanConsumer()} of another
+ * {@link StorageComponent}, so that dependency links are available without running the
+ * zipkin-dependencies job.
+ *
+ * <p>Every {@code flushIntervalMillis}, links of traces completed since the last flush are added to
+ * those stored for the same day. As this reads and then replaces stored links, counts can be lost
+ * when multiple servers flush links of the same day at the same time. Running this alongside the
+ * zipkin-dependencies job counts calls twice, as links it writes already include traces linked
+ * here. Spans arriving after their trace completed can also be counted twice, as they are linked
+ * as a new trace.
+ *
+ * <p>Writes aren't atomic: Cassandra writes links in several batches, and an Elasticsearch bulk
+ * request can fail only some documents. So, when a write fails, stored links aren't read again, as
+ * they may already include some of the new ones. Instead, the same merged links are written again
+ * on the next flush, along with any completed since. As writes replace links with the same parent
+ * and child, this doesn't count links twice.
+ *
+ * @see DependencyLinkAggregator
+ */
+public final class DependencyAggregatingStorageComponent extends ForwardingStorageComponent {
+  static final Logger LOG = LoggerFactory.getLogger(DependencyAggregatingStorageComponent.class);
+  static final long CLOSE_TIMEOUT_SECONDS = 10L;
+
+  final StorageComponent delegate;
+  final DependencyLinkWriter writer;
+  final DependencyLinkAggregator aggregator;
+  final ScheduledExecutorService executor;
+  /** Merged links of days whose write failed, written again instead of re-reading stored links. */
+  final Map<Long, List<DependencyLink>> unwritten = new LinkedHashMap<>(); // guarded by this
+
+  public DependencyAggregatingStorageComponent(StorageComponent delegate,
+    DependencyLinkWriter writer, long traceTimeoutMillis, int maxSpans, long flushIntervalMillis) {
+    if (flushIntervalMillis <= 0) throw new IllegalArgumentException("flushIntervalMillis <= 0");
+    this.delegate = Objects.requireNonNull(delegate, "delegate == null");
+    this.writer = Objects.requireNonNull(writer, "writer == null");
+    this.aggregator = new DependencyLinkAggregator(traceTimeoutMillis, maxSpans);
+    this.executor =
+      Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("zipkin-dependencies"));
+    executor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+      TimeUnit.MILLISECONDS);
+  }
+
+  @Override protected StorageComponent delegate() {
+    return delegate;
+  }
+
+  @Override public SpanConsumer spanConsumer() {
+    return new DependencyAggregatingSpanConsumer(delegate.spanConsumer(), aggregator);
+  }
+
+  void flush() {
+    flush(System.currentTimeMillis());
+  }
+
+  /** Synchronized, so that a flush on close doesn't overlap a scheduled one. */
+  synchronized void flush(long nowMillis) {
+    Map<Long, List<DependencyLink>> drained = aggregator.drain(nowMillis);
+    Set<Long> days = new LinkedHashSet<>(unwritten.keySet());
+    days.addAll(drained.keySet());
+    for (long midnightUTC : days) {
+      List<DependencyLink> links = drained.getOrDefault(midnightUTC, List.of());
+      List<DependencyLink> merged = new ArrayList<>(links);
+      List<DependencyLink> retry = unwritten.remove(midnightUTC);
+      try {
+        if (retry != null) {
+          merged.addAll(retry); // already includes stored links
+        } else { // Writes replace stored links, so add to what's already there.
+          merged.addAll(
+            delegate.spanStore().getDependencies(midnightUTC + DAYS.toMillis(1) - 1, 1).execute());
+        }
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Couldn't read dependency links for {}. Will retry on next flush: {}",
+          midnightUTC, e.getMessage(), e);
+        aggregator.retry(midnightUTC, links);
+        continue;
+      }
+      merged = DependencyLinker.merge(merged);
+      try {
+        writer.write(merged, midnightUTC).execute();
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Couldn't write dependency links for {}. Will retry on next flush: {}",
+          midnightUTC, e.getMessage(), e);
+        unwritten.put(midnightUTC, merged);
+      }
+    }
+  }
+
+  /**
+   * Links of pending traces are written on close, so that they aren't lost on restart. This waits
+   * for a scheduled flush in progress, so that its links aren't written or retried concurrently.
+   */
+  @Override public void close() throws IOException {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOG.warn("Timed out waiting for dependency links to flush");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush(Long.MAX_VALUE);
+    delegate.close();
+  }
+
+  @Override public String toString() {
+    return "DependencyAggregating{" + delegate + "}";
+  }
+
+  static final class DependencyAggregatingSpanConsumer implements SpanConsumer {
+    final SpanConsumer delegate;
+    final DependencyLinkAggregator aggregator;
+
+    DependencyAggregatingSpanConsumer(SpanConsumer delegate,
+      DependencyLinkAggregator aggregator) {
+      this.delegate = delegate;
+      this.aggregator = aggregator;
+    }
+
+    /** Spans are only aggregated once stored, so links don't include those which failed. */
+    @Override public Call<Void> accept(List<Span> spans) {
+      return delegate.accept(spans).map(new AggregateSpans(aggregator, spans));
+    }
+
+    @Override public String toString() {
+      return "DependencyAggregating(" + delegate + ")";
+    }
+  }
+
+  static final class AggregateSpans implements Call.Mapper<Void, Void> {
+    final DependencyLinkAggregator aggregator;
+    final List<Span> spans;
+
+    AggregateSpans(DependencyLinkAggregator aggregator, List<Span> spans) {
+      this.aggregator = aggregator;
+      this.spans = spans;
+    }
+
+    @Override public Void map(Void input) {
+      aggregator.accept(spans, System.currentTimeMillis());
+      return input;
+    }
+
+    @Override public String toString() {
+      return "AggregateSpans";
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.dependencies;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import zipkin2.DependencyLink;
+import zipkin2.Span;
+import zipkin2.internal.DateUtil;
+import zipkin2.internal.DependencyLinker;
+
+/**
+ * Links traces once they are complete, accumulating the links by day.
+ *
+ * <p>A trace is considered complete when no span was added to it for {@code traceTimeoutMillis}.
+ * To bound memory, when there are more than {@code maxSpans} pending, traces are completed early,
+ * least recently updated first.
+ *
+ * <p>Spans of a trace added after it completed start a new pending trace, which is linked on its
+ * own. When they include a call already linked, such as the server side of a client span that
+ * arrived first, that call is counted again.
+ */
+final class DependencyLinkAggregator {
+  final long traceTimeoutMillis;
+  final int maxSpans;
+
+  // Access order, so that the first traces are the least recently updated.
+  final LinkedHashMap<String, PendingTrace> pendingTraces = new LinkedHashMap<>(16, 0.75f, true);
+  int pendingSpans;
+  // Links of completed traces, keyed by the midnight UTC of their day.
+  final Map<Long, List<DependencyLink>> completedLinks = new LinkedHashMap<>();
+
+  DependencyLinkAggregator(long traceTimeoutMillis, int maxSpans) {
+    if (traceTimeoutMillis <= 0) throw new IllegalArgumentException("traceTimeoutMillis <= 0");
+    if (maxSpans <= 0) throw new IllegalArgumentException("maxSpans <= 0");
+    this.traceTimeoutMillis = traceTimeoutMillis;
+    this.maxSpans = maxSpans;
+  }
+
+  static final class PendingTrace {
+    final List<Span> spans = new ArrayList<>();
+    long timestampMillis; // the earliest span timestamp, or zero if none have one
+    long lastUpdateMillis;
+
+    void add(Span span, long nowMillis) {
+      spans.add(span);
+      long timestampMillis = span.timestampAsLong() / 1000L;
+      if (timestampMillis != 0L
+        && (this.timestampMillis == 0L || timestampMillis < this.timestampMillis)) {
+        this.timestampMillis = timestampMillis;
+      }
+      lastUpdateMillis = nowMillis;
+    }
+  }
+
+  synchronized void accept(List<Span> spans, long nowMillis) {
+    for (Span span : spans) {
+      PendingTrace trace = pendingTraces.get(span.traceId());
+      if (trace == null) pendingTraces.put(span.traceId(), trace = new PendingTrace());
+      trace.add(span, nowMillis);
+      pendingSpans++;
+    }
+    Iterator<PendingTrace> traces = pendingTraces.values().iterator();
+    while (pendingSpans > maxSpans && traces.hasNext()) {
+      complete(traces.next());
+      traces.remove();
+    }
+  }
+
+  /**
+   * Completes traces not updated within the timeout, then returns and clears links of completed
+   * traces, keyed by the midnight UTC of their day.
+   */
+  synchronized Map<Long, List<DependencyLink>> drain(long nowMillis) {
+    Iterator<PendingTrace> traces = pendingTraces.values().iterator();
+    while (traces.hasNext()) {
+      PendingTrace trace = traces.next();
+      if (nowMillis - trace.lastUpdateMillis < traceTimeoutMillis) break; // the rest are newer
+      complete(trace);
+      traces.remove();
+    }
+    Map<Long, List<DependencyLink>> result = new LinkedHashMap<>();
+    for (Map.Entry<Long, List<DependencyLink>> entry : completedLinks.entrySet()) {
+      result.put(entry.getKey(), DependencyLinker.merge(entry.getValue()));
+    }
+    completedLinks.clear();
+    return result;
+  }
+
+  /** Adds back links which couldn't be written, so that they are included in the next drain. */
+  synchronized void retry(long midnightUTC, List<DependencyLink> links) {
+    completedLinks.computeIfAbsent(midnightUTC, k -> new ArrayList<>()).addAll(links);
+  }
+
+  void complete(PendingTrace trace) {
+    pendingSpans -= trace.spans.size();
+    List<DependencyLink> links = new DependencyLinker().putTrace(trace.spans).link();
+    if (links.isEmpty()) return;
+    long timestampMillis =
+      trace.timestampMillis != 0L ? trace.timestampMillis : trace.lastUpdateMillis;
+    completedLinks.computeIfAbsent(DateUtil.midnightUTC(timestampMillis), k -> new ArrayList<>())
+      .addAll(links);
+  }
+
+  @Override public synchronized String toString() {
+    return "DependencyLinkAggregator{pendingTraces=" + pendingTraces.size()
+      + ", pendingSpans=" + pendingSpans + "}";
+  }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.dependencies;
+
+import java.util.List;
+import zipkin2.Call;
+import zipkin2.DependencyLink;
+import zipkin2.internal.Nullable;
+import zipkin2.storage.StorageComponent;
+
+/** Writes links of a day, replacing any stored with the same parent and child. */
+// @FunctionalInterface, except safe for lower language levels
+public interface DependencyLinkWriter {
+  Call<Void> write(List<DependencyLink> links, long midnightUTC);
+
+  /**
+   * Storage configurations supply this, as the server can't refer to storage types which may not
+   * be in its classpath.
+   */
+  interface Factory {
+    /** Returns null if the storage isn't of a type this writes to. */
+    @Nullable DependencyLinkWriter create(StorageComponent storage);
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.dependencies;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("zipkin.storage.dependencies")
+public final class ZipkinDependenciesProperties {
+  /** Should we link traces as they are written? */
+  private boolean enabled;
+  /** A trace is complete when no span was written for this many milliseconds. */
+  private long traceTimeout = 60_000;
+  /** Maximum number of spans of incomplete traces to keep in memory. */
+  private int maxSpans = 100_000;
+  /** How often, in milliseconds, links of completed traces are written. */
+  private long flushInterval = 60_000;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public long getTraceTimeout() {
+    return traceTimeout;
+  }
+
+  public void setTraceTimeout(long traceTimeout) {
+    this.traceTimeout = traceTimeout;
+  }
+
+  public int getMaxSpans() {
+    return maxSpans;
+  }
+
+  public void setMaxSpans(int maxSpans) {
+    this.maxSpans = maxSpans;
+  }
+
+  public long getFlushInterval() {
+    return flushInterval;
+  }
+
+  public void setFlushInterval(long flushInterval) {
+    this.flushInterval = flushInterval;
+  }
+}
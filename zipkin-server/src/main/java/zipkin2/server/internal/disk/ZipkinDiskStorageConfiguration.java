@@ -0,0 +1,37 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.disk;
+
+import java.nio.file.Paths;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import zipkin2.storage.StorageComponent;
+import zipkin2.storage.disk.DiskStorage;
+
+@ConditionalOnClass(DiskStorage.class)
+@ConditionalOnProperty(name = "zipkin.storage.type", havingValue = "disk")
+@ConditionalOnMissingBean(StorageComponent.class)
+public class ZipkinDiskStorageConfiguration {
+  @Bean StorageComponent storage(
+    @Value("${zipkin.storage.strict-trace-id:true}") boolean strictTraceId,
+    @Value("${zipkin.storage.search-enabled:true}") boolean searchEnabled,
+    @Value("${zipkin.storage.autocomplete-keys:}") List<String> autocompleteKeys,
+    @Value("${zipkin.storage.disk.directory:zipkin-data}") String directory,
+    @Value("${zipkin.storage.disk.segment-bytes:67108864}") long segmentBytes,
+    @Value("${zipkin.storage.disk.max-bytes:1073741824}") long maxBytes) {
+    return DiskStorage.newBuilder()
+      .strictTraceId(strictTraceId)
+      .searchEnabled(searchEnabled)
+      .autocompleteKeys(autocompleteKeys)
+      .directory(Paths.get(directory))
+      .segmentBytes(segmentBytes)
+      .maxBytes(maxBytes)
+      .build();
+  }
+}
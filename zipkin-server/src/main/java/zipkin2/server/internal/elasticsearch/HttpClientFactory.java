@@ -7,7 +7,10 @@ package zipkin2.server.internal.elasticsearch;
 import com.linecorp.armeria.client.ClientFactory;
 import com.linecorp.armeria.client.ClientOptions;
 import com.linecorp.armeria.client.ClientOptionsBuilder;
+import com.linecorp.armeria.client.ClientRequestContext;
+import com.linecorp.armeria.client.Endpoint;
 import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.client.WebClientBuilder;
 import com.linecorp.armeria.client.encoding.DecodingClient;
 import com.linecorp.armeria.client.endpoint.EndpointGroup;
 import com.linecorp.armeria.client.logging.ContentPreviewingClient;
@@ -18,11 +21,15 @@ import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpHeaders;
 import com.linecorp.armeria.common.SessionProtocol;
 import com.linecorp.armeria.common.logging.LogLevel;
+import com.linecorp.armeria.common.logging.RequestOnlyLog;
+import com.linecorp.armeria.common.metric.MeterIdPrefix;
 import com.linecorp.armeria.common.metric.MeterIdPrefixFunction;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.Closeable;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import zipkin2.internal.Nullable;
 import zipkin2.server.internal.elasticsearch.ZipkinElasticsearchStorageProperties.HttpLogging;
 
 // Exposed as a bean so that zipkin-aws can use this for api requests to get initial endpoints.
@@ -43,7 +50,7 @@ public class HttpClientFactory implements Function<EndpointGroup, WebClient>, Cl
     HttpLogging httpLogging = es.getHttpLogging();
     ClientOptionsBuilder options = ClientOptions.builder()
       .decorator(MetricCollectingClient.newDecorator(
-        MeterIdPrefixFunction.ofDefault("elasticsearch")))
+        MeterIdPrefixFunction.ofDefault("elasticsearch").andThen(HttpClientFactory::tagNode)))
       .decorator(DecodingClient.newDecorator());
 
     configureHttpLogging(httpLogging, options);
@@ -80,10 +87,28 @@ public class HttpClientFactory implements Function<EndpointGroup, WebClient>, Cl
     }
   }
 
+  /**
+   * Adds the Elasticsearch node a request was sent to, so that a slow or failing node stands out.
+   * The request name, such as "index-span", is already tagged as "method".
+   */
+  static MeterIdPrefix tagNode(MeterRegistry registry, RequestOnlyLog log, MeterIdPrefix id) {
+    Endpoint endpoint = ((ClientRequestContext) log.context()).endpoint();
+    return id.withTags("node", nodeTag(endpoint));
+  }
+
+  static String nodeTag(@Nullable Endpoint endpoint) {
+    if (endpoint == null) return "none"; // such as when no endpoint was healthy
+    String ipAddr = endpoint.ipAddr();
+    if (ipAddr == null) return endpoint.authority();
+    return endpoint.hasPort() ? Endpoint.of(ipAddr, endpoint.port()).authority() : ipAddr;
+  }
+
   @Override public WebClient apply(EndpointGroup endpoint) {
-    return WebClient.builder(protocol, endpoint)
-      .options(options)
-      .build();
+    WebClientBuilder builder = WebClient.builder(protocol, endpoint).options(options);
+    if (endpoint instanceof LatencyWeightedEndpointGroup) {
+      builder.decorator(((LatencyWeightedEndpointGroup) endpoint).newDecorator());
+    }
+    return builder.build();
   }
 
   @Override public void close() {
@@ -0,0 +1,147 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.elasticsearch;
+
+import com.linecorp.armeria.client.ClientRequestContext;
+import com.linecorp.armeria.client.DecoratingHttpClientFunction;
+import com.linecorp.armeria.client.Endpoint;
+import com.linecorp.armeria.client.endpoint.AbstractEndpointSelector;
+import com.linecorp.armeria.client.endpoint.DynamicEndpointGroup;
+import com.linecorp.armeria.client.endpoint.EndpointGroup;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.logging.RequestLog;
+import com.linecorp.armeria.common.logging.RequestLogProperty;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends requests to the Elasticsearch nodes which have responded fastest recently. Otherwise, nodes
+ * are chosen round-robin, so a node that is slow, for example due to garbage collection or merges,
+ * receives as many requests as the others.
+ *
+ * <p>Each node's latency is a peak EWMA: slower responses are taken immediately, and faster ones
+ * decay into the average over about {@link #DECAY_NANOS}. A node's cost is its latency multiplied
+ * by its requests in flight. For each request, two nodes are picked at random, and the cheaper one
+ * is used. This avoids sending all requests to the fastest node, yet quickly avoids slow ones.
+ *
+ * <p>Requests must be sent with {@link #newDecorator()} to record latency.
+ */
+final class LatencyWeightedEndpointGroup extends DynamicEndpointGroup {
+  static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+  /** Failed requests count as at least this slow, so that failing nodes are avoided. */
+  static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  final EndpointGroup delegate;
+  final Map<Endpoint, NodeLatency> latencies = new ConcurrentHashMap<>();
+
+  LatencyWeightedEndpointGroup(EndpointGroup delegate) {
+    super(group -> new Selector((LatencyWeightedEndpointGroup) group), true,
+      delegate.selectionTimeoutMillis());
+    this.delegate = delegate;
+    delegate.addListener(this::updateEndpoints, true);
+  }
+
+  void updateEndpoints(List<Endpoint> endpoints) {
+    setEndpoints(endpoints);
+    latencies.keySet().retainAll(endpoints);
+  }
+
+  /** Records the latency of each request against the node it was sent to. */
+  DecoratingHttpClientFunction newDecorator() {
+    return (delegate, ctx, req) -> {
+      Endpoint endpoint = ctx.endpoint();
+      if (endpoint == null) return delegate.execute(ctx, req);
+
+      NodeLatency latency = latencies.computeIfAbsent(endpoint, e -> new NodeLatency());
+      long startNanos = latency.start();
+      ctx.log().whenComplete().thenAccept(log -> latency.end(startNanos, isFailure(log)));
+      return delegate.execute(ctx, req);
+    };
+  }
+
+  static boolean isFailure(RequestLog log) {
+    if (log.responseCause() != null) return true;
+    if (!log.isAvailable(RequestLogProperty.RESPONSE_HEADERS)) return true;
+    HttpStatus status = log.responseHeaders().status();
+    return status.isServerError() || status == HttpStatus.TOO_MANY_REQUESTS;
+  }
+
+  /** Returns the relative cost of sending a request to the endpoint. Lower is better. */
+  long cost(Endpoint endpoint) {
+    NodeLatency latency = latencies.get(endpoint);
+    return latency != null ? latency.cost() : 0L;
+  }
+
+  @Override protected void doCloseAsync(CompletableFuture<?> future) {
+    delegate.closeAsync().handle((unused, error) -> future.complete(null));
+  }
+
+  static final class NodeLatency {
+    long ewmaNanos, lastUpdateNanos; // guarded by this
+    int inFlight; // guarded by this
+
+    synchronized long start() {
+      inFlight++;
+      return System.nanoTime();
+    }
+
+    void end(long startNanos, boolean failure) {
+      long nowNanos = System.nanoTime();
+      long latencyNanos = nowNanos - startNanos;
+      if (failure) latencyNanos = Math.max(latencyNanos, FAILURE_PENALTY_NANOS);
+      update(latencyNanos, nowNanos);
+    }
+
+    synchronized void update(long latencyNanos, long nowNanos) {
+      inFlight--;
+      if (latencyNanos > ewmaNanos) {
+        ewmaNanos = latencyNanos;
+      } else {
+        double weight = Math.exp(-(nowNanos - lastUpdateNanos) / (double) DECAY_NANOS);
+        ewmaNanos = (long) (ewmaNanos * weight + latencyNanos * (1 - weight));
+      }
+      lastUpdateNanos = nowNanos;
+    }
+
+    /** Nodes without responses yet cost only their requests in flight, so they are tried. */
+    synchronized long cost() {
+      return (ewmaNanos + 1) * (inFlight + 1);
+    }
+  }
+
+  /** Picks the cheaper of two random endpoints, also known as "power of two choices". */
+  static final class Selector extends AbstractEndpointSelector {
+    final LatencyWeightedEndpointGroup group;
+
+    Selector(LatencyWeightedEndpointGroup group) {
+      super(group);
+      this.group = group;
+      initialize();
+    }
+
+    @Override public Endpoint selectNow(ClientRequestContext ctx) {
+      List<Endpoint> endpoints = group.endpoints();
+      int size = endpoints.size();
+      if (size == 0) return null;
+      if (size == 1) return endpoints.get(0);
+
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      int first = random.nextInt(size);
+      int second = random.nextInt(size - 1);
+      if (second >= first) second++;
+
+      Endpoint a = endpoints.get(first), b = endpoints.get(second);
+      return group.cost(a) <= group.cost(b) ? a : b;
+    }
+  }
+
+  @Override public String toString() {
+    return toString(buf -> buf.append(", delegate=").append(delegate));
+  }
+}
@@ -13,25 +13,30 @@ import com.linecorp.armeria.common.SessionProtocol;
 import com.linecorp.armeria.common.metric.MeterIdPrefixFunction;
 import io.micrometer.core.instrument.MeterRegistry;
 import java.util.function.Supplier;
+import zipkin2.internal.Nullable;
 import zipkin2.elasticsearch.ElasticsearchStorage.LazyHttpClient;
 
 final class LazyHttpClientImpl implements LazyHttpClient {
   final HttpClientFactory factory;
   final SessionProtocol protocol;
   final Supplier<EndpointGroup> initialEndpoints;
+  @Nullable final Supplier<EndpointGroup> writeEndpoints;
   final ZipkinElasticsearchStorageProperties.HealthCheck healthCheck;
+  final boolean latencyWeighted;
   final int timeoutMillis;
   final MeterRegistry meterRegistry;
 
-  volatile WebClient result;
+  volatile WebClient result, writeResult;
 
   LazyHttpClientImpl(HttpClientFactory factory, SessionProtocol protocol,
-    Supplier<EndpointGroup> initialEndpoints, ZipkinElasticsearchStorageProperties es,
-    MeterRegistry meterRegistry) {
+    Supplier<EndpointGroup> initialEndpoints, @Nullable Supplier<EndpointGroup> writeEndpoints,
+    ZipkinElasticsearchStorageProperties es, MeterRegistry meterRegistry) {
     this.factory = factory;
     this.protocol = protocol;
     this.initialEndpoints = initialEndpoints;
+    this.writeEndpoints = writeEndpoints;
     this.healthCheck = es.getHealthCheck();
+    this.latencyWeighted = Boolean.TRUE.equals(es.isLatencyWeighted());
     this.timeoutMillis = es.getTimeout();
     this.meterRegistry = meterRegistry;
   }
@@ -40,24 +45,39 @@ final class LazyHttpClientImpl implements LazyHttpClient {
     if (result == null) {
       synchronized (this) {
         if (result == null) {
-          result = factory.apply(getEndpoint());
+          result = factory.apply(getEndpoint(initialEndpoints, "elasticsearch"));
         }
       }
     }
     return result;
   }
 
-  EndpointGroup getEndpoint() {
-    EndpointGroup initial = initialEndpoints.get();
+  /** Returns a client for {@link #writeEndpoints}, or {@link #get()} when there are none. */
+  @Override public WebClient getForWrites() {
+    if (writeEndpoints == null) return get();
+    if (writeResult == null) {
+      synchronized (this) {
+        if (writeResult == null) {
+          writeResult = factory.apply(getEndpoint(writeEndpoints, "elasticsearch-write"));
+        }
+      }
+    }
+    return writeResult;
+  }
+
+  EndpointGroup getEndpoint(Supplier<EndpointGroup> endpoints, String meterName) {
+    EndpointGroup initial = endpoints.get();
     // Only health-check when there are alternative endpoints. There aren't when instanceof Endpoint
-    if (initial instanceof Endpoint || !healthCheck.isEnabled()) return initial;
+    if (initial instanceof Endpoint) return initial;
 
     // Wrap the result when health checking is enabled.
-    return decorateHealthCheck(initial);
+    EndpointGroup result = initial;
+    if (healthCheck.isEnabled()) result = decorateHealthCheck(initial, meterName);
+    return latencyWeighted ? new LatencyWeightedEndpointGroup(result) : result;
   }
 
   // Enables health-checking of an endpoint group, so we only send requests to endpoints that are up
-  HealthCheckedEndpointGroup decorateHealthCheck(EndpointGroup endpointGroup) {
+  HealthCheckedEndpointGroup decorateHealthCheck(EndpointGroup endpointGroup, String meterName) {
     HealthCheckedEndpointGroup healthChecked =
       HealthCheckedEndpointGroup.builder(endpointGroup, "/_cluster/health")
         .protocol(protocol)
@@ -77,7 +97,7 @@ final class LazyHttpClientImpl implements LazyHttpClient {
         })
         .retryInterval(healthCheck.getInterval())
         .build();
-    healthChecked.newMeterBinder("elasticsearch").bindTo(meterRegistry);
+    healthChecked.newMeterBinder(meterName).bindTo(meterRegistry);
     return healthChecked;
   }
 
@@ -0,0 +1,42 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.elasticsearch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import zipkin2.elasticsearch.BulkItemMetrics;
+import zipkin2.server.internal.MicrometerCollectorMetrics;
+
+/**
+ * Follows the same naming convention as {@link MicrometerCollectorMetrics}. Counters are tagged by
+ * reason, which is an Elasticsearch error type, so their cardinality is low.
+ */
+final class MicrometerBulkItemMetrics implements BulkItemMetrics {
+  final MeterRegistry registryInstance;
+
+  MicrometerBulkItemMetrics(MeterRegistry registryInstance) {
+    this.registryInstance = registryInstance;
+  }
+
+  @Override public void incrementRetried(String reason, int quantity) {
+    Counter.builder("zipkin_storage.elasticsearch.bulk_items_retried")
+      .description("cumulative amount of documents sent again after failing in a bulk request")
+      .tag("reason", reason)
+      .register(registryInstance)
+      .increment(quantity);
+  }
+
+  @Override public void incrementFailed(String reason, int quantity) {
+    Counter.builder("zipkin_storage.elasticsearch.bulk_items_failed")
+      .description("cumulative amount of documents not written by a bulk request")
+      .tag("reason", reason)
+      .register(registryInstance)
+      .increment(quantity);
+  }
+
+  @Override public String toString() {
+    return "MicrometerBulkItemMetrics{}";
+  }
+}
@@ -41,6 +41,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.type.AnnotatedTypeMetadata;
 import zipkin2.elasticsearch.ElasticsearchStorage;
 import zipkin2.server.internal.ConditionalOnSelfTracing;
+import zipkin2.server.internal.dependencies.DependencyLinkWriter;
 import zipkin2.storage.StorageComponent;
 
 import static zipkin2.server.internal.elasticsearch.ZipkinElasticsearchStorageProperties.Ssl;
@@ -114,19 +115,29 @@ public class ZipkinElasticsearchStorageConfiguration {
     @Value("${zipkin.storage.autocomplete-keys:}") List<String> autocompleteKeys,
     @Value("${zipkin.storage.autocomplete-ttl:3600000}") int autocompleteTtl,
     @Value("${zipkin.storage.autocomplete-cardinality:20000}") int autocompleteCardinality) {
+    // Bulk writes use the same hosts unless write hosts are set, such as ingest nodes.
+    Supplier<EndpointGroup> writeEndpoints = es.getWriteHosts() != null
+      ? new InitialEndpointSupplier(protocol, es.getWriteHosts()) : null;
     ElasticsearchStorage.Builder builder = es
-      .toBuilder(new LazyHttpClientImpl(esHttpClientFactory, protocol, initialEndpoints, es,
-        meterRegistry))
+      .toBuilder(new LazyHttpClientImpl(esHttpClientFactory, protocol, initialEndpoints,
+        writeEndpoints, es, meterRegistry))
       .namesLookback(namesLookback)
       .strictTraceId(strictTraceId)
       .searchEnabled(searchEnabled)
       .autocompleteKeys(autocompleteKeys)
       .autocompleteTtl(autocompleteTtl)
-      .autocompleteCardinality(autocompleteCardinality);
+      .autocompleteCardinality(autocompleteCardinality)
+      .bulkItemMetrics(new MicrometerBulkItemMetrics(meterRegistry));
 
     return builder.build();
   }
 
+  @Bean DependencyLinkWriter.Factory dependencyLinkWriterFactory() {
+    return storage -> storage instanceof ElasticsearchStorage es
+      ? es::writeDependencyLinks
+      : null;
+  }
+
   @Bean @Qualifier(QUALIFIER) @Conditional(BasicAuthRequired.class)
   Consumer<ClientOptionsBuilder> esBasicAuth(
     @Qualifier(QUALIFIER) BasicCredentials basicCredentials) {
@@ -172,6 +172,8 @@ class ZipkinElasticsearchStorageProperties implements Serializable { // for Spar
   private String pipeline;
   /** A comma separated list of base urls to connect to. */
   private String hosts = "http://localhost:9200";
+  /** When set, a comma separated list of base urls to send bulk writes to instead of hosts. */
+  private String writeHosts;
   /** The index prefix to use when generating daily index names. */
   private String index;
   /** The date separator used to create the index name. */
@@ -205,6 +207,22 @@ class ZipkinElasticsearchStorageProperties implements Serializable { // for Spar
   private HealthCheck healthCheck = new HealthCheck();
 
   private Integer templatePriority;
+  /** Maximum count of trace IDs to remember the daily span indices of. Zero disables. */
+  private Integer traceIdIndexCacheSize;
+  /** True finds trace IDs by collapsing matching spans, instead of aggregating them. */
+  private Boolean collapseTraceSearch;
+  /** When positive, milliseconds to linger before sending spans in a shared bulk request. */
+  private Integer bulkLinger;
+  /** Maximum count of documents in a shared bulk request. */
+  private Integer bulkMaxDocuments;
+  /** Maximum size in bytes of a shared bulk request. */
+  private Integer bulkMaxBytes;
+  /** Maximum count of shared bulk requests sent at the same time. */
+  private Integer bulkMaxInFlight;
+  /** True creates tomorrow's daily indices ahead of time. */
+  private Boolean precreateIndices;
+  /** True sends requests to the nodes which have responded fastest recently. */
+  private Boolean latencyWeighted;
 
   public String getPipeline() {
     return pipeline;
@@ -222,6 +240,14 @@ class ZipkinElasticsearchStorageProperties implements Serializable { // for Spar
     this.hosts = emptyToNull(hosts);
   }
 
+  public String getWriteHosts() {
+    return writeHosts;
+  }
+
+  public void setWriteHosts(String writeHosts) {
+    this.writeHosts = emptyToNull(writeHosts);
+  }
+
   public String getIndex() {
     return index;
   }
@@ -344,6 +370,70 @@ class ZipkinElasticsearchStorageProperties implements Serializable { // for Spar
 
   public void setTemplatePriority(Integer templatePriority) { this.templatePriority = templatePriority; }
 
+  public Integer getTraceIdIndexCacheSize() {
+    return traceIdIndexCacheSize;
+  }
+
+  public void setTraceIdIndexCacheSize(Integer traceIdIndexCacheSize) {
+    this.traceIdIndexCacheSize = traceIdIndexCacheSize;
+  }
+
+  public Boolean isCollapseTraceSearch() {
+    return collapseTraceSearch;
+  }
+
+  public void setCollapseTraceSearch(Boolean collapseTraceSearch) {
+    this.collapseTraceSearch = collapseTraceSearch;
+  }
+
+  public Integer getBulkLinger() {
+    return bulkLinger;
+  }
+
+  public void setBulkLinger(Integer bulkLinger) {
+    this.bulkLinger = bulkLinger;
+  }
+
+  public Integer getBulkMaxDocuments() {
+    return bulkMaxDocuments;
+  }
+
+  public void setBulkMaxDocuments(Integer bulkMaxDocuments) {
+    this.bulkMaxDocuments = bulkMaxDocuments;
+  }
+
+  public Integer getBulkMaxBytes() {
+    return bulkMaxBytes;
+  }
+
+  public void setBulkMaxBytes(Integer bulkMaxBytes) {
+    this.bulkMaxBytes = bulkMaxBytes;
+  }
+
+  public Integer getBulkMaxInFlight() {
+    return bulkMaxInFlight;
+  }
+
+  public void setBulkMaxInFlight(Integer bulkMaxInFlight) {
+    this.bulkMaxInFlight = bulkMaxInFlight;
+  }
+
+  public Boolean isPrecreateIndices() {
+    return precreateIndices;
+  }
+
+  public void setPrecreateIndices(Boolean precreateIndices) {
+    this.precreateIndices = precreateIndices;
+  }
+
+  public Boolean isLatencyWeighted() {
+    return latencyWeighted;
+  }
+
+  public void setLatencyWeighted(Boolean latencyWeighted) {
+    this.latencyWeighted = latencyWeighted;
+  }
+
   public ElasticsearchStorage.Builder toBuilder(LazyHttpClient httpClient) {
     ElasticsearchStorage.Builder builder = ElasticsearchStorage.newBuilder(httpClient);
     if (index != null) builder.index(index);
@@ -359,6 +449,13 @@ class ZipkinElasticsearchStorageProperties implements Serializable { // for Spar
       log.warning("ES_MAX_REQUESTS is no longer honored. Use STORAGE_THROTTLE_ENABLED instead");
     }
     if (templatePriority != null) builder.templatePriority(templatePriority);
+    if (traceIdIndexCacheSize != null) builder.traceIdIndexCacheSize(traceIdIndexCacheSize);
+    if (collapseTraceSearch != null) builder.collapseTraceSearch(collapseTraceSearch);
+    if (bulkLinger != null) builder.bulkLinger(bulkLinger);
+    if (bulkMaxDocuments != null) builder.bulkMaxDocuments(bulkMaxDocuments);
+    if (bulkMaxBytes != null) builder.bulkMaxBytes(bulkMaxBytes);
+    if (bulkMaxInFlight != null) builder.bulkMaxInFlight(bulkMaxInFlight);
+    if (precreateIndices != null) builder.precreateIndices(precreateIndices);
     return builder;
   }
 
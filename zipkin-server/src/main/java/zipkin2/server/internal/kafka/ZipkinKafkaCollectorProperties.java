@@ -19,6 +19,16 @@ class ZipkinKafkaCollectorProperties {
   private String topic;
   /** Number of Kafka consumer threads to run. */
   private Integer streams;
+  /** Threads per consumer thread decoding and storing messages, committing offsets after. */
+  private Integer parallelism;
+  /** Count of spans to coalesce across messages into one storage request. Zero disables. */
+  private Integer batchSize;
+  /** Maximum size of a storage batch in bytes, as encoded in proto3. Zero is unlimited. */
+  private Integer batchBytes;
+  /** Milliseconds a partial storage batch waits for more spans before it is sent. */
+  private Long batchLinger;
+  /** Count of storage batches in flight before consumer threads block. */
+  private Integer batchMaxInFlight;
   /** Additional Kafka consumer configuration. */
   private Map<String, String> overrides = new LinkedHashMap<>();
 
@@ -54,6 +64,46 @@ class ZipkinKafkaCollectorProperties {
     this.streams = streams;
   }
 
+  public Integer getParallelism() {
+    return parallelism;
+  }
+
+  public void setParallelism(Integer parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public Integer getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(Integer batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public Integer getBatchBytes() {
+    return batchBytes;
+  }
+
+  public void setBatchBytes(Integer batchBytes) {
+    this.batchBytes = batchBytes;
+  }
+
+  public Long getBatchLinger() {
+    return batchLinger;
+  }
+
+  public void setBatchLinger(Long batchLinger) {
+    this.batchLinger = batchLinger;
+  }
+
+  public Integer getBatchMaxInFlight() {
+    return batchMaxInFlight;
+  }
+
+  public void setBatchMaxInFlight(Integer batchMaxInFlight) {
+    this.batchMaxInFlight = batchMaxInFlight;
+  }
+
   public Map<String, String> getOverrides() {
     return overrides;
   }
@@ -68,6 +118,11 @@ class ZipkinKafkaCollectorProperties {
     if (groupId != null) result.groupId(groupId);
     if (topic != null) result.topic(topic);
     if (streams != null) result.streams(streams);
+    if (parallelism != null) result.parallelism(parallelism);
+    if (batchSize != null) result.batchSize(batchSize);
+    if (batchBytes != null) result.batchBytes(batchBytes);
+    if (batchLinger != null) result.batchLingerMillis(batchLinger);
+    if (batchMaxInFlight != null) result.batchMaxInFlight(batchMaxInFlight);
     if (overrides != null) result.overrides(overrides);
     return result;
   }
@@ -29,6 +29,8 @@ import java.util.function.Predicate;
 import zipkin2.Call;
 import zipkin2.Span;
 import zipkin2.internal.Nullable;
+import zipkin2.internal.Proto3Span;
+import zipkin2.internal.Proto3SpanConsumer;
 import zipkin2.server.internal.brave.TracedCall;
 import zipkin2.storage.ForwardingStorageComponent;
 import zipkin2.storage.SpanConsumer;
@@ -117,8 +119,12 @@ public final class ThrottledStorageComponent extends ForwardingStorageComponent
     return delegate;
   }
 
+  /** Keeps proto3 spans encoded when the delegate accepts them, so collectors can pass them. */
   @Override public SpanConsumer spanConsumer() {
-    return new ThrottledSpanConsumer(this);
+    SpanConsumer delegate = this.delegate.spanConsumer();
+    return delegate instanceof Proto3SpanConsumer
+      ? new ThrottledProto3SpanConsumer(this, delegate)
+      : new ThrottledSpanConsumer(this, delegate);
   }
 
   @Override public void close() throws IOException {
@@ -130,7 +136,7 @@ public final class ThrottledStorageComponent extends ForwardingStorageComponent
     return "Throttled{" + delegate.toString() + "}";
   }
 
-  static final class ThrottledSpanConsumer implements SpanConsumer {
+  static class ThrottledSpanConsumer implements SpanConsumer {
     final SpanConsumer delegate;
     final Executor executor;
     final Limiter<Void> limiter;
@@ -138,8 +144,8 @@ public final class ThrottledStorageComponent extends ForwardingStorageComponent
     final Predicate<Throwable> isOverCapacity;
     @Nullable final Tracer tracer;
 
-    ThrottledSpanConsumer(ThrottledStorageComponent throttledStorage) {
-      this.delegate = throttledStorage.delegate.spanConsumer();
+    ThrottledSpanConsumer(ThrottledStorageComponent throttledStorage, SpanConsumer delegate) {
+      this.delegate = delegate;
       this.executor = throttledStorage.currentTraceContext != null
         ? throttledStorage.currentTraceContext.executor(throttledStorage.executor)
         : throttledStorage.executor;
@@ -150,8 +156,12 @@ public final class ThrottledStorageComponent extends ForwardingStorageComponent
     }
 
     @Override public Call<Void> accept(List<Span> spans) {
-      Call<Void> result = new ThrottledCall(
-        delegate.accept(spans), executor, limiter, limiterMetrics, isOverCapacity);
+      return throttle(delegate.accept(spans));
+    }
+
+    Call<Void> throttle(Call<Void> delegate) {
+      Call<Void> result =
+        new ThrottledCall(delegate, executor, limiter, limiterMetrics, isOverCapacity);
 
       return tracer != null ? new TracedCall<>(tracer, result, "throttled-accept-spans") : result;
     }
@@ -161,6 +171,18 @@ public final class ThrottledStorageComponent extends ForwardingStorageComponent
     }
   }
 
+  static final class ThrottledProto3SpanConsumer extends ThrottledSpanConsumer
+    implements Proto3SpanConsumer {
+    ThrottledProto3SpanConsumer(ThrottledStorageComponent throttledStorage,
+      SpanConsumer delegate) {
+      super(throttledStorage, delegate);
+    }
+
+    @Override public Call<Void> acceptProto3(List<Proto3Span> spans) {
+      return throttle(((Proto3SpanConsumer) delegate).acceptProto3(spans));
+    }
+  }
+
   static BlockingQueue<Runnable> createQueue(int maxSize) {
     if (maxSize < 0) throw new IllegalArgumentException("maxSize < 0");
 
@@ -200,7 +200,8 @@ public class ITZipkinServer {
       .build()).execute();
 
     assertThat(response.isSuccessful()).isTrue();
-    assertThat(response.header("vary")).isNull();
+    // Streamed responses vary by accept-encoding, as they are compressed, but not by origin
+    assertThat(response.header("vary", "")).doesNotContainIgnoringCase("origin");
     assertThat(response.header("access-control-allow-credentials")).isNull();
     assertThat(response.header("access-control-allow-origin")).contains("*");
   }
@@ -77,7 +77,8 @@ class ITZipkinServerCORS {
   }
 
   static void shouldDisallowOrigin(Response response) {
-    assertThat(response.header("vary")).isNull();
+    // Streamed responses vary by accept-encoding, as they are compressed, but not by origin
+    assertThat(response.header("vary", "")).doesNotContainIgnoringCase("origin");
     assertThat(response.header("access-control-allow-credentials")).isNull();
     assertThat(response.header("access-control-allow-origin")).isNull();
     assertThat(response.header("access-control-allow-headers")).isNull();
@@ -6,12 +6,15 @@ package zipkin2.server.internal.cassandra3;
 
 import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import zipkin2.server.internal.NoOpMeterRegistryConfiguration;
 
 /** opens package access for testing */
 public final class Access {
 
   public static void registerCassandra3(AnnotationConfigApplicationContext context) {
     context.register(
-        PropertyPlaceholderAutoConfiguration.class, ZipkinCassandra3StorageConfiguration.class);
+        PropertyPlaceholderAutoConfiguration.class,
+        NoOpMeterRegistryConfiguration.class,
+        ZipkinCassandra3StorageConfiguration.class);
   }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.dependencies;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import zipkin2.Call;
+import zipkin2.storage.SpanConsumer;
+import zipkin2.storage.SpanStore;
+import zipkin2.storage.StorageComponent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static zipkin2.TestObjects.DAY;
+import static zipkin2.TestObjects.TODAY;
+import static zipkin2.server.internal.dependencies.DependencyLinkAggregatorTest.clientSpan;
+import static zipkin2.server.internal.dependencies.DependencyLinkAggregatorTest.link;
+
+class DependencyAggregatingStorageComponentTest {
+  StorageComponent delegate = mock(StorageComponent.class);
+  SpanConsumer spanConsumer = mock(SpanConsumer.class);
+  SpanStore spanStore = mock(SpanStore.class);
+  List<Object> written = new ArrayList<>();
+  AtomicInteger writeFailures = new AtomicInteger();
+  DependencyLinkWriter writer = (links, midnightUTC) -> {
+    if (writeFailures.getAndDecrement() > 0) {
+      return Call.create(null).map(v -> {
+        throw new IllegalStateException("partially written");
+      });
+    }
+    written.add(midnightUTC);
+    written.add(links);
+    return Call.create(null);
+  };
+  DependencyAggregatingStorageComponent storage;
+
+  @BeforeEach void setup() {
+    when(delegate.spanConsumer()).thenReturn(spanConsumer);
+    when(delegate.spanStore()).thenReturn(spanStore);
+    when(spanConsumer.accept(any())).thenAnswer(i -> Call.create(null));
+    when(spanStore.getDependencies(anyLong(), anyLong())).thenReturn(Call.emptyList());
+    // flush interval is long, so that only the test flushes
+    storage = new DependencyAggregatingStorageComponent(delegate, writer, 1000L, 100, DAY);
+  }
+
+  @AfterEach void close() throws IOException {
+    storage.close();
+  }
+
+  @Test void aggregatesStoredSpans() throws IOException {
+    storage.spanConsumer().accept(List.of(clientSpan("a", TODAY))).execute();
+    storage.flush(Long.MAX_VALUE);
+
+    assertThat(written).containsExactly(TODAY, List.of(link(1)));
+  }
+
+  @Test void doesntAggregateUnexecutedCalls() {
+    storage.spanConsumer().accept(List.of(clientSpan("a", TODAY)));
+    storage.flush(Long.MAX_VALUE);
+
+    assertThat(written).isEmpty();
+  }
+
+  @Test void flush_addsToStoredLinks() throws IOException {
+    when(spanStore.getDependencies(TODAY + DAY - 1, 1)).thenReturn(Call.create(List.of(link(2))));
+
+    storage.spanConsumer().accept(List.of(clientSpan("a", TODAY))).execute();
+    storage.flush(Long.MAX_VALUE);
+
+    assertThat(written).containsExactly(TODAY, List.of(link(3)));
+  }
+
+  @Test void flush_retriesOnError() throws IOException {
+    when(spanStore.getDependencies(anyLong(), anyLong()))
+      .thenThrow(new IllegalStateException("unavailable"))
+      .thenReturn(Call.emptyList());
+
+    storage.spanConsumer().accept(List.of(clientSpan("a", TODAY))).execute();
+    storage.flush(Long.MAX_VALUE);
+    assertThat(written).isEmpty();
+
+    storage.flush(Long.MAX_VALUE);
+    assertThat(written).containsExactly(TODAY, List.of(link(1)));
+  }
+
+  /** Stored links may include some of the failed write, so they must not be added again. */
+  @Test void flush_retriesMergedLinksOnWriteError() throws IOException {
+    when(spanStore.getDependencies(TODAY + DAY - 1, 1)).thenReturn(Call.create(List.of(link(2))));
+    writeFailures.set(1);
+
+    storage.spanConsumer().accept(List.of(clientSpan("a", TODAY))).execute();
+    storage.flush(Long.MAX_VALUE);
+    assertThat(written).isEmpty();
+
+    // as if the failed write stored the new link before failing
+    when(spanStore.getDependencies(TODAY + DAY - 1, 1)).thenReturn(Call.create(List.of(link(3))));
+    storage.spanConsumer().accept(List.of(clientSpan("b", TODAY))).execute();
+    storage.flush(Long.MAX_VALUE);
+
+    assertThat(written).containsExactly(TODAY, List.of(link(4)));
+    verify(spanStore, times(1)).getDependencies(TODAY + DAY - 1, 1);
+  }
+
+  @Test void close_writesPendingTraces() throws IOException {
+    storage.spanConsumer().accept(List.of(clientSpan("a", TODAY))).execute();
+    storage.close();
+
+    assertThat(written).containsExactly(TODAY, List.of(link(1)));
+    verify(delegate).close();
+  }
+
+  @Test void toStringContainsOnlySummaryInformation() {
+    when(delegate.toString()).thenReturn("CassandraStorage{}");
+
+    assertThat(storage).hasToString("DependencyAggregating{CassandraStorage{}}");
+  }
+
+  @Test void invalidFlushInterval() {
+    assertThatThrownBy(
+      () -> new DependencyAggregatingStorageComponent(delegate, writer, 1000L, 100, 0))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+}
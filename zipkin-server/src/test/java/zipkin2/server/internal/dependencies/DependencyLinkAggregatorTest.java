@@ -0,0 +1,125 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.dependencies;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import zipkin2.DependencyLink;
+import zipkin2.Span;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static zipkin2.TestObjects.BACKEND;
+import static zipkin2.TestObjects.DAY;
+import static zipkin2.TestObjects.FRONTEND;
+import static zipkin2.TestObjects.TODAY;
+
+class DependencyLinkAggregatorTest {
+  static final long TIMEOUT = 1000L;
+
+  DependencyLinkAggregator aggregator = new DependencyLinkAggregator(TIMEOUT, 100);
+
+  static Span clientSpan(String traceId, long timestampMillis) {
+    return Span.newBuilder().traceId(traceId).id("1").name("get")
+      .kind(Span.Kind.CLIENT)
+      .localEndpoint(FRONTEND)
+      .remoteEndpoint(BACKEND)
+      .timestamp(timestampMillis * 1000L).duration(1000L)
+      .build();
+  }
+
+  static DependencyLink link(long callCount) {
+    return DependencyLink.newBuilder()
+      .parent(FRONTEND.serviceName())
+      .child(BACKEND.serviceName())
+      .callCount(callCount)
+      .build();
+  }
+
+  @Test void invalidArguments() {
+    assertThatThrownBy(() -> new DependencyLinkAggregator(0, 100))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new DependencyLinkAggregator(TIMEOUT, 0))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test void linksTraceAfterTimeout() {
+    aggregator.accept(List.of(clientSpan("a", TODAY)), TODAY);
+
+    assertThat(aggregator.drain(TODAY + TIMEOUT - 1)).isEmpty();
+    assertThat(aggregator.drain(TODAY + TIMEOUT))
+      .containsExactly(entry(TODAY, List.of(link(1))));
+    assertThat(aggregator.pendingTraces).isEmpty();
+    assertThat(aggregator.pendingSpans).isZero();
+  }
+
+  @Test void spansExtendTimeout() {
+    aggregator.accept(List.of(clientSpan("a", TODAY)), TODAY);
+    aggregator.accept(List.of(clientSpan("a", TODAY).toBuilder().id("2").build()), TODAY + 500);
+
+    assertThat(aggregator.drain(TODAY + TIMEOUT)).isEmpty();
+    assertThat(aggregator.drain(TODAY + 500 + TIMEOUT)).containsOnlyKeys(TODAY);
+  }
+
+  @Test void drain_clearsLinks() {
+    aggregator.accept(List.of(clientSpan("a", TODAY)), TODAY);
+    aggregator.drain(TODAY + TIMEOUT);
+
+    assertThat(aggregator.drain(TODAY + TIMEOUT)).isEmpty();
+  }
+
+  @Test void linksMergedByDay() {
+    aggregator.accept(List.of(
+      clientSpan("a", TODAY - DAY),
+      clientSpan("b", TODAY),
+      clientSpan("c", TODAY + 1)
+    ), TODAY);
+
+    assertThat(aggregator.drain(TODAY + TIMEOUT)).containsOnly(
+      entry(TODAY - DAY, List.of(link(1))),
+      entry(TODAY, List.of(link(2)))
+    );
+  }
+
+  @Test void dayOfEarliestSpan() {
+    aggregator.accept(List.of(
+      clientSpan("a", TODAY).toBuilder().id("2").build(),
+      clientSpan("a", TODAY - 1)
+    ), TODAY);
+
+    assertThat(aggregator.drain(TODAY + TIMEOUT)).containsOnlyKeys(TODAY - DAY);
+  }
+
+  @Test void maxSpans_completesLeastRecentlyUpdated() {
+    aggregator = new DependencyLinkAggregator(TIMEOUT, 3);
+    Span a = clientSpan("a", TODAY), b = clientSpan("b", TODAY), c = clientSpan("c", TODAY);
+
+    aggregator.accept(List.of(a), TODAY);
+    aggregator.accept(List.of(b), TODAY);
+    aggregator.accept(List.of(a.toBuilder().id("2").build()), TODAY);
+    aggregator.accept(List.of(c), TODAY);
+
+    assertThat(aggregator.pendingTraces).containsOnlyKeys(a.traceId(), c.traceId());
+    assertThat(aggregator.pendingSpans).isEqualTo(3);
+    assertThat(aggregator.drain(TODAY)).containsExactly(entry(TODAY, List.of(link(1))));
+  }
+
+  @Test void retry_includedInNextDrain() {
+    aggregator.accept(List.of(clientSpan("a", TODAY)), TODAY);
+    aggregator.retry(TODAY, List.of(link(2)));
+
+    assertThat(aggregator.drain(TODAY + TIMEOUT))
+      .containsExactly(entry(TODAY, List.of(link(3))));
+  }
+
+  @Test void ignoresTracesWithoutLinks() {
+    aggregator.accept(List.of(clientSpan("a", TODAY).toBuilder()
+      .kind(null).remoteEndpoint(null).build()), TODAY);
+
+    assertThat(aggregator.drain(TODAY + TIMEOUT)).isEmpty();
+    assertThat(aggregator.pendingTraces).isEmpty();
+  }
+}
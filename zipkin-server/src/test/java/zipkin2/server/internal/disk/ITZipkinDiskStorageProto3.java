@@ -0,0 +1,84 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.disk;
+
+import com.linecorp.armeria.server.Server;
+import java.io.IOException;
+import java.nio.file.Path;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import zipkin.server.ZipkinServer;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.internal.Proto3SpanConsumer;
+import zipkin2.storage.StorageComponent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static zipkin2.TestObjects.TRACE;
+import static zipkin2.server.internal.ITZipkinServer.url;
+
+/**
+ * Proto3 spans are stored without decoding when the storage supports it. This checks that storage
+ * wrappers added by the server, such as throttling and self-tracing, don't prevent that.
+ */
+@SpringBootTest(
+  classes = ZipkinServer.class,
+  webEnvironment = SpringBootTest.WebEnvironment.NONE, // RANDOM_PORT requires spring-web
+  properties = {
+    "server.port=0",
+    "spring.config.name=zipkin-server",
+    "zipkin.storage.type=disk",
+    "zipkin.storage.throttle.enabled=true",
+    "zipkin.self-tracing.enabled=true"
+  })
+class ITZipkinDiskStorageProto3 {
+  @TempDir static Path directory;
+
+  @DynamicPropertySource static void propertyOverride(DynamicPropertyRegistry registry) {
+    registry.add("zipkin.storage.disk.directory", () -> directory.toString());
+  }
+
+  @Autowired StorageComponent storage;
+  @Autowired Server server;
+
+  OkHttpClient client = new OkHttpClient.Builder().followRedirects(true).build();
+
+  @Test void spanConsumerAcceptsProto3() {
+    assertThat(storage.toString()).startsWith("Traced{Throttled{");
+    assertThat(storage.spanConsumer()).isInstanceOf(Proto3SpanConsumer.class);
+  }
+
+  @Test void storesProto3() throws Exception {
+    Response post = client.newCall(new Request.Builder()
+      .url(url(server, "/api/v2/spans"))
+      .post(RequestBody.create(SpanBytesEncoder.PROTO3.encodeList(TRACE),
+        MediaType.get("application/x-protobuf")))
+      .build()).execute();
+    assertThat(post.code()).isEqualTo(202);
+
+    String path = "/api/v2/trace/" + TRACE.get(0).traceId();
+    await().untilAsserted(() -> assertThat(getTrace(path)).isNotNull());
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(getTrace(path)))
+      .containsExactlyInAnyOrderElementsOf(TRACE);
+  }
+
+  byte[] getTrace(String path) throws IOException {
+    try (Response response = client.newCall(new Request.Builder()
+      .url(url(server, path))
+      .build()).execute()) {
+      return response.isSuccessful() ? response.body().bytes() : null;
+    }
+  }
+}
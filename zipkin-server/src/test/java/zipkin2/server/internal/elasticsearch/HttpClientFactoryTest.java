@@ -0,0 +1,32 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.elasticsearch;
+
+import com.linecorp.armeria.client.Endpoint;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.server.internal.elasticsearch.HttpClientFactory.nodeTag;
+
+class HttpClientFactoryTest {
+  @Test void nodeTag_ipAddress() {
+    assertThat(nodeTag(Endpoint.of("1.2.3.4", 9200))).isEqualTo("1.2.3.4:9200");
+    assertThat(nodeTag(Endpoint.of("2001:db8::c001", 9200))).isEqualTo("[2001:db8::c001]:9200");
+  }
+
+  /** Resolved nodes are tagged by address, as a DNS name can map to many nodes. */
+  @Test void nodeTag_resolvedHostname() {
+    assertThat(nodeTag(Endpoint.of("elasticsearch", 9200).withIpAddr("1.2.3.4")))
+      .isEqualTo("1.2.3.4:9200");
+  }
+
+  @Test void nodeTag_unresolvedHostname() {
+    assertThat(nodeTag(Endpoint.of("elasticsearch", 9200))).isEqualTo("elasticsearch:9200");
+  }
+
+  @Test void nodeTag_noEndpoint() {
+    assertThat(nodeTag(null)).isEqualTo("none");
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.server.internal.elasticsearch;
+
+import com.linecorp.armeria.client.ClientRequestContext;
+import com.linecorp.armeria.client.Endpoint;
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.client.endpoint.EndpointGroup;
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.SessionProtocol;
+import com.linecorp.armeria.testing.junit5.server.mock.MockWebServerExtension;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import zipkin2.server.internal.elasticsearch.LatencyWeightedEndpointGroup.NodeLatency;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static zipkin2.server.internal.elasticsearch.LatencyWeightedEndpointGroup.DECAY_NANOS;
+
+class LatencyWeightedEndpointGroupTest {
+  @RegisterExtension static MockWebServerExtension server = new MockWebServerExtension();
+
+  static final Endpoint FAST = Endpoint.of("127.0.0.1", 9200);
+  static final Endpoint SLOW = Endpoint.of("127.0.0.2", 9200);
+
+  LatencyWeightedEndpointGroup group =
+    new LatencyWeightedEndpointGroup(EndpointGroup.of(FAST, SLOW));
+  ClientRequestContext ctx = ClientRequestContext.of(HttpRequest.of(HttpMethod.GET, "/"));
+
+  @AfterEach void close() {
+    group.close();
+  }
+
+  @Test void endpoints_fromDelegate() {
+    assertThat(group.endpoints()).containsExactly(FAST, SLOW);
+  }
+
+  @Test void selectNow_prefersLowerLatency() {
+    record(FAST, TimeUnit.MILLISECONDS.toNanos(5));
+    record(SLOW, TimeUnit.SECONDS.toNanos(2));
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(group.selectNow(ctx)).isEqualTo(FAST);
+    }
+  }
+
+  @Test void selectNow_triesNodesWithoutLatency() {
+    record(FAST, TimeUnit.MILLISECONDS.toNanos(5));
+
+    assertThat(group.selectNow(ctx)).isEqualTo(SLOW);
+  }
+
+  @Test void selectNow_prefersFewerInFlight() {
+    record(FAST, TimeUnit.MILLISECONDS.toNanos(5));
+    record(SLOW, TimeUnit.MILLISECONDS.toNanos(5));
+    group.latencies.get(FAST).start();
+
+    assertThat(group.selectNow(ctx)).isEqualTo(SLOW);
+  }
+
+  @Test void nodeLatency_peakIsImmediate() {
+    NodeLatency latency = new NodeLatency();
+    latency.start();
+    latency.update(100, 0L);
+    latency.start();
+    latency.update(1000, 1L);
+
+    assertThat(latency.ewmaNanos).isEqualTo(1000);
+  }
+
+  @Test void nodeLatency_lowerLatencyDecays() {
+    NodeLatency latency = new NodeLatency();
+    latency.start();
+    latency.update(1000, 0L);
+    latency.start();
+    latency.update(0, DECAY_NANOS);
+
+    // One decay period weights the old value by 1/e
+    assertThat(latency.ewmaNanos).isEqualTo((long) (1000 * Math.exp(-1)));
+    assertThat(latency.inFlight).isZero();
+  }
+
+  @Test void updateEndpoints_forgetsRemoved() {
+    record(FAST, 1);
+    record(SLOW, 1);
+
+    group.updateEndpoints(List.of(FAST));
+
+    assertThat(group.endpoints()).containsExactly(FAST);
+    assertThat(group.latencies).containsOnlyKeys(FAST);
+  }
+
+  @Test void newDecorator_recordsLatencyOfNode() {
+    Endpoint endpoint = Endpoint.of("127.0.0.1", server.httpPort());
+    try (LatencyWeightedEndpointGroup group =
+           new LatencyWeightedEndpointGroup(EndpointGroup.of(endpoint))) {
+      WebClient client = WebClient.builder(SessionProtocol.HTTP, group)
+        .decorator(group.newDecorator())
+        .build();
+
+      server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+      client.get("/").aggregate().join();
+
+      await().untilAsserted(() -> assertThat(group.latencies.get(endpoint))
+        .satisfies(latency -> {
+          assertThat(latency.inFlight).isZero();
+          assertThat(latency.ewmaNanos).isPositive();
+        }));
+    }
+  }
+
+  @Test void newDecorator_penalizesFailures() {
+    Endpoint endpoint = Endpoint.of("127.0.0.1", server.httpPort());
+    try (LatencyWeightedEndpointGroup group =
+           new LatencyWeightedEndpointGroup(EndpointGroup.of(endpoint))) {
+      WebClient client = WebClient.builder(SessionProtocol.HTTP, group)
+        .decorator(group.newDecorator())
+        .build();
+
+      server.enqueue(AggregatedHttpResponse.of(HttpStatus.TOO_MANY_REQUESTS));
+      client.get("/").aggregate().join();
+
+      await().untilAsserted(() -> assertThat(group.latencies.get(endpoint))
+        .satisfies(latency -> assertThat(latency.ewmaNanos)
+          .isGreaterThanOrEqualTo(LatencyWeightedEndpointGroup.FAILURE_PENALTY_NANOS)));
+    }
+  }
+
+  void record(Endpoint endpoint, long latencyNanos) {
+    NodeLatency latency = group.latencies.computeIfAbsent(endpoint, e -> new NodeLatency());
+    latency.start();
+    latency.update(latencyNanos, System.nanoTime());
+  }
+}
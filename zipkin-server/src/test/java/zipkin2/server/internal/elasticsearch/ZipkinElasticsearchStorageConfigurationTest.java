@@ -439,6 +439,100 @@ class ZipkinElasticsearchStorageConfigurationTest {
     });
   }
 
+  @Test void traceIdIndexCacheSize() {
+    TestPropertyValues.of(
+      "zipkin.storage.type:elasticsearch",
+      "zipkin.storage.elasticsearch.trace-id-index-cache-size:0")
+      .applyTo(context);
+    Access.registerElasticsearch(context);
+    context.refresh();
+
+    assertThat(es()).extracting("traceIdIndexCacheSize")
+      .isEqualTo(0);
+  }
+
+  @Test void collapseTraceSearch() {
+    TestPropertyValues.of(
+      "zipkin.storage.type:elasticsearch",
+      "zipkin.storage.elasticsearch.collapse-trace-search:true")
+      .applyTo(context);
+    Access.registerElasticsearch(context);
+    context.refresh();
+
+    assertThat(es()).extracting("collapseTraceSearch")
+      .isEqualTo(true);
+  }
+
+  @Test void bulkLinger() {
+    TestPropertyValues.of(
+      "zipkin.storage.type:elasticsearch",
+      "zipkin.storage.elasticsearch.bulk-linger:100",
+      "zipkin.storage.elasticsearch.bulk-max-documents:1000",
+      "zipkin.storage.elasticsearch.bulk-max-bytes:1048576",
+      "zipkin.storage.elasticsearch.bulk-max-in-flight:2")
+      .applyTo(context);
+    Access.registerElasticsearch(context);
+    context.refresh();
+
+    assertThat(es())
+      .extracting("bulkLinger", "bulkMaxDocuments", "bulkMaxBytes", "bulkMaxInFlight")
+      .containsExactly(100, 1000, 1048576, 2);
+  }
+
+  @Test void precreateIndices() {
+    TestPropertyValues.of(
+      "zipkin.storage.type:elasticsearch",
+      "zipkin.storage.elasticsearch.precreate-indices:true")
+      .applyTo(context);
+    Access.registerElasticsearch(context);
+    context.refresh();
+
+    assertThat(es()).extracting("precreateIndices")
+      .isEqualTo(true);
+  }
+
+  @Test void writeHosts_defaultsToHosts() {
+    TestPropertyValues.of("zipkin.storage.type:elasticsearch").applyTo(context);
+    Access.registerElasticsearch(context);
+    context.refresh();
+
+    assertThat(es()).extracting("lazyHttpClient.writeEndpoints")
+      .isNull();
+  }
+
+  @Test void writeHosts() {
+    TestPropertyValues.of(
+      "zipkin.storage.type:elasticsearch",
+      "zipkin.storage.elasticsearch.write-hosts:http://ingest1:9200,http://ingest2:9200")
+      .applyTo(context);
+    Access.registerElasticsearch(context);
+    context.refresh();
+
+    assertThat(es()).extracting("lazyHttpClient.writeEndpoints.hosts")
+      .isEqualTo("http://ingest1:9200,http://ingest2:9200");
+  }
+
+  @Test void latencyWeighted() {
+    TestPropertyValues.of(
+      "zipkin.storage.type:elasticsearch",
+      "zipkin.storage.elasticsearch.latency-weighted:true")
+      .applyTo(context);
+    Access.registerElasticsearch(context);
+    context.refresh();
+
+    assertThat(es()).extracting("lazyHttpClient.latencyWeighted")
+      .isEqualTo(true);
+  }
+
+  @Test void bulkItemMetrics() {
+    TestPropertyValues.of("zipkin.storage.type:elasticsearch").applyTo(context);
+    Access.registerElasticsearch(context);
+    context.refresh();
+
+    assertThat(es()).extracting("bulkItemMetrics")
+      .isInstanceOf(MicrometerBulkItemMetrics.class);
+  }
+
   ElasticsearchStorage es() {
     return context.getBean(ElasticsearchStorage.class);
   }
@@ -9,8 +9,10 @@ import com.linecorp.armeria.common.metric.NoopMeterRegistry;
 import org.junit.jupiter.api.Test;
 import zipkin2.Component;
 import zipkin2.internal.Nullable;
+import zipkin2.internal.Proto3SpanConsumer;
 import zipkin2.server.internal.throttle.ThrottledStorageComponent.ThrottledSpanConsumer;
 import zipkin2.storage.InMemoryStorage;
+import zipkin2.storage.SpanConsumer;
 import zipkin2.storage.StorageComponent;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -18,6 +20,8 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOf
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 class ThrottledStorageComponentTest {
   InMemoryStorage delegate = InMemoryStorage.newBuilder().build();
@@ -32,6 +36,16 @@ class ThrottledStorageComponentTest {
       .isSameAs(throttle.spanConsumer().getClass());
   }
 
+  @Test void spanConsumer_keepsProto3() {
+    StorageComponent proto3Storage = mock(StorageComponent.class);
+    when(proto3Storage.spanConsumer()).thenReturn(
+      mock(SpanConsumer.class, withSettings().extraInterfaces(Proto3SpanConsumer.class)));
+    ThrottledStorageComponent throttle =
+      new ThrottledStorageComponent(proto3Storage, registry, tracing, 1, 2, 1);
+
+    assertThat(throttle.spanConsumer()).isInstanceOf(Proto3SpanConsumer.class);
+  }
+
   @Test void createComponent_withZeroSizedQueue() {
     int queueSize = 0;
     new ThrottledStorageComponent(delegate, registry, tracing, 1, 2, queueSize);
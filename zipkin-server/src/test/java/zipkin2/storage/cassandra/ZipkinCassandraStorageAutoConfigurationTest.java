@@ -9,7 +9,10 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import zipkin2.server.internal.ZipkinConfiguration;
 import zipkin2.server.internal.cassandra3.Access;
+import zipkin2.server.internal.dependencies.DependencyAggregatingStorageComponent;
+import zipkin2.storage.StorageComponent;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -141,4 +144,70 @@ class ZipkinCassandraStorageAutoConfigurationTest {
     assertThat(context.getBean(CassandraStorage.class).useSsl).isTrue();
     assertThat(context.getBean(CassandraStorage.class).sslHostnameValidation).isFalse();
   }
+
+  @Test void traceReadParallelism() {
+    TestPropertyValues.of(
+        "zipkin.storage.type:cassandra3",
+        "zipkin.storage.cassandra3.trace-read-parallelism:16")
+      .applyTo(context);
+    Access.registerCassandra3(context);
+    context.refresh();
+
+    assertThat(context.getBean(CassandraStorage.class).traceReadParallelism).isEqualTo(16);
+  }
+
+  @Test void bucketParallelism() {
+    TestPropertyValues.of(
+        "zipkin.storage.type:cassandra3",
+        "zipkin.storage.cassandra3.bucket-parallelism:8")
+      .applyTo(context);
+    Access.registerCassandra3(context);
+    context.refresh();
+
+    assertThat(context.getBean(CassandraStorage.class).bucketParallelism).isEqualTo(8);
+  }
+
+  @Test void serviceParallelism() {
+    TestPropertyValues.of(
+        "zipkin.storage.type:cassandra3",
+        "zipkin.storage.cassandra3.service-parallelism:4")
+      .applyTo(context);
+    Access.registerCassandra3(context);
+    context.refresh();
+
+    assertThat(context.getBean(CassandraStorage.class).serviceParallelism).isEqualTo(4);
+  }
+
+  @Test void maxInFlightWrites() {
+    TestPropertyValues.of(
+        "zipkin.storage.type:cassandra3",
+        "zipkin.storage.cassandra3.max-in-flight-writes:64")
+      .applyTo(context);
+    Access.registerCassandra3(context);
+    context.refresh();
+
+    assertThat(context.getBean(CassandraStorage.class).maxInFlightWrites).isEqualTo(64);
+  }
+
+  @Test void writeMetrics_micrometer() {
+    TestPropertyValues.of("zipkin.storage.type:cassandra3").applyTo(context);
+    Access.registerCassandra3(context);
+    context.refresh();
+
+    assertThat(context.getBean(CassandraStorage.class).writeMetrics)
+      .hasToString("MicrometerWriteMetrics{}");
+  }
+
+  @Test void dependenciesEnabled_aggregatesLinks() {
+    TestPropertyValues.of(
+        "zipkin.storage.type:cassandra3",
+        "zipkin.storage.dependencies.enabled:true")
+      .applyTo(context);
+    Access.registerCassandra3(context);
+    context.register(ZipkinConfiguration.class);
+    context.refresh();
+
+    assertThat(context.getBean(StorageComponent.class))
+      .isInstanceOf(DependencyAggregatingStorageComponent.class);
+  }
 }
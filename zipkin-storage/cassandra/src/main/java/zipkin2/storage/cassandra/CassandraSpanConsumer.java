@@ -6,7 +6,11 @@ package zipkin2.storage.cassandra;
 
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -14,10 +18,12 @@ import java.util.Set;
 import java.util.UUID;
 import zipkin2.Annotation;
 import zipkin2.Call;
+import zipkin2.DependencyLink;
 import zipkin2.Span;
 import zipkin2.internal.AggregateCall;
 import zipkin2.internal.Nullable;
 import zipkin2.storage.SpanConsumer;
+import zipkin2.storage.cassandra.internal.call.InFlightLimiter;
 import zipkin2.storage.cassandra.internal.call.InsertEntry;
 
 import static zipkin2.storage.cassandra.CassandraUtil.durationIndexBucket;
@@ -26,8 +32,13 @@ import static zipkin2.storage.cassandra.Schema.TABLE_SERVICE_REMOTE_SERVICES;
 import static zipkin2.storage.cassandra.Schema.TABLE_SERVICE_SPANS;
 
 class CassandraSpanConsumer implements SpanConsumer { // not final for testing
+  final CqlSession session;
+  final InFlightLimiter limiter;
+  final WriteMetrics writeMetrics;
+  final ServiceRecency serviceRecency;
   final boolean searchEnabled;
   final InsertSpan.Factory insertSpan;
+  final InsertDependencyLink.Factory insertDependencyLink;
   final Set<String> autocompleteKeys;
 
   // Everything below here is null when search is disabled
@@ -47,17 +58,24 @@ class CassandraSpanConsumer implements SpanConsumer { // not final for testing
     this(
       storage.session(), storage.metadata(),
       storage.strictTraceId, storage.searchEnabled,
-      storage.autocompleteKeys, storage.autocompleteTtl, storage.autocompleteCardinality
+      storage.autocompleteKeys, storage.autocompleteTtl, storage.autocompleteCardinality,
+      storage.maxInFlightWrites, storage.writeMetrics, storage.serviceRecency
     );
   }
 
   CassandraSpanConsumer(CqlSession session, Schema.Metadata metadata, boolean strictTraceId,
     boolean searchEnabled, Set<String> autocompleteKeys, int autocompleteTtl,
-    int autocompleteCardinality) {
+    int autocompleteCardinality, int maxInFlightWrites, WriteMetrics writeMetrics,
+    ServiceRecency serviceRecency) {
+    this.session = session;
+    this.limiter = InFlightLimiter.create(maxInFlightWrites, writeMetrics::updateWrites);
+    this.writeMetrics = writeMetrics;
+    this.serviceRecency = serviceRecency;
     this.searchEnabled = searchEnabled;
     this.autocompleteKeys = autocompleteKeys;
 
-    insertSpan = new InsertSpan.Factory(session, strictTraceId, searchEnabled);
+    insertSpan = new InsertSpan.Factory(session, limiter, strictTraceId, searchEnabled);
+    insertDependencyLink = new InsertDependencyLink.Factory(session, limiter);
 
     if (!searchEnabled) {
       insertTraceByServiceRemoteService = null;
@@ -68,10 +86,11 @@ class CassandraSpanConsumer implements SpanConsumer { // not final for testing
       return;
     }
 
-    insertTraceByServiceSpan = new InsertTraceByServiceSpan.Factory(session, strictTraceId);
+    insertTraceByServiceSpan =
+      new InsertTraceByServiceSpan.Factory(session, limiter, strictTraceId);
     if (metadata.hasRemoteService) {
       insertTraceByServiceRemoteService =
-        new InsertTraceByServiceRemoteService.Factory(session, strictTraceId);
+        new InsertTraceByServiceRemoteService.Factory(session, limiter, strictTraceId);
       insertServiceRemoteService = new InsertEntry.Factory(
         "INSERT INTO " + TABLE_SERVICE_REMOTE_SERVICES + " (service, remote_service) VALUES (?,?)",
         session, autocompleteTtl, autocompleteCardinality
@@ -95,8 +114,9 @@ class CassandraSpanConsumer implements SpanConsumer { // not final for testing
   }
 
   /**
-   * This fans out into many requests, last count was 2 * spans.size. If any of these fail, the
-   * returned future will fail. Most callers drop or log the result.
+   * This fans out into many requests, though rows into the same partition, such as spans of the
+   * same trace, are sent as one batch. If any of these fail, the returned future will fail. Most
+   * callers drop or log the result.
    */
   @Override public Call<Void> accept(List<Span> input) {
     if (input.isEmpty()) return Call.create(null);
@@ -140,6 +160,7 @@ class CassandraSpanConsumer implements SpanConsumer { // not final for testing
       serviceSpans.add(Map.entry(service, span));
 
       if (ts_micro == 0L) continue; // search is only valid with a timestamp, don't index w/o it!
+      serviceRecency.record(service, ts_micro / 1000L);
       int bucket = durationIndexBucket(ts_micro); // duration index is milliseconds not microseconds
       long duration = s.durationAsLong() / 1000L;
       traceByServiceSpans.add(
@@ -160,9 +181,20 @@ class CassandraSpanConsumer implements SpanConsumer { // not final for testing
         }
       }
     }
-    List<Call<Void>> calls = new ArrayList<>();
+    Map<Object, List<PartitionInsert>> partitions = new LinkedHashMap<>();
     for (InsertSpan.Input span : spans) {
-      calls.add(insertSpan.create(span));
+      addInsert(partitions, insertSpan.create(span));
+    }
+    for (InsertTraceByServiceSpan.Input serviceSpan : traceByServiceSpans) {
+      addInsert(partitions, insertTraceByServiceSpan.create(serviceSpan));
+    }
+    for (InsertTraceByServiceRemoteService.Input serviceRemoteService : traceByServiceRemoteServices) {
+      addInsert(partitions, insertTraceByServiceRemoteService.create(serviceRemoteService));
+    }
+
+    List<Call<Void>> calls = new ArrayList<>();
+    for (List<PartitionInsert> inserts : partitions.values()) {
+      addBatches(inserts, calls);
     }
     for (Map.Entry<String, String> serviceSpan : serviceSpans) {
       insertServiceSpan.maybeAdd(serviceSpan, calls);
@@ -170,18 +202,43 @@ class CassandraSpanConsumer implements SpanConsumer { // not final for testing
     for (Map.Entry<String, String> serviceRemoteService : serviceRemoteServices) {
       insertServiceRemoteService.maybeAdd(serviceRemoteService, calls);
     }
-    for (InsertTraceByServiceSpan.Input serviceSpan : traceByServiceSpans) {
-      calls.add(insertTraceByServiceSpan.create(serviceSpan));
-    }
-    for (InsertTraceByServiceRemoteService.Input serviceRemoteService : traceByServiceRemoteServices) {
-      calls.add(insertTraceByServiceRemoteService.create(serviceRemoteService));
-    }
     for (Map.Entry<String, String> autocompleteTag : autocompleteTags) {
       insertAutocompleteValue.maybeAdd(autocompleteTag, calls);
     }
     return calls.isEmpty() ? Call.create(null) : AggregateCall.newVoidCall(calls);
   }
 
+  /** Links of a day are in the same partition, so they are sent as batches. */
+  Call<Void> acceptDependencyLinks(List<DependencyLink> links, long midnightUTC) {
+    if (links.isEmpty()) return Call.create(null);
+
+    LocalDate day = Instant.ofEpochMilli(midnightUTC).atZone(ZoneOffset.UTC).toLocalDate();
+    List<PartitionInsert> inserts = new ArrayList<>(links.size());
+    for (DependencyLink link : links) {
+      inserts.add(insertDependencyLink.create(day, link));
+    }
+    List<Call<Void>> calls = new ArrayList<>();
+    addBatches(inserts, calls);
+    return calls.size() == 1 ? calls.get(0) : AggregateCall.newVoidCall(calls);
+  }
+
+  static void addInsert(Map<Object, List<PartitionInsert>> partitions, PartitionInsert insert) {
+    partitions.computeIfAbsent(insert.partitionKey(), k -> new ArrayList<>()).add(insert);
+  }
+
+  /** Adds inserts into the same partition as batches, or alone when there is only one. */
+  void addBatches(List<PartitionInsert> inserts, List<Call<Void>> calls) {
+    int size = inserts.size(), max = InsertBatch.MAX_STATEMENTS;
+    for (int i = 0; i < size; i += max) {
+      List<PartitionInsert> batch = inserts.subList(i, Math.min(size, i + max));
+      if (batch.size() == 1) {
+        calls.add(batch.get(0));
+      } else {
+        calls.add(new InsertBatch(session, limiter, writeMetrics, batch));
+      }
+    }
+  }
+
   static long guessTimestamp(Span span) {
     assert 0L == span.timestampAsLong() : "method only for when span has no timestamp";
     for (Annotation annotation : span.annotations()) {
@@ -22,10 +22,11 @@ import zipkin2.internal.Nullable;
 import zipkin2.storage.QueryRequest;
 import zipkin2.storage.ServiceAndSpanNames;
 import zipkin2.storage.SpanStore;
+import zipkin2.storage.TraceCallback;
 import zipkin2.storage.Traces;
 import zipkin2.storage.cassandra.internal.KeyspaceMetadataUtil;
-import zipkin2.storage.cassandra.internal.call.IntersectKeySets;
-import zipkin2.storage.cassandra.internal.call.IntersectMaps;
+import zipkin2.storage.cassandra.internal.call.IntersectTraceIds;
+import zipkin2.storage.cassandra.internal.call.TraverseBuckets;
 
 import static java.util.Arrays.asList;
 import static zipkin2.storage.cassandra.CassandraUtil.durationIndexBucket;
@@ -36,10 +37,11 @@ import static zipkin2.storage.cassandra.Schema.TABLE_TRACE_BY_SERVICE_SPAN;
 class CassandraSpanStore implements SpanStore, Traces, ServiceAndSpanNames { //not final for testing
   static final Logger LOG = LoggerFactory.getLogger(CassandraSpanStore.class);
 
-  final int indexFetchMultiplier;
+  final int indexFetchMultiplier, bucketParallelism, serviceParallelism;
   final boolean searchEnabled;
   final SelectFromSpan.Factory spans;
   final SelectDependencies.Factory dependencies;
+  final ServiceRecency serviceRecency;
 
   // Everything below here is null when search is disabled
   final int indexTtl; // zero when disabled
@@ -55,16 +57,25 @@ class CassandraSpanStore implements SpanStore, Traces, ServiceAndSpanNames { //n
       storage.metadata(),
       Schema.ensureKeyspaceMetadata(storage.session(), storage.keyspace),
       storage.maxTraceCols,
+      storage.traceReadParallelism,
       storage.indexFetchMultiplier,
+      storage.bucketParallelism,
+      storage.serviceParallelism,
+      storage.serviceRecency,
       storage.strictTraceId,
       storage.searchEnabled);
   }
 
   CassandraSpanStore(CqlSession session, Schema.Metadata metadata, KeyspaceMetadata keyspace,
-    int maxTraceCols, int indexFetchMultiplier, boolean strictTraceId, boolean searchEnabled) {
+    int maxTraceCols, int traceReadParallelism, int indexFetchMultiplier, int bucketParallelism,
+    int serviceParallelism, ServiceRecency serviceRecency, boolean strictTraceId,
+    boolean searchEnabled) {
     this.indexFetchMultiplier = indexFetchMultiplier;
+    this.bucketParallelism = bucketParallelism;
+    this.serviceParallelism = serviceParallelism;
+    this.serviceRecency = serviceRecency;
     this.searchEnabled = searchEnabled;
-    spans = new SelectFromSpan.Factory(session, strictTraceId, maxTraceCols);
+    spans = new SelectFromSpan.Factory(session, strictTraceId, maxTraceCols, traceReadParallelism);
     dependencies = new SelectDependencies.Factory(session);
 
     if (!searchEnabled) {
@@ -120,7 +131,26 @@ class CassandraSpanStore implements SpanStore, Traces, ServiceAndSpanNames { //n
    */
   @Override public Call<List<List<Span>>> getTraces(QueryRequest request) {
     if (!searchEnabled) return Call.emptyList();
+    return newTraceIdCall(request)
+      .map(traceIdsSortedByDescTimestamp())
+      .flatMap(spans.newFlatMapper(request));
+  }
+
+  /**
+   * Like {@link #getTraces(QueryRequest)}, except each trace is passed to the callback, newest
+   * first. When {@link CassandraStorageBuilder#traceReadParallelism(int)} is positive, each trace
+   * is passed as soon as its query and those of newer traces complete.
+   */
+  @Override public Call<Void> streamTraces(QueryRequest request, TraceCallback callback) {
+    if (callback == null) throw new NullPointerException("callback == null");
+    if (!searchEnabled) return Call.create(null);
+    return newTraceIdCall(request)
+      .map(traceIdsSortedByDescTimestamp())
+      .flatMap(spans.newStreamingFlatMapper(request, callback));
+  }
 
+  /** Returns trace IDs matching the request, mapped to their newest timestamp. */
+  Call<Map<String, Long>> newTraceIdCall(QueryRequest request) {
     TimestampRange timestampRange = timestampRange(request, indexTtl);
     // If we have to make multiple queries, over fetch on indexes as they don't return distinct
     // (trace id, timestamp) rows. This mitigates intersection resulting in < limit traces
@@ -143,19 +173,18 @@ class CassandraSpanStore implements SpanStore, Traces, ServiceAndSpanNames { //n
       || request.spanName() != null
       || request.minDuration() != null
       || callsToIntersect.isEmpty()) {
-      callsToIntersect.add(newBucketedTraceIdCall(request, timestampRange, traceIndexFetchSize));
-    }
-
-    if (callsToIntersect.size() == 1) {
-      return callsToIntersect.get(0)
-        .map(traceIdsSortedByDescTimestamp())
-        .flatMap(spans.newFlatMapper(request));
+      // When not intersecting, bucket traversal can stop as soon as limit trace IDs are found.
+      // Otherwise, older buckets can hold matches of the other calls, so all are read.
+      int traceIdLimit = callsToIntersect.isEmpty() ? request.limit() : Integer.MAX_VALUE;
+      callsToIntersect.add(
+        newBucketedTraceIdCall(request, timestampRange, traceIndexFetchSize, traceIdLimit));
     }
 
-    // We achieve the AND goal, by intersecting each of the key sets.
-    IntersectKeySets intersectedTraceIds = new IntersectKeySets(callsToIntersect);
-    // @xxx the sorting by timestamp desc is broken here^
-    return intersectedTraceIds.flatMap(spans.newFlatMapper(request));
+    // We achieve the AND goal, by intersecting each of the trace ID maps. The result keeps only
+    // the newest limit trace IDs, as that's all that's needed.
+    return callsToIntersect.size() == 1
+      ? callsToIntersect.get(0)
+      : new IntersectTraceIds(callsToIntersect, request.limit());
   }
 
   /**
@@ -166,14 +195,22 @@ class CassandraSpanStore implements SpanStore, Traces, ServiceAndSpanNames { //n
    * and remote service name are supplied, or there's more than one day of data in the timestamp
    * range.
    *
+   * <p>Buckets are traversed backwards from the newest, with at most {@link #bucketParallelism}
+   * of them queried at the same time. Older buckets are not queried once {@code traceIdLimit}
+   * trace IDs are found. For example, a query with a 7-day lookback usually only reads the
+   * partitions of the most recent day.
+   *
+   * <p>When both tables are queried, spans matching each can be in different buckets. So, all
+   * buckets of each table are read, and their trace IDs intersected after.
+   *
    * <p>Note that when {@link QueryRequest#serviceName()} is null, the returned query composes over
-   * {@link #getServiceNames()}. This means that if you have 1000 service names, you will end up
-   * with a composition of at least 1000 calls.
+   * {@link #getServiceNames()}. This means that if you have 1000 service names, you could end up
+   * with a composition of 1000 calls per bucket. These are queried at most {@link
+   * #serviceParallelism} at a time. When this process wrote spans of every service, services
+   * recently written are queried first, until {@code traceIdLimit} trace IDs are found.
    */
-  // TODO: smartly handle when serviceName is null. For example, rank recently written serviceNames
-  // and speculatively query those first.
-  Call<Map<String, Long>> newBucketedTraceIdCall(
-    QueryRequest request, TimestampRange timestampRange, int traceIndexFetchSize) {
+  Call<Map<String, Long>> newBucketedTraceIdCall(QueryRequest request,
+    TimestampRange timestampRange, int traceIndexFetchSize, int traceIdLimit) {
     // trace_by_service_span adds special empty-string span name in order to search by all
     String spanName = null != request.spanName() ? request.spanName() : "";
     Long minDuration = request.minDuration(), maxDuration = request.maxDuration();
@@ -187,8 +224,7 @@ class CassandraSpanStore implements SpanStore, Traces, ServiceAndSpanNames { //n
     // "" isn't a real value. it is used to template bucketed calls and replaced later
     String serviceName = null != request.serviceName() ? request.serviceName() : "";
 
-    // TODO: ideally, the buckets are traversed backwards, only spawning queries for older buckets
-    // if younger buckets are empty. This will be an async continuation, punted for now.
+    // Inputs are added newest bucket first, as that's the order they are traversed
     List<SelectTraceIdsFromServiceSpan.Input> serviceSpans = new ArrayList<>();
     List<SelectTraceIdsFromServiceRemoteService.Input> serviceRemoteServices = new ArrayList<>();
     String remoteService = request.remoteServiceName();
@@ -224,40 +260,124 @@ class CassandraSpanStore implements SpanStore, Traces, ServiceAndSpanNames { //n
 
     if (serviceName.isEmpty()) {
       // If we have no service name, we have to lookup service names before running trace ID queries
-      Call<List<String>> serviceNames = getServiceNames();
-      if (serviceRemoteServices.isEmpty()) {
-        return serviceNames.flatMap(traceIdsFromServiceSpan.newFlatMapper(serviceSpans));
-      } else if (serviceSpans.isEmpty()) {
-        return serviceNames.flatMap(
-          traceIdsFromServiceRemoteService.newFlatMapper(serviceRemoteServices));
+      List<FlatMapper<List<String>, Map<String, Long>>> spanMappers = new ArrayList<>();
+      for (SelectTraceIdsFromServiceSpan.Input input : serviceSpans) {
+        spanMappers.add(traceIdsFromServiceSpan.newFlatMapper(List.of(input)));
       }
-      return serviceNames.flatMap(new AggregateFlatMapper<>(
-        traceIdsFromServiceSpan.newFlatMapper(serviceSpans),
-        traceIdsFromServiceRemoteService.newFlatMapper(serviceRemoteServices)
-      ));
+      List<FlatMapper<List<String>, Map<String, Long>>> remoteServiceMappers = new ArrayList<>();
+      for (SelectTraceIdsFromServiceRemoteService.Input input : serviceRemoteServices) {
+        remoteServiceMappers.add(traceIdsFromServiceRemoteService.newFlatMapper(List.of(input)));
+      }
+      FlatMapper<List<String>, Map<String, Long>> mapper;
+      if (remoteServiceMappers.isEmpty()) {
+        mapper = new FlatMapServicesToBuckets(spanMappers, traceIdLimit);
+      } else if (spanMappers.isEmpty()) {
+        mapper = new FlatMapServicesToBuckets(remoteServiceMappers, traceIdLimit);
+      } else {
+        mapper = new AggregateFlatMapper(
+          new FlatMapServicesToBuckets(spanMappers, Integer.MAX_VALUE),
+          new FlatMapServicesToBuckets(remoteServiceMappers, Integer.MAX_VALUE),
+          traceIdLimit
+        );
+      }
+      return getServiceNames().flatMap(mapper);
     }
-    if (serviceRemoteServices.isEmpty()) {
-      return traceIdsFromServiceSpan.newCall(serviceSpans);
-    } else if (serviceSpans.isEmpty()) {
-      return traceIdsFromServiceRemoteService.newCall(serviceRemoteServices);
-    } else {
-      return new IntersectMaps<>(asList(
-        traceIdsFromServiceSpan.newCall(serviceSpans),
-        traceIdsFromServiceRemoteService.newCall(serviceRemoteServices)
-      ));
+
+    List<Call<Map<String, Long>>> spanCalls = new ArrayList<>();
+    for (SelectTraceIdsFromServiceSpan.Input input : serviceSpans) {
+      spanCalls.add(traceIdsFromServiceSpan.newCall(input));
+    }
+    List<Call<Map<String, Long>>> remoteServiceCalls = new ArrayList<>();
+    for (SelectTraceIdsFromServiceRemoteService.Input input : serviceRemoteServices) {
+      remoteServiceCalls.add(traceIdsFromServiceRemoteService.newCall(input));
+    }
+    if (remoteServiceCalls.isEmpty()) {
+      return traverse(spanCalls, traceIdLimit, bucketParallelism);
+    } else if (spanCalls.isEmpty()) {
+      return traverse(remoteServiceCalls, traceIdLimit, bucketParallelism);
+    }
+    return new IntersectTraceIds(asList(
+      traverse(spanCalls, Integer.MAX_VALUE, bucketParallelism),
+      traverse(remoteServiceCalls, Integer.MAX_VALUE, bucketParallelism)
+    ), traceIdLimit);
+  }
+
+  static Call<Map<String, Long>> traverse(
+    List<Call<Map<String, Long>>> calls, int limit, int parallelism) {
+    if (calls.size() == 1) return calls.get(0);
+    return new TraverseBuckets<>(calls, limit, parallelism);
+  }
+
+  /**
+   * Applies deferred service names to the queries of each bucket, then traverses them.
+   *
+   * <p>When {@link ServiceRecency} covers all services, services are ranked by it within a bucket,
+   * so the first calls are the most recently written services in the newest bucket. Traversal
+   * stops as soon as the limit is reached, even within a bucket.
+   *
+   * <p>Otherwise, ranking would favor services in arbitrary order, such as alphabetically on a
+   * query-only server. Instead, all services of a bucket are queried, and their results merged by
+   * newest timestamp, before deciding if older buckets are needed. Buckets are queried one at a
+   * time, so that at most {@link #serviceParallelism} queries are in flight.
+   */
+  final class FlatMapServicesToBuckets implements FlatMapper<List<String>, Map<String, Long>> {
+    final List<FlatMapper<List<String>, Map<String, Long>>> newestFirst;
+    final int limit;
+
+    FlatMapServicesToBuckets(List<FlatMapper<List<String>, Map<String, Long>>> newestFirst,
+      int limit) {
+      this.newestFirst = newestFirst;
+      this.limit = limit;
+    }
+
+    @Override public Call<Map<String, Long>> map(List<String> serviceNames) {
+      if (serviceNames.isEmpty()) return Call.create(Map.of());
+      if (serviceRecency.covers(serviceNames)) {
+        List<String> ranked = serviceRecency.rank(serviceNames);
+        List<Call<Map<String, Long>>> calls = new ArrayList<>(newestFirst.size() * ranked.size());
+        for (FlatMapper<List<String>, Map<String, Long>> bucket : newestFirst) {
+          for (String serviceName : ranked) {
+            calls.add(bucket.map(List.of(serviceName)));
+          }
+        }
+        return traverse(calls, limit, serviceParallelism);
+      }
+
+      List<Call<Map<String, Long>>> bucketCalls = new ArrayList<>(newestFirst.size());
+      for (FlatMapper<List<String>, Map<String, Long>> bucket : newestFirst) {
+        List<Call<Map<String, Long>>> serviceCalls = new ArrayList<>(serviceNames.size());
+        for (String serviceName : serviceNames) {
+          serviceCalls.add(bucket.map(List.of(serviceName)));
+        }
+        bucketCalls.add(serviceCalls.size() == 1
+          ? serviceCalls.get(0)
+          : new TraverseBuckets<>(serviceCalls, Integer.MAX_VALUE, serviceParallelism, Math::max));
+      }
+      return traverse(bucketCalls, limit, 1);
+    }
+
+    @Override public String toString() {
+      return "FlatMapServicesToBuckets{" + newestFirst + "}";
     }
   }
 
-  static class AggregateFlatMapper<K, V> implements FlatMapper<List<K>, Map<K, V>> {
-    final FlatMapper<List<K>, Map<K, V>> left, right;
+  static class AggregateFlatMapper implements FlatMapper<List<String>, Map<String, Long>> {
+    final FlatMapper<List<String>, Map<String, Long>> left, right;
+    final int limit;
 
-    AggregateFlatMapper(FlatMapper<List<K>, Map<K, V>> left, FlatMapper<List<K>, Map<K, V>> right) {
+    AggregateFlatMapper(FlatMapper<List<String>, Map<String, Long>> left,
+      FlatMapper<List<String>, Map<String, Long>> right, int limit) {
       this.left = left;
       this.right = right;
+      this.limit = limit;
     }
 
-    @Override public Call<Map<K, V>> map(List<K> input) {
-      return new IntersectMaps<>(asList(left.map(input), right.map(input)));
+    @Override public Call<Map<String, Long>> map(List<String> input) {
+      return new IntersectTraceIds(asList(left.map(input), right.map(input)), limit);
+    }
+
+    @Override public String toString() {
+      return "AggregateFlatMapper{" + left + ", " + right + "}";
     }
   }
 
@@ -271,6 +391,11 @@ class CassandraSpanStore implements SpanStore, Traces, ServiceAndSpanNames { //n
     return spans.newCall(traceIds);
   }
 
+  @Override public Call<Void> streamTraces(Iterable<String> traceIds, TraceCallback callback) {
+    if (callback == null) throw new NullPointerException("callback == null");
+    return spans.newStreamingCall(traceIds, callback);
+  }
+
   @Override public Call<List<String>> getServiceNames() {
     if (!searchEnabled) return Call.emptyList();
     return serviceNames.clone();
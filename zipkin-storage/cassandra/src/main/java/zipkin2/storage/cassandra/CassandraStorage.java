@@ -8,10 +8,12 @@ import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.auth.AuthProvider;
 import com.datastax.oss.driver.api.core.auth.ProgrammaticPlainTextAuthProvider;
 import com.datastax.oss.driver.api.core.config.DriverOption;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import zipkin2.Call;
 import zipkin2.CheckResult;
+import zipkin2.DependencyLink;
 import zipkin2.internal.ClosedComponentException;
 import zipkin2.internal.Nullable;
 import zipkin2.storage.AutocompleteTags;
@@ -83,7 +85,12 @@ public final class CassandraStorage extends StorageComponent {
   final boolean useSsl;
   final boolean sslHostnameValidation;
   final String keyspace;
-  final int maxTraceCols, indexFetchMultiplier;
+  final int maxTraceCols, traceReadParallelism;
+  final int indexFetchMultiplier, bucketParallelism, serviceParallelism;
+  final int maxInFlightWrites;
+  final WriteMetrics writeMetrics;
+  // Shared by the span consumer and span store, so that writes inform searches
+  final ServiceRecency serviceRecency = new ServiceRecency();
 
   final LazySession session;
 
@@ -110,7 +117,14 @@ public final class CassandraStorage extends StorageComponent {
 
     // Assign configuration used to control queries
     this.maxTraceCols = builder.maxTraceCols;
+    this.traceReadParallelism = builder.traceReadParallelism;
     this.indexFetchMultiplier = builder.indexFetchMultiplier;
+    this.bucketParallelism = builder.bucketParallelism;
+    this.serviceParallelism = builder.serviceParallelism;
+
+    // Assign configuration used to control writes
+    this.maxInFlightWrites = builder.maxInFlightWrites;
+    this.writeMetrics = builder.writeMetrics;
 
     this.session = new LazySession(this, builder.sessionFactory, builder.ensureSchema);
   }
@@ -174,6 +188,18 @@ public final class CassandraStorage extends StorageComponent {
     return spanConsumer;
   }
 
+  /**
+   * Writes links aggregated for the day starting at {@code midnightUTC}, replacing any already
+   * stored with the same parent and child. This is the same data written by the zipkin-dependencies
+   * job, and read by {@link SpanStore#getDependencies(long, long)}.
+   *
+   * @since 3.5
+   */
+  public Call<Void> writeDependencyLinks(List<DependencyLink> links, long midnightUTC) {
+    spanConsumer(); // lazy initialize
+    return spanConsumer.acceptDependencyLinks(links, midnightUTC);
+  }
+
   @Override public boolean isOverCapacity(Throwable e) {
     return ResultSetFutureCall.isOverCapacity(e);
   }
@@ -40,7 +40,12 @@ abstract class CassandraStorageBuilder<B extends CassandraStorageBuilder<B>>
   BiFunction<CassandraStorage, CqlSession, Schema.Metadata> ensureSchema = Schema::ensure;
 
   int maxTraceCols = 100_000;
+  int traceReadParallelism = 0;
   int indexFetchMultiplier = 3;
+  int bucketParallelism = 2;
+  int serviceParallelism = 16;
+  int maxInFlightWrites = 0;
+  WriteMetrics writeMetrics = WriteMetrics.NOOP_METRICS;
 
   // Zipkin collectors can create out a lot of async requests in bursts, so we
   // increase some properties beyond the norm.
@@ -178,6 +183,24 @@ abstract class CassandraStorageBuilder<B extends CassandraStorageBuilder<B>>
     return (B) this;
   }
 
+  /**
+   * When positive, spans of multiple traces are read with a query per trace, with at most this
+   * many queries in flight at the same time. Defaults to zero, which reads them with one query.
+   *
+   * <p>A query for multiple traces reads multiple partitions of the span table. Its coordinator
+   * has to collect rows from the replicas of each, which can be slow for searches with a large
+   * limit. A query per trace only reads a single partition, so is routed by token to a replica.
+   * Each of these queries is limited to {@link #maxTraceCols(int)} rows. Streaming queries pass
+   * each trace as soon as it's read, instead of after all are.
+   *
+   * @since 3.5
+   */
+  public B traceReadParallelism(int traceReadParallelism) {
+    if (traceReadParallelism < 0) throw new IllegalArgumentException("traceReadParallelism < 0");
+    this.traceReadParallelism = traceReadParallelism;
+    return (B) this;
+  }
+
   /**
    * How many more index rows to fetch than the user-supplied query limit. Defaults to 3.
    *
@@ -194,4 +217,66 @@ abstract class CassandraStorageBuilder<B extends CassandraStorageBuilder<B>>
     this.indexFetchMultiplier = indexFetchMultiplier;
     return (B) this;
   }
+
+  /**
+   * How many time buckets of trace indexes to query at the same time when searching. Defaults to
+   * 2.
+   *
+   * <p>Index rows are partitioned by day. Searches query these buckets newest first, and stop
+   * querying older buckets once enough trace IDs are found. Higher values lower latency when recent
+   * buckets have few matches, at the cost of querying buckets whose results may be unneeded.
+   *
+   * @since 3.5
+   */
+  public B bucketParallelism(int bucketParallelism) {
+    if (bucketParallelism <= 0) throw new IllegalArgumentException("bucketParallelism <= 0");
+    this.bucketParallelism = bucketParallelism;
+    return (B) this;
+  }
+
+  /**
+   * How many services to query at the same time when searching without a service name. Defaults to
+   * 16.
+   *
+   * <p>Such searches look up trace IDs for each service name. When this process wrote spans of
+   * every service, services most recently written are queried first, and remaining services are
+   * not queried once enough trace IDs are found. This is speculative: results favor traces of
+   * services that recently wrote spans. Otherwise, all services of a day are queried before
+   * deciding whether older days are needed.
+   *
+   * @since 3.5
+   */
+  public B serviceParallelism(int serviceParallelism) {
+    if (serviceParallelism <= 0) throw new IllegalArgumentException("serviceParallelism <= 0");
+    this.serviceParallelism = serviceParallelism;
+    return (B) this;
+  }
+
+  /**
+   * When positive, the maximum count of span and index writes executing at the same time. Writes
+   * over this wait for others to complete, and while as many more are waiting, spans are rejected
+   * as over capacity. Defaults to zero, which doesn't limit writes.
+   *
+   * <p>Without a limit, large messages can exhaust the connection pool, failing writes with
+   * {@code BusyConnectionException}. See {@link #maxConnections(int)}.
+   *
+   * @since 3.5
+   */
+  public B maxInFlightWrites(int maxInFlightWrites) {
+    if (maxInFlightWrites < 0) throw new IllegalArgumentException("maxInFlightWrites < 0");
+    this.maxInFlightWrites = maxInFlightWrites;
+    return (B) this;
+  }
+
+  /**
+   * Reports the size of batches and count of writes waiting. Defaults to {@link
+   * WriteMetrics#NOOP_METRICS}.
+   *
+   * @since 3.5
+   */
+  public B writeMetrics(WriteMetrics writeMetrics) {
+    if (writeMetrics == null) throw new NullPointerException("writeMetrics == null");
+    this.writeMetrics = writeMetrics;
+    return (B) this;
+  }
 }
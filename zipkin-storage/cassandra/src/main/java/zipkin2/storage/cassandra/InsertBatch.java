@@ -0,0 +1,60 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.BatchType;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import zipkin2.storage.cassandra.internal.call.InFlightLimiter;
+import zipkin2.storage.cassandra.internal.call.ResultSetFutureCall;
+
+/**
+ * Sends inserts into the same partition as an unlogged batch. As all rows are in one partition,
+ * the batch is a single mutation, routed to a replica of that partition, instead of a request per
+ * row. Unlogged batches spanning partitions are avoided, as they load the coordinator instead.
+ */
+final class InsertBatch extends ResultSetFutureCall<Void> {
+  /** Bounds the size of a request when a message has many spans of the same trace. */
+  static final int MAX_STATEMENTS = 100;
+
+  final CqlSession session;
+  final InFlightLimiter limiter;
+  final WriteMetrics metrics;
+  final List<? extends PartitionInsert> inserts;
+
+  InsertBatch(CqlSession session, InFlightLimiter limiter, WriteMetrics metrics,
+    List<? extends PartitionInsert> inserts) {
+    assert inserts.size() > 1 : "do not create single-statement batches";
+    this.session = session;
+    this.limiter = limiter;
+    this.metrics = metrics;
+    this.inserts = inserts;
+  }
+
+  @Override protected CompletionStage<AsyncResultSet> newCompletionStage() {
+    return limiter.execute(() -> {
+      BatchStatementBuilder batch = new BatchStatementBuilder(BatchType.UNLOGGED);
+      for (PartitionInsert insert : inserts) batch.addStatement(insert.bind());
+      metrics.recordBatch(inserts.size());
+      return session.executeAsync(batch.build());
+    });
+  }
+
+  @Override public Void map(AsyncResultSet input) {
+    return null;
+  }
+
+  @Override public String toString() {
+    return "InsertBatch{partitionKey=" + inserts.get(0).partitionKey()
+      + ", statements=" + inserts.size() + "}";
+  }
+
+  @Override public InsertBatch clone() {
+    return new InsertBatch(session, limiter, metrics, inserts);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.List;
+import zipkin2.DependencyLink;
+import zipkin2.storage.cassandra.internal.call.InFlightLimiter;
+
+import static zipkin2.storage.cassandra.Schema.TABLE_DEPENDENCY;
+
+/** Inserts a link of a day, replacing any with the same parent and child. */
+final class InsertDependencyLink extends PartitionInsert {
+  static final class Factory {
+    final CqlSession session;
+    final InFlightLimiter limiter;
+    final PreparedStatement preparedStatement;
+
+    Factory(CqlSession session, InFlightLimiter limiter) {
+      this.session = session;
+      this.limiter = limiter;
+      this.preparedStatement = session.prepare("INSERT INTO " + TABLE_DEPENDENCY
+        + " (day,parent,child,calls,errors)"
+        + " VALUES (?,?,?,?,?)");
+    }
+
+    InsertDependencyLink create(LocalDate day, DependencyLink link) {
+      return new InsertDependencyLink(this, day, link);
+    }
+  }
+
+  final Factory factory;
+  final LocalDate day;
+  final DependencyLink link;
+
+  InsertDependencyLink(Factory factory, LocalDate day, DependencyLink link) {
+    super(factory.session, factory.limiter);
+    this.factory = factory;
+    this.day = day;
+    this.link = link;
+  }
+
+  @Override Object partitionKey() {
+    return List.of(TABLE_DEPENDENCY, day);
+  }
+
+  @Override BoundStatement bind() {
+    return factory.preparedStatement.boundStatementBuilder()
+      .setLocalDate(0, day)
+      .setString(1, link.parent())
+      .setString(2, link.child())
+      .setLong(3, link.callCount())
+      .setLong(4, link.errorCount()).build();
+  }
+
+  @Override public String toString() {
+    return "InsertDependencyLink{day=" + day + ", link=" + link + "}";
+  }
+
+  @Override public InsertDependencyLink clone() {
+    return new InsertDependencyLink(factory, day, link);
+  }
+}
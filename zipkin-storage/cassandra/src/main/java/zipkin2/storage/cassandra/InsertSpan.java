@@ -5,24 +5,22 @@
 package zipkin2.storage.cassandra;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.google.auto.value.AutoValue;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletionStage;
 import zipkin2.Annotation;
-import zipkin2.Call;
 import zipkin2.Endpoint;
 import zipkin2.Span;
 import zipkin2.internal.Nullable;
-import zipkin2.storage.cassandra.internal.call.ResultSetFutureCall;
+import zipkin2.storage.cassandra.internal.call.InFlightLimiter;
 
 import static zipkin2.storage.cassandra.Schema.TABLE_SPAN;
 
-final class InsertSpan extends ResultSetFutureCall<Void> {
+final class InsertSpan extends PartitionInsert {
   @AutoValue abstract static class Input {
     abstract UUID ts_uuid();
 
@@ -59,11 +57,14 @@ final class InsertSpan extends ResultSetFutureCall<Void> {
 
   static final class Factory {
     final CqlSession session;
+    final InFlightLimiter limiter;
     final PreparedStatement preparedStatement;
     final boolean strictTraceId, searchEnabled;
 
-    Factory(CqlSession session, boolean strictTraceId, boolean searchEnabled) {
+    Factory(CqlSession session, InFlightLimiter limiter, boolean strictTraceId,
+      boolean searchEnabled) {
       this.session = session;
+      this.limiter = limiter;
       String insertQuery = "INSERT INTO " + TABLE_SPAN
         + " (trace_id,trace_id_high,ts_uuid,parent_id,id,kind,span,ts,duration,l_ep,r_ep,annotations,tags,debug,shared)"
         + " VALUES (:trace_id,:trace_id_high,:ts_uuid,:parent_id,:id,:kind,:span,:ts,:duration,:l_ep,:r_ep,:annotations,:tags,:debug,:shared)";
@@ -100,7 +101,7 @@ final class InsertSpan extends ResultSetFutureCall<Void> {
         Boolean.TRUE.equals(span.shared()));
     }
 
-    Call<Void> create(Input span) {
+    InsertSpan create(Input span) {
       return new InsertSpan(this, span);
     }
   }
@@ -109,6 +110,7 @@ final class InsertSpan extends ResultSetFutureCall<Void> {
   final Input input;
 
   InsertSpan(Factory factory, Input input) {
+    super(factory.session, factory.limiter);
     this.factory = factory;
     this.input = input;
   }
@@ -137,7 +139,11 @@ final class InsertSpan extends ResultSetFutureCall<Void> {
    * writes, as it is asynchronous anyway. An example of this approach is in the cassandra-reaper
    * project here: https://github.com/thelastpickle/cassandra-reaper/blob/master/src/server/src/main/java/io/cassandrareaper/storage/CassandraStorage.java#L622-L642
    */
-  @Override protected CompletionStage<AsyncResultSet> newCompletionStage() {
+  @Override Object partitionKey() {
+    return List.of(TABLE_SPAN, input.trace_id());
+  }
+
+  @Override BoundStatement bind() {
     BoundStatementBuilder bound = factory.preparedStatement.boundStatementBuilder()
       .setUuid("ts_uuid", input.ts_uuid())
       .setString("trace_id", input.trace_id())
@@ -165,11 +171,7 @@ final class InsertSpan extends ResultSetFutureCall<Void> {
         bound.setString("annotation_query", input.annotation_query());
       }
     }
-    return factory.session.executeAsync(bound.build());
-  }
-
-  @Override public Void map(AsyncResultSet input) {
-    return null;
+    return bound.build();
   }
 
   @Override public String toString() {
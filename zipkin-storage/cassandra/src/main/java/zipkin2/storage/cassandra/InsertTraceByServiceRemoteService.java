@@ -5,17 +5,16 @@
 package zipkin2.storage.cassandra;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.google.auto.value.AutoValue;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.CompletionStage;
-import zipkin2.Call;
-import zipkin2.storage.cassandra.internal.call.ResultSetFutureCall;
+import zipkin2.storage.cassandra.internal.call.InFlightLimiter;
 
 import static zipkin2.storage.cassandra.Schema.TABLE_TRACE_BY_SERVICE_REMOTE_SERVICE;
 
-final class InsertTraceByServiceRemoteService extends ResultSetFutureCall<Void> {
+final class InsertTraceByServiceRemoteService extends PartitionInsert {
   @AutoValue abstract static class Input {
     abstract String service();
 
@@ -30,11 +29,13 @@ final class InsertTraceByServiceRemoteService extends ResultSetFutureCall<Void>
 
   static final class Factory {
     final CqlSession session;
+    final InFlightLimiter limiter;
     final PreparedStatement preparedStatement;
     final boolean strictTraceId;
 
-    Factory(CqlSession session, boolean strictTraceId) {
+    Factory(CqlSession session, InFlightLimiter limiter, boolean strictTraceId) {
       this.session = session;
+      this.limiter = limiter;
       this.preparedStatement =
         session.prepare("INSERT INTO " + TABLE_TRACE_BY_SERVICE_REMOTE_SERVICE
           + " (service,remote_service,bucket,ts,trace_id)"
@@ -51,7 +52,7 @@ final class InsertTraceByServiceRemoteService extends ResultSetFutureCall<Void>
         !strictTraceId && trace_id.length() == 32 ? trace_id.substring(16) : trace_id);
     }
 
-    Call<Void> create(Input input) {
+    InsertTraceByServiceRemoteService create(Input input) {
       return new InsertTraceByServiceRemoteService(this, input);
     }
   }
@@ -60,21 +61,23 @@ final class InsertTraceByServiceRemoteService extends ResultSetFutureCall<Void>
   final Input input;
 
   InsertTraceByServiceRemoteService(Factory factory, Input input) {
+    super(factory.session, factory.limiter);
     this.factory = factory;
     this.input = input;
   }
 
-  @Override protected CompletionStage<AsyncResultSet> newCompletionStage() {
-    return factory.session.executeAsync(factory.preparedStatement.boundStatementBuilder()
+  @Override Object partitionKey() {
+    return List.of(TABLE_TRACE_BY_SERVICE_REMOTE_SERVICE, input.service(), input.remote_service(),
+      input.bucket());
+  }
+
+  @Override BoundStatement bind() {
+    return factory.preparedStatement.boundStatementBuilder()
       .setString(0, input.service())
       .setString(1, input.remote_service())
       .setInt(2, input.bucket())
       .setUuid(3, input.ts())
-      .setString(4, input.trace_id()).build());
-  }
-
-  @Override public Void map(AsyncResultSet input) {
-    return null;
+      .setString(4, input.trace_id()).build();
   }
 
   @Override public String toString() {
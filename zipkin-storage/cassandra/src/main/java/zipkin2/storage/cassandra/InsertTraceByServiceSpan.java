@@ -5,18 +5,17 @@
 package zipkin2.storage.cassandra;
 
 import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.google.auto.value.AutoValue;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.CompletionStage;
-import zipkin2.Call;
-import zipkin2.storage.cassandra.internal.call.ResultSetFutureCall;
+import zipkin2.storage.cassandra.internal.call.InFlightLimiter;
 
 import static zipkin2.storage.cassandra.Schema.TABLE_TRACE_BY_SERVICE_SPAN;
 
-final class InsertTraceByServiceSpan extends ResultSetFutureCall<Void> {
+final class InsertTraceByServiceSpan extends PartitionInsert {
   @AutoValue abstract static class Input {
     abstract String service();
 
@@ -33,11 +32,13 @@ final class InsertTraceByServiceSpan extends ResultSetFutureCall<Void> {
 
   static final class Factory {
     final CqlSession session;
+    final InFlightLimiter limiter;
     final PreparedStatement preparedStatement;
     final boolean strictTraceId;
 
-    Factory(CqlSession session, boolean strictTraceId) {
+    Factory(CqlSession session, InFlightLimiter limiter, boolean strictTraceId) {
       this.session = session;
+      this.limiter = limiter;
       this.preparedStatement = session.prepare("INSERT INTO " + TABLE_TRACE_BY_SERVICE_SPAN
         + " (service,span,bucket,ts,trace_id,duration)"
         + " VALUES (?,?,?,?,?,?)");
@@ -59,7 +60,7 @@ final class InsertTraceByServiceSpan extends ResultSetFutureCall<Void> {
         durationMillis);
     }
 
-    Call<Void> create(Input input) {
+    InsertTraceByServiceSpan create(Input input) {
       return new InsertTraceByServiceSpan(this, input);
     }
   }
@@ -68,11 +69,16 @@ final class InsertTraceByServiceSpan extends ResultSetFutureCall<Void> {
   final Input input;
 
   InsertTraceByServiceSpan(Factory factory, Input input) {
+    super(factory.session, factory.limiter);
     this.factory = factory;
     this.input = input;
   }
 
-  @Override protected CompletionStage<AsyncResultSet> newCompletionStage() {
+  @Override Object partitionKey() {
+    return List.of(TABLE_TRACE_BY_SERVICE_SPAN, input.service(), input.span(), input.bucket());
+  }
+
+  @Override BoundStatement bind() {
     BoundStatementBuilder bound = factory.preparedStatement.boundStatementBuilder()
       .setString(0, input.service())
       .setString(1, input.span())
@@ -82,11 +88,7 @@ final class InsertTraceByServiceSpan extends ResultSetFutureCall<Void> {
 
     if (0L != input.duration()) bound.setLong(5, input.duration());
 
-    return factory.session.executeAsync(bound.build());
-  }
-
-  @Override public Void map(AsyncResultSet input) {
-    return null;
+    return bound.build();
   }
 
   @Override public String toString() {
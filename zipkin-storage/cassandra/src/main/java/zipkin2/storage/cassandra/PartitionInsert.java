@@ -0,0 +1,39 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import java.util.concurrent.CompletionStage;
+import zipkin2.storage.cassandra.internal.call.InFlightLimiter;
+import zipkin2.storage.cassandra.internal.call.ResultSetFutureCall;
+
+/**
+ * Inserts a row into one partition. {@link CassandraSpanConsumer} sends inserts into the same
+ * partition together, as an {@link InsertBatch}.
+ */
+abstract class PartitionInsert extends ResultSetFutureCall<Void> {
+  final CqlSession session;
+  final InFlightLimiter limiter;
+
+  PartitionInsert(CqlSession session, InFlightLimiter limiter) {
+    this.session = session;
+    this.limiter = limiter;
+  }
+
+  /** Inserts with equal keys write the same partition of the same table. */
+  abstract Object partitionKey();
+
+  abstract BoundStatement bind();
+
+  @Override protected final CompletionStage<AsyncResultSet> newCompletionStage() {
+    return limiter.execute(() -> session.executeAsync(bind()));
+  }
+
+  @Override public final Void map(AsyncResultSet input) {
+    return null;
+  }
+}
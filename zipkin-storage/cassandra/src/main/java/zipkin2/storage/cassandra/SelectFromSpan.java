@@ -16,6 +16,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletionStage;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import zipkin2.Annotation;
 import zipkin2.Call;
@@ -26,28 +27,39 @@ import zipkin2.internal.Nullable;
 import zipkin2.storage.GroupByTraceId;
 import zipkin2.storage.QueryRequest;
 import zipkin2.storage.StrictTraceId;
+import zipkin2.storage.TraceCallback;
 import zipkin2.storage.cassandra.internal.call.AccumulateAllResults;
+import zipkin2.storage.cassandra.internal.call.AggregateIntoListWindowed;
 import zipkin2.storage.cassandra.internal.call.ResultSetFutureCall;
+import zipkin2.storage.cassandra.internal.call.StreamWindowed;
 
 import static zipkin2.storage.cassandra.Schema.TABLE_SPAN;
 
 final class SelectFromSpan extends ResultSetFutureCall<AsyncResultSet> {
   static final class Factory {
     final CqlSession session;
-    final PreparedStatement preparedStatement;
+    final PreparedStatement preparedStatement, selectByTraceId;
     final Call.Mapper<List<Span>, List<List<Span>>> groupByTraceId;
     final boolean strictTraceId;
-    final int maxTraceCols;
+    final int maxTraceCols, traceReadParallelism;
 
-    Factory(CqlSession session, boolean strictTraceId, int maxTraceCols) {
+    Factory(CqlSession session, boolean strictTraceId, int maxTraceCols,
+      int traceReadParallelism) {
       this.session = session;
-      this.preparedStatement = session.prepare(
+      String baseQuery =
         "SELECT trace_id_high,trace_id,parent_id,id,kind,span,ts,duration,l_ep,r_ep,annotations,tags,debug,shared"
-          + " FROM " + TABLE_SPAN
-          + " WHERE trace_id IN ?"
-          + " LIMIT ?");
+          + " FROM " + TABLE_SPAN;
+      this.preparedStatement = session.prepare(baseQuery
+        + " WHERE trace_id IN ?"
+        + " LIMIT ?");
+      // The driver only routes by token when the partition key is bound, which isn't the case with
+      // IN, even when there's a single value.
+      this.selectByTraceId = session.prepare(baseQuery
+        + " WHERE trace_id=?"
+        + " LIMIT ?");
       this.strictTraceId = strictTraceId;
       this.maxTraceCols = maxTraceCols;
+      this.traceReadParallelism = traceReadParallelism;
       this.groupByTraceId = GroupByTraceId.create(strictTraceId);
     }
 
@@ -66,25 +78,71 @@ final class SelectFromSpan extends ResultSetFutureCall<AsyncResultSet> {
     }
 
     Call<List<List<Span>>> newCall(Iterable<String> traceIds) {
-      Set<String> normalizedTraceIds = new LinkedHashSet<>();
+      Set<String> normalizedTraceIds = normalizeTraceIds(traceIds);
+      if (normalizedTraceIds.isEmpty()) return Call.emptyList();
+      Call<List<List<Span>>> result = selectSpans(normalizedTraceIds).map(groupByTraceId);
+      return strictTraceId ? result.map(StrictTraceId.filterTraces(normalizedTraceIds)) : result;
+    }
+
+    Call<Void> newStreamingCall(Iterable<String> traceIds, TraceCallback callback) {
+      Set<String> normalizedTraceIds = normalizeTraceIds(traceIds);
+      if (normalizedTraceIds.isEmpty()) return Call.create(null);
+      return streamSpans(normalizedTraceIds, new PassTraces(groupByTraceId,
+        strictTraceId ? StrictTraceId.filterTraces(normalizedTraceIds) : null, callback));
+    }
+
+    Set<String> normalizeTraceIds(Iterable<String> traceIds) {
+      Set<String> result = new LinkedHashSet<>();
       for (String traceId : traceIds) {
         // make sure we have a 16 or 32 character trace ID
         traceId = Span.normalizeTraceId(traceId);
         // Unless we are strict, truncate the trace ID to 64bit (encoded as 16 characters)
         if (!strictTraceId && traceId.length() == 32) traceId = traceId.substring(16);
-        normalizedTraceIds.add(traceId);
+        result.add(traceId);
       }
+      return result;
+    }
 
-      if (normalizedTraceIds.isEmpty()) return Call.emptyList();
-      Call<List<List<Span>>> result = new SelectFromSpan(this, normalizedTraceIds, maxTraceCols)
-        .flatMap(READ_SPANS)
-        .map(groupByTraceId);
-      return strictTraceId ? result.map(StrictTraceId.filterTraces(normalizedTraceIds)) : result;
+    /**
+     * Unless {@link #traceReadParallelism} is positive, spans of multiple traces are selected with
+     * one query. Otherwise, there's a query per trace, which only reads a single partition.
+     */
+    Call<List<Span>> selectSpans(Set<String> traceIds) {
+      if (traceReadParallelism == 0 || traceIds.size() == 1) {
+        return new SelectFromSpan(this, traceIds, maxTraceCols).flatMap(READ_SPANS);
+      }
+      return new AggregateIntoListWindowed<>(selectSpansPerTrace(traceIds), traceReadParallelism);
+    }
+
+    /**
+     * Like {@link #selectSpans(Set)}, except spans are passed to the consumer as they are read.
+     * With a query per trace, each trace is passed as soon as it and those before it were read.
+     */
+    Call<Void> streamSpans(Set<String> traceIds, Consumer<List<Span>> consumer) {
+      if (traceReadParallelism == 0 || traceIds.size() == 1) {
+        return new StreamWindowed<>(
+          List.of(new SelectFromSpan(this, traceIds, maxTraceCols).flatMap(READ_SPANS)), 1,
+          consumer);
+      }
+      return new StreamWindowed<>(selectSpansPerTrace(traceIds), traceReadParallelism, consumer);
+    }
+
+    List<Call<List<Span>>> selectSpansPerTrace(Set<String> traceIds) {
+      List<Call<List<Span>>> calls = new ArrayList<>(traceIds.size());
+      for (String traceId : traceIds) {
+        calls.add(new SelectFromSpan(this, Set.of(traceId), maxTraceCols).flatMap(READ_SPANS));
+      }
+      return calls;
     }
 
     FlatMapper<Set<String>, List<List<Span>>> newFlatMapper(QueryRequest request) {
       return new SelectSpansByTraceIds(this, request);
     }
+
+    FlatMapper<Set<String>, Void> newStreamingFlatMapper(QueryRequest request,
+      TraceCallback callback) {
+      return new StreamSpansByTraceIds(this, request, callback);
+    }
   }
 
   final Factory factory;
@@ -99,6 +157,11 @@ final class SelectFromSpan extends ResultSetFutureCall<AsyncResultSet> {
   }
 
   @Override protected CompletionStage<AsyncResultSet> newCompletionStage() {
+    if (trace_id.size() == 1) { // single partition, so can be routed to a replica
+      return factory.session.executeAsync(factory.selectByTraceId.boundStatementBuilder()
+        .setString(0, trace_id.iterator().next())
+        .setInt(1, limit_).build());
+    }
     return factory.session.executeAsync(factory.preparedStatement.boundStatementBuilder()
       // Switched Set to List which is higher overhead, as have to copy into it, but avoids this:
       // com.datastax.oss.driver.api.core.type.codec.CodecNotFoundException: Codec not found for requested operation: [List(TEXT, not frozen) <-> java.util.Set<java.lang.String>]
@@ -133,19 +196,8 @@ final class SelectFromSpan extends ResultSetFutureCall<AsyncResultSet> {
 
     @Override public Call<List<List<Span>>> map(Set<String> input) {
       if (input.isEmpty()) return Call.emptyList();
-      Set<String> traceIds;
-      if (input.size() > limit) {
-        traceIds = new LinkedHashSet<>();
-        Iterator<String> iterator = input.iterator();
-        for (int i = 0; i < limit; i++) {
-          traceIds.add(iterator.next());
-        }
-      } else {
-        traceIds = input;
-      }
-      Call<List<List<Span>>> result = new SelectFromSpan(factory, traceIds, factory.maxTraceCols)
-        .flatMap(READ_SPANS)
-        .map(factory.groupByTraceId);
+      Set<String> traceIds = firstTraceIds(input, limit);
+      Call<List<List<Span>>> result = factory.selectSpans(traceIds).map(factory.groupByTraceId);
       return filter != null ? result.map(filter) : result;
     }
 
@@ -154,6 +206,64 @@ final class SelectFromSpan extends ResultSetFutureCall<AsyncResultSet> {
     }
   }
 
+  /** Like {@link SelectSpansByTraceIds}, except traces are passed to a callback as read. */
+  static final class StreamSpansByTraceIds implements FlatMapper<Set<String>, Void> {
+    final Factory factory;
+    final int limit;
+    final PassTraces passTraces;
+
+    StreamSpansByTraceIds(Factory factory, QueryRequest request, TraceCallback callback) {
+      this.factory = factory;
+      this.limit = request.limit();
+      this.passTraces = new PassTraces(factory.groupByTraceId,
+        factory.strictTraceId ? FilterTraces.create(request) : null, callback);
+    }
+
+    @Override public Call<Void> map(Set<String> input) {
+      if (input.isEmpty()) return Call.create(null);
+      return factory.streamSpans(firstTraceIds(input, limit), passTraces);
+    }
+
+    @Override public String toString() {
+      return "StreamSpansByTraceIds{limit=" + limit + "}";
+    }
+  }
+
+  static Set<String> firstTraceIds(Set<String> input, int limit) {
+    if (input.size() <= limit) return input;
+    Set<String> traceIds = new LinkedHashSet<>();
+    Iterator<String> iterator = input.iterator();
+    for (int i = 0; i < limit; i++) {
+      traceIds.add(iterator.next());
+    }
+    return traceIds;
+  }
+
+  /** Groups spans read into traces, passing each one that isn't filtered to the callback. */
+  static final class PassTraces implements Consumer<List<Span>> {
+    final Call.Mapper<List<Span>, List<List<Span>>> groupByTraceId;
+    @Nullable final Call.Mapper<List<List<Span>>, List<List<Span>>> filter;
+    final TraceCallback callback;
+
+    PassTraces(Call.Mapper<List<Span>, List<List<Span>>> groupByTraceId,
+      @Nullable Call.Mapper<List<List<Span>>, List<List<Span>>> filter, TraceCallback callback) {
+      if (callback == null) throw new NullPointerException("callback == null");
+      this.groupByTraceId = groupByTraceId;
+      this.filter = filter;
+      this.callback = callback;
+    }
+
+    @Override public void accept(List<Span> spans) {
+      List<List<Span>> traces = groupByTraceId.map(spans);
+      if (filter != null) traces = filter.map(traces);
+      for (List<Span> trace : traces) callback.onTrace(trace);
+    }
+
+    @Override public String toString() {
+      return "PassTraces{" + callback + "}";
+    }
+  }
+
   static final AccumulateAllResults<List<Span>> READ_SPANS = new ReadSpans();
 
   static final class ReadSpans extends AccumulateAllResults<List<Span>> {
@@ -0,0 +1,54 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the newest span timestamp written for each service, so that searches without a service
+ * name can query recently written services first.
+ *
+ * <p>This only knows about spans written by this process. Services written by other collectors,
+ * or before this process started, are ranked after known ones. Unless it {@linkplain #covers
+ * covers} all services searched, a ranking isn't meaningful. For example, on a query-only server it
+ * is empty.
+ */
+final class ServiceRecency {
+  // Guards against unbounded growth when service names are high cardinality by mistake.
+  static final int MAX_SERVICES = 10_000;
+
+  final ConcurrentHashMap<String, Long> timestamps = new ConcurrentHashMap<>();
+
+  void record(String service, long timestampMillis) {
+    Long existing = timestamps.get(service);
+    if (existing != null && existing >= timestampMillis) return; // usual case: no change
+    if (existing == null && timestamps.size() >= MAX_SERVICES) return;
+    timestamps.merge(service, timestampMillis, Math::max);
+  }
+
+  /** Returns true when each of the service names has a recorded timestamp. */
+  boolean covers(List<String> serviceNames) {
+    return !timestamps.isEmpty() && timestamps.keySet().containsAll(serviceNames);
+  }
+
+  /**
+   * Returns the service names, most recently written first. Unknown services retain their
+   * relative order, after known ones.
+   */
+  List<String> rank(List<String> serviceNames) {
+    List<String> result = new ArrayList<>(serviceNames);
+    if (timestamps.isEmpty()) return result;
+    result.sort((left, right) -> Long.compare( // stable, so unknown services retain order
+      timestamps.getOrDefault(right, Long.MIN_VALUE),
+      timestamps.getOrDefault(left, Long.MIN_VALUE)));
+    return result;
+  }
+
+  @Override public String toString() {
+    return "ServiceRecency{services=" + timestamps.size() + "}";
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra;
+
+/**
+ * Reports how span and index rows are written. Rows inserted into the same partition are sent
+ * together as an unlogged batch, and writes beyond {@link
+ * CassandraStorage.Builder#maxInFlightWrites(int)} wait for others to complete.
+ *
+ * @since 3.5
+ */
+public interface WriteMetrics {
+  WriteMetrics NOOP_METRICS = new WriteMetrics() {
+    @Override public void recordBatch(int statements) {
+    }
+
+    @Override public void updateWrites(int inFlight, int queued) {
+    }
+
+    @Override public String toString() {
+      return "NoOpWriteMetrics";
+    }
+  };
+
+  /** Records the count of statements in an unlogged batch, each inserting into one partition. */
+  void recordBatch(int statements);
+
+  /**
+   * Called when the count of writes executing or waiting changes. Only called when {@link
+   * CassandraStorage.Builder#maxInFlightWrites(int)} is positive.
+   */
+  void updateWrites(int inFlight, int queued);
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import zipkin2.Call;
+import zipkin2.Callback;
+
+/**
+ * Concatenates results of calls in their order, with at most {@code window} calls in flight at the
+ * same time. The first error fails the call, and no further calls are started.
+ *
+ * <p>Unlike {@link zipkin2.internal.AggregateCall}, this doesn't start all calls at once. This is
+ * used when there are many calls, such as one per partition, which could otherwise overwhelm the
+ * cluster or the connection pool.
+ */
+public final class AggregateIntoListWindowed<T> extends Call.Base<List<T>> {
+  final List<Call<List<T>>> calls;
+  final int window;
+  volatile Aggregation aggregation;
+
+  public AggregateIntoListWindowed(List<Call<List<T>>> calls, int window) {
+    assert calls.size() > 1 : "do not create single-element aggregates";
+    if (window <= 0) throw new IllegalArgumentException("window <= 0");
+    this.calls = calls;
+    this.window = window;
+  }
+
+  @Override protected List<T> doExecute() throws IOException {
+    List<T> result = new ArrayList<>();
+    for (Call<List<T>> call : calls) result.addAll(call.execute());
+    return result;
+  }
+
+  @Override protected void doEnqueue(Callback<List<T>> callback) {
+    Aggregation aggregation = this.aggregation = new Aggregation(callback);
+    aggregation.start();
+  }
+
+  @Override protected void doCancel() {
+    Aggregation aggregation = this.aggregation;
+    if (aggregation != null) aggregation.cancel();
+  }
+
+  final class Aggregation {
+    final Callback<List<T>> callback;
+    final List<T>[] results;
+    int next, inFlight;
+    Throwable error;
+    boolean canceled, done;
+
+    @SuppressWarnings("unchecked")
+    Aggregation(Callback<List<T>> callback) {
+      this.callback = callback;
+      this.results = new List[calls.size()];
+    }
+
+    synchronized void start() {
+      for (int i = 0; i < window; i++) startNext();
+    }
+
+    synchronized void cancel() {
+      canceled = true;
+      for (int i = 0; i < next; i++) calls.get(i).cancel();
+    }
+
+    void startNext() {
+      if (canceled || error != null || next == calls.size()) return;
+      int index = next++;
+      inFlight++;
+      calls.get(index).enqueue(new Callback<List<T>>() {
+        @Override public void onSuccess(List<T> value) {
+          onResult(index, value, null);
+        }
+
+        @Override public void onError(Throwable t) {
+          onResult(index, null, t);
+        }
+      });
+    }
+
+    synchronized void onResult(int index, List<T> value, Throwable t) {
+      inFlight--;
+      if (t != null) {
+        if (error == null) error = t;
+      } else {
+        results[index] = value;
+      }
+      startNext();
+      if (done || inFlight > 0) return;
+      done = true;
+      if (error == null && next < calls.size()) error = new IOException("Canceled");
+      if (error != null) {
+        callback.onError(error);
+        return;
+      }
+      List<T> result = new ArrayList<>();
+      for (List<T> list : results) result.addAll(list);
+      callback.onSuccess(result);
+    }
+  }
+
+  @Override public AggregateIntoListWindowed<T> clone() {
+    List<Call<List<T>>> result = new ArrayList<>(calls.size());
+    for (Call<List<T>> call : calls) result.add(call.clone());
+    return new AggregateIntoListWindowed<>(result, window);
+  }
+
+  @Override public String toString() {
+    return "AggregateIntoListWindowed{window=" + window + ", calls=" + calls + "}";
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many requests a session executes at the same time. Requests over the limit wait until
+ * others complete, and at most as many more can wait. Beyond that, requests are rejected with
+ * {@link RejectedExecutionException}, which is considered over capacity.
+ *
+ * <p>Without a limit, a large message can send thousands of requests at once, exhausting the
+ * connection pool and failing most of them with {@code BusyConnectionException}.
+ */
+public final class InFlightLimiter {
+  /** Listens to changes in the count of requests executing or waiting. */
+  public interface Listener {
+    void onChange(int inFlight, int queued);
+  }
+
+  static final InFlightLimiter UNLIMITED = new InFlightLimiter(0, (inFlight, queued) -> {
+  });
+
+  /** Returns a limiter which executes requests immediately when {@code maxInFlight} is zero. */
+  public static InFlightLimiter create(int maxInFlight, Listener listener) {
+    if (maxInFlight < 0) throw new IllegalArgumentException("maxInFlight < 0");
+    if (listener == null) throw new NullPointerException("listener == null");
+    return maxInFlight == 0 ? UNLIMITED : new InFlightLimiter(maxInFlight, listener);
+  }
+
+  final int maxInFlight;
+  final Listener listener;
+  final AtomicInteger inFlight = new AtomicInteger(), queued = new AtomicInteger();
+  final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+
+  InFlightLimiter(int maxInFlight, Listener listener) {
+    this.maxInFlight = maxInFlight;
+    this.listener = listener;
+  }
+
+  /** Executes the request now if under the limit, or after others complete. */
+  public CompletionStage<AsyncResultSet> execute(
+    Supplier<CompletionStage<AsyncResultSet>> request) {
+    if (maxInFlight == 0) return request.get();
+    if (tryAcquire()) return run(request);
+
+    if (queued.incrementAndGet() > maxInFlight) {
+      queued.decrementAndGet();
+      throw new RejectedExecutionException(
+        "Rejected execution: more than " + maxInFlight + " writes are waiting");
+    }
+    Pending pending = new Pending(request);
+    queue.add(pending);
+    notifyListener();
+    drain(); // in case requests completed before the above was queued
+    return pending.result;
+  }
+
+  CompletionStage<AsyncResultSet> run(Supplier<CompletionStage<AsyncResultSet>> request) {
+    notifyListener();
+    CompletionStage<AsyncResultSet> result;
+    try {
+      result = request.get();
+    } catch (Throwable t) {
+      release();
+      throw t;
+    }
+    result.whenComplete((r, t) -> release());
+    return result;
+  }
+
+  void release() {
+    inFlight.decrementAndGet();
+    drain();
+    notifyListener();
+  }
+
+  /** Runs waiting requests while under the limit. */
+  void drain() {
+    while (!queue.isEmpty() && tryAcquire()) {
+      Pending pending = queue.poll();
+      if (pending == null) { // another thread won the race
+        inFlight.decrementAndGet();
+        continue;
+      }
+      queued.decrementAndGet();
+      try {
+        run(pending.request).whenComplete(pending);
+      } catch (Throwable t) {
+        pending.result.completeExceptionally(t);
+      }
+    }
+  }
+
+  boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= maxInFlight) return false;
+      if (inFlight.compareAndSet(current, current + 1)) return true;
+    }
+  }
+
+  void notifyListener() {
+    listener.onChange(inFlight.get(), queued.get());
+  }
+
+  static final class Pending implements BiConsumer<AsyncResultSet, Throwable> {
+    final Supplier<CompletionStage<AsyncResultSet>> request;
+    final CompletableFuture<AsyncResultSet> result = new CompletableFuture<>();
+
+    Pending(Supplier<CompletionStage<AsyncResultSet>> request) {
+      this.request = request;
+    }
+
+    @Override public void accept(AsyncResultSet value, Throwable error) {
+      if (error != null) {
+        result.completeExceptionally(error);
+      } else {
+        result.complete(value);
+      }
+    }
+  }
+
+  @Override public String toString() {
+    return "InFlightLimiter{maxInFlight=" + maxInFlight + "}";
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import zipkin2.Call;
+import zipkin2.internal.AggregateCall;
+
+/**
+ * Intersects trace IDs from index queries, returning up to {@code limit} of them mapped to their
+ * timestamp, newest first.
+ *
+ * <p>Each input maps trace IDs to the timestamp of the index row that matched. The intersection is
+ * a k-way merge of the inputs, newest timestamp first. A trace ID is returned when it was seen in
+ * all inputs, so its timestamp is the oldest of its matches.
+ *
+ * <p>This only fixes the order of results. Inputs are still read completely and sorted before the
+ * merge, so stopping at {@code limit} saves no queries. As before, index queries over-fetch rows
+ * per {@code indexFetchMultiplier}, as their rows aren't distinct per trace.
+ */
+public final class IntersectTraceIds extends AggregateCall<Map<String, Long>, Map<String, Long>> {
+  final int limit;
+  final List<Map<String, Long>> inputs = new ArrayList<>();
+
+  public IntersectTraceIds(List<Call<Map<String, Long>>> calls, int limit) {
+    super(calls);
+    if (limit <= 0) throw new IllegalArgumentException("limit <= 0");
+    this.limit = limit;
+  }
+
+  @Override protected Map<String, Long> newOutput() {
+    return new LinkedHashMap<>();
+  }
+
+  @Override protected void append(Map<String, Long> input, Map<String, Long> output) {
+    inputs.add(input);
+  }
+
+  @Override protected Map<String, Long> finish(Map<String, Long> output) {
+    intersect(inputs, limit, output);
+    return output;
+  }
+
+  static void intersect(List<Map<String, Long>> inputs, int limit, Map<String, Long> output) {
+    int inputCount = inputs.size();
+    PriorityQueue<Cursor> cursors = new PriorityQueue<>(inputCount);
+    for (Map<String, Long> input : inputs) {
+      if (input.isEmpty()) return; // nothing can intersect with an empty input
+      cursors.add(new Cursor(input));
+    }
+
+    // Counts how many inputs include a trace ID. Inputs have distinct keys, so a trace ID is in all
+    // inputs when its count reaches the input count.
+    Map<String, Integer> counts = new HashMap<>();
+    while (!cursors.isEmpty()) {
+      Cursor cursor = cursors.poll();
+      Map.Entry<String, Long> entry = cursor.current();
+      if (counts.merge(entry.getKey(), 1, Integer::sum) == inputCount) {
+        output.put(entry.getKey(), entry.getValue());
+        if (output.size() == limit) return;
+      }
+      if (cursor.advance()) cursors.add(cursor);
+    }
+  }
+
+  /** Iterates over an input, newest timestamp first. */
+  static final class Cursor implements Comparable<Cursor> {
+    final Map.Entry<String, Long>[] entries;
+    int index;
+
+    @SuppressWarnings("unchecked") Cursor(Map<String, Long> input) {
+      // Results are usually in timestamp order already, except when aggregated across partitions.
+      entries = input.entrySet().toArray(new Map.Entry[0]);
+      Arrays.sort(entries, (left, right) -> Long.compare(right.getValue(), left.getValue()));
+    }
+
+    Map.Entry<String, Long> current() {
+      return entries[index];
+    }
+
+    boolean advance() {
+      return ++index < entries.length;
+    }
+
+    @Override public int compareTo(Cursor that) { // newest first
+      return Long.compare(that.current().getValue(), current().getValue());
+    }
+  }
+
+  @Override public IntersectTraceIds clone() {
+    return new IntersectTraceIds(cloneCalls(), limit);
+  }
+
+  @Override public String toString() {
+    return "IntersectTraceIds{limit=" + limit + ", calls=" + delegate() + "}";
+  }
+}
@@ -13,6 +13,7 @@ import com.datastax.oss.driver.api.core.servererrors.QueryConsistencyException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import zipkin2.Call;
@@ -116,6 +117,7 @@ public abstract class ResultSetFutureCall<V> extends Call.Base<V>
   public static boolean isOverCapacity(Throwable e) {
     return e instanceof QueryConsistencyException ||
       e instanceof BusyConnectionException ||
-      e instanceof RequestThrottlingException;
+      e instanceof RequestThrottlingException ||
+      e instanceof RejectedExecutionException; // from InFlightLimiter
   }
 }
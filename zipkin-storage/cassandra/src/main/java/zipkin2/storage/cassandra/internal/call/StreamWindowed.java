@@ -0,0 +1,189 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import zipkin2.Call;
+import zipkin2.Callback;
+
+import static zipkin2.Call.propagateIfFatal;
+
+/**
+ * Passes results of calls to a consumer in their order, as soon as they and all before them
+ * completed. At most {@code window} calls are in flight or waiting to be passed at the same time.
+ * The first error fails the call, and no further calls are started.
+ *
+ * <p>Unlike {@link AggregateIntoListWindowed}, results aren't held until the last completes. When
+ * executed, the consumer is invoked on the calling thread, so it may block.
+ */
+public final class StreamWindowed<T> extends Call.Base<Void> {
+  final List<Call<T>> calls;
+  final int window;
+  final Consumer<T> consumer;
+  volatile Streaming streaming;
+
+  public StreamWindowed(List<Call<T>> calls, int window, Consumer<T> consumer) {
+    if (window <= 0) throw new IllegalArgumentException("window <= 0");
+    if (consumer == null) throw new NullPointerException("consumer == null");
+    this.calls = calls;
+    this.window = window;
+    this.consumer = consumer;
+  }
+
+  @Override protected Void doExecute() throws IOException {
+    ArrayDeque<CompletableFuture<T>> pending = new ArrayDeque<>(window);
+    int next = 0;
+    boolean success = false;
+    try {
+      while (next < calls.size() && pending.size() < window) {
+        pending.add(start(calls.get(next++)));
+      }
+      while (!pending.isEmpty()) {
+        T result = await(pending.poll());
+        if (next < calls.size()) pending.add(start(calls.get(next++)));
+        consumer.accept(result);
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        for (int i = 0; i < next; i++) calls.get(i).cancel();
+      }
+    }
+    return null;
+  }
+
+  static <T> CompletableFuture<T> start(Call<T> call) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    call.enqueue(new Callback<T>() {
+      @Override public void onSuccess(T value) {
+        result.complete(value);
+      }
+
+      @Override public void onError(Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    return result;
+  }
+
+  static <T> T await(CompletableFuture<T> result) throws IOException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  @Override protected void doEnqueue(Callback<Void> callback) {
+    Streaming streaming = this.streaming = new Streaming(callback);
+    streaming.start();
+  }
+
+  @Override protected void doCancel() {
+    Streaming streaming = this.streaming;
+    if (streaming != null) streaming.cancel();
+  }
+
+  final class Streaming {
+    final Callback<Void> callback;
+    final T[] results; // cleared once passed to the consumer
+    int next, passed;
+    boolean canceled, done;
+
+    @SuppressWarnings("unchecked")
+    Streaming(Callback<Void> callback) {
+      this.callback = callback;
+      this.results = (T[]) new Object[calls.size()];
+    }
+
+    synchronized void start() {
+      if (calls.isEmpty()) {
+        done = true;
+        callback.onSuccess(null);
+        return;
+      }
+      for (int i = 0; i < window; i++) startNext();
+    }
+
+    synchronized void cancel() {
+      canceled = true;
+      for (int i = 0; i < next; i++) calls.get(i).cancel();
+    }
+
+    void startNext() {
+      if (done || next == calls.size()) return;
+      if (canceled) {
+        fail(new IOException("Canceled"));
+        return;
+      }
+      int index = next++;
+      calls.get(index).enqueue(new Callback<T>() {
+        @Override public void onSuccess(T value) {
+          onResult(index, value, null);
+        }
+
+        @Override public void onError(Throwable t) {
+          onResult(index, null, t);
+        }
+      });
+    }
+
+    synchronized void onResult(int index, T value, Throwable t) {
+      if (done) return;
+      if (t != null) {
+        fail(t);
+        return;
+      }
+      results[index] = value;
+      // A call that completes synchronously re-enters here from startNext, so re-check done
+      while (!done && passed < next && results[passed] != null) {
+        T result = results[passed];
+        results[passed++] = null;
+        try {
+          consumer.accept(result);
+        } catch (Throwable e) {
+          propagateIfFatal(e);
+          fail(e);
+          return;
+        }
+        startNext();
+      }
+      if (!done && passed == calls.size()) {
+        done = true;
+        callback.onSuccess(null);
+      }
+    }
+
+    void fail(Throwable t) {
+      done = true;
+      for (int i = passed; i < next; i++) calls.get(i).cancel();
+      callback.onError(t);
+    }
+  }
+
+  @Override public StreamWindowed<T> clone() {
+    List<Call<T>> result = new ArrayList<>(calls.size());
+    for (Call<T> call : calls) result.add(call.clone());
+    return new StreamWindowed<>(result, window, consumer);
+  }
+
+  @Override public String toString() {
+    return "StreamWindowed{window=" + window + ", consumer=" + consumer + ", calls=" + calls + "}";
+  }
+}
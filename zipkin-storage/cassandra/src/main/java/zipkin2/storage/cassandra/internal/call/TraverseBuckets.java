@@ -0,0 +1,160 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import zipkin2.Call;
+import zipkin2.Callback;
+
+/**
+ * Aggregates calls for time buckets, newest first, stopping once results include {@code limit}
+ * distinct keys. At most {@code parallelism} calls are in flight at the same time.
+ *
+ * <p>Calls are only started in order, so the results are always those of the newest buckets.
+ * Calls in flight when the limit is reached are allowed to complete, as they may be newer than
+ * the ones which satisfied the limit.
+ *
+ * <p>Within a bucket, calls can be ordered by other preference, such as services most recently
+ * written first.
+ *
+ * <p>When calls return the same key, the value of the first call is kept, unless a {@code merge}
+ * function is supplied. For example, {@code Math::max} keeps the newest timestamp of calls which
+ * aren't ordered by time.
+ */
+public final class TraverseBuckets<K, V> extends Call.Base<Map<K, V>> {
+  final List<Call<Map<K, V>>> newestFirst;
+  final int limit, parallelism;
+  final BinaryOperator<V> merge;
+  volatile Traversal traversal;
+
+  public TraverseBuckets(List<Call<Map<K, V>>> newestFirst, int limit, int parallelism) {
+    this(newestFirst, limit, parallelism, (first, later) -> first);
+  }
+
+  public TraverseBuckets(List<Call<Map<K, V>>> newestFirst, int limit, int parallelism,
+    BinaryOperator<V> merge) {
+    assert !newestFirst.isEmpty() : "do not create empty traversals";
+    if (limit <= 0) throw new IllegalArgumentException("limit <= 0");
+    if (parallelism <= 0) throw new IllegalArgumentException("parallelism <= 0");
+    if (merge == null) throw new NullPointerException("merge == null");
+    this.newestFirst = newestFirst;
+    this.limit = limit;
+    this.parallelism = parallelism;
+    this.merge = merge;
+  }
+
+  @Override protected Map<K, V> doExecute() throws IOException {
+    Map<K, V> result = new LinkedHashMap<>();
+    for (int i = 0, length = newestFirst.size(); i < length && result.size() < limit; i++) {
+      for (Map.Entry<K, V> entry : newestFirst.get(i).execute().entrySet()) {
+        result.merge(entry.getKey(), entry.getValue(), merge);
+      }
+    }
+    return result;
+  }
+
+  @Override protected void doEnqueue(Callback<Map<K, V>> callback) {
+    Traversal traversal = this.traversal = new Traversal(callback);
+    traversal.start();
+  }
+
+  @Override protected void doCancel() {
+    Traversal traversal = this.traversal;
+    if (traversal != null) traversal.cancel();
+  }
+
+  final class Traversal {
+    final Callback<Map<K, V>> callback;
+    final Map<K, V>[] results;
+    final Set<K> found = new HashSet<>();
+    final List<Call<Map<K, V>>> started = new ArrayList<>();
+    int next, inFlight;
+    Throwable error;
+    boolean canceled, done;
+
+    @SuppressWarnings("unchecked")
+    Traversal(Callback<Map<K, V>> callback) {
+      this.callback = callback;
+      this.results = new Map[newestFirst.size()];
+    }
+
+    synchronized void start() {
+      for (int i = 0; i < parallelism; i++) startNext();
+      maybeFinish();
+    }
+
+    synchronized void cancel() {
+      canceled = true;
+      for (Call<Map<K, V>> call : started) call.cancel();
+    }
+
+    /** Starts the call for the next oldest bucket, unless there's no reason to. */
+    void startNext() {
+      if (canceled || error != null || found.size() >= limit) return;
+      if (next == newestFirst.size()) return;
+      int index = next++;
+      Call<Map<K, V>> call = newestFirst.get(index);
+      started.add(call);
+      inFlight++;
+      call.enqueue(new Callback<Map<K, V>>() {
+        @Override public void onSuccess(Map<K, V> value) {
+          onResult(index, value, null);
+        }
+
+        @Override public void onError(Throwable t) {
+          onResult(index, null, t);
+        }
+      });
+    }
+
+    synchronized void onResult(int index, Map<K, V> value, Throwable t) {
+      inFlight--;
+      if (t != null) {
+        if (error == null) error = t;
+      } else {
+        results[index] = value;
+        found.addAll(value.keySet());
+      }
+      startNext();
+      maybeFinish();
+    }
+
+    void maybeFinish() {
+      if (done || inFlight > 0) return;
+      done = true;
+      if (error != null) {
+        callback.onError(error);
+        return;
+      }
+      // Merge in bucket order, so that by default the newest timestamp of a key is kept.
+      Map<K, V> result = new LinkedHashMap<>();
+      for (Map<K, V> bucket : results) {
+        if (bucket == null) break; // not started
+        for (Map.Entry<K, V> entry : bucket.entrySet()) {
+          result.merge(entry.getKey(), entry.getValue(), merge);
+        }
+      }
+      callback.onSuccess(result);
+    }
+  }
+
+  @Override public TraverseBuckets<K, V> clone() {
+    List<Call<Map<K, V>>> calls = new ArrayList<>(newestFirst.size());
+    for (Call<Map<K, V>> call : newestFirst) calls.add(call.clone());
+    return new TraverseBuckets<>(calls, limit, parallelism, merge);
+  }
+
+  @Override public String toString() {
+    return "TraverseBuckets{limit=" + limit + ", parallelism=" + parallelism
+      + ", calls=" + newestFirst + "}";
+  }
+}
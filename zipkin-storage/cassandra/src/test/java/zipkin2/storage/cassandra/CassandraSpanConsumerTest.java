@@ -5,6 +5,7 @@
 package zipkin2.storage.cassandra;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,6 +13,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import zipkin2.Call;
+import zipkin2.DependencyLink;
 import zipkin2.Span;
 import zipkin2.internal.AggregateCall;
 import zipkin2.storage.cassandra.internal.call.InsertEntry;
@@ -28,6 +30,7 @@ import static zipkin2.TestObjects.TODAY;
 class CassandraSpanConsumerTest {
   @Mock CqlSession session;
   Schema.Metadata metadata = new Schema.Metadata(true, true);
+  ServiceRecency serviceRecency = new ServiceRecency();
   CassandraSpanConsumer consumer;
 
   @BeforeEach void setup() {
@@ -49,6 +52,21 @@ class CassandraSpanConsumerTest {
     assertThat(call).hasSameClassAs(Call.create(null));
   }
 
+  @Test void recordsServiceRecency() {
+    Span older = spanWithoutAnnotationsOrTags.toBuilder().id("2")
+      .timestamp((TODAY - 1000L) * 1000L).build();
+
+    consumer.accept(List.of(spanWithoutAnnotationsOrTags, older));
+
+    assertThat(serviceRecency.timestamps).containsOnly(entry(FRONTEND.serviceName(), TODAY));
+  }
+
+  @Test void serviceRecency_notRecordedWithoutTimestamp() {
+    consumer.accept(List.of(spanWithoutAnnotationsOrTags.toBuilder().timestamp(0L).build()));
+
+    assertThat(serviceRecency.timestamps).isEmpty();
+  }
+
   @Test void doesntSetTraceIdHigh_128() {
     Span span = spanWithoutAnnotationsOrTags.toBuilder()
       .traceId("77fcac3d4c5be8d2a037812820c65f28")
@@ -219,9 +237,81 @@ class CassandraSpanConsumerTest {
       .isInstanceOf(ResultSetFutureCall.class);
   }
 
+  @Test void spansOfSameTrace_batched() {
+    Span span1 = spanWithoutAnnotationsOrTags;
+    Span span2 = span1.toBuilder().id("2").build();
+
+    AggregateCall<?, Void> call = (AggregateCall<?, Void>) consumer.accept(List.of(span1, span2));
+    assertThat(call.delegate())
+      .filteredOn(c -> c instanceof InsertBatch)
+      .flatExtracting("inserts")
+      .filteredOn(c -> c instanceof InsertSpan)
+      .extracting("input.id")
+      .containsExactly(span1.id(), span2.id());
+  }
+
+  @Test void spansOfDifferentTraces_notBatched() {
+    consumer = spanConsumer(CassandraStorage.newBuilder().searchEnabled(false));
+
+    Span span1 = spanWithoutAnnotationsOrTags;
+    Span span2 = span1.toBuilder().traceId("b").build();
+
+    AggregateCall<?, Void> call = (AggregateCall<?, Void>) consumer.accept(List.of(span1, span2));
+    assertThat(call.delegate())
+      .hasOnlyElementsOfType(InsertSpan.class)
+      .hasSize(2);
+  }
+
+  /** Spans of the same service and name in the same bucket are in the same index partition. */
+  @Test void traceByServiceSpan_batched() {
+    Span span1 = spanWithoutAnnotationsOrTags;
+    Span span2 = span1.toBuilder().traceId("b").build();
+
+    AggregateCall<?, Void> call = (AggregateCall<?, Void>) consumer.accept(List.of(span1, span2));
+    assertThat(call.delegate())
+      .filteredOn(c -> c instanceof InsertBatch)
+      .extracting(c -> ((InsertBatch) c).inserts.size())
+      .containsExactly(2, 2); // one batch for the span name, and one for the empty name
+  }
+
+  @Test void batches_splitAtMaxStatements() {
+    consumer = spanConsumer(CassandraStorage.newBuilder().searchEnabled(false));
+
+    List<Span> spans = new ArrayList<>();
+    for (int i = 1; i <= InsertBatch.MAX_STATEMENTS + 1; i++) {
+      spans.add(spanWithoutAnnotationsOrTags.toBuilder().id(i).build());
+    }
+
+    AggregateCall<?, Void> call = (AggregateCall<?, Void>) consumer.accept(spans);
+    assertThat(call.delegate()).hasSize(2);
+    assertThat(((InsertBatch) call.delegate().get(0)).inserts)
+      .hasSize(InsertBatch.MAX_STATEMENTS);
+    assertThat(call.delegate().get(1))
+      .isInstanceOf(InsertSpan.class);
+  }
+
+  @Test void dependencyLinks_emptyCall() {
+    Call<Void> call = consumer.acceptDependencyLinks(List.of(), TODAY);
+    assertThat(call).hasSameClassAs(Call.create(null));
+  }
+
+  @Test void dependencyLinks_batched() {
+    List<DependencyLink> links = List.of(
+      DependencyLink.newBuilder().parent("frontend").child("backend").callCount(2).build(),
+      DependencyLink.newBuilder().parent("backend").child("db").callCount(1).build());
+
+    assertThat(consumer.acceptDependencyLinks(links, TODAY))
+      .isInstanceOf(InsertBatch.class)
+      .extracting("inserts")
+      .asList()
+      .extracting("link")
+      .containsExactlyElementsOf(links);
+  }
+
   CassandraSpanConsumer spanConsumer(CassandraStorage.Builder builder) {
     return new CassandraSpanConsumer(session, metadata, builder.strictTraceId,
       builder.searchEnabled, builder.autocompleteKeys, builder.autocompleteTtl,
-      builder.autocompleteCardinality);
+      builder.autocompleteCardinality, builder.maxInFlightWrites, builder.writeMetrics,
+      serviceRecency);
   }
 }
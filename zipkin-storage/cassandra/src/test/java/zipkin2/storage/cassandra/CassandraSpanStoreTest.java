@@ -6,6 +6,7 @@ package zipkin2.storage.cassandra;
 
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
+import com.datastax.oss.driver.api.core.uuid.Uuids;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,8 +19,10 @@ import zipkin2.Call;
 import zipkin2.Span;
 import zipkin2.storage.QueryRequest;
 import zipkin2.storage.cassandra.SelectTraceIdsFromServiceSpan.Factory.FlatMapServicesToInputs;
+import zipkin2.storage.cassandra.internal.call.AggregateIntoMap;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static zipkin2.TestObjects.DAY;
 import static zipkin2.TestObjects.TODAY;
 
@@ -31,6 +34,7 @@ class CassandraSpanStoreTest {
   @Mock CqlSession session;
   Schema.Metadata metadata = new Schema.Metadata(true, true);
   @Mock KeyspaceMetadata keyspace;
+  ServiceRecency serviceRecency = new ServiceRecency();
   CassandraSpanStore spanStore;
 
   @BeforeEach void setup() {
@@ -119,10 +123,193 @@ class CassandraSpanStoreTest {
       .contains("service=frontend, span=get,");
   }
 
+  @Test void newBucketedTraceIdCall_multipleDays_traversesBuckets() {
+    Call<Map<String, Long>> call = spanStore.newBucketedTraceIdCall(
+      queryBuilder.serviceName("frontend").build(), weekUntilToday(), 15, 5);
+
+    assertThat(call.toString())
+      .startsWith("TraverseBuckets{limit=5, parallelism=2,")
+      .doesNotContain(AggregateIntoMap.class.getSimpleName());
+  }
+
+  @Test void newBucketedTraceIdCall_multipleDays_newestBucketFirst() {
+    Call<Map<String, Long>> call = spanStore.newBucketedTraceIdCall(
+      queryBuilder.serviceName("frontend").build(), weekUntilToday(), 15, 5);
+
+    int todayBucket = CassandraUtil.durationIndexBucket(TODAY * 1000);
+    String calls = call.toString();
+    assertThat(calls.indexOf("bucket=" + todayBucket + ","))
+      .isPositive()
+      .isLessThan(calls.indexOf("bucket=" + (todayBucket - 1) + ","));
+    assertThat(calls).contains("bucket=" + (todayBucket - 7) + ",");
+  }
+
+  /** Spans matching the span name and remote service of a trace can be in different buckets. */
+  @Test void newBucketedTraceIdCall_multipleDays_intersectsAcrossBuckets() {
+    Call<Map<String, Long>> call = spanStore.newBucketedTraceIdCall(
+      queryBuilder.serviceName("frontend").remoteServiceName("backend").spanName("get").build(),
+      weekUntilToday(), 15, 5);
+
+    assertThat(call.toString())
+      .startsWith("IntersectTraceIds{limit=5, calls=[TraverseBuckets{limit=2147483647,")
+      .containsSubsequence(
+        "SelectTraceIdsFromServiceSpan{", "TraverseBuckets{limit=2147483647,",
+        "SelectTraceIdsFromServiceRemoteService{");
+  }
+
+  @Test void newBucketedTraceIdCall_multipleDays_intersectsAcrossBucketsOfServices() {
+    Call<Map<String, Long>> call = spanStore.newBucketedTraceIdCall(
+      queryBuilder.remoteServiceName("backend").spanName("get").build(), weekUntilToday(), 15, 5);
+
+    assertThat(call.toString())
+      .contains("AggregateFlatMapper{FlatMapServicesToBuckets{")
+      .containsSubsequence("span=get", "remote_service=backend");
+  }
+
+  @Test void newBucketedTraceIdCall_multipleDays_fansOutAgainstServicesPerBucket() {
+    Call<Map<String, Long>> call =
+      spanStore.newBucketedTraceIdCall(queryBuilder.build(), weekUntilToday(), 15, 5);
+
+    assertThat(call.toString())
+      .contains("FlatMapServicesToBuckets{[FlatMapServicesToInputs{");
+  }
+
+  @Test void flatMapServicesToBuckets_recentServicesFirst() {
+    serviceRecency.record("backend", TODAY - 1);
+    serviceRecency.record("frontend", TODAY);
+
+    Call<Map<String, Long>> call = servicesToBuckets(5).map(List.of("backend", "frontend"));
+
+    assertThat(call.toString())
+      .startsWith("TraverseBuckets{limit=5, parallelism=16,")
+      .containsSubsequence("service=frontend,", "service=backend,");
+  }
+
+  /** A query-only server has no recency, so ranking services would be alphabetical. */
+  @Test void flatMapServicesToBuckets_noRecency_queriesAllServicesOfBucket() throws Exception {
+    spanStore = spanStore(CassandraStorage.newBuilder().serviceParallelism(1));
+    Map<String, Map<String, Long>> today = Map.of(
+      "a", Map.of("1", TODAY - 10),
+      "b", Map.of("2", TODAY - 20),
+      "c", Map.of("1", TODAY - 1, "3", TODAY - 5));
+    Map<String, Map<String, Long>> yesterday = Map.of(
+      "a", Map.of("4", TODAY - DAY),
+      "b", Map.of(),
+      "c", Map.of());
+
+    Map<String, Long> traceIds = spanStore.new FlatMapServicesToBuckets(List.of(
+      services -> Call.create(today.get(services.get(0))),
+      services -> Call.create(yesterday.get(services.get(0)))
+    ), 2).map(List.of("a", "b", "c")).execute();
+
+    // "c" has the newest traces, even though "a" and "b" alone satisfy the limit. As the newest
+    // bucket satisfied the limit, the older one isn't read.
+    assertThat(traceIds).containsOnly(
+      entry("1", TODAY - 1), // newest timestamp across services
+      entry("2", TODAY - 20),
+      entry("3", TODAY - 5));
+  }
+
+  @Test void flatMapServicesToBuckets_partialRecency_queriesAllServicesOfBucket() {
+    serviceRecency.record("frontend", TODAY);
+
+    Call<Map<String, Long>> call = servicesToBuckets(5).map(List.of("backend", "frontend"));
+
+    assertThat(call.toString())
+      .startsWith("TraverseBuckets{limit=2147483647, parallelism=16,")
+      .containsSubsequence("service=backend,", "service=frontend,");
+  }
+
+  @Test void flatMapServicesToBuckets_singleService() {
+    Call<Map<String, Long>> call = servicesToBuckets(5).map(List.of("frontend"));
+
+    assertThat(call.toString()).startsWith("FlatMapping{call=SelectTraceIdsFromServiceSpan{");
+  }
+
+  @Test void flatMapServicesToBuckets_noServices() {
+    assertThat(servicesToBuckets(5).map(List.of())).hasToString("ConstantCall{value={}}");
+  }
+
+  CassandraSpanStore.FlatMapServicesToBuckets servicesToBuckets(int limit) {
+    SelectTraceIdsFromServiceSpan.Input input = spanStore.traceIdsFromServiceSpan.newInput(
+      "", "", CassandraUtil.durationIndexBucket(TODAY * 1000), null, null, weekUntilToday(), 15);
+    return spanStore.new FlatMapServicesToBuckets(
+      List.of(spanStore.traceIdsFromServiceSpan.newFlatMapper(List.of(input))), limit);
+  }
+
+  CassandraSpanStore.TimestampRange weekUntilToday() {
+    CassandraSpanStore.TimestampRange result = new CassandraSpanStore.TimestampRange();
+    result.startMillis = TODAY - 7 * DAY;
+    result.startUUID = Uuids.startOf(result.startMillis);
+    result.endMillis = TODAY;
+    result.endUUID = Uuids.endOf(result.endMillis);
+    return result;
+  }
+
+  @Test void getTraces_withTagAndSpanName_intersectsNewestTraceIds() {
+    Call<List<List<Span>>> call = spanStore.getTraces(queryBuilder.serviceName("frontend")
+      .annotationQuery(Map.of("environment", "production"))
+      .spanName("get").build());
+
+    assertThat(call.toString())
+      .contains("IntersectTraceIds{limit=5,")
+      .contains("mapper=TraceIdsSortedByDescTimestamp");
+  }
+
+  @Test void getTracesByIds_singleQuery() {
+    Call<List<List<Span>>> call = spanStore.getTraces(List.of("1", "2"));
+
+    assertThat(call.toString())
+      .contains("SelectFromSpan{trace_id=[0000000000000001, 0000000000000002], limit_=100000}");
+  }
+
+  @Test void getTracesByIds_traceReadParallelism_queryPerTrace() {
+    spanStore = spanStore(CassandraStorage.newBuilder().traceReadParallelism(4));
+
+    Call<List<List<Span>>> call = spanStore.getTraces(List.of("1", "2"));
+
+    assertThat(call.toString())
+      .contains("AggregateIntoListWindowed{window=4, calls=[")
+      .contains("SelectFromSpan{trace_id=[0000000000000001], limit_=100000}")
+      .contains("SelectFromSpan{trace_id=[0000000000000002], limit_=100000}");
+  }
+
+  @Test void getTracesByIds_traceReadParallelism_singleTrace() {
+    spanStore = spanStore(CassandraStorage.newBuilder().traceReadParallelism(4));
+
+    Call<List<List<Span>>> call = spanStore.getTraces(List.of("1"));
+
+    assertThat(call.toString()).doesNotContain("AggregateIntoListWindowed");
+  }
+
+  @Test void streamTracesByIds_traceReadParallelism_queryPerTrace() {
+    spanStore = spanStore(CassandraStorage.newBuilder().traceReadParallelism(4));
+
+    Call<Void> call = spanStore.streamTraces(List.of("1", "2"), trace -> {
+    });
+
+    assertThat(call.toString())
+      .contains("StreamWindowed{window=4, consumer=PassTraces{")
+      .contains("SelectFromSpan{trace_id=[0000000000000001], limit_=100000}")
+      .contains("SelectFromSpan{trace_id=[0000000000000002], limit_=100000}");
+  }
+
+  @Test void streamTraces_streamsSpansOfNewestTraceIds() {
+    Call<Void> call = spanStore.streamTraces(queryBuilder.serviceName("frontend").build(),
+      trace -> {
+      });
+
+    assertThat(call.toString())
+      .contains("mapper=TraceIdsSortedByDescTimestamp")
+      .contains("StreamSpansByTraceIds{limit=5}");
+  }
+
   @Test void searchDisabled_doesntMakeRemoteQueryRequests() {
     CassandraSpanStore spanStore = spanStore(CassandraStorage.newBuilder().searchEnabled(false));
 
     assertThat(spanStore.getTraces(queryBuilder.build())).hasToString("ConstantCall{value=[]}");
+    assertThat(spanStore.streamTraces(queryBuilder.build(), trace -> {
+    })).hasToString("ConstantCall{value=null}");
     assertThat(spanStore.getServiceNames()).hasToString("ConstantCall{value=[]}");
     assertThat(spanStore.getRemoteServiceNames("icecream")).hasToString("ConstantCall{value=[]}");
     assertThat(spanStore.getSpanNames("icecream")).hasToString("ConstantCall{value=[]}");
@@ -130,6 +317,7 @@ class CassandraSpanStoreTest {
 
   CassandraSpanStore spanStore(CassandraStorage.Builder builder) {
     return new CassandraSpanStore(session, metadata, keyspace, builder.maxTraceCols,
-      builder.indexFetchMultiplier, builder.strictTraceId, builder.searchEnabled);
+      builder.traceReadParallelism, builder.indexFetchMultiplier, builder.bucketParallelism, builder.serviceParallelism,
+      serviceRecency, builder.strictTraceId, builder.searchEnabled);
   }
 }
@@ -30,7 +30,10 @@ class CassandraStorageBuilderTest {
       b -> b.autocompleteTtl(0),
       b -> b.autocompleteCardinality(0),
       b -> b.maxTraceCols(0),
-      b -> b.indexFetchMultiplier(0)
+      b -> b.indexFetchMultiplier(0),
+      b -> b.bucketParallelism(0),
+      b -> b.traceReadParallelism(-1),
+      b -> b.maxInFlightWrites(-1)
     );
     badArguments.forEach(customizer ->
       assertThatThrownBy(() -> customizer.apply(builder))
@@ -44,7 +47,8 @@ class CassandraStorageBuilderTest {
       b -> b.autocompleteKeys(null),
       b -> b.contactPoints(null),
       b -> b.localDc(null),
-      b -> b.keyspace(null)
+      b -> b.keyspace(null),
+      b -> b.writeMetrics(null)
     );
     nullPointers.forEach(customizer ->
       assertThatThrownBy(() -> customizer.apply(builder))
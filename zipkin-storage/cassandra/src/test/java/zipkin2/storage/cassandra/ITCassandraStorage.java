@@ -17,6 +17,9 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import zipkin2.Span;
 import zipkin2.storage.StorageComponent.Builder;
 
+import static zipkin2.TestObjects.TODAY;
+import static zipkin2.TestObjects.newClientSpan;
+import static zipkin2.TestObjects.spanBuilder;
 import static zipkin2.storage.cassandra.InternalForTests.writeDependencyLinks;
 import static zipkin2.storage.cassandra.Schema.TABLE_AUTOCOMPLETE_TAGS;
 import static zipkin2.storage.cassandra.Schema.TABLE_SERVICE_REMOTE_SERVICES;
@@ -71,6 +74,46 @@ class ITCassandraStorage {
     @Override public void clear() {
       cassandra.clear(storage);
     }
+
+    /** Spans matching the span name and the remote service are indexed in different buckets. */
+    @Test void getTraces_spanNameAndRemoteServiceNameOnDifferentDays(TestInfo testInfo)
+      throws Exception {
+      String testSuffix = testSuffix(testInfo);
+      Span server = spanBuilder(testSuffix).kind(Span.Kind.SERVER).name("get").id(1L)
+        .timestamp((TODAY - 60_000L) * 1000L).build();
+      Span client = newClientSpan(testSuffix).toBuilder().traceId(server.traceId())
+        .parentId(1L).id(2L).timestamp((TODAY + 1L) * 1000L).build();
+      accept(server, client);
+
+      assertGetTracesReturns(requestBuilder()
+          .serviceName(server.localServiceName())
+          .spanName("get")
+          .remoteServiceName(client.remoteServiceName())
+          .build(),
+        List.of(server, client));
+    }
+  }
+
+  /** Runs the same tests, except spans of multiple traces are read with a query per trace. */
+  @Nested
+  class ITTracesTraceReadParallelism extends zipkin2.storage.ITTraces<CassandraStorage> {
+    @Override protected Builder newStorageBuilder(TestInfo testInfo) {
+      return cassandra.newStorageBuilder().traceReadParallelism(2);
+    }
+
+    @Override
+    @Test
+    @Disabled("No consumer-side span deduplication")
+    public void getTrace_deduplicates(TestInfo testInfo) {
+    }
+
+    @Override protected void blockWhileInFlight() {
+      CassandraContainer.blockWhileInFlight(storage);
+    }
+
+    @Override public void clear() {
+      cassandra.clear(storage);
+    }
   }
 
   @Nested
@@ -69,7 +69,8 @@ abstract class ITSpanConsumer extends ITStorage<CassandraStorage> {
     CassandraSpanConsumer withoutStrictTraceId = new CassandraSpanConsumer(
       storage.session(), storage.metadata(),
       false /* strictTraceId */, storage.searchEnabled,
-      storage.autocompleteKeys, storage.autocompleteTtl, storage.autocompleteCardinality
+      storage.autocompleteKeys, storage.autocompleteTtl, storage.autocompleteCardinality,
+      storage.maxInFlightWrites, storage.writeMetrics, storage.serviceRecency
     );
 
     // sanity check base case
@@ -0,0 +1,47 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class ServiceRecencyTest {
+  ServiceRecency recency = new ServiceRecency();
+
+  @Test void record_keepsNewest() {
+    recency.record("frontend", 2L);
+    recency.record("frontend", 1L);
+
+    assertThat(recency.timestamps).containsOnly(entry("frontend", 2L));
+  }
+
+  @Test void record_ignoresNewServicesOverMax() {
+    for (int i = 0; i < ServiceRecency.MAX_SERVICES; i++) recency.record("service" + i, 1L);
+
+    recency.record("frontend", 2L);
+    recency.record("service0", 2L); // existing services are still updated
+
+    assertThat(recency.timestamps)
+      .hasSize(ServiceRecency.MAX_SERVICES)
+      .doesNotContainKey("frontend")
+      .contains(entry("service0", 2L));
+  }
+
+  @Test void rank_mostRecentFirst_unknownRetainOrder() {
+    recency.record("db", 1L);
+    recency.record("frontend", 2L);
+
+    assertThat(recency.rank(List.of("a", "backend", "db", "frontend", "z")))
+      .containsExactly("frontend", "db", "a", "backend", "z");
+  }
+
+  @Test void rank_nothingRecorded() {
+    assertThat(recency.rank(List.of("frontend", "backend")))
+      .containsExactly("frontend", "backend");
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import zipkin2.Call;
+import zipkin2.Callback;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AggregateIntoListWindowedTest {
+  List<Pending> pending = new ArrayList<>();
+  AtomicReference<Object> result = new AtomicReference<>();
+  Callback<List<String>> callback = new Callback<>() {
+    @Override public void onSuccess(List<String> value) {
+      assertThat(result.getAndSet(value)).isNull();
+    }
+
+    @Override public void onError(Throwable t) {
+      assertThat(result.getAndSet(t)).isNull();
+    }
+  };
+
+  @Test void execute_concatenatesInOrder() throws Exception {
+    List<Call<List<String>>> calls =
+      List.of(Call.create(List.of("a", "b")), Call.create(List.of("c")));
+
+    assertThat(new AggregateIntoListWindowed<>(calls, 1).execute()).containsExactly("a", "b", "c");
+  }
+
+  @Test void enqueue_startsWindow() {
+    aggregate(2, "a", "b", "c").enqueue(callback);
+
+    assertThat(pending).extracting(p -> p.callback != null).containsExactly(true, true, false);
+  }
+
+  @Test void enqueue_startsNextOnCompletion_resultInCallOrder() {
+    aggregate(2, "a", "b", "c").enqueue(callback);
+
+    pending.get(1).complete();
+    assertThat(pending.get(2).callback).isNotNull();
+
+    pending.get(2).complete();
+    assertThat(result.get()).isNull(); // first is still in flight
+
+    pending.get(0).complete();
+    assertThat(result.get()).isEqualTo(List.of("a", "b", "c"));
+  }
+
+  @Test void enqueue_errorStopsStartingCalls() {
+    aggregate(1, "a", "b").enqueue(callback);
+
+    IllegalStateException error = new IllegalStateException();
+    pending.get(0).callback.onError(error);
+
+    assertThat(pending.get(1).callback).isNull();
+    assertThat(result.get()).isSameAs(error);
+  }
+
+  @Test void cancel_cancelsStarted() {
+    AggregateIntoListWindowed<String> aggregate = aggregate(1, "a", "b");
+    aggregate.enqueue(callback);
+
+    aggregate.cancel();
+
+    assertThat(pending.get(0).isCanceled()).isTrue();
+    assertThat(pending.get(1).callback).isNull();
+  }
+
+  AggregateIntoListWindowed<String> aggregate(int window, String... values) {
+    for (String value : values) pending.add(new Pending(value));
+    return new AggregateIntoListWindowed<>(new ArrayList<>(pending), window);
+  }
+
+  static final class Pending extends Call.Base<List<String>> {
+    final String value;
+    Callback<List<String>> callback;
+
+    Pending(String value) {
+      this.value = value;
+    }
+
+    void complete() {
+      callback.onSuccess(List.of(value));
+    }
+
+    @Override protected List<String> doExecute() {
+      return List.of(value);
+    }
+
+    @Override protected void doEnqueue(Callback<List<String>> callback) {
+      this.callback = callback;
+    }
+
+    @Override public Call<List<String>> clone() {
+      return new Pending(value);
+    }
+  }
+}
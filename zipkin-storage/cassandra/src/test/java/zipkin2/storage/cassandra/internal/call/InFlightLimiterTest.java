@@ -0,0 +1,97 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class InFlightLimiterTest {
+  List<CompletableFuture<AsyncResultSet>> requests = new ArrayList<>();
+  List<String> changes = new ArrayList<>();
+  InFlightLimiter limiter =
+    InFlightLimiter.create(2, (inFlight, queued) -> changes.add(inFlight + "/" + queued));
+
+  Supplier<CompletionStage<AsyncResultSet>> request = () -> {
+    CompletableFuture<AsyncResultSet> result = new CompletableFuture<>();
+    requests.add(result);
+    return result;
+  };
+
+  @Test void zero_unlimited() {
+    InFlightLimiter unlimited = InFlightLimiter.create(0, (inFlight, queued) -> {
+      throw new AssertionError("unexpected");
+    });
+
+    for (int i = 0; i < 10; i++) unlimited.execute(request);
+
+    assertThat(requests).hasSize(10);
+  }
+
+  @Test void executesUnderLimit() {
+    limiter.execute(request);
+    limiter.execute(request);
+
+    assertThat(requests).hasSize(2);
+    assertThat(changes).containsExactly("1/0", "2/0");
+  }
+
+  @Test void queuesOverLimit_untilComplete() {
+    limiter.execute(request);
+    limiter.execute(request);
+    CompletionStage<AsyncResultSet> queued = limiter.execute(request);
+
+    assertThat(requests).hasSize(2);
+    assertThat(limiter.queued).hasValue(1);
+
+    AsyncResultSet resultSet = mock(AsyncResultSet.class);
+    requests.get(0).complete(resultSet);
+
+    assertThat(requests).hasSize(3);
+    assertThat(limiter.inFlight).hasValue(2);
+    assertThat(limiter.queued).hasValue(0);
+
+    requests.get(2).complete(resultSet);
+    assertThat(queued.toCompletableFuture()).isCompletedWithValue(resultSet);
+  }
+
+  @Test void queued_propagatesError() {
+    limiter.execute(request);
+    limiter.execute(request);
+    CompletionStage<AsyncResultSet> queued = limiter.execute(request);
+
+    requests.get(0).completeExceptionally(new IllegalStateException());
+    requests.get(2).completeExceptionally(new IllegalArgumentException());
+
+    assertThat(queued.toCompletableFuture())
+      .isCompletedExceptionally();
+    assertThat(limiter.inFlight).hasValue(1);
+  }
+
+  @Test void rejectsWhenQueueFull() {
+    for (int i = 0; i < 4; i++) limiter.execute(request);
+
+    assertThatThrownBy(() -> limiter.execute(request))
+      .isInstanceOf(RejectedExecutionException.class);
+    assertThat(limiter.queued).hasValue(2);
+  }
+
+  @Test void releasesWhenRequestThrows() {
+    assertThatThrownBy(() -> limiter.execute(() -> {
+      throw new IllegalStateException();
+    })).isInstanceOf(IllegalStateException.class);
+
+    assertThat(limiter.inFlight).hasValue(0);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import zipkin2.Call;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class IntersectTraceIdsTest {
+  @Test void intersects() throws Exception {
+    assertThat(intersect(10,
+      Map.of("a", 3L, "b", 2L, "c", 1L),
+      Map.of("b", 2L, "c", 1L, "d", 0L)
+    )).containsExactly(entry("b", 2L), entry("c", 1L));
+  }
+
+  /** The intersection was previously in the order of the first input to complete. */
+  @Test void newestFirst() throws Exception {
+    assertThat(intersect(10,
+      ordered("c", 1L, "b", 2L, "a", 3L),
+      ordered("a", 3L, "c", 1L, "b", 2L)
+    )).containsExactly(entry("a", 3L), entry("b", 2L), entry("c", 1L));
+  }
+
+  /** A trace matches all inputs as of its oldest match. */
+  @Test void timestampIsOldestMatch() throws Exception {
+    assertThat(intersect(10,
+      Map.of("a", 10L, "b", 5L),
+      Map.of("a", 1L, "b", 4L)
+    )).containsExactly(entry("b", 4L), entry("a", 1L));
+  }
+
+  @Test void stopsAtLimit() throws Exception {
+    assertThat(intersect(2,
+      Map.of("a", 4L, "b", 3L, "c", 2L, "d", 1L),
+      Map.of("a", 4L, "b", 3L, "c", 2L, "d", 1L),
+      Map.of("a", 4L, "b", 3L, "c", 2L, "d", 1L)
+    )).containsExactly(entry("a", 4L), entry("b", 3L));
+  }
+
+  @Test void emptyInput() throws Exception {
+    assertThat(intersect(10, Map.of("a", 1L), Map.of())).isEmpty();
+  }
+
+  @Test void noIntersection() throws Exception {
+    assertThat(intersect(10, Map.of("a", 1L), Map.of("b", 1L))).isEmpty();
+  }
+
+  @Test void cloneable() throws Exception {
+    IntersectTraceIds call = new IntersectTraceIds(List.of(
+      Call.create(Map.of("a", 1L)), Call.create(Map.of("a", 2L))), 10);
+    call.execute();
+
+    assertThat(call.clone().execute()).containsExactly(entry("a", 1L));
+  }
+
+  @SafeVarargs final Map<String, Long> intersect(int limit, Map<String, Long>... inputs)
+    throws Exception {
+    List<Call<Map<String, Long>>> calls = new ArrayList<>();
+    for (Map<String, Long> input : inputs) calls.add(Call.create(input));
+    return new IntersectTraceIds(calls, limit).execute();
+  }
+
+  static Map<String, Long> ordered(Object... keyValues) {
+    Map<String, Long> result = new LinkedHashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      result.put((String) keyValues[i], (Long) keyValues[i + 1]);
+    }
+    return result;
+  }
+}
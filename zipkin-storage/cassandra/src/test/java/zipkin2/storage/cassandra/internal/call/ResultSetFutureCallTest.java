@@ -10,6 +10,7 @@ import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.servererrors.QueryConsistencyException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 import org.junit.jupiter.api.Test;
 import zipkin2.Call;
 import zipkin2.Callback;
@@ -100,6 +101,7 @@ class ResultSetFutureCallTest {
       new RequestThrottlingException("The session is shutting down"))).isTrue();
     assertThat(ResultSetFutureCall.isOverCapacity(new BusyConnectionException(100))).isTrue();
     assertThat(ResultSetFutureCall.isOverCapacity(mock(QueryConsistencyException.class))).isTrue();
+    assertThat(ResultSetFutureCall.isOverCapacity(new RejectedExecutionException())).isTrue();
 
     // not applicable
     assertThat(ResultSetFutureCall.isOverCapacity(
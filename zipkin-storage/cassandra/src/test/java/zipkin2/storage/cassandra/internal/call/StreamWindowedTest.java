@@ -0,0 +1,135 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import zipkin2.Call;
+import zipkin2.Callback;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamWindowedTest {
+  List<Pending> pending = new ArrayList<>();
+  List<String> passed = new ArrayList<>();
+  AtomicReference<Object> result = new AtomicReference<>();
+  Callback<Void> callback = new Callback<>() {
+    @Override public void onSuccess(Void value) {
+      assertThat(result.getAndSet("success")).isNull();
+    }
+
+    @Override public void onError(Throwable t) {
+      assertThat(result.getAndSet(t)).isNull();
+    }
+  };
+
+  @Test void execute_passesInOrder() throws Exception {
+    List<Call<String>> calls = List.of(Call.create("a"), Call.create("b"), Call.create("c"));
+
+    new StreamWindowed<>(calls, 2, passed::add).execute();
+
+    assertThat(passed).containsExactly("a", "b", "c");
+  }
+
+  @Test void execute_consumerErrorFailsCall() {
+    List<Call<String>> calls = List.of(Call.create("a"), Call.create("b"));
+    IllegalStateException error = new IllegalStateException();
+
+    assertThatThrownBy(() -> new StreamWindowed<String>(calls, 1, value -> {
+      throw error;
+    }).execute()).isSameAs(error);
+  }
+
+  @Test void execute_empty() throws Exception {
+    new StreamWindowed<>(List.<Call<String>>of(), 1, passed::add).execute();
+
+    assertThat(passed).isEmpty();
+  }
+
+  @Test void enqueue_startsWindow() {
+    stream(2, "a", "b", "c").enqueue(callback);
+
+    assertThat(pending).extracting(p -> p.callback != null).containsExactly(true, true, false);
+  }
+
+  @Test void enqueue_passesAsSoonAsPreviousPassed() {
+    stream(2, "a", "b", "c").enqueue(callback);
+
+    pending.get(1).complete();
+    assertThat(passed).isEmpty(); // first is still in flight
+    assertThat(pending.get(2).callback).isNull(); // the window holds the unpassed result
+
+    pending.get(0).complete();
+    assertThat(passed).containsExactly("a", "b");
+    assertThat(pending.get(2).callback).isNotNull();
+    assertThat(result.get()).isNull();
+
+    pending.get(2).complete();
+    assertThat(passed).containsExactly("a", "b", "c");
+    assertThat(result.get()).isEqualTo("success");
+  }
+
+  @Test void enqueue_empty() {
+    stream(1).enqueue(callback);
+
+    assertThat(result.get()).isEqualTo("success");
+  }
+
+  @Test void enqueue_errorStopsStartingCalls() {
+    stream(1, "a", "b").enqueue(callback);
+
+    IllegalStateException error = new IllegalStateException();
+    pending.get(0).callback.onError(error);
+
+    assertThat(pending.get(1).callback).isNull();
+    assertThat(result.get()).isSameAs(error);
+  }
+
+  @Test void cancel_cancelsStarted() {
+    StreamWindowed<String> stream = stream(1, "a", "b");
+    stream.enqueue(callback);
+
+    stream.cancel();
+    pending.get(0).complete();
+
+    assertThat(pending.get(0).isCanceled()).isTrue();
+    assertThat(pending.get(1).callback).isNull();
+    assertThat(result.get()).isInstanceOf(IOException.class);
+  }
+
+  StreamWindowed<String> stream(int window, String... values) {
+    for (String value : values) pending.add(new Pending(value));
+    return new StreamWindowed<>(new ArrayList<>(pending), window, passed::add);
+  }
+
+  static final class Pending extends Call.Base<String> {
+    final String value;
+    Callback<String> callback;
+
+    Pending(String value) {
+      this.value = value;
+    }
+
+    void complete() {
+      callback.onSuccess(value);
+    }
+
+    @Override protected String doExecute() {
+      return value;
+    }
+
+    @Override protected void doEnqueue(Callback<String> callback) {
+      this.callback = callback;
+    }
+
+    @Override public Call<String> clone() {
+      return new Pending(value);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.cassandra.internal.call;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import zipkin2.Call;
+import zipkin2.Callback;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TraverseBucketsTest {
+  List<Bucket> buckets = new ArrayList<>();
+  AtomicReference<Object> result = new AtomicReference<>();
+  Callback<Map<String, Long>> callback = new Callback<>() {
+    @Override public void onSuccess(Map<String, Long> value) {
+      assertThat(result.getAndSet(value)).isNull();
+    }
+
+    @Override public void onError(Throwable t) {
+      assertThat(result.getAndSet(t)).isNull();
+    }
+  };
+
+  @Test void execute_stopsAtLimit() throws Exception {
+    TraverseBuckets<String, Long> traversal = traversal(2, 1,
+      Map.of("a", 3L), Map.of("b", 2L), Map.of("c", 1L));
+
+    assertThat(traversal.execute()).containsOnlyKeys("a", "b");
+    assertThat(buckets.get(2).executed).isFalse();
+  }
+
+  @Test void enqueue_startsParallelismNewestFirst() {
+    traversal(10, 2, Map.of("a", 3L), Map.of("b", 2L), Map.of("c", 1L))
+      .enqueue(callback);
+
+    assertThat(buckets).extracting(b -> b.callback != null).containsExactly(true, true, false);
+  }
+
+  @Test void enqueue_startsOlderBucketsUntilLimit() {
+    traversal(2, 2, Map.of("a", 3L), Map.of("b", 2L), Map.of("c", 1L), Map.of("d", 0L))
+      .enqueue(callback);
+
+    buckets.get(1).complete();
+    assertThat(buckets.get(2).callback).isNotNull(); // limit isn't satisfied, so continue
+
+    buckets.get(0).complete(); // now satisfied, so don't start more
+    assertThat(buckets.get(3).callback).isNull();
+    assertThat(result.get()).isNull(); // bucket 2 is still in flight
+
+    buckets.get(2).complete();
+    assertThat(result.get()).isEqualTo(Map.of("a", 3L, "b", 2L, "c", 1L));
+  }
+
+  @Test void enqueue_allBuckets() {
+    traversal(10, 1, Map.of("a", 3L), Map.of("b", 2L)).enqueue(callback);
+
+    buckets.get(0).complete();
+    buckets.get(1).complete();
+
+    assertThat(result.get()).isEqualTo(Map.of("a", 3L, "b", 2L));
+  }
+
+  @Test void enqueue_keepsNewestTimestampOfKey() {
+    traversal(10, 2, Map.of("a", 3L), Map.of("a", 2L)).enqueue(callback);
+
+    buckets.get(1).complete();
+    buckets.get(0).complete();
+
+    assertThat(result.get()).isEqualTo(Map.of("a", 3L));
+  }
+
+  @Test void enqueue_merge() {
+    buckets.add(new Bucket(Map.of("a", 2L)));
+    buckets.add(new Bucket(Map.of("a", 3L, "b", 1L)));
+    new TraverseBuckets<>(new ArrayList<>(buckets), 10, 2, Math::max).enqueue(callback);
+
+    buckets.get(0).complete();
+    buckets.get(1).complete();
+
+    assertThat(result.get()).isEqualTo(Map.of("a", 3L, "b", 1L));
+  }
+
+  @Test void enqueue_errorStopsTraversal() {
+    traversal(10, 1, Map.of("a", 3L), Map.of("b", 2L)).enqueue(callback);
+
+    IllegalStateException error = new IllegalStateException();
+    buckets.get(0).callback.onError(error);
+
+    assertThat(buckets.get(1).callback).isNull();
+    assertThat(result.get()).isSameAs(error);
+  }
+
+  @Test void cancel_cancelsInFlight() {
+    TraverseBuckets<String, Long> traversal = traversal(10, 1, Map.of("a", 3L), Map.of("b", 2L));
+    traversal.enqueue(callback);
+
+    traversal.cancel();
+
+    assertThat(buckets.get(0).isCanceled()).isTrue();
+    assertThat(buckets.get(1).callback).isNull();
+  }
+
+  @SafeVarargs final TraverseBuckets<String, Long> traversal(int limit, int parallelism,
+    Map<String, Long>... results) {
+    for (Map<String, Long> result : results) buckets.add(new Bucket(result));
+    return new TraverseBuckets<>(new ArrayList<>(buckets), limit, parallelism);
+  }
+
+  static final class Bucket extends Call.Base<Map<String, Long>> {
+    final Map<String, Long> result;
+    boolean executed;
+    Callback<Map<String, Long>> callback;
+
+    Bucket(Map<String, Long> result) {
+      this.result = result;
+    }
+
+    void complete() {
+      callback.onSuccess(result);
+    }
+
+    @Override protected Map<String, Long> doExecute() {
+      executed = true;
+      return result;
+    }
+
+    @Override protected void doEnqueue(Callback<Map<String, Long>> callback) {
+      this.callback = callback;
+    }
+
+    @Override public Call<Map<String, Long>> clone() {
+      return new Bucket(result);
+    }
+  }
+}
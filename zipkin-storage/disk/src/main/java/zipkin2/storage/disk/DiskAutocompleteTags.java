@@ -0,0 +1,31 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.util.List;
+import zipkin2.Call;
+import zipkin2.storage.AutocompleteTags;
+
+final class DiskAutocompleteTags implements AutocompleteTags {
+  final DiskStorage storage;
+  final Call<List<String>> keysCall;
+
+  DiskAutocompleteTags(DiskStorage storage) {
+    this.storage = storage;
+    this.keysCall = Call.create(storage.autocompleteKeys);
+  }
+
+  @Override public Call<List<String>> getKeys() {
+    if (!storage.searchEnabled) return Call.emptyList();
+    return keysCall.clone();
+  }
+
+  @Override public Call<List<String>> getValues(String key) {
+    if (key == null) throw new NullPointerException("key == null");
+    if (key.isEmpty()) throw new IllegalArgumentException("key was empty");
+    if (!storage.searchEnabled) return Call.emptyList();
+    return new LogCall<>(storage, "GetValues{" + key + "}", log -> log.getValues(key));
+  }
+}
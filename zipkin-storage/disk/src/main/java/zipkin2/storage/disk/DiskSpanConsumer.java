@@ -0,0 +1,37 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.util.List;
+import zipkin2.Call;
+import zipkin2.Span;
+import zipkin2.internal.Proto3Span;
+import zipkin2.internal.Proto3SpanConsumer;
+import zipkin2.storage.SpanConsumer;
+
+final class DiskSpanConsumer implements SpanConsumer, Proto3SpanConsumer {
+  final DiskStorage storage;
+
+  DiskSpanConsumer(DiskStorage storage) {
+    this.storage = storage;
+  }
+
+  @Override public Call<Void> accept(List<Span> spans) {
+    if (spans.isEmpty()) return Call.create(null);
+    return new LogCall<>(storage, "Append{" + spans.size() + " spans}", log -> {
+      log.append(spans);
+      return null;
+    });
+  }
+
+  /** Segments hold proto3 records, so spans already in proto3 are written as is. */
+  @Override public Call<Void> acceptProto3(List<Proto3Span> spans) {
+    if (spans.isEmpty()) return Call.create(null);
+    return new LogCall<>(storage, "Append{" + spans.size() + " spans}", log -> {
+      log.appendProto3(spans);
+      return null;
+    });
+  }
+}
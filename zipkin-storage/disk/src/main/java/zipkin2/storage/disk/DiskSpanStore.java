@@ -0,0 +1,189 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import zipkin2.Call;
+import zipkin2.DependencyLink;
+import zipkin2.Span;
+import zipkin2.internal.DependencyLinker;
+import zipkin2.storage.QueryRequest;
+import zipkin2.storage.ServiceAndSpanNames;
+import zipkin2.storage.SpanStore;
+import zipkin2.storage.TraceCallback;
+import zipkin2.storage.Traces;
+
+import static zipkin2.storage.disk.SegmentLog.lowTraceId;
+
+final class DiskSpanStore implements SpanStore, Traces, ServiceAndSpanNames {
+  final DiskStorage storage;
+  final boolean strictTraceId, searchEnabled;
+
+  DiskSpanStore(DiskStorage storage) {
+    this.storage = storage;
+    this.strictTraceId = storage.strictTraceId;
+    this.searchEnabled = storage.searchEnabled;
+  }
+
+  @Override public Call<List<List<Span>>> getTraces(QueryRequest request) {
+    if (!searchEnabled) return Call.emptyList();
+    return new LogCall<>(storage, "GetTraces{" + request + "}", log -> {
+      List<List<Span>> result = new ArrayList<>();
+      streamTraces(log, request, result::add);
+      return result;
+    });
+  }
+
+  /** Reads and passes traces one at a time, without holding the log's lock while passing. */
+  @Override public Call<Void> streamTraces(QueryRequest request, TraceCallback callback) {
+    if (callback == null) throw new NullPointerException("callback == null");
+    if (!searchEnabled) return Call.create(null);
+    return new LogCall<>(storage, "StreamTraces{" + request + "}", log -> {
+      streamTraces(log, request, callback);
+      return null;
+    });
+  }
+
+  void streamTraces(SegmentLog log, QueryRequest request, TraceCallback callback)
+    throws IOException {
+    int count = 0;
+    for (long lowTraceId : log.traceIdsDescendingByTimestamp(request)) {
+      if (count >= request.limit()) break;
+      List<Span> next = log.getTrace(lowTraceId);
+      if (!request.test(next)) continue;
+      if (!strictTraceId) {
+        callback.onTrace(next);
+        count++;
+        continue;
+      }
+
+      // re-run the query as now spans are strictly grouped
+      for (List<Span> strictTrace : strictByTraceId(next)) {
+        if (request.test(strictTrace)) {
+          callback.onTrace(strictTrace);
+          count++;
+        }
+      }
+    }
+  }
+
+  @Override public Call<List<Span>> getTrace(String traceId) {
+    String normalized = Span.normalizeTraceId(traceId);
+    return new LogCall<>(storage, "GetTrace{" + normalized + "}", log -> {
+      List<Span> spans = log.getTrace(lowTraceId(normalized));
+      if (!strictTraceId) return spans;
+      List<Span> result = new ArrayList<>(spans.size());
+      for (Span span : spans) {
+        if (span.traceId().equals(normalized)) result.add(span);
+      }
+      return result;
+    });
+  }
+
+  @Override public Call<List<List<Span>>> getTraces(Iterable<String> traceIds) {
+    Set<String> normalized = normalize(traceIds);
+    if (normalized.isEmpty()) return Call.emptyList();
+
+    return new LogCall<>(storage, "GetTraces{" + normalized + "}", log -> {
+      List<List<Span>> result = new ArrayList<>();
+      streamTraces(log, normalized, result::add);
+      return result;
+    });
+  }
+
+  @Override public Call<Void> streamTraces(Iterable<String> traceIds, TraceCallback callback) {
+    if (callback == null) throw new NullPointerException("callback == null");
+    Set<String> normalized = normalize(traceIds);
+    if (normalized.isEmpty()) return Call.create(null);
+
+    return new LogCall<>(storage, "StreamTraces{" + normalized + "}", log -> {
+      streamTraces(log, normalized, callback);
+      return null;
+    });
+  }
+
+  static Set<String> normalize(Iterable<String> traceIds) {
+    Set<String> normalized = new LinkedHashSet<>();
+    for (String traceId : traceIds) {
+      normalized.add(Span.normalizeTraceId(traceId));
+    }
+    return normalized;
+  }
+
+  void streamTraces(SegmentLog log, Set<String> normalized, TraceCallback callback)
+    throws IOException {
+    // Our index is by lower-64 bit trace ID, so let's build trace IDs to fetch
+    Set<Long> lower64Bit = new LinkedHashSet<>();
+    for (String traceId : normalized) {
+      lower64Bit.add(lowTraceId(traceId));
+    }
+
+    for (long lowTraceId : lower64Bit) {
+      List<Span> sameTraceId = log.getTrace(lowTraceId);
+      if (sameTraceId.isEmpty()) continue;
+      if (strictTraceId) {
+        for (List<Span> trace : strictByTraceId(sameTraceId)) {
+          if (normalized.contains(trace.get(0).traceId())) {
+            callback.onTrace(trace);
+          }
+        }
+      } else {
+        callback.onTrace(sameTraceId);
+      }
+    }
+  }
+
+  static Collection<List<Span>> strictByTraceId(List<Span> next) {
+    Map<String, List<Span>> groupedByTraceId = new LinkedHashMap<>();
+    for (Span span : next) {
+      groupedByTraceId.computeIfAbsent(span.traceId(), k -> new ArrayList<>()).add(span);
+    }
+    return groupedByTraceId.values();
+  }
+
+  @Override public Call<List<String>> getServiceNames() {
+    if (!searchEnabled) return Call.emptyList();
+    return new LogCall<>(storage, "GetServiceNames{}", SegmentLog::getServiceNames);
+  }
+
+  @Override public Call<List<String>> getRemoteServiceNames(String serviceName) {
+    if (serviceName.isEmpty() || !searchEnabled) return Call.emptyList();
+    String service = serviceName.toLowerCase(Locale.ROOT); // service names are always lowercase!
+    return new LogCall<>(storage, "GetRemoteServiceNames{" + service + "}",
+      log -> log.getRemoteServiceNames(service));
+  }
+
+  @Override public Call<List<String>> getSpanNames(String serviceName) {
+    if (serviceName.isEmpty() || !searchEnabled) return Call.emptyList();
+    String service = serviceName.toLowerCase(Locale.ROOT); // service names are always lowercase!
+    return new LogCall<>(storage, "GetSpanNames{" + service + "}",
+      log -> log.getSpanNames(service));
+  }
+
+  // We don't have a query parameter for strictTraceId when fetching dependency links, so we
+  // ignore traceIdHigh. Otherwise, a single trace can appear as two, doubling callCount.
+  @Override public Call<List<DependencyLink>> getDependencies(long endTs, long lookback) {
+    if (endTs <= 0) throw new IllegalArgumentException("endTs <= 0");
+    if (lookback <= 0) throw new IllegalArgumentException("lookback <= 0");
+
+    return new LogCall<>(storage, "GetDependencies{endTs=" + endTs + "}", log -> {
+      Set<Long> lowTraceIds = log.traceIdsInRange(endTs, lookback);
+      if (lowTraceIds.isEmpty()) return List.of();
+      DependencyLinker linksBuilder = new DependencyLinker();
+      for (long lowTraceId : lowTraceIds) {
+        linksBuilder.putTrace(log.getTrace(lowTraceId));
+      }
+      return linksBuilder.link();
+    });
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import zipkin2.Call;
+import zipkin2.CheckResult;
+import zipkin2.storage.AutocompleteTags;
+import zipkin2.storage.ServiceAndSpanNames;
+import zipkin2.storage.SpanConsumer;
+import zipkin2.storage.SpanStore;
+import zipkin2.storage.StorageComponent;
+import zipkin2.storage.Traces;
+
+/**
+ * Single-node storage that keeps spans in an append-only log of files in a local directory, so
+ * that they survive a restart without running a database.
+ *
+ * <p>Spans are written in their {@link zipkin2.codec.SpanBytesEncoder#PROTO3 proto3} encoding to
+ * segment files of up to {@link Builder#segmentBytes(long) segmentBytes}. Each segment has indexes
+ * by trace ID, service, remote service and span name, which are held in memory and rebuilt from the
+ * files when the storage is opened. When the files exceed {@link Builder#maxBytes(long) maxBytes},
+ * the oldest segment is deleted.
+ *
+ * <p>Writes aren't synced to the device, so spans accepted just before a crash of the operating
+ * system can be lost. An incomplete write at the end of a segment is dropped when it is opened.
+ */
+public final class DiskStorage extends StorageComponent {
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder extends StorageComponent.Builder {
+    boolean strictTraceId = true, searchEnabled = true;
+    Path directory;
+    long segmentBytes = 64L * 1024 * 1024, maxBytes = 1024L * 1024 * 1024;
+    List<String> autocompleteKeys = List.of();
+
+    @Override public Builder strictTraceId(boolean strictTraceId) {
+      this.strictTraceId = strictTraceId;
+      return this;
+    }
+
+    @Override public Builder searchEnabled(boolean searchEnabled) {
+      this.searchEnabled = searchEnabled;
+      return this;
+    }
+
+    @Override public Builder autocompleteKeys(List<String> autocompleteKeys) {
+      if (autocompleteKeys == null) throw new NullPointerException("autocompleteKeys == null");
+      this.autocompleteKeys = autocompleteKeys;
+      return this;
+    }
+
+    /** The directory to store segment files in, which is created if it doesn't exist. Required. */
+    public Builder directory(Path directory) {
+      if (directory == null) throw new NullPointerException("directory == null");
+      this.directory = directory;
+      return this;
+    }
+
+    /**
+     * A new segment file is started when appending to the current would exceed this size. Smaller
+     * segments make retention more precise, at the cost of more files. Defaults to 64MiB.
+     */
+    public Builder segmentBytes(long segmentBytes) {
+      if (segmentBytes <= 0) throw new IllegalArgumentException("segmentBytes <= 0");
+      if (segmentBytes > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("segmentBytes > " + Integer.MAX_VALUE);
+      }
+      this.segmentBytes = segmentBytes;
+      return this;
+    }
+
+    /**
+     * The oldest segment files are deleted to ensure the total size of files doesn't exceed this
+     * value. The newest segment is never deleted. Defaults to 1GiB.
+     */
+    public Builder maxBytes(long maxBytes) {
+      if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes <= 0");
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    @Override public DiskStorage build() {
+      if (directory == null) throw new NullPointerException("directory == null");
+      return new DiskStorage(this);
+    }
+
+    Builder() {
+    }
+  }
+
+  final boolean strictTraceId, searchEnabled;
+  final Path directory;
+  final long segmentBytes, maxBytes;
+  final List<String> autocompleteKeys;
+  volatile SegmentLog log;
+  volatile boolean closeCalled;
+
+  DiskStorage(Builder builder) {
+    strictTraceId = builder.strictTraceId;
+    searchEnabled = builder.searchEnabled;
+    directory = builder.directory;
+    segmentBytes = builder.segmentBytes;
+    maxBytes = builder.maxBytes;
+    autocompleteKeys = List.copyOf(builder.autocompleteKeys);
+  }
+
+  /** Lazy to avoid eager I/O */
+  SegmentLog log() throws IOException {
+    if (closeCalled) throw new IllegalStateException("closed");
+    if (log == null) {
+      synchronized (this) {
+        if (closeCalled) throw new IllegalStateException("closed");
+        if (log == null) {
+          log = SegmentLog.open(
+            directory, segmentBytes, maxBytes, new LinkedHashSet<>(autocompleteKeys));
+        }
+      }
+    }
+    return log;
+  }
+
+  @Override public SpanStore spanStore() {
+    return new DiskSpanStore(this);
+  }
+
+  @Override public Traces traces() {
+    return (Traces) spanStore();
+  }
+
+  @Override public ServiceAndSpanNames serviceAndSpanNames() {
+    return (ServiceAndSpanNames) spanStore();
+  }
+
+  @Override public AutocompleteTags autocompleteTags() {
+    return new DiskAutocompleteTags(this);
+  }
+
+  @Override public SpanConsumer spanConsumer() {
+    return new DiskSpanConsumer(this);
+  }
+
+  @Override public CheckResult check() {
+    try {
+      log();
+    } catch (Throwable e) {
+      Call.propagateIfFatal(e);
+      return CheckResult.failed(e);
+    }
+    return CheckResult.OK;
+  }
+
+  @Override public final String toString() {
+    return "DiskStorage{directory=" + directory + "}";
+  }
+
+  @Override public void close() throws IOException {
+    synchronized (this) {
+      if (closeCalled) return;
+      closeCalled = true;
+      if (log != null) log.close();
+    }
+  }
+
+  /** Visible for testing */
+  void clear() {
+    try {
+      log().clear();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
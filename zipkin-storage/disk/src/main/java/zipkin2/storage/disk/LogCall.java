@@ -0,0 +1,47 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.io.IOException;
+import zipkin2.Call;
+import zipkin2.Callback;
+
+/** Reads or writes the {@link SegmentLog} on the calling thread, when executed or enqueued. */
+final class LogCall<V> extends Call.Base<V> {
+  interface Operation<V> {
+    V apply(SegmentLog log) throws IOException;
+  }
+
+  final DiskStorage storage;
+  final String name;
+  final Operation<V> operation;
+
+  LogCall(DiskStorage storage, String name, Operation<V> operation) {
+    this.storage = storage;
+    this.name = name;
+    this.operation = operation;
+  }
+
+  @Override protected V doExecute() throws IOException {
+    return operation.apply(storage.log());
+  }
+
+  @Override protected void doEnqueue(Callback<V> callback) {
+    try {
+      callback.onSuccess(doExecute());
+    } catch (Throwable t) {
+      propagateIfFatal(t);
+      callback.onError(t);
+    }
+  }
+
+  @Override public LogCall<V> clone() {
+    return new LogCall<>(storage, name, operation);
+  }
+
+  @Override public String toString() {
+    return name;
+  }
+}
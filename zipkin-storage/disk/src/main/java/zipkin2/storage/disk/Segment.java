@@ -0,0 +1,235 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.internal.Proto3Span;
+
+import static zipkin2.storage.disk.SegmentLog.lowTraceId;
+
+/**
+ * One file of the {@link SegmentLog}, and the indexes of the spans in it.
+ *
+ * <p>Each record is the length of the encoded span, its CRC32, then the {@link
+ * zipkin2.codec.SpanBytesEncoder#PROTO3 proto3} encoded span. Indexes are held in memory and
+ * rebuilt by reading the file when it is opened. As each segment has its own indexes, retention
+ * drops them with the file, instead of removing entries one span at a time.
+ *
+ * <p>Not thread-safe: {@link SegmentLog} guards access.
+ */
+final class Segment implements Closeable {
+  /** Record length and CRC32 of the encoded span. */
+  static final int HEADER_BYTES = 4 + 4;
+
+  /** The spans of a trace in this segment. */
+  static final class TraceEntry {
+    /** Epoch microseconds of the earliest and latest span with a timestamp. */
+    long earliestTimestamp = Long.MAX_VALUE, latestTimestamp = Long.MIN_VALUE;
+    /** Offset of each encoded span in the upper 32 bits, and its length in the lower. */
+    long[] records = new long[1];
+    int count;
+
+    void add(Proto3Span span, long record) {
+      long timestamp = span.timestampAsLong();
+      if (timestamp != 0L) {
+        earliestTimestamp = Math.min(earliestTimestamp, timestamp);
+        latestTimestamp = Math.max(latestTimestamp, timestamp);
+      }
+      if (count == records.length) records = Arrays.copyOf(records, count * 2);
+      records[count++] = record;
+    }
+
+    boolean overlaps(long beginTs, long endTs) {
+      return earliestTimestamp <= endTs && latestTimestamp >= beginTs;
+    }
+  }
+
+  final long sequence;
+  final Path path;
+  final FileChannel channel;
+  /** Length of the records in this segment, which is where the next is written. */
+  long size;
+  /** Epoch microseconds of the earliest and latest span with a timestamp. */
+  long earliestTimestamp = Long.MAX_VALUE, latestTimestamp = Long.MIN_VALUE;
+
+  final Map<Long, TraceEntry> traces = new HashMap<>();
+  final Map<String, Set<Long>> serviceToTraceIds = new HashMap<>();
+  final Map<String, Set<Long>> remoteServiceToTraceIds = new HashMap<>();
+  final Map<String, Set<Long>> spanNameToTraceIds = new HashMap<>();
+  final Map<String, Set<String>> serviceToRemoteServiceNames = new HashMap<>();
+  final Map<String, Set<String>> serviceToSpanNames = new HashMap<>();
+  final Map<String, Set<String>> autocompleteTags = new HashMap<>();
+
+  Segment(long sequence, Path path, FileChannel channel) {
+    this.sequence = sequence;
+    this.path = path;
+    this.channel = channel;
+  }
+
+  /**
+   * Opens the segment file, creating it if it doesn't exist. Existing records are read to build
+   * the indexes, stopping at the first incomplete or corrupt one, which is truncated.
+   */
+  static Segment open(long sequence, Path path, Set<String> autocompleteKeys) throws IOException {
+    FileChannel channel = FileChannel.open(path,
+      StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    Segment result = new Segment(sequence, path, channel);
+    try {
+      result.recover(autocompleteKeys);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    return result;
+  }
+
+  void recover(Set<String> autocompleteKeys) throws IOException {
+    long fileSize = channel.size();
+    // Not closed, as that would close the channel.
+    DataInputStream in =
+      new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+    CRC32 crc = new CRC32();
+    long position = 0L;
+    while (position + HEADER_BYTES <= fileSize) {
+      int length, checksum;
+      byte[] encoded;
+      try {
+        length = in.readInt();
+        checksum = in.readInt();
+        if (length <= 0 || position + HEADER_BYTES + length > fileSize) break;
+        encoded = new byte[length];
+        in.readFully(encoded);
+      } catch (EOFException e) {
+        break;
+      }
+      crc.reset();
+      crc.update(encoded, 0, length);
+      if ((int) crc.getValue() != checksum) break;
+
+      Proto3Span span;
+      try {
+        span = Proto3Span.readOne(encoded); // only index fields, as opposed to a full decode
+      } catch (IllegalArgumentException e) {
+        break;
+      }
+      index(span, position + HEADER_BYTES, autocompleteKeys);
+      position += HEADER_BYTES + length;
+    }
+    if (position < fileSize) channel.truncate(position); // drop a torn write
+    size = position;
+  }
+
+  /** Writes the records at the end of this segment, without changing the indexes. */
+  void write(ByteBuffer records) throws IOException {
+    long position = size;
+    while (records.hasRemaining()) {
+      position += channel.write(records, position);
+    }
+  }
+
+  /** Indexes a span written at the given offset of the encoded span, not its record. */
+  void index(Proto3Span span, long offset, Set<String> autocompleteKeys) {
+    long lowTraceId = lowTraceId(span.traceId());
+    TraceEntry entry = traces.get(lowTraceId);
+    if (entry == null) traces.put(lowTraceId, entry = new TraceEntry());
+    entry.add(span, (offset << 32) | span.sizeInBytes());
+
+    long timestamp = span.timestampAsLong();
+    if (timestamp != 0L) {
+      earliestTimestamp = Math.min(earliestTimestamp, timestamp);
+      latestTimestamp = Math.max(latestTimestamp, timestamp);
+    }
+
+    String serviceName = span.localServiceName();
+    String remoteServiceName = span.remoteServiceName(), spanName = span.name();
+    if (serviceName != null) {
+      put(serviceToTraceIds, serviceName, lowTraceId);
+      if (remoteServiceName != null) {
+        put(serviceToRemoteServiceNames, serviceName, remoteServiceName);
+      }
+      if (spanName != null) {
+        put(serviceToSpanNames, serviceName, spanName);
+      }
+    }
+    if (remoteServiceName != null) {
+      put(remoteServiceToTraceIds, remoteServiceName, lowTraceId);
+    }
+    if (spanName != null) {
+      put(spanNameToTraceIds, spanName, lowTraceId);
+    }
+    if (autocompleteKeys.isEmpty()) return; // avoid reading tags
+    for (Map.Entry<String, String> tag : span.tags().entrySet()) {
+      if (autocompleteKeys.contains(tag.getKey())) {
+        put(autocompleteTags, tag.getKey(), tag.getValue());
+      }
+    }
+  }
+
+  static <V> void put(Map<String, Set<V>> multimap, String key, V value) {
+    Set<V> values = multimap.get(key);
+    if (values == null) multimap.put(key, values = new HashSet<>());
+    values.add(value);
+  }
+
+  static <V> Set<V> get(Map<String, Set<V>> multimap, String key) {
+    Set<V> values = multimap.get(key);
+    return values != null ? values : Collections.emptySet();
+  }
+
+  boolean overlaps(long beginTs, long endTs) {
+    return earliestTimestamp <= endTs && latestTimestamp >= beginTs;
+  }
+
+  /** Reads the spans of the trace in this segment into the result. */
+  void readTrace(long lowTraceId, Collection<Span> result) throws IOException {
+    TraceEntry entry = traces.get(lowTraceId);
+    if (entry == null) return;
+    for (int i = 0; i < entry.count; i++) {
+      long record = entry.records[i];
+      ByteBuffer encoded = ByteBuffer.allocate((int) record);
+      long position = record >>> 32;
+      while (encoded.hasRemaining()) {
+        int read = channel.read(encoded, position + encoded.position());
+        if (read == -1) throw new EOFException("truncated " + path);
+      }
+      encoded.flip();
+      result.add(SpanBytesDecoder.PROTO3.decodeOne(encoded));
+    }
+  }
+
+  @Override public void close() throws IOException {
+    channel.close();
+  }
+
+  /** Closes then deletes the file of this segment. */
+  void delete() throws IOException {
+    close();
+    Files.deleteIfExists(path);
+  }
+
+  @Override public String toString() {
+    return "Segment{path=" + path + ", size=" + size + "}";
+  }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.internal.HexCodec;
+import zipkin2.internal.Proto3Span;
+import zipkin2.storage.QueryRequest;
+
+/**
+ * An append-only log of spans, split into {@link Segment segment} files named by sequence number.
+ * When the log exceeds its maximum size, the oldest segment is deleted as a whole.
+ *
+ * <p>Writes are exclusive, but reads can proceed concurrently with each other. Spans are encoded
+ * before taking the lock, so that writers mostly contend on I/O. Spans received in proto3 are
+ * written as they were encoded.
+ */
+final class SegmentLog implements Closeable {
+  static final String SUFFIX = ".log";
+
+  final Path directory;
+  final long segmentBytes, maxBytes;
+  final Set<String> autocompleteKeys;
+  final ReadWriteLock lock = new ReentrantReadWriteLock();
+  /** Oldest first. The last segment is appended to. */
+  final ArrayDeque<Segment> segments = new ArrayDeque<>();
+  long nextSequence, totalBytes;
+  boolean closed; // guarded by the write lock
+
+  SegmentLog(Path directory, long segmentBytes, long maxBytes, Set<String> autocompleteKeys) {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.maxBytes = maxBytes;
+    this.autocompleteKeys = autocompleteKeys;
+  }
+
+  /** Opens the log in the directory, creating it if it doesn't exist. */
+  static SegmentLog open(Path directory, long segmentBytes, long maxBytes,
+    Set<String> autocompleteKeys) throws IOException {
+    Files.createDirectories(directory);
+    SegmentLog result = new SegmentLog(directory, segmentBytes, maxBytes, autocompleteKeys);
+    TreeSet<Long> sequences = new TreeSet<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          sequences.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // not a segment
+        }
+      }
+    }
+    try {
+      for (long sequence : sequences) {
+        Segment segment = Segment.open(sequence, result.path(sequence), autocompleteKeys);
+        result.segments.addLast(segment);
+        result.totalBytes += segment.size;
+        result.nextSequence = sequence + 1;
+      }
+    } catch (IOException | RuntimeException e) {
+      result.close();
+      throw e;
+    }
+    return result;
+  }
+
+  Path path(long sequence) {
+    return directory.resolve(String.format("%020d", sequence) + SUFFIX);
+  }
+
+  void append(List<Span> spans) throws IOException {
+    if (spans.isEmpty()) return;
+    List<Proto3Span> encoded = new ArrayList<>(spans.size());
+    for (Span span : spans) {
+      encoded.add(Proto3Span.readOne(SpanBytesEncoder.PROTO3.encode(span)));
+    }
+    appendProto3(encoded);
+  }
+
+  /** Appends spans as they were encoded, which avoids decoding them, except fields indexed. */
+  void appendProto3(List<Proto3Span> spans) throws IOException {
+    if (spans.isEmpty()) return;
+    int batchBytes = 0;
+    for (Proto3Span span : spans) {
+      batchBytes += Segment.HEADER_BYTES + span.sizeInBytes();
+    }
+    ByteBuffer records = ByteBuffer.allocate(batchBytes);
+    CRC32 crc = new CRC32();
+    for (Proto3Span span : spans) {
+      int start = records.position() + Segment.HEADER_BYTES;
+      records.position(start);
+      span.writeTo(records);
+      crc.reset();
+      crc.update(records.array(), start, span.sizeInBytes());
+      records.putInt(start - Segment.HEADER_BYTES, span.sizeInBytes())
+        .putInt(start - 4, (int) crc.getValue());
+    }
+    records.flip();
+
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      // Otherwise, a late write would open a new segment after the others were closed.
+      if (closed) throw new IllegalStateException("closed");
+      Segment segment = segments.peekLast();
+      if (segment == null || (segment.size > 0 && segment.size + batchBytes > segmentBytes)) {
+        segment = Segment.open(nextSequence, path(nextSequence), autocompleteKeys);
+        segments.addLast(segment);
+        nextSequence++;
+      }
+
+      segment.write(records); // only index once all spans are written
+      long offset = segment.size;
+      for (Proto3Span span : spans) {
+        segment.index(span, offset + Segment.HEADER_BYTES, autocompleteKeys);
+        offset += Segment.HEADER_BYTES + span.sizeInBytes();
+      }
+      segment.size = offset;
+      totalBytes += batchBytes;
+
+      while (totalBytes > maxBytes && segments.size() > 1) {
+        Segment oldest = segments.removeFirst();
+        totalBytes -= oldest.size;
+        oldest.delete();
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /** Returns the spans of the trace, in the order they were written, without duplicates. */
+  List<Span> getTrace(long lowTraceId) throws IOException {
+    Set<Span> result = new LinkedHashSet<>();
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      for (Segment segment : segments) {
+        segment.readTrace(lowTraceId, result);
+      }
+    } finally {
+      readLock.unlock();
+    }
+    return new ArrayList<>(result);
+  }
+
+  /**
+   * Returns the lower 64-bit trace IDs that may match the request, ordered by their latest
+   * timestamp, descending. Only the service, remote service and span name of the request are
+   * indexed, so callers need to {@link QueryRequest#test(List) test} the traces.
+   */
+  List<Long> traceIdsDescendingByTimestamp(QueryRequest request) {
+    long beginTs = (request.endTs() - request.lookback()) * 1000L, endTs = request.endTs() * 1000L;
+    Map<Long, long[]> timestamps = new HashMap<>(); // earliest and latest timestamp of each trace
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      Set<Long> candidates = null;
+      if (request.serviceName() != null) {
+        candidates = traceIds(null, SegmentIndex.SERVICE, request.serviceName());
+      }
+      if (request.remoteServiceName() != null) {
+        candidates = traceIds(candidates, SegmentIndex.REMOTE_SERVICE, request.remoteServiceName());
+      }
+      if (request.spanName() != null) {
+        candidates = traceIds(candidates, SegmentIndex.SPAN_NAME, request.spanName());
+      }
+
+      for (Segment segment : segments) {
+        if (!segment.overlaps(beginTs, endTs)) continue;
+        Collection<Long> traceIds = candidates != null ? candidates : segment.traces.keySet();
+        for (Long lowTraceId : traceIds) {
+          Segment.TraceEntry entry = segment.traces.get(lowTraceId);
+          if (entry == null) continue;
+          long[] earliestAndLatest = timestamps.get(lowTraceId);
+          if (earliestAndLatest == null) {
+            timestamps.put(lowTraceId,
+              new long[] {entry.earliestTimestamp, entry.latestTimestamp});
+          } else {
+            earliestAndLatest[0] = Math.min(earliestAndLatest[0], entry.earliestTimestamp);
+            earliestAndLatest[1] = Math.max(earliestAndLatest[1], entry.latestTimestamp);
+          }
+        }
+      }
+    } finally {
+      readLock.unlock();
+    }
+
+    List<Map.Entry<Long, long[]>> inRange = new ArrayList<>(timestamps.size());
+    for (Map.Entry<Long, long[]> entry : timestamps.entrySet()) {
+      long[] earliestAndLatest = entry.getValue();
+      // The timestamp tested by the request is between the earliest and latest
+      if (earliestAndLatest[0] <= endTs && earliestAndLatest[1] >= beginTs) inRange.add(entry);
+    }
+    inRange.sort((left, right) -> {
+      int result = Long.compare(right.getValue()[1], left.getValue()[1]);
+      if (result != 0) return result;
+      return Long.compareUnsigned(right.getKey(), left.getKey());
+    });
+    List<Long> result = new ArrayList<>(inRange.size());
+    for (Map.Entry<Long, long[]> entry : inRange) result.add(entry.getKey());
+    return result;
+  }
+
+  enum SegmentIndex {
+    SERVICE, REMOTE_SERVICE, SPAN_NAME;
+
+    Set<Long> get(Segment segment, String name) {
+      switch (this) {
+        case SERVICE:
+          return Segment.get(segment.serviceToTraceIds, name);
+        case REMOTE_SERVICE:
+          return Segment.get(segment.remoteServiceToTraceIds, name);
+        default:
+          return Segment.get(segment.spanNameToTraceIds, name);
+      }
+    }
+  }
+
+  /**
+   * Returns the trace IDs indexed under the name in any segment, intersected with the previous
+   * result if not null. Spans of a trace can be in different segments, so this can't intersect
+   * within a segment.
+   */
+  Set<Long> traceIds(Set<Long> previous, SegmentIndex index, String name) {
+    Set<Long> result = new HashSet<>();
+    for (Segment segment : segments) {
+      result.addAll(index.get(segment, name));
+    }
+    if (previous != null) result.retainAll(previous);
+    return result;
+  }
+
+  /** Returns the lower 64-bit trace IDs with any span in the range, in no particular order. */
+  Set<Long> traceIdsInRange(long endTs, long lookback) {
+    long beginTs = (endTs - lookback) * 1000L;
+    endTs = endTs * 1000L;
+    Set<Long> result = new HashSet<>();
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      for (Segment segment : segments) {
+        if (!segment.overlaps(beginTs, endTs)) continue;
+        for (Map.Entry<Long, Segment.TraceEntry> entry : segment.traces.entrySet()) {
+          if (entry.getValue().overlaps(beginTs, endTs)) result.add(entry.getKey());
+        }
+      }
+    } finally {
+      readLock.unlock();
+    }
+    return result;
+  }
+
+  List<String> getServiceNames() {
+    Set<String> result = new TreeSet<>();
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      for (Segment segment : segments) {
+        result.addAll(segment.serviceToTraceIds.keySet());
+      }
+    } finally {
+      readLock.unlock();
+    }
+    return new ArrayList<>(result);
+  }
+
+  List<String> getRemoteServiceNames(String serviceName) {
+    Set<String> result = new TreeSet<>();
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      for (Segment segment : segments) {
+        result.addAll(Segment.get(segment.serviceToRemoteServiceNames, serviceName));
+      }
+    } finally {
+      readLock.unlock();
+    }
+    return new ArrayList<>(result);
+  }
+
+  List<String> getSpanNames(String serviceName) {
+    Set<String> result = new TreeSet<>();
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      for (Segment segment : segments) {
+        result.addAll(Segment.get(segment.serviceToSpanNames, serviceName));
+      }
+    } finally {
+      readLock.unlock();
+    }
+    return new ArrayList<>(result);
+  }
+
+  List<String> getValues(String key) {
+    Set<String> result = new TreeSet<>();
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      for (Segment segment : segments) {
+        result.addAll(Segment.get(segment.autocompleteTags, key));
+      }
+    } finally {
+      readLock.unlock();
+    }
+    return new ArrayList<>(result);
+  }
+
+  /** Deletes all segments. */
+  void clear() throws IOException {
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      if (closed) throw new IllegalStateException("closed");
+      for (Iterator<Segment> i = segments.iterator(); i.hasNext(); ) {
+        i.next().delete();
+        i.remove();
+      }
+      totalBytes = 0L;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override public void close() throws IOException {
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      if (closed) return;
+      closed = true;
+      IOException error = null;
+      for (Segment segment : segments) {
+        try {
+          segment.close();
+        } catch (IOException e) {
+          if (error == null) error = e;
+        }
+      }
+      segments.clear();
+      if (error != null) throw error;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  static long lowTraceId(String traceId) {
+    return HexCodec.lowerHexToUnsignedLong(traceId);
+  }
+
+  @Override public String toString() {
+    return "SegmentLog{directory=" + directory + "}";
+  }
+}
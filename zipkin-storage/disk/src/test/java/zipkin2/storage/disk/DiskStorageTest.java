@@ -0,0 +1,132 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.internal.Proto3Span;
+import zipkin2.internal.Proto3SpanConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+import static zipkin2.TestObjects.TRACE;
+
+class DiskStorageTest {
+  @TempDir Path directory;
+  DiskStorage storage;
+
+  @AfterEach void close() throws IOException {
+    if (storage != null) storage.close();
+  }
+
+  @Test void spansSurviveRestart() throws IOException {
+    storage = DiskStorage.newBuilder().directory(directory).build();
+    storage.spanConsumer().accept(TRACE).execute();
+    storage.close();
+
+    storage = DiskStorage.newBuilder().directory(directory).build();
+    assertThat(storage.traces().getTrace(CLIENT_SPAN.traceId()).execute())
+      .containsExactlyInAnyOrderElementsOf(TRACE);
+    assertThat(storage.spanStore().getServiceNames().execute())
+      .containsExactly("backend", "frontend");
+  }
+
+  @Test void accept_afterCloseFails() throws IOException {
+    storage = DiskStorage.newBuilder().directory(directory).build();
+    storage.spanConsumer().accept(TRACE).execute();
+    storage.close();
+
+    assertThatThrownBy(() -> storage.spanConsumer().accept(TRACE).execute())
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("closed");
+    assertThat(segmentFiles()).hasSize(1);
+  }
+
+  @Test void segmentLog_appendAfterCloseFails() throws IOException {
+    SegmentLog log = SegmentLog.open(directory, 1024, Long.MAX_VALUE, Set.of());
+    log.append(TRACE);
+    log.close();
+
+    assertThatThrownBy(() -> log.append(TRACE))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("closed");
+    assertThat(segmentFiles()).hasSize(1);
+  }
+
+  @Test void acceptProto3_writesEncodedSpans() throws IOException {
+    byte[] encoded = SpanBytesEncoder.PROTO3.encodeList(TRACE);
+    storage = DiskStorage.newBuilder().directory(directory).build();
+    ((Proto3SpanConsumer) storage.spanConsumer()).acceptProto3(Proto3Span.readList(encoded))
+      .execute();
+    storage.close();
+
+    // Records are the encoded span, preceded by its length and CRC32
+    byte[] segment = Files.readAllBytes(segmentFiles().get(0));
+    assertThat(segment).hasSize(encoded.length + TRACE.size() * Segment.HEADER_BYTES);
+
+    storage = DiskStorage.newBuilder().directory(directory).build();
+    assertThat(storage.traces().getTrace(CLIENT_SPAN.traceId()).execute())
+      .containsExactlyInAnyOrderElementsOf(TRACE);
+    assertThat(storage.spanStore().getSpanNames("frontend").execute())
+      .containsExactly("get");
+  }
+
+  @Test void dropsIncompleteWriteOnOpen() throws IOException {
+    storage = DiskStorage.newBuilder().directory(directory).build();
+    storage.spanConsumer().accept(TRACE).execute();
+    storage.close();
+
+    Path segment = segmentFiles().get(0);
+    long size = Files.size(segment);
+    Files.write(segment, new byte[] {0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+    storage = DiskStorage.newBuilder().directory(directory).build();
+    assertThat(storage.traces().getTrace(CLIENT_SPAN.traceId()).execute())
+      .containsExactlyInAnyOrderElementsOf(TRACE);
+    assertThat(Files.size(segment)).isEqualTo(size);
+
+    // appends after the last complete record
+    Span span = CLIENT_SPAN.toBuilder().traceId("1").id("1").build();
+    storage.spanConsumer().accept(List.of(span)).execute();
+    storage.close();
+
+    storage = DiskStorage.newBuilder().directory(directory).build();
+    assertThat(storage.traces().getTrace("1").execute()).containsExactly(span);
+  }
+
+  @Test void maxBytes_deletesOldestSegments() throws IOException {
+    List<Span> spans = IntStream.rangeClosed(1, 100).mapToObj(i -> CLIENT_SPAN.toBuilder()
+      .traceId(Integer.toHexString(i)).id(Integer.toHexString(i)).build()).toList();
+    storage = DiskStorage.newBuilder().directory(directory)
+      .segmentBytes(1024)
+      .maxBytes(4096)
+      .build();
+
+    for (Span span : spans) storage.spanConsumer().accept(List.of(span)).execute();
+
+    assertThat(segmentFiles()).hasSizeBetween(4, 5);
+    assertThat(storage.log().totalBytes).isLessThanOrEqualTo(4096);
+    assertThat(storage.traces().getTrace("1").execute()).isEmpty();
+    assertThat(storage.traces().getTrace("64").execute()).containsExactly(spans.get(99));
+  }
+
+  List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().toList();
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage.disk;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+import zipkin2.storage.StorageComponent;
+
+class ITDiskStorage {
+  @TempDir static Path directory;
+
+  @Nested
+  class ITTraces extends zipkin2.storage.ITTraces<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+
+  @Nested
+  class ITSpanStore extends zipkin2.storage.ITSpanStore<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+
+  @Nested
+  class ITSpanStoreHeavy extends zipkin2.storage.ITSpanStoreHeavy<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+
+  @Nested
+  class ITSearchEnabledFalse extends zipkin2.storage.ITSearchEnabledFalse<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+
+  @Nested
+  class ITStrictTraceIdFalse extends zipkin2.storage.ITStrictTraceIdFalse<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+
+  @Nested
+  class ITAutocompleteTags extends zipkin2.storage.ITAutocompleteTags<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+
+  @Nested
+  class ITServiceAndSpanNames extends zipkin2.storage.ITServiceAndSpanNames<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+
+  @Nested
+  class ITDependencies extends zipkin2.storage.ITDependencies<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+
+  @Nested
+  class ITDependenciesHeavy extends zipkin2.storage.ITDependenciesHeavy<DiskStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return DiskStorage.newBuilder().directory(directory.resolve(getClass().getSimpleName()));
+    }
+
+    @Override public void clear() {
+      storage.clear();
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+/**
+ * Counts documents which failed in bulk requests, by reason. The reason is the error type returned
+ * by Elasticsearch or OpenSearch for the document, such as "es_rejected_execution_exception" or
+ * "mapper_parsing_exception".
+ *
+ * <p>Only documents which failed are counted, as opposed to all documents in a request which had
+ * errors. Failures of a whole request, such as a connection error, are not counted here.
+ *
+ * @since 3.5
+ */
+public interface BulkItemMetrics {
+  BulkItemMetrics NOOP_METRICS = new BulkItemMetrics() {
+    @Override public void incrementRetried(String reason, int quantity) {
+    }
+
+    @Override public void incrementFailed(String reason, int quantity) {
+    }
+
+    @Override public String toString() {
+      return "NoOpBulkItemMetrics";
+    }
+  };
+
+  /** Increments the count of documents sent again, after failing for a retryable reason. */
+  void incrementRetried(String reason, int quantity);
+
+  /** Increments the count of documents which were not written, even if retried. */
+  void incrementFailed(String reason, int quantity);
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import zipkin2.elasticsearch.internal.client.HttpCall.BodyConverter;
+import zipkin2.elasticsearch.internal.client.SearchRequest;
+
+/**
+ * Trace IDs read from a search {@linkplain SearchRequest#collapse collapsed} on trace ID, in the
+ * order of the collapsed results. Each result holds its trace ID in the "fields" object.
+ */
+final class CollapsedTraceIds {
+  /** The {@link SearchRequest#filterPath(String...) filter path} of what {@link #CONVERTER} reads. */
+  static final String FIELDS_TRACE_ID = "hits.hits.fields.traceId";
+
+  static final BodyConverter<List<String>> CONVERTER = (parser, contentString) -> {
+    JsonParser hits = enterHits(parser);
+    if (hits == null || !hits.isExpectedStartArrayToken()) return List.of();
+
+    List<String> traceIds = new ArrayList<>();
+    while (hits.nextToken() == JsonToken.START_OBJECT) {
+      readHit(hits, traceIds);
+    }
+    return traceIds;
+  };
+
+  /** Reads the trace ID of a collapsed result, leaving the parser at the end of it. */
+  static void readHit(JsonParser parser, List<String> traceIds) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      if (parser.nextToken() != JsonToken.START_OBJECT || !field.equals("fields")) {
+        parser.skipChildren();
+        continue;
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        if (parser.nextToken() != JsonToken.START_ARRAY || !name.equals("traceId")) {
+          parser.skipChildren();
+          continue;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            traceIds.add(parser.getText());
+          } else {
+            parser.skipChildren();
+          }
+        }
+      }
+    }
+  }
+
+  /** Returns the parser at the value of the top-level "hits.hits" field or null if absent. */
+  static JsonParser enterHits(JsonParser parser) throws IOException {
+    if (parser.currentToken() == null) parser.nextToken();
+    if (parser.currentToken() != JsonToken.START_OBJECT) return null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (field.equals("hits") && value == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          field = parser.getCurrentName();
+          value = parser.nextToken();
+          if (field.equals("hits")) return parser;
+          parser.skipChildren();
+        }
+        return null;
+      }
+      parser.skipChildren();
+    }
+    return null;
+  }
+}
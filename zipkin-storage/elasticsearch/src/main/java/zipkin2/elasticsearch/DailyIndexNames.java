@@ -0,0 +1,55 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import java.util.concurrent.TimeUnit;
+import zipkin2.elasticsearch.internal.IndexNameFormatter;
+
+/**
+ * Caches the names of daily indices written to, keyed by epoch day. Each span and autocomplete
+ * value is indexed by name, and formatting a date for each is wasteful as they rarely differ.
+ *
+ * <p>Slots are chosen by epoch day, so a week of days can be cached without collisions. Spans are
+ * almost always from today or yesterday, so lookups don't allocate.
+ */
+final class DailyIndexNames {
+  static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+  static final int SLOTS = 8; // power of two, to mask the epoch day
+
+  final IndexNameFormatter indexNameFormatter;
+  final char indexTypeDelimiter;
+  final String type;
+  // Not synchronized, as entries are immutable and races only result in formatting a name again.
+  final DailyIndexName[] names = new DailyIndexName[SLOTS];
+
+  DailyIndexNames(IndexNameFormatter indexNameFormatter, char indexTypeDelimiter, String type) {
+    this.indexNameFormatter = indexNameFormatter;
+    this.indexTypeDelimiter = indexTypeDelimiter;
+    this.type = type;
+  }
+
+  /** Returns the name of the index to insert into for the given epoch milliseconds. */
+  String get(long timestampMillis) {
+    long epochDay = Math.floorDiv(timestampMillis, DAY_MILLIS);
+    int slot = (int) (epochDay & (SLOTS - 1));
+    DailyIndexName name = names[slot];
+    if (name == null || name.epochDay != epochDay) {
+      name = new DailyIndexName(epochDay, indexNameFormatter.formatTypeAndTimestampForInsert(
+        type, indexTypeDelimiter, epochDay * DAY_MILLIS));
+      names[slot] = name;
+    }
+    return name.value;
+  }
+
+  static final class DailyIndexName {
+    final long epochDay;
+    final String value;
+
+    DailyIndexName(long epochDay, String value) {
+      this.epochDay = epochDay;
+      this.value = value;
+    }
+  }
+}
@@ -8,42 +8,53 @@ import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import zipkin2.Call;
 import zipkin2.Span;
+import zipkin2.elasticsearch.internal.BulkAccumulator;
 import zipkin2.elasticsearch.internal.BulkCallBuilder;
 import zipkin2.elasticsearch.internal.BulkIndexWriter;
 import zipkin2.elasticsearch.internal.IndexNameFormatter;
 import zipkin2.internal.DelayLimiter;
+import zipkin2.internal.Nullable;
 import zipkin2.storage.SpanConsumer;
 
 import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_AUTOCOMPLETE;
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_NAMES;
 import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_SPAN;
+import static zipkin2.internal.DateUtil.midnightUTC;
 import static zipkin2.internal.RecyclableBuffers.SHORT_STRING_LENGTH;
 
 class ElasticsearchSpanConsumer implements SpanConsumer { // not final for testing
   final ElasticsearchStorage es;
   final Set<String> autocompleteKeys;
-  final IndexNameFormatter indexNameFormatter;
-  final char indexTypeDelimiter;
+  final DailyIndexNames spanIndices, autocompleteIndices, namesIndices;
   final boolean searchEnabled;
   final DelayLimiter<AutocompleteContext> delayLimiter;
+  final DelayLimiter<NamesContext> namesDelayLimiter;
+  final TraceIdIndexCache traceIdIndexCache;
+  @Nullable final BulkAccumulator bulkAccumulator;
 
   ElasticsearchSpanConsumer(ElasticsearchStorage es) {
     this.es = es;
     this.autocompleteKeys = new LinkedHashSet<>(es.autocompleteKeys());
-    this.indexNameFormatter = es.indexNameFormatter();
-    this.indexTypeDelimiter = es.indexTypeDelimiter();
+    IndexNameFormatter indexNameFormatter = es.indexNameFormatter();
+    char indexTypeDelimiter = es.indexTypeDelimiter();
+    this.spanIndices = new DailyIndexNames(indexNameFormatter, indexTypeDelimiter, TYPE_SPAN);
+    this.autocompleteIndices =
+      new DailyIndexNames(indexNameFormatter, indexTypeDelimiter, TYPE_AUTOCOMPLETE);
+    this.namesIndices = new DailyIndexNames(indexNameFormatter, indexTypeDelimiter, TYPE_NAMES);
     this.searchEnabled = es.searchEnabled();
     this.delayLimiter = DelayLimiter.newBuilder()
       .ttl(es.autocompleteTtl(), TimeUnit.MILLISECONDS)
       .cardinality(es.autocompleteCardinality()).build();
-  }
-
-  String formatTypeAndTimestampForInsert(String type, long timestampMillis) {
-    return indexNameFormatter
-      .formatTypeAndTimestampForInsert(type, indexTypeDelimiter, timestampMillis);
+    this.namesDelayLimiter = DelayLimiter.newBuilder()
+      .ttl(es.autocompleteTtl(), TimeUnit.MILLISECONDS)
+      .cardinality(es.autocompleteCardinality()).build();
+    this.traceIdIndexCache = es.traceIdIndexCache();
+    this.bulkAccumulator = es.bulkAccumulator();
   }
 
   @Override public Call<Void> accept(List<Span> spans) {
@@ -54,22 +65,35 @@ class ElasticsearchSpanConsumer implements SpanConsumer { // not final for testi
   }
 
   void indexSpans(BulkSpanIndexer indexer, List<Span> spans) {
-    for (Span span : spans) {
-      final long indexTimestamp; // which index to store this span into
-      if (span.timestampAsLong() != 0L) {
-        indexTimestamp = span.timestampAsLong() / 1000L;
-      } else if (!span.annotations().isEmpty()) {
-        // guessTimestamp is made for determining the span's authoritative timestamp. When choosing
-        // the index bucket, any annotation is better than using current time.
-        indexTimestamp = span.annotations().get(0).timestamp() / 1000L;
-      } else {
-        indexTimestamp = System.currentTimeMillis();
-      }
+    long[] indexTimestamps = new long[spans.size()];
+    for (int i = 0; i < indexTimestamps.length; i++) {
+      Span span = spans.get(i);
+      long indexTimestamp = indexTimestamp(span); // which index to store this span into
+      if (indexTimestamp == NO_TIMESTAMP) indexTimestamp = System.currentTimeMillis();
+      indexTimestamps[i] = indexTimestamp;
       indexer.add(indexTimestamp, span);
       if (searchEnabled && !span.tags().isEmpty()) {
         indexer.addAutocompleteValues(indexTimestamp, span);
       }
+      if (searchEnabled && span.localServiceName() != null) {
+        indexer.addNames(indexTimestamp, span);
+      }
     }
+    traceIdIndexCache.recordWrite(spans, indexTimestamps);
+  }
+
+  static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  /**
+   * Returns the epoch milliseconds used to choose the span's daily index, or {@link #NO_TIMESTAMP}
+   * when the span has none. In the latter case, the span is indexed by the current time.
+   */
+  static long indexTimestamp(Span span) {
+    if (span.timestampAsLong() != 0L) return span.timestampAsLong() / 1000L;
+    // guessTimestamp is made for determining the span's authoritative timestamp. When choosing
+    // the index bucket, any annotation is better than using current time.
+    if (!span.annotations().isEmpty()) return span.annotations().get(0).timestamp() / 1000L;
+    return NO_TIMESTAMP;
   }
 
   /** Mutable type used for each call to store spans */
@@ -77,6 +101,7 @@ class ElasticsearchSpanConsumer implements SpanConsumer { // not final for testi
     final BulkCallBuilder bulkCallBuilder;
     final ElasticsearchSpanConsumer consumer;
     final List<AutocompleteContext> pendingAutocompleteContexts = new ArrayList<>();
+    final List<NamesContext> pendingNamesContexts = new ArrayList<>();
     final BulkIndexWriter<Span> spanWriter;
 
     BulkSpanIndexer(ElasticsearchSpanConsumer consumer) {
@@ -87,12 +112,12 @@ class ElasticsearchSpanConsumer implements SpanConsumer { // not final for testi
     }
 
     void add(long indexTimestamp, Span span) {
-      String index = consumer.formatTypeAndTimestampForInsert(TYPE_SPAN, indexTimestamp);
+      String index = consumer.spanIndices.get(indexTimestamp);
       bulkCallBuilder.index(index, TYPE_SPAN, span, spanWriter);
     }
 
     void addAutocompleteValues(long indexTimestamp, Span span) {
-      String idx = consumer.formatTypeAndTimestampForInsert(TYPE_AUTOCOMPLETE, indexTimestamp);
+      String idx = consumer.autocompleteIndices.get(indexTimestamp);
       for (Map.Entry<String, String> tag : span.tags().entrySet()) {
         int length = tag.getKey().length() + tag.getValue().length() + 1;
         if (length > SHORT_STRING_LENGTH) continue;
@@ -109,13 +134,32 @@ class ElasticsearchSpanConsumer implements SpanConsumer { // not final for testi
       }
     }
 
+    /** Adds a document to the names catalog, unless it was recently written for this day. */
+    void addNames(long indexTimestamp, Span span) {
+      NamesContext context = new NamesContext(midnightUTC(indexTimestamp), span.localServiceName(),
+        span.remoteServiceName(), span.name());
+      if (!consumer.namesDelayLimiter.shouldInvoke(context)) return;
+      pendingNamesContexts.add(context);
+
+      String idx = consumer.namesIndices.get(indexTimestamp);
+      bulkCallBuilder.index(idx, TYPE_NAMES, span, BulkIndexWriter.NAMES);
+    }
+
     Call<Void> newCall() {
-      Call<Void> storeCall = bulkCallBuilder.build();
-      if (pendingAutocompleteContexts.isEmpty()) return storeCall;
+      BulkAccumulator accumulator = consumer.bulkAccumulator;
+      Call<Void> storeCall = accumulator != null
+        ? accumulator.newCall(bulkCallBuilder)
+        : bulkCallBuilder.buildRetrying();
+      if (pendingAutocompleteContexts.isEmpty() && pendingNamesContexts.isEmpty()) {
+        return storeCall;
+      }
       return storeCall.handleError((error, callback) -> {
         for (AutocompleteContext context : pendingAutocompleteContexts) {
           consumer.delayLimiter.invalidate(context);
         }
+        for (NamesContext context : pendingNamesContexts) {
+          consumer.namesDelayLimiter.invalidate(context);
+        }
         callback.onError(error);
       });
     }
@@ -149,4 +193,41 @@ class ElasticsearchSpanConsumer implements SpanConsumer { // not final for testi
       return h$;
     }
   }
+
+  static final class NamesContext {
+    final long midnight;
+    final String serviceName;
+    @Nullable final String remoteServiceName, spanName;
+
+    NamesContext(long midnight, String serviceName, @Nullable String remoteServiceName,
+      @Nullable String spanName) {
+      this.midnight = midnight;
+      this.serviceName = serviceName;
+      this.remoteServiceName = remoteServiceName;
+      this.spanName = spanName;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof NamesContext)) return false;
+      NamesContext that = (NamesContext) o;
+      return midnight == that.midnight
+        && serviceName.equals(that.serviceName)
+        && Objects.equals(remoteServiceName, that.remoteServiceName)
+        && Objects.equals(spanName, that.spanName);
+    }
+
+    @Override public int hashCode() {
+      int h$ = 1;
+      h$ *= 1000003;
+      h$ ^= (int) ((midnight >>> 32) ^ midnight);
+      h$ *= 1000003;
+      h$ ^= serviceName.hashCode();
+      h$ *= 1000003;
+      h$ ^= Objects.hashCode(remoteServiceName);
+      h$ *= 1000003;
+      h$ ^= Objects.hashCode(spanName);
+      return h$;
+    }
+  }
 }
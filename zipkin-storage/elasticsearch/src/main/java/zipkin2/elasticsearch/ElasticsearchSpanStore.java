@@ -4,11 +4,13 @@
  */
 package zipkin2.elasticsearch;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import zipkin2.Call;
 import zipkin2.DependencyLink;
 import zipkin2.Span;
@@ -17,16 +19,22 @@ import zipkin2.elasticsearch.internal.client.Aggregation;
 import zipkin2.elasticsearch.internal.client.HttpCall;
 import zipkin2.elasticsearch.internal.client.SearchCallFactory;
 import zipkin2.elasticsearch.internal.client.SearchRequest;
+import zipkin2.internal.Nullable;
 import zipkin2.storage.GroupByTraceId;
 import zipkin2.storage.QueryRequest;
 import zipkin2.storage.ServiceAndSpanNames;
 import zipkin2.storage.SpanStore;
 import zipkin2.storage.StrictTraceId;
+import zipkin2.storage.TraceCallback;
 import zipkin2.storage.Traces;
 
 import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.DAYS;
 import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_DEPENDENCY;
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_NAMES;
 import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_SPAN;
+import static zipkin2.elasticsearch.internal.client.SearchRequest.HITS_SOURCE;
+import static zipkin2.internal.DateUtil.midnightUTC;
 
 final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanNames {
 
@@ -37,8 +45,9 @@ final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanN
   final Call.Mapper<List<Span>, List<List<Span>>> groupByTraceId;
   final String[] allSpanIndices;
   final IndexNameFormatter indexNameFormatter;
-  final boolean strictTraceId, searchEnabled;
+  final boolean strictTraceId, searchEnabled, collapseTraceSearch;
   final int namesLookback;
+  final TraceIdIndexCache traceIdIndexCache;
 
   ElasticsearchSpanStore(ElasticsearchStorage es) {
     this.search = new SearchCallFactory(es.http());
@@ -47,7 +56,10 @@ final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanN
     this.indexNameFormatter = es.indexNameFormatter();
     this.strictTraceId = es.strictTraceId();
     this.searchEnabled = es.searchEnabled();
+    // Collapsing requires trace IDs to be keywords, which they aren't unless strict.
+    this.collapseTraceSearch = es.collapseTraceSearch() && es.strictTraceId();
     this.namesLookback = es.namesLookback();
+    this.traceIdIndexCache = es.traceIdIndexCache();
   }
 
   @Override
@@ -57,6 +69,80 @@ final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanN
     long endMillis = request.endTs();
     long beginMillis = Math.max(endMillis - request.lookback(), EARLIEST_MS);
 
+    List<String> indices = indexNameFormatter.formatTypeAndRange(TYPE_SPAN, beginMillis, endMillis);
+    if (indices.isEmpty()) return Call.emptyList();
+
+    Call<List<List<Span>>> result = traceIdsCall(request, indices, beginMillis, endMillis)
+      .flatMap(new GetSpansByTraceId(search, indices)).map(groupByTraceId);
+    // Elasticsearch lookup by trace ID is by the full 128-bit length, but there's still a chance of
+    // clash on lower-64 bit. When strict trace ID is enabled, we only filter client-side on clash.
+    if (strictTraceId) result = result.map(StrictTraceId.filterTraces(request));
+    // Remember where these traces are, as the next lookup is likely one of them.
+    return result.map(recordTraces(beginMillis, endMillis));
+  }
+
+  /**
+   * Like {@link #getTraces(QueryRequest)}, except spans are read a page of trace IDs at a time,
+   * passing traces of each page to the callback before reading the next.
+   */
+  @Override public Call<Void> streamTraces(QueryRequest request, TraceCallback callback) {
+    if (callback == null) throw new NullPointerException("callback == null");
+    if (!searchEnabled) return Call.create(null);
+
+    long endMillis = request.endTs();
+    long beginMillis = Math.max(endMillis - request.lookback(), EARLIEST_MS);
+
+    List<String> indices = indexNameFormatter.formatTypeAndRange(TYPE_SPAN, beginMillis, endMillis);
+    if (indices.isEmpty()) return Call.create(null);
+
+    SpansToTraces toTraces = new SpansToTraces(groupByTraceId,
+      strictTraceId ? StrictTraceId.filterTraces(request) : null,
+      recordTraces(beginMillis, endMillis));
+    return traceIdsCall(request, indices, beginMillis, endMillis)
+      .flatMap(new StreamSpansByTraceId(search, indices, toTraces, callback));
+  }
+
+  /** Spans of traces are read by trace ID from whole daily indices, not only the time range. */
+  Call.Mapper<List<List<Span>>, List<List<Span>>> recordTraces(long beginMillis, long endMillis) {
+    return traceIdIndexCache.recordTraces(
+      midnightUTC(beginMillis), midnightUTC(endMillis) + DAYS.toMillis(1) - 1);
+  }
+
+  /**
+   * Returns IDs of traces with a span matching the request, newest first. Spans of these traces
+   * are read in a separate request, by trace ID and without the time range, so that traces are
+   * complete even when some of their spans are outside it.
+   */
+  HttpCall<List<String>> traceIdsCall(QueryRequest request, List<String> indices,
+    long beginMillis, long endMillis) {
+    SearchRequest.Filters filters = filters(request, beginMillis, endMillis);
+    if (collapseTraceSearch) {
+      // Collapsing returns one hit per trace ID, ordered by the latest matching span. This is
+      // usually cheaper than aggregating, as the cluster needn't find the earliest span of each.
+      SearchRequest esRequest = SearchRequest.create(indices).filters(filters)
+        .collapse("traceId", request.limit(), "timestamp_millis")
+        .filterPath(CollapsedTraceIds.FIELDS_TRACE_ID);
+      return search.newCall(esRequest, CollapsedTraceIds.CONVERTER);
+    }
+
+    // We need to filter to traces that contain at least one span that matches the request,
+    // but the zipkin API is supposed to order traces by first span, regardless of if it was
+    // filtered or not. This is not possible without either multiple, heavyweight queries
+    // or complex multiple indexing, defeating much of the elegance of using elasticsearch for this.
+    // So we fudge and order on the first span among the filtered spans - in practice, there should
+    // be no significant difference in user experience since span start times are usually very
+    // close to each other in human time.
+    Aggregation traceIdTimestamp =
+      Aggregation.terms("traceId", request.limit())
+        .addSubAggregation(Aggregation.min("timestamp_millis"))
+        .orderBy("timestamp_millis", "desc");
+
+    SearchRequest esRequest =
+      SearchRequest.create(indices).filters(filters).addAggregation(traceIdTimestamp);
+    return search.newCall(esRequest, BodyConverters.KEYS);
+  }
+
+  static SearchRequest.Filters filters(QueryRequest request, long beginMillis, long endMillis) {
     SearchRequest.Filters filters = new SearchRequest.Filters();
     filters.addRange("timestamp_millis", beginMillis, endMillis);
     if (request.serviceName() != null) {
@@ -82,32 +168,7 @@ final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanN
     if (request.minDuration() != null) {
       filters.addRange("duration", request.minDuration(), request.maxDuration());
     }
-
-    // We need to filter to traces that contain at least one span that matches the request,
-    // but the zipkin API is supposed to order traces by first span, regardless of if it was
-    // filtered or not. This is not possible without either multiple, heavyweight queries
-    // or complex multiple indexing, defeating much of the elegance of using elasticsearch for this.
-    // So we fudge and order on the first span among the filtered spans - in practice, there should
-    // be no significant difference in user experience since span start times are usually very
-    // close to each other in human time.
-    Aggregation traceIdTimestamp =
-      Aggregation.terms("traceId", request.limit())
-        .addSubAggregation(Aggregation.min("timestamp_millis"))
-        .orderBy("timestamp_millis", "desc");
-
-    List<String> indices = indexNameFormatter.formatTypeAndRange(TYPE_SPAN, beginMillis, endMillis);
-    if (indices.isEmpty()) return Call.emptyList();
-
-    SearchRequest esRequest =
-      SearchRequest.create(indices).filters(filters).addAggregation(traceIdTimestamp);
-
-    HttpCall<List<String>> traceIdsCall = search.newCall(esRequest, BodyConverters.KEYS);
-
-    Call<List<List<Span>>> result =
-      traceIdsCall.flatMap(new GetSpansByTraceId(search, indices)).map(groupByTraceId);
-    // Elasticsearch lookup by trace ID is by the full 128-bit length, but there's still a chance of
-    // clash on lower-64 bit. When strict trace ID is enabled, we only filter client-side on clash.
-    return strictTraceId ? result.map(StrictTraceId.filterTraces(request)) : result;
+    return filters;
   }
 
   @Override
@@ -116,10 +177,20 @@ final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanN
     traceId = Span.normalizeTraceId(traceId);
 
     // Unless we are strict, truncate the trace ID to 64bit (encoded as 16 characters)
-    if (!strictTraceId && traceId.length() == 32) traceId = traceId.substring(16);
+    traceId = traceIdIndexCache.key(traceId);
+
+    SearchRequest request = SearchRequest.create(asList(allSpanIndices)).term("traceId", traceId)
+      .filterPath(HITS_SOURCE);
+    Call<List<Span>> allIndicesCall =
+      search.newCall(request, BodyConverters.SPANS).map(traceIdIndexCache.recordTrace());
+
+    List<String> indices = traceIdIndexCache.indices(Set.of(traceId));
+    if (indices == null) return allIndicesCall;
 
-    SearchRequest request = SearchRequest.create(asList(allSpanIndices)).term("traceId", traceId);
-    return search.newCall(request, BodyConverters.SPANS);
+    SearchRequest routed =
+      SearchRequest.create(indices).term("traceId", traceId).filterPath(HITS_SOURCE);
+    return search.newCall(routed, BodyConverters.SPANS)
+      .flatMap(new FallbackWhenFewer<>(allIndicesCall, 1));
   }
 
   @Override public Call<List<List<Span>>> getTraces(Iterable<String> traceIds) {
@@ -129,58 +200,158 @@ final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanN
       traceId = Span.normalizeTraceId(traceId);
 
       // Unless we are strict, truncate the trace ID to 64bit (encoded as 16 characters)
-      if (!strictTraceId && traceId.length() == 32) traceId = traceId.substring(16);
+      traceId = traceIdIndexCache.key(traceId);
 
       normalizedTraceIds.add(traceId);
     }
 
     if (normalizedTraceIds.isEmpty()) return Call.emptyList();
-    SearchRequest request =
-      SearchRequest.create(asList(allSpanIndices)).terms("traceId", normalizedTraceIds);
-    return search.newCall(request, BodyConverters.SPANS).map(groupByTraceId);
+
+    List<String> indices = traceIdIndexCache.indices(normalizedTraceIds);
+    if (indices == null) return allIndicesCall(normalizedTraceIds);
+
+    SearchRequest routed = SearchRequest.create(indices)
+      .terms("traceId", normalizedTraceIds).filterPath(HITS_SOURCE);
+    return search.newCall(routed, BodyConverters.SPANS).map(groupByTraceId)
+      .flatMap(new FallbackForMissingTraces(normalizedTraceIds));
+  }
+
+  Call<List<List<Span>>> allIndicesCall(Set<String> normalizedTraceIds) {
+    SearchRequest request = SearchRequest.create(asList(allSpanIndices))
+      .terms("traceId", normalizedTraceIds).filterPath(HITS_SOURCE);
+    return search.newCall(request, BodyConverters.SPANS)
+      .map(groupByTraceId).map(traceIdIndexCache.recordTraces(Long.MIN_VALUE, Long.MAX_VALUE));
+  }
+
+  /**
+   * Searches all span indices for traces a search routed by {@link TraceIdIndexCache} didn't find,
+   * adding them to its result. Traces already found aren't searched again.
+   */
+  final class FallbackForMissingTraces
+    implements Call.FlatMapper<List<List<Span>>, List<List<Span>>> {
+    final Set<String> normalizedTraceIds;
+
+    FallbackForMissingTraces(Set<String> normalizedTraceIds) {
+      this.normalizedTraceIds = normalizedTraceIds;
+    }
+
+    @Override public Call<List<List<Span>>> map(List<List<Span>> input) {
+      Set<String> missing = new LinkedHashSet<>(normalizedTraceIds);
+      for (List<Span> trace : input) {
+        missing.remove(traceIdIndexCache.key(trace.get(0).traceId()));
+      }
+      if (missing.isEmpty()) return Call.create(input);
+      return allIndicesCall(missing).map(new AddTraces(input));
+    }
+
+    @Override public String toString() {
+      return "FallbackForMissingTraces{" + normalizedTraceIds + "}";
+    }
   }
 
+  static final class AddTraces implements Call.Mapper<List<List<Span>>, List<List<Span>>> {
+    final List<List<Span>> found;
+
+    AddTraces(List<List<Span>> found) {
+      this.found = found;
+    }
+
+    @Override public List<List<Span>> map(List<List<Span>> input) {
+      if (input.isEmpty()) return found;
+      List<List<Span>> result = new ArrayList<>(found.size() + input.size());
+      result.addAll(found);
+      result.addAll(input);
+      return result;
+    }
+
+    @Override public String toString() {
+      return "AddTraces{}";
+    }
+  }
+
+  /**
+   * Names are read from a catalog written alongside spans, as aggregating spans is expensive. Until
+   * the catalog covers the whole lookback, such as just after upgrading, names aggregated from
+   * spans are added, so that services whose spans precede the catalog aren't missing.
+   */
   @Override public Call<List<String>> getServiceNames() {
     if (!searchEnabled) return Call.emptyList();
 
     long endMillis = System.currentTimeMillis();
     long beginMillis = endMillis - namesLookback;
 
-    List<String> indices = indexNameFormatter.formatTypeAndRange(TYPE_SPAN, beginMillis, endMillis);
+    List<String> indices =
+      indexNameFormatter.formatTypeAndRange(TYPE_NAMES, beginMillis, endMillis);
     if (indices.isEmpty()) return Call.emptyList();
 
-    SearchRequest request = SearchRequest.create(indices)
+    SearchRequest spansRequest = SearchRequest.create(
+        indexNameFormatter.formatTypeAndRange(TYPE_SPAN, beginMillis, endMillis))
       .filters(new SearchRequest.Filters().addRange("timestamp_millis", beginMillis, endMillis))
       .addAggregation(Aggregation.terms("localEndpoint.serviceName", Integer.MAX_VALUE));
+
+    return serviceNamesCall(indices).flatMap(new UnionUnlessIndexed(
+      namesIndexedCall(beginMillis), search.newCall(spansRequest, BodyConverters.KEYS)));
+  }
+
+  /**
+   * Returns any service name of the names index of the day the lookback begins. When there is none,
+   * the catalog was not yet written then, and can miss names of spans within the lookback.
+   */
+  HttpCall<List<String>> namesIndexedCall(long beginMillis) {
+    String index = indexNameFormatter.formatTypeAndTimestamp(TYPE_NAMES, beginMillis);
+    SearchRequest request = SearchRequest.create(asList(index))
+      .addAggregation(Aggregation.terms("serviceName", 1));
+    return search.newCall(request, BodyConverters.KEYS);
+  }
+
+  HttpCall<List<String>> serviceNamesCall(List<String> namesIndices) {
+    SearchRequest request = SearchRequest.create(namesIndices)
+      .addAggregation(Aggregation.terms("serviceName", Integer.MAX_VALUE));
     return search.newCall(request, BodyConverters.KEYS);
   }
 
   @Override public Call<List<String>> getRemoteServiceNames(String serviceName) {
-    return aggregatedFieldByServiceName(serviceName, "remoteEndpoint.serviceName");
+    return aggregatedFieldByServiceName(serviceName, "remoteServiceName",
+      "remoteEndpoint.serviceName");
   }
 
   @Override public Call<List<String>> getSpanNames(String serviceName) {
-    return aggregatedFieldByServiceName(serviceName, "name");
+    return aggregatedFieldByServiceName(serviceName, "spanName", "name");
   }
 
-  Call<List<String>> aggregatedFieldByServiceName(String serviceName, String term) {
+  /**
+   * @param term the field to aggregate in the names index
+   * @param spanTerm the same field in the span index
+   */
+  Call<List<String>> aggregatedFieldByServiceName(String serviceName, String term,
+    String spanTerm) {
     if (serviceName.isEmpty() || !searchEnabled) return Call.emptyList();
 
     long endMillis = System.currentTimeMillis();
     long beginMillis = endMillis - namesLookback;
 
-    List<String> indices = indexNameFormatter.formatTypeAndRange(TYPE_SPAN, beginMillis, endMillis);
+    List<String> indices =
+      indexNameFormatter.formatTypeAndRange(TYPE_NAMES, beginMillis, endMillis);
     if (indices.isEmpty()) return Call.emptyList();
 
     // A span name is only valid on a local endpoint, as a span name is defined locally
     SearchRequest.Filters filters = new SearchRequest.Filters()
-      .addRange("timestamp_millis", beginMillis, endMillis)
-      .addTerm("localEndpoint.serviceName", serviceName.toLowerCase(Locale.ROOT));
+      .addTerm("serviceName", serviceName.toLowerCase(Locale.ROOT));
 
     SearchRequest request = SearchRequest.create(indices).filters(filters)
       .addAggregation(Aggregation.terms(term, Integer.MAX_VALUE));
 
-    return search.newCall(request, BodyConverters.KEYS);
+    SearchRequest.Filters spanFilters = new SearchRequest.Filters()
+      .addRange("timestamp_millis", beginMillis, endMillis)
+      .addTerm("localEndpoint.serviceName", serviceName.toLowerCase(Locale.ROOT));
+
+    SearchRequest spansRequest = SearchRequest.create(
+        indexNameFormatter.formatTypeAndRange(TYPE_SPAN, beginMillis, endMillis))
+      .filters(spanFilters)
+      .addAggregation(Aggregation.terms(spanTerm, Integer.MAX_VALUE));
+
+    return search.newCall(request, BodyConverters.KEYS).flatMap(new UnionUnlessIndexed(
+      namesIndexedCall(beginMillis), search.newCall(spansRequest, BodyConverters.KEYS)));
   }
 
   @Override
@@ -196,7 +367,149 @@ final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanN
       indexNameFormatter.formatTypeAndRange(TYPE_DEPENDENCY, beginMillis, endTs);
     if (indices.isEmpty()) return Call.emptyList();
 
-    return search.newCall(SearchRequest.create(indices), BodyConverters.DEPENDENCY_LINKS);
+    SearchRequest request = SearchRequest.create(indices).filterPath(HITS_SOURCE);
+    return search.newCall(request, BodyConverters.DEPENDENCY_LINKS);
+  }
+
+  /**
+   * Runs a more expensive search when a cheaper one found fewer results than expected.
+   *
+   * <p>Searches routed by {@link TraceIdIndexCache} fall back to all span indices when the cache is
+   * stale, for example after indices are deleted. Searches are only routed for traces whose spans
+   * were all read before, so a partial result is only possible when spans were written later, far
+   * from those read.
+   */
+  static final class FallbackWhenFewer<V extends List<?>> implements Call.FlatMapper<V, V> {
+    final Call<V> fallback;
+    final int expectedSize;
+
+    FallbackWhenFewer(Call<V> fallback, int expectedSize) {
+      this.fallback = fallback;
+      this.expectedSize = expectedSize;
+    }
+
+    @Override public Call<V> map(V input) {
+      if (input != null && input.size() >= expectedSize) return Call.create(input);
+      return fallback.clone();
+    }
+
+    @Override public String toString() {
+      return "FallbackWhenFewer{" + fallback + "}";
+    }
+  }
+
+  /**
+   * Adds names aggregated from span indices to those read from the catalog, unless the catalog was
+   * written on the day the lookback begins. Otherwise, no names mean there are none, such as a
+   * service without remote services.
+   */
+  static final class UnionUnlessIndexed implements Call.FlatMapper<List<String>, List<String>> {
+    final Call<List<String>> namesIndexedCall, spansCall;
+
+    UnionUnlessIndexed(Call<List<String>> namesIndexedCall, Call<List<String>> spansCall) {
+      this.namesIndexedCall = namesIndexedCall;
+      this.spansCall = spansCall;
+    }
+
+    @Override public Call<List<String>> map(List<String> names) {
+      if (names == null) names = List.of();
+      return namesIndexedCall.clone().flatMap(new SpansUnlessIndexed(names, spansCall));
+    }
+
+    @Override public String toString() {
+      return "UnionUnlessIndexed{" + spansCall + "}";
+    }
+  }
+
+  static final class SpansUnlessIndexed implements Call.FlatMapper<List<String>, List<String>> {
+    final List<String> names;
+    final Call<List<String>> spansCall;
+
+    SpansUnlessIndexed(List<String> names, Call<List<String>> spansCall) {
+      this.names = names;
+      this.spansCall = spansCall;
+    }
+
+    @Override public Call<List<String>> map(List<String> indexedServiceNames) {
+      if (indexedServiceNames != null && !indexedServiceNames.isEmpty()) {
+        return Call.create(names);
+      }
+      return spansCall.clone().map(new AddNames(names));
+    }
+
+    @Override public String toString() {
+      return "SpansUnlessIndexed{" + spansCall + "}";
+    }
+  }
+
+  /** Returns the sorted union of names from the catalog and the input. */
+  static final class AddNames implements Call.Mapper<List<String>, List<String>> {
+    final List<String> names;
+
+    AddNames(List<String> names) {
+      this.names = names;
+    }
+
+    @Override public List<String> map(List<String> input) {
+      if (input == null || input.isEmpty()) return names;
+      if (names.isEmpty()) return input;
+      Set<String> result = new TreeSet<>(names);
+      result.addAll(input);
+      return new ArrayList<>(result);
+    }
+
+    @Override public String toString() {
+      return "AddNames{}";
+    }
+  }
+
+  static final class StreamSpansByTraceId implements Call.FlatMapper<List<String>, Void> {
+    final SearchCallFactory search;
+    final List<String> indices;
+    final SpansToTraces toTraces;
+    final TraceCallback callback;
+
+    StreamSpansByTraceId(SearchCallFactory search, List<String> indices, SpansToTraces toTraces,
+      TraceCallback callback) {
+      this.search = search;
+      this.indices = indices;
+      this.toTraces = toTraces;
+      this.callback = callback;
+    }
+
+    @Override public Call<Void> map(List<String> input) {
+      if (input.isEmpty()) return Call.create(null);
+      return new PagedTraces(search, indices, input, toTraces, callback);
+    }
+
+    @Override public String toString() {
+      return "StreamSpansByTraceId{indices=" + indices + "}";
+    }
+  }
+
+  /** Groups spans into traces, then filters and records them as {@link #getTraces} would. */
+  static final class SpansToTraces implements Call.Mapper<List<Span>, List<List<Span>>> {
+    final Call.Mapper<List<Span>, List<List<Span>>> groupByTraceId;
+    @Nullable final Call.Mapper<List<List<Span>>, List<List<Span>>> filter;
+    final Call.Mapper<List<List<Span>>, List<List<Span>>> recordTraces;
+
+    SpansToTraces(Call.Mapper<List<Span>, List<List<Span>>> groupByTraceId,
+      @Nullable Call.Mapper<List<List<Span>>, List<List<Span>>> filter,
+      Call.Mapper<List<List<Span>>, List<List<Span>>> recordTraces) {
+      this.groupByTraceId = groupByTraceId;
+      this.filter = filter;
+      this.recordTraces = recordTraces;
+    }
+
+    @Override public List<List<Span>> map(List<Span> input) {
+      List<List<Span>> traces = groupByTraceId.map(input);
+      if (filter != null) traces = filter.map(traces);
+      return recordTraces.map(traces);
+    }
+
+    @Override public String toString() {
+      return "SpansToTraces{}";
+    }
   }
 
   static final class GetSpansByTraceId implements Call.FlatMapper<List<String>, List<Span>> {
@@ -212,7 +525,8 @@ final class ElasticsearchSpanStore implements SpanStore, Traces, ServiceAndSpanN
     public Call<List<Span>> map(List<String> input) {
       if (input.isEmpty()) return Call.emptyList();
 
-      SearchRequest getTraces = SearchRequest.create(indices).terms("traceId", input);
+      SearchRequest getTraces =
+        SearchRequest.create(indices).terms("traceId", input).filterPath(HITS_SOURCE);
       return search.newCall(getTraces, BodyConverters.SPANS);
     }
 
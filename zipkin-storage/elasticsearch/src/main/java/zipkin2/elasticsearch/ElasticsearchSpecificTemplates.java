@@ -102,6 +102,7 @@ final class ElasticsearchSpecificTemplates extends VersionSpecificTemplates<Elas
       .span(spanIndexTemplate(version))
       .dependency(dependencyTemplate(version))
       .autocomplete(autocompleteTemplate(version))
+      .names(namesTemplate(version))
       .build();
   }
 }
@@ -11,18 +11,25 @@ import com.linecorp.armeria.client.ResponseTimeoutException;
 import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.client.endpoint.EndpointGroup;
 import com.linecorp.armeria.common.AggregatedHttpRequest;
+import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.HttpMethod;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import zipkin2.Call;
 import zipkin2.CheckResult;
+import zipkin2.DependencyLink;
+import zipkin2.elasticsearch.internal.BulkAccumulator;
+import zipkin2.elasticsearch.internal.BulkCallBuilder;
+import zipkin2.elasticsearch.internal.BulkIndexWriter;
 import zipkin2.elasticsearch.internal.IndexNameFormatter;
 import zipkin2.elasticsearch.internal.Internal;
 import zipkin2.elasticsearch.internal.client.HttpCall;
@@ -39,6 +46,7 @@ import static com.linecorp.armeria.common.HttpMethod.GET;
 import static zipkin2.elasticsearch.EnsureIndexTemplate.ensureIndexTemplate;
 import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_AUTOCOMPLETE;
 import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_DEPENDENCY;
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_NAMES;
 import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_SPAN;
 import static zipkin2.elasticsearch.internal.JsonReaders.enterPath;
 
@@ -56,6 +64,16 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
      */
     @Override WebClient get();
 
+    /**
+     * Like {@link #get()}, except the client is used for bulk writes. Override this to send writes
+     * to different nodes than reads, such as ingest nodes. Defaults to {@link #get()}.
+     *
+     * @since 3.5
+     */
+    default WebClient getForWrites() {
+      return get();
+    }
+
     @Override default void close() {
     }
 
@@ -78,7 +96,15 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
       .flushOnWrites(false)
       .autocompleteKeys(List.of())
       .autocompleteTtl((int) TimeUnit.HOURS.toMillis(1))
-      .autocompleteCardinality(5 * 4000); // Ex. 5 site tags with cardinality 4000 each
+      .autocompleteCardinality(5 * 4000) // Ex. 5 site tags with cardinality 4000 each
+      .traceIdIndexCacheSize(100_000)
+      .collapseTraceSearch(false)
+      .bulkLinger(0)
+      .bulkMaxDocuments(5000)
+      .bulkMaxBytes(5 * 1024 * 1024)
+      .bulkMaxInFlight(4)
+      .bulkItemMetrics(BulkItemMetrics.NOOP_METRICS)
+      .precreateIndices(false);
   }
 
   abstract Builder toBuilder();
@@ -149,6 +175,99 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
      */
     public abstract Builder indexReplicas(int indexReplicas);
 
+    /**
+     * The maximum count of trace IDs to remember the daily span indices of. Lookups by trace ID,
+     * such as {@link Traces#getTrace(String)}, search these indices instead of all span indices,
+     * falling back when the trace ID isn't cached or nothing was found. Defaults to 100000.
+     *
+     * <p>Trace IDs are recorded when read from all span indices, and when returned by {@link
+     * SpanStore#getTraces(zipkin2.storage.QueryRequest)} from indices covering an hour around their
+     * spans. Writes widen the indices of recorded trace IDs. Each entry costs roughly 150 bytes of
+     * heap. Zero disables the cache.
+     *
+     * @since 3.5
+     */
+    public abstract Builder traceIdIndexCacheSize(int traceIdIndexCacheSize);
+
+    /**
+     * True finds the IDs of matching traces by collapsing on trace ID, instead of aggregating.
+     * Defaults to false.
+     *
+     * <p>A search first finds matching trace IDs, then gets all spans of these in a second request.
+     * By default, trace IDs are aggregated and ordered by their earliest matching span. Instead,
+     * this collapses matching spans by trace ID, which avoids finding the earliest span of each.
+     * Traces are then ordered by their latest matching span. This has no effect unless {@link
+     * #strictTraceId(boolean) strict}, as collapsing requires trace IDs indexed as keywords.
+     *
+     * <p>See https://www.elastic.co/guide/en/elasticsearch/reference/current/collapse-search-results.html
+     *
+     * @since 3.5
+     */
+    public abstract Builder collapseTraceSearch(boolean collapseTraceSearch);
+
+    /**
+     * When positive, spans from separate calls to {@link SpanConsumer#accept(java.util.List)} are
+     * written together in shared bulk requests, sent at most this many milliseconds after their
+     * first span. Defaults to zero, which sends a bulk request per call.
+     *
+     * <p>This reduces the count of small bulk requests when spans arrive in small messages, at
+     * the cost of up to this much latency before they are written. Spans rejected due to capacity
+     * (status 429) are sent again with the next bulk instead of failing the others.
+     *
+     * @see #bulkMaxDocuments(int)
+     * @see #bulkMaxBytes(int)
+     * @see #bulkMaxInFlight(int)
+     * @since 3.5
+     */
+    public abstract Builder bulkLinger(int bulkLinger);
+
+    /**
+     * When {@linkplain #bulkLinger(int) lingering}, a shared bulk request is sent as soon as it has
+     * this many documents. Defaults to 5000.
+     *
+     * @since 3.5
+     */
+    public abstract Builder bulkMaxDocuments(int bulkMaxDocuments);
+
+    /**
+     * When {@linkplain #bulkLinger(int) lingering}, a shared bulk request is sent before it would
+     * exceed this many bytes. Defaults to 5MiB.
+     *
+     * @since 3.5
+     */
+    public abstract Builder bulkMaxBytes(int bulkMaxBytes);
+
+    /**
+     * When {@linkplain #bulkLinger(int) lingering}, the maximum count of shared bulk requests sent
+     * at the same time. When as many more are waiting to be sent, spans are rejected as over
+     * capacity. Defaults to 4.
+     *
+     * @since 3.5
+     */
+    public abstract Builder bulkMaxInFlight(int bulkMaxInFlight);
+
+    /**
+     * Receives counts of documents which failed in bulk requests, by reason. Defaults to no-op.
+     *
+     * <p>Documents which failed because the cluster was busy (429) or shards were unavailable
+     * (503) are sent again after a backoff, without those which were written. Other documents are
+     * not retried.
+     *
+     * @since 3.5
+     */
+    public abstract Builder bulkItemMetrics(BulkItemMetrics bulkItemMetrics);
+
+    /**
+     * True creates tomorrow's daily indices ahead of time, checking hourly once {@linkplain
+     * #spanConsumer() writing}. Defaults to false.
+     *
+     * <p>Otherwise, each daily index is created by the first bulk request written to it. On large
+     * clusters, creating an index can take seconds, which delays writes just after midnight UTC.
+     *
+     * @since 3.5
+     */
+    public abstract Builder precreateIndices(boolean precreateIndices);
+
     /** False disables automatic index template installation. */
     public abstract Builder ensureTemplates(boolean ensureTemplates);
 
@@ -204,8 +323,24 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
 
   abstract int indexShards();
 
+  abstract int traceIdIndexCacheSize();
+
+  abstract boolean collapseTraceSearch();
+
   abstract int indexReplicas();
 
+  abstract int bulkLinger();
+
+  abstract int bulkMaxDocuments();
+
+  abstract int bulkMaxBytes();
+
+  abstract int bulkMaxInFlight();
+
+  abstract BulkItemMetrics bulkItemMetrics();
+
+  abstract boolean precreateIndices();
+
   public abstract IndexNameFormatter indexNameFormatter();
 
   abstract boolean ensureTemplates();
@@ -214,6 +349,27 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
 
   @Nullable abstract Integer templatePriority();
 
+  /** Shared between the span consumer and store, so that writes route later lookups. */
+  @Memoized TraceIdIndexCache traceIdIndexCache() {
+    return new TraceIdIndexCache(indexNameFormatter(), strictTraceId(), traceIdIndexCacheSize());
+  }
+
+  volatile BulkAccumulator bulkAccumulator; // not memoized, so that close() doesn't create it
+
+  /** Shared by span consumers when {@link #bulkLinger()} is positive, or null otherwise. */
+  @Nullable BulkAccumulator bulkAccumulator() {
+    if (bulkLinger() <= 0) return null;
+    if (bulkAccumulator == null) {
+      synchronized (this) {
+        if (bulkAccumulator == null) {
+          bulkAccumulator = new BulkAccumulator(this, version(), "index-span",
+            bulkMaxDocuments(), bulkMaxBytes(), bulkLinger(), bulkMaxInFlight());
+        }
+      }
+    }
+    return bulkAccumulator;
+  }
+
   @Override public SpanStore spanStore() {
     ensureIndexTemplates();
     return new ElasticsearchSpanStore(this);
@@ -234,9 +390,46 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
 
   @Override public SpanConsumer spanConsumer() {
     ensureIndexTemplates();
+    if (precreateIndices()) schedulePrecreateIndices();
     return new ElasticsearchSpanConsumer(this);
   }
 
+  /**
+   * Writes links aggregated for the day starting at {@code midnightUTC}, replacing any already
+   * stored with the same parent and child. This is the same data written by the zipkin-dependencies
+   * job, and read by {@link SpanStore#getDependencies(long, long)}.
+   *
+   * @since 3.5
+   */
+  public Call<Void> writeDependencyLinks(List<DependencyLink> links, long midnightUTC) {
+    if (links.isEmpty()) return Call.create(null);
+    ensureIndexTemplates();
+    String index = indexNameFormatter()
+      .formatTypeAndTimestampForInsert(TYPE_DEPENDENCY, indexTypeDelimiter(), midnightUTC);
+    BulkCallBuilder indexer = new BulkCallBuilder(this, version(), "index-dependency");
+    for (DependencyLink link : links) {
+      indexer.index(index, TYPE_DEPENDENCY, link, BulkIndexWriter.DEPENDENCY_LINK);
+    }
+    return indexer.buildRetrying();
+  }
+
+  ScheduledFuture<?> precreateIndicesFuture; // guarded by this
+  boolean closed; // guarded by this
+
+  synchronized void schedulePrecreateIndices() {
+    if (closed || precreateIndicesFuture != null) return;
+    char indexTypeDelimiter = indexTypeDelimiter();
+    List<DailyIndexNames> indices = new ArrayList<>();
+    indices.add(new DailyIndexNames(indexNameFormatter(), indexTypeDelimiter, TYPE_SPAN));
+    if (searchEnabled()) {
+      indices.add(new DailyIndexNames(indexNameFormatter(), indexTypeDelimiter, TYPE_AUTOCOMPLETE));
+      indices.add(new DailyIndexNames(indexNameFormatter(), indexTypeDelimiter, TYPE_NAMES));
+    }
+    precreateIndicesFuture = CommonPools.blockingTaskExecutor().scheduleAtFixedRate(
+      new PrecreateIndices(http(), indices), 0, PrecreateIndices.INTERVAL_MILLIS,
+      TimeUnit.MILLISECONDS);
+  }
+
   /** Returns the Elasticsearch / OpenSearch version of the connected cluster. Internal use only */
   @Memoized public BaseVersion version() {
     try {
@@ -255,6 +448,7 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
     Set<String> toClear = new LinkedHashSet<>();
     toClear.add(indexNameFormatter().formatType(TYPE_SPAN));
     toClear.add(indexNameFormatter().formatType(TYPE_DEPENDENCY));
+    toClear.add(indexNameFormatter().formatType(TYPE_NAMES));
     // Note: Elasticsearch 8.x requires this config to clear with wildcards:
     // action.destructive_requires_name: false
     for (String index : toClear) clear(index);
@@ -328,6 +522,7 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
       ensureIndexTemplate(http, buildUrl(templates, TYPE_SPAN), templates.span());
       ensureIndexTemplate(http, buildUrl(templates, TYPE_DEPENDENCY), templates.dependency());
       ensureIndexTemplate(http, buildUrl(templates, TYPE_AUTOCOMPLETE), templates.autocomplete());
+      ensureIndexTemplate(http, buildUrl(templates, TYPE_NAMES), templates.names());
       return templates;
     } catch (IOException e) {
       throw new UncheckedIOException(e);
@@ -360,6 +555,14 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
       @Override public HttpCall.Factory http(ElasticsearchStorage storage) {
         return storage.http();
       }
+
+      @Override public HttpCall.Factory writeHttp(ElasticsearchStorage storage) {
+        return storage.writeHttp();
+      }
+
+      @Override public BulkItemMetrics bulkItemMetrics(ElasticsearchStorage storage) {
+        return storage.bulkItemMetrics();
+      }
     };
   }
 
@@ -367,7 +570,19 @@ public abstract class ElasticsearchStorage extends zipkin2.storage.StorageCompon
     return new HttpCall.Factory(lazyHttpClient().get());
   }
 
+  @Memoized HttpCall.Factory writeHttp() {
+    WebClient writeClient = lazyHttpClient().getForWrites();
+    if (writeClient == lazyHttpClient().get()) return http();
+    return new HttpCall.Factory(writeClient);
+  }
+
   @Override public void close() {
+    synchronized (this) {
+      closed = true;
+      if (precreateIndicesFuture != null) precreateIndicesFuture.cancel(false);
+    }
+    BulkAccumulator bulkAccumulator = this.bulkAccumulator;
+    if (bulkAccumulator != null) bulkAccumulator.close();
     lazyHttpClient().close();
   }
 
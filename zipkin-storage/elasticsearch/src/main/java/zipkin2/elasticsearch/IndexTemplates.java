@@ -22,6 +22,8 @@ abstract class IndexTemplates {
 
   abstract String autocomplete();
 
+  abstract String names();
+
   @AutoValue.Builder
   interface Builder {
     Builder version(BaseVersion version);
@@ -34,6 +36,8 @@ abstract class IndexTemplates {
 
     Builder autocomplete(String autocomplete);
 
+    Builder names(String names);
+
     IndexTemplates build();
   }
 }
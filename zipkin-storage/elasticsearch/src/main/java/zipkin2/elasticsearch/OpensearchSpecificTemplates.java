@@ -77,6 +77,7 @@ final class OpensearchSpecificTemplates extends VersionSpecificTemplates<Opensea
       .span(spanIndexTemplate(version))
       .dependency(dependencyTemplate(version))
       .autocomplete(autocompleteTemplate(version))
+      .names(namesTemplate(version))
       .build();
   }
 }
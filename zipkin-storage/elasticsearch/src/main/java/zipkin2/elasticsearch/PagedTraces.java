@@ -0,0 +1,114 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import java.io.IOException;
+import java.util.List;
+import zipkin2.Call;
+import zipkin2.Callback;
+import zipkin2.Span;
+import zipkin2.elasticsearch.internal.client.SearchCallFactory;
+import zipkin2.elasticsearch.internal.client.SearchRequest;
+import zipkin2.storage.TraceCallback;
+
+import static zipkin2.Call.propagateIfFatal;
+import static zipkin2.elasticsearch.internal.client.SearchRequest.HITS_SOURCE;
+
+/**
+ * Reads spans of trace IDs a page at a time, passing the traces of each page to a callback before
+ * reading the next. Only a page of traces is held in memory, instead of all results.
+ *
+ * <p>Pages are read in the order of trace IDs, so the newest traces of a search are passed first.
+ */
+final class PagedTraces extends Call.Base<Void> {
+  /** Large enough that a search of the default limit reads all traces with one request. */
+  static final int TRACES_PER_PAGE = 100;
+
+  final SearchCallFactory search;
+  final List<String> indices, traceIds;
+  final Call.Mapper<List<Span>, List<List<Span>>> toTraces;
+  final TraceCallback callback;
+  volatile Call<List<Span>> currentPage;
+
+  PagedTraces(SearchCallFactory search, List<String> indices, List<String> traceIds,
+    Call.Mapper<List<Span>, List<List<Span>>> toTraces, TraceCallback callback) {
+    this.search = search;
+    this.indices = indices;
+    this.traceIds = traceIds;
+    this.toTraces = toTraces;
+    this.callback = callback;
+  }
+
+  Call<List<Span>> newPage(int from) {
+    List<String> page = traceIds.subList(from, Math.min(from + TRACES_PER_PAGE, traceIds.size()));
+    SearchRequest request =
+      SearchRequest.create(indices).terms("traceId", page).filterPath(HITS_SOURCE);
+    return currentPage = search.newCall(request, BodyConverters.SPANS);
+  }
+
+  void pass(List<Span> spans) {
+    for (List<Span> trace : toTraces.map(spans)) callback.onTrace(trace);
+  }
+
+  @Override protected Void doExecute() throws IOException {
+    for (int from = 0; from < traceIds.size(); from += TRACES_PER_PAGE) {
+      if (isCanceled()) throw new IOException("Canceled");
+      pass(newPage(from).execute());
+    }
+    return null;
+  }
+
+  @Override protected void doEnqueue(Callback<Void> callback) {
+    new NextPage(callback).start();
+  }
+
+  @Override protected void doCancel() {
+    Call<List<Span>> currentPage = this.currentPage;
+    if (currentPage != null) currentPage.cancel();
+  }
+
+  final class NextPage implements Callback<List<Span>> {
+    final Callback<Void> callback;
+    int from;
+
+    NextPage(Callback<Void> callback) {
+      this.callback = callback;
+    }
+
+    void start() {
+      if (from >= traceIds.size()) {
+        callback.onSuccess(null);
+      } else if (isCanceled()) {
+        callback.onError(new IOException("Canceled"));
+      } else {
+        newPage(from).enqueue(this);
+      }
+    }
+
+    @Override public void onSuccess(List<Span> spans) {
+      try {
+        pass(spans);
+      } catch (Throwable t) {
+        propagateIfFatal(t);
+        callback.onError(t);
+        return;
+      }
+      from += TRACES_PER_PAGE;
+      start();
+    }
+
+    @Override public void onError(Throwable t) {
+      callback.onError(t);
+    }
+  }
+
+  @Override public PagedTraces clone() {
+    return new PagedTraces(search, indices, traceIds, toTraces, callback);
+  }
+
+  @Override public String toString() {
+    return "PagedTraces{indices=" + indices + ", traceIds=" + traceIds.size() + "}";
+  }
+}
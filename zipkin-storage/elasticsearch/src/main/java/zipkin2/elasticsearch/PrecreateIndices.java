@@ -0,0 +1,67 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import com.linecorp.armeria.common.AggregatedHttpRequest;
+import com.linecorp.armeria.common.HttpMethod;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import zipkin2.Call;
+import zipkin2.elasticsearch.internal.client.HttpCall;
+
+import static zipkin2.elasticsearch.DailyIndexNames.DAY_MILLIS;
+
+/**
+ * Creates tomorrow's daily indices ahead of time. Otherwise, each index is created by the first
+ * bulk request written to it, which waits on index creation just after midnight UTC.
+ *
+ * <p>This runs periodically, so that a failure is tried again. Indices which exist are left alone,
+ * and once all of tomorrow's indices exist, runs do nothing until the next day.
+ */
+final class PrecreateIndices implements Runnable {
+  static final long INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  final HttpCall.Factory http;
+  final List<DailyIndexNames> indices;
+  long createdEpochDay = Long.MIN_VALUE; // only accessed by the scheduled task
+
+  PrecreateIndices(HttpCall.Factory http, List<DailyIndexNames> indices) {
+    this.http = http;
+    this.indices = indices;
+  }
+
+  @Override public void run() {
+    run(System.currentTimeMillis());
+  }
+
+  void run(long nowMillis) {
+    long tomorrow = nowMillis + DAY_MILLIS;
+    long epochDay = Math.floorDiv(tomorrow, DAY_MILLIS);
+    if (epochDay == createdEpochDay) return;
+    try {
+      for (DailyIndexNames names : indices) ensureIndex(names.get(tomorrow));
+      createdEpochDay = epochDay;
+    } catch (Throwable e) {
+      Call.propagateIfFatal(e);
+      // Try again next run. Meanwhile, indices are still created on first write.
+    }
+  }
+
+  void ensureIndex(String index) throws IOException {
+    try {
+      AggregatedHttpRequest exists = AggregatedHttpRequest.of(HttpMethod.HEAD, '/' + index);
+      http.newCall(exists, BodyConverters.NULL, "index-exists").execute();
+    } catch (FileNotFoundException e) {
+      AggregatedHttpRequest create = AggregatedHttpRequest.of(HttpMethod.PUT, '/' + index);
+      http.newCall(create, BodyConverters.NULL, "create-index").execute();
+    }
+  }
+
+  @Override public String toString() {
+    return "PrecreateIndices{indices=" + indices.size() + "}";
+  }
+}
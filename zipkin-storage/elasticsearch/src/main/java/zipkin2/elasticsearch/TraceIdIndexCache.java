@@ -0,0 +1,205 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import zipkin2.Call;
+import zipkin2.Span;
+import zipkin2.elasticsearch.internal.IndexNameFormatter;
+import zipkin2.internal.Nullable;
+
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_SPAN;
+
+/**
+ * Remembers which daily span indices hold a trace, so that lookups by trace ID can search one or
+ * two indices instead of every span index in the cluster.
+ *
+ * <p>Entries are the earliest and latest index timestamps of a trace ID, recorded when a search
+ * returned the trace and covered {@link #SLACK_MILLIS} around its spans. Otherwise, the search
+ * could have missed spans of the trace, and a routed lookup would return it partially. Writes only
+ * widen the range of traces already cached, as spans written by this node are only some of the
+ * trace. A lookup widens the range by {@link #SLACK_MILLIS}, as spans of the same trace written
+ * later by other nodes usually land within it. As this can still be stale, callers fall back to
+ * all span indices when a routed lookup finds nothing.
+ *
+ * <p>This is a least-recently used map bounded by {@code maxSize} entries. Writes are recorded
+ * once per bulk request, so the lock is not taken per span.
+ */
+final class TraceIdIndexCache {
+  /** Spans of a trace written by other nodes usually land within this range of those we saw. */
+  static final long SLACK_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  final IndexNameFormatter indexNameFormatter;
+  final boolean strictTraceId;
+  final int maxSize;
+  final LinkedHashMap<String, long[]> timestampRanges; // guarded by this
+
+  TraceIdIndexCache(IndexNameFormatter indexNameFormatter, boolean strictTraceId, int maxSize) {
+    this.indexNameFormatter = indexNameFormatter;
+    this.strictTraceId = strictTraceId;
+    this.maxSize = maxSize;
+    this.timestampRanges = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+        return size() > TraceIdIndexCache.this.maxSize;
+      }
+    };
+  }
+
+  /** Returns the trace ID as queried: the lower 64-bits unless {@link #strictTraceId}. */
+  String key(String normalizedTraceId) {
+    if (!strictTraceId && normalizedTraceId.length() == 32) {
+      return normalizedTraceId.substring(16);
+    }
+    return normalizedTraceId;
+  }
+
+  /**
+   * Widens the cached range of traces with spans about to be written.
+   *
+   * @param indexTimestamps the index timestamp of each span, in the same order
+   */
+  void recordWrite(List<Span> spans, long[] indexTimestamps) {
+    if (maxSize == 0) return;
+    Map<String, long[]> ranges = new LinkedHashMap<>();
+    for (int i = 0; i < indexTimestamps.length; i++) {
+      addTimestamp(ranges, key(spans.get(i).traceId()), indexTimestamps[i]);
+    }
+    synchronized (this) {
+      for (Map.Entry<String, long[]> entry : ranges.entrySet()) {
+        long[] existing = timestampRanges.get(entry.getKey());
+        if (existing != null) widen(existing, entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Records the index timestamps of traces returned by a search, which read all spans with index
+   * timestamps between {@code beginMillis} and {@code endMillis}, inclusive.
+   *
+   * <p>Traces are skipped unless the search covered {@link #SLACK_MILLIS} around their spans.
+   * Traces that include a span without a timestamp are skipped, as such spans are indexed by the
+   * time they were written.
+   */
+  void recordTraces(List<List<Span>> traces, long beginMillis, long endMillis) {
+    if (maxSize == 0) return;
+    Map<String, long[]> ranges = new LinkedHashMap<>();
+    nextTrace:
+    for (List<Span> trace : traces) {
+      if (trace.isEmpty()) continue;
+      long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+      for (Span span : trace) {
+        long indexTimestamp = ElasticsearchSpanConsumer.indexTimestamp(span);
+        if (indexTimestamp == ElasticsearchSpanConsumer.NO_TIMESTAMP) continue nextTrace;
+        min = Math.min(min, indexTimestamp);
+        max = Math.max(max, indexTimestamp);
+      }
+      if (min - SLACK_MILLIS < beginMillis || max + SLACK_MILLIS > endMillis) continue;
+      String key = key(trace.get(0).traceId());
+      addTimestamp(ranges, key, min);
+      addTimestamp(ranges, key, max);
+    }
+    putAll(ranges);
+  }
+
+  /** Returns a mapper that records traces of a search, as they pass through. */
+  Call.Mapper<List<List<Span>>, List<List<Span>>> recordTraces(long beginMillis, long endMillis) {
+    return new RecordTraces(this, beginMillis, endMillis);
+  }
+
+  /** Returns a mapper that records a trace read from all span indices, as it passes through. */
+  Call.Mapper<List<Span>, List<Span>> recordTrace() {
+    return new RecordTrace(this);
+  }
+
+  /**
+   * Returns the span indices holding the given trace IDs or null if any trace ID is not cached.
+   *
+   * @param keys trace IDs as returned by {@link #key(String)}
+   */
+  @Nullable List<String> indices(Set<String> keys) {
+    if (maxSize == 0) return null;
+    long[][] ranges = new long[keys.size()][];
+    synchronized (this) {
+      int i = 0;
+      for (String key : keys) {
+        long[] range = timestampRanges.get(key);
+        if (range == null) return null;
+        ranges[i++] = range.clone();
+      }
+    }
+
+    Set<String> indices = new LinkedHashSet<>();
+    for (long[] range : ranges) {
+      indices.addAll(indexNameFormatter.formatTypeAndRange(
+        TYPE_SPAN, range[0] - SLACK_MILLIS, range[1] + SLACK_MILLIS));
+    }
+    return List.copyOf(indices);
+  }
+
+  synchronized void putAll(Map<String, long[]> ranges) {
+    for (Map.Entry<String, long[]> entry : ranges.entrySet()) {
+      long[] range = entry.getValue();
+      long[] existing = timestampRanges.putIfAbsent(entry.getKey(), range);
+      if (existing != null) widen(existing, range);
+    }
+  }
+
+  static void widen(long[] existing, long[] range) {
+    existing[0] = Math.min(existing[0], range[0]);
+    existing[1] = Math.max(existing[1], range[1]);
+  }
+
+  static void addTimestamp(Map<String, long[]> ranges, String key, long timestamp) {
+    long[] range = ranges.get(key);
+    if (range == null) {
+      ranges.put(key, new long[] {timestamp, timestamp});
+    } else {
+      range[0] = Math.min(range[0], timestamp);
+      range[1] = Math.max(range[1], timestamp);
+    }
+  }
+
+  static final class RecordTraces implements Call.Mapper<List<List<Span>>, List<List<Span>>> {
+    final TraceIdIndexCache cache;
+    final long beginMillis, endMillis;
+
+    RecordTraces(TraceIdIndexCache cache, long beginMillis, long endMillis) {
+      this.cache = cache;
+      this.beginMillis = beginMillis;
+      this.endMillis = endMillis;
+    }
+
+    @Override public List<List<Span>> map(List<List<Span>> input) {
+      cache.recordTraces(input, beginMillis, endMillis);
+      return input;
+    }
+
+    @Override public String toString() {
+      return "RecordTraces{beginMillis=" + beginMillis + ", endMillis=" + endMillis + "}";
+    }
+  }
+
+  static final class RecordTrace implements Call.Mapper<List<Span>, List<Span>> {
+    final TraceIdIndexCache cache;
+
+    RecordTrace(TraceIdIndexCache cache) {
+      this.cache = cache;
+    }
+
+    @Override public List<Span> map(List<Span> input) {
+      if (input != null) cache.recordTraces(List.of(input), Long.MIN_VALUE, Long.MAX_VALUE);
+      return input;
+    }
+
+    @Override public String toString() {
+      return "RecordTrace{}";
+    }
+  }
+}
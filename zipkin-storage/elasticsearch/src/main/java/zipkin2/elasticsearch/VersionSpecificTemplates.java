@@ -16,6 +16,7 @@ abstract class VersionSpecificTemplates<V extends BaseVersion> {
   static final String TYPE_AUTOCOMPLETE = "autocomplete";
   static final String TYPE_SPAN = "span";
   static final String TYPE_DEPENDENCY = "dependency";
+  static final String TYPE_NAMES = "names";
 
   /**
    * In Zipkin search, we do exact match only (keyword). Norms is about scoring. We don't use that
@@ -196,6 +197,24 @@ abstract class VersionSpecificTemplates<V extends BaseVersion> {
       + endTemplate(version);
   }
 
+  /**
+   * Names are a deduplicated catalog of service and span names, so that listing them doesn't need
+   * to aggregate every span. Each day, a document is written for each distinct combination.
+   */
+  String namesTemplate(V version) {
+    return beginTemplate(TYPE_NAMES, version)
+      + "  },\n"
+      + "  \"mappings\": {\n"
+      + maybeWrap(TYPE_NAMES, version, "    \"enabled\": true,\n"
+      + "    \"properties\": {\n"
+      + "      \"serviceName\": " + KEYWORD + ",\n"
+      + "      \"remoteServiceName\": " + KEYWORD + ",\n"
+      + "      \"spanName\": " + KEYWORD + "\n"
+      + "    }\n")
+      + "  }\n"
+      + endTemplate(version);
+  }
+
   /**
    * Returns index pattern
    * @param type type 
@@ -0,0 +1,389 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch.internal;
+
+import com.linecorp.armeria.common.AggregatedHttpRequest;
+import com.linecorp.armeria.common.CommonPools;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.RequestHeaders;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import zipkin2.Call;
+import zipkin2.Callback;
+import zipkin2.elasticsearch.BaseVersion;
+import zipkin2.elasticsearch.BulkItemMetrics;
+import zipkin2.elasticsearch.ElasticsearchStorage;
+import zipkin2.elasticsearch.internal.BulkCallBuilder.FailureCounts;
+import zipkin2.elasticsearch.internal.BulkCallBuilder.IndexEntry;
+import zipkin2.elasticsearch.internal.BulkCallBuilder.ItemFailure;
+import zipkin2.elasticsearch.internal.client.HttpCall;
+
+import static zipkin2.elasticsearch.internal.BulkCallBuilder.MAX_ATTEMPTS;
+import static zipkin2.elasticsearch.internal.BulkCallBuilder.backoffMillis;
+import static zipkin2.elasticsearch.internal.BulkCallBuilder.executeAndWait;
+
+/**
+ * Accumulates documents of many {@link BulkCallBuilder builders} into shared bulk requests, so
+ * that small messages don't each result in a small request. A bulk is sent once it has {@code
+ * maxDocuments}, or would exceed {@code maxBytes}, or {@code lingerMillis} after its first
+ * document, whichever comes first.
+ *
+ * <p>At most {@code maxInFlight} bulks are sent at the same time. While as many are waiting to be
+ * sent, new documents are rejected with a {@link RejectedExecutionException}, which collectors
+ * treat as being over capacity.
+ *
+ * <p>Documents which failed for a retryable reason are added back after a backoff, up to {@link
+ * BulkCallBuilder#MAX_ATTEMPTS} times. Other failures only fail the calls which added the failed
+ * documents. Calls complete when all of their documents are written.
+ *
+ * <p>On close, documents not yet sent are sent, waiting up to {@link #CLOSE_TIMEOUT_MILLIS} for
+ * them and their retries to complete.
+ */
+public final class BulkAccumulator implements Closeable {
+  static final long CLOSE_TIMEOUT_MILLIS = 10_000L;
+
+  final HttpCall.Factory http;
+  final RequestHeaders headers;
+  final boolean shouldAddType;
+  final String tag;
+  final int maxDocuments, maxBytes, maxInFlight;
+  final long lingerMillis;
+  final BulkItemMetrics metrics;
+  final ScheduledExecutorService scheduler;
+
+  // guarded by this
+  List<Document> batch = new ArrayList<>();
+  int batchBytes;
+  ScheduledFuture<?> lingerTimeout;
+  final ArrayDeque<List<Document>> ready = new ArrayDeque<>();
+  int inFlight;
+  int retrying; // count of retries waiting for a backoff
+  boolean closed; // no documents are added once closed
+  boolean terminated; // no documents are sent once terminated
+
+  public BulkAccumulator(ElasticsearchStorage es, BaseVersion version, String tag,
+    int maxDocuments, int maxBytes, long lingerMillis, int maxInFlight) {
+    this.http = Internal.instance.writeHttp(es);
+    this.headers = BulkCallBuilder.headers(es.pipeline(), es.flushOnWrites());
+    this.shouldAddType = version.supportsTypes();
+    this.tag = tag;
+    this.maxDocuments = maxDocuments;
+    this.maxBytes = maxBytes;
+    this.lingerMillis = lingerMillis;
+    this.maxInFlight = maxInFlight;
+    this.metrics = Internal.instance.bulkItemMetrics(es);
+    this.scheduler = CommonPools.workerGroup().next();
+  }
+
+  /** Returns a call that completes when all documents added to the builder are written. */
+  public Call<Void> newCall(BulkCallBuilder builder) {
+    return new AccumulatedCall(this, List.copyOf(builder.entries));
+  }
+
+  void add(List<IndexEntry<?>> entries, Callback<Void> callback) {
+    if (entries.isEmpty()) {
+      callback.onSuccess(null);
+      return;
+    }
+
+    // Serialize outside the lock, so that callers don't wait on each other to do so.
+    Caller caller = new Caller(callback, entries.size());
+    List<Document> documents = new ArrayList<>(entries.size());
+    for (IndexEntry<?> entry : entries) {
+      documents.add(new Document(serialize(entry), caller));
+    }
+
+    RuntimeException rejected = null;
+    List<List<Document>> toSend;
+    synchronized (this) {
+      if (closed) {
+        rejected = new IllegalStateException("closed");
+      } else if (ready.size() >= maxInFlight) {
+        rejected = new RejectedExecutionException(
+          "Too many bulk requests waiting to be sent: " + ready.size());
+      } else {
+        for (Document document : documents) append(document);
+      }
+      toSend = pollReady();
+    }
+    if (rejected != null) callback.onError(rejected);
+    send(toSend);
+  }
+
+  byte[] serialize(IndexEntry<?> entry) {
+    ByteBuf payload =
+      BulkCallBuilder.serialize(PooledByteBufAllocator.DEFAULT, entry, shouldAddType);
+    try {
+      return ByteBufUtil.getBytes(payload);
+    } finally {
+      payload.release();
+    }
+  }
+
+  // guarded by this
+  void append(Document document) {
+    if (!batch.isEmpty() && batchBytes + document.payload.length > maxBytes) seal();
+    batch.add(document);
+    batchBytes += document.payload.length;
+    if (batch.size() >= maxDocuments) {
+      seal();
+    } else if (lingerTimeout == null) {
+      List<Document> lingering = batch;
+      lingerTimeout =
+        scheduler.schedule(() -> onLingerTimeout(lingering), lingerMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // guarded by this
+  void seal() {
+    ready.add(batch);
+    batch = new ArrayList<>();
+    batchBytes = 0;
+    if (lingerTimeout != null) {
+      lingerTimeout.cancel(false);
+      lingerTimeout = null;
+    }
+  }
+
+  // guarded by this
+  List<List<Document>> pollReady() {
+    if (ready.isEmpty() || inFlight >= maxInFlight) return List.of();
+    List<List<Document>> result = new ArrayList<>();
+    while (!ready.isEmpty() && inFlight < maxInFlight) {
+      result.add(ready.poll());
+      inFlight++;
+    }
+    return result;
+  }
+
+  void onLingerTimeout(List<Document> lingering) {
+    List<List<Document>> toSend;
+    synchronized (this) {
+      if (batch != lingering) return; // already sealed due to size
+      lingerTimeout = null;
+      seal();
+      toSend = pollReady();
+    }
+    send(toSend);
+  }
+
+  void send(List<List<Document>> bulks) {
+    for (List<Document> bulk : bulks) sendBulk(bulk);
+  }
+
+  void sendBulk(List<Document> bulk) {
+    int length = 0;
+    for (Document document : bulk) length += document.payload.length;
+    byte[] body = new byte[length];
+    int offset = 0;
+    for (Document document : bulk) {
+      System.arraycopy(document.payload, 0, body, offset, document.payload.length);
+      offset += document.payload.length;
+    }
+
+    AggregatedHttpRequest request = AggregatedHttpRequest.of(headers, HttpData.wrap(body));
+    http.newCall(request, BulkCallBuilder.ITEM_FAILURES, tag).enqueue(
+      new Callback<List<ItemFailure>>() {
+        @Override public void onSuccess(List<ItemFailure> failures) {
+          onBulkSuccess(bulk, failures != null ? failures : List.of());
+        }
+
+        @Override public void onError(Throwable t) {
+          onBulkError(bulk, t);
+        }
+      });
+  }
+
+  void onBulkSuccess(List<Document> bulk, List<ItemFailure> failures) {
+    // Fail or retry documents which failed before completing the others, so that a call with both
+    // reports the failure.
+    boolean[] failed = new boolean[bulk.size()];
+    List<Document> retry = new ArrayList<>();
+    FailureCounts counts = new FailureCounts();
+    for (ItemFailure failure : failures) {
+      Document document = bulk.get(failure.position);
+      failed[failure.position] = true;
+      if (failure.retryable() && ++document.attempts < MAX_ATTEMPTS) {
+        counts.retried(failure);
+        retry.add(document);
+      } else {
+        counts.failed(failure);
+        document.caller.onError(failure.toException());
+      }
+    }
+    counts.incrementMetrics(metrics);
+    for (int i = 0; i < failed.length; i++) {
+      if (!failed[i]) bulk.get(i).caller.onDocumentWritten();
+    }
+
+    List<List<Document>> toSend;
+    synchronized (this) {
+      inFlight--;
+      if (!retry.isEmpty()) retrying++;
+      toSend = pollReady();
+      if (closed) notifyAll();
+    }
+    if (!retry.isEmpty()) scheduleAddBack(retry);
+    send(toSend);
+  }
+
+  // Nothing waits on the retry: addBack reports documents it can't send to their callers.
+  @SuppressWarnings("FutureReturnValueIgnored")
+  void scheduleAddBack(List<Document> retry) {
+    int attempts = retry.get(0).attempts;
+    scheduler.schedule(() -> addBack(retry), backoffMillis(attempts), TimeUnit.MILLISECONDS);
+  }
+
+  void addBack(List<Document> retry) {
+    boolean terminated;
+    List<List<Document>> toSend;
+    synchronized (this) {
+      retrying--;
+      terminated = this.terminated;
+      if (!terminated) {
+        for (Document document : retry) append(document);
+        if (closed && !batch.isEmpty()) seal(); // as no more documents will be added
+      }
+      toSend = pollReady();
+      if (closed) notifyAll();
+    }
+    if (terminated) failAll(List.of(retry), new IllegalStateException("closed"));
+    send(toSend);
+  }
+
+  void onBulkError(List<Document> bulk, Throwable error) {
+    failAll(List.of(bulk), error);
+    List<List<Document>> toSend;
+    synchronized (this) {
+      inFlight--;
+      toSend = pollReady();
+      if (closed) notifyAll();
+    }
+    send(toSend);
+  }
+
+  /**
+   * Sends documents not yet sent and waits up to {@link #CLOSE_TIMEOUT_MILLIS} for them and their
+   * retries to complete. Calls waiting on documents still not sent after that fail.
+   */
+  @Override public void close() {
+    close(CLOSE_TIMEOUT_MILLIS);
+  }
+
+  void close(long timeoutMillis) {
+    List<List<Document>> toSend;
+    synchronized (this) {
+      if (closed) return;
+      closed = true;
+      if (!batch.isEmpty()) seal();
+      toSend = pollReady();
+    }
+    send(toSend);
+
+    boolean interrupted = false;
+    List<List<Document>> unsent = new ArrayList<>();
+    synchronized (this) {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      while (!ready.isEmpty() || inFlight > 0 || retrying > 0) {
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) break;
+        try {
+          TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        } catch (InterruptedException e) {
+          interrupted = true;
+          break;
+        }
+      }
+      terminated = true;
+      unsent.addAll(ready);
+      ready.clear();
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+    failAll(unsent, new IllegalStateException("closed"));
+  }
+
+  static void failAll(List<List<Document>> bulks, Throwable error) {
+    for (List<Document> bulk : bulks) {
+      for (Document document : bulk) document.caller.onError(error);
+    }
+  }
+
+  @Override public String toString() {
+    return "BulkAccumulator{maxDocuments=" + maxDocuments + ", maxBytes=" + maxBytes
+      + ", lingerMillis=" + lingerMillis + ", maxInFlight=" + maxInFlight + "}";
+  }
+
+  /** A serialized bulk item, which is the index action followed by the document. */
+  static final class Document {
+    final byte[] payload;
+    final Caller caller;
+    int attempts; // only accessed by the callback of a bulk including this document
+
+    Document(byte[] payload, Caller caller) {
+      this.payload = payload;
+      this.caller = caller;
+    }
+  }
+
+  /** Completes the callback of one call once all of its documents are written. */
+  static final class Caller {
+    final Callback<Void> callback;
+    int remaining; // guarded by this
+    boolean done; // guarded by this
+
+    Caller(Callback<Void> callback, int remaining) {
+      this.callback = callback;
+      this.remaining = remaining;
+    }
+
+    synchronized void onDocumentWritten() {
+      if (done || --remaining > 0) return;
+      done = true;
+      callback.onSuccess(null);
+    }
+
+    synchronized void onError(Throwable error) {
+      if (done) return;
+      done = true;
+      callback.onError(error);
+    }
+  }
+
+  static final class AccumulatedCall extends Call.Base<Void> {
+    final BulkAccumulator accumulator;
+    final List<IndexEntry<?>> entries;
+
+    AccumulatedCall(BulkAccumulator accumulator, List<IndexEntry<?>> entries) {
+      this.accumulator = accumulator;
+      this.entries = entries;
+    }
+
+    @Override protected Void doExecute() throws IOException {
+      return executeAndWait(this::doEnqueue);
+    }
+
+    @Override protected void doEnqueue(Callback<Void> callback) {
+      accumulator.add(entries, callback);
+    }
+
+    @Override public AccumulatedCall clone() {
+      return new AccumulatedCall(accumulator, entries);
+    }
+
+    @Override public String toString() {
+      return "AccumulatedCall{documents=" + entries.size() + ", " + accumulator + "}";
+    }
+  }
+}
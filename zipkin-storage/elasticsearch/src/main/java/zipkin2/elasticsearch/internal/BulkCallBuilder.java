@@ -8,6 +8,7 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.auto.value.AutoValue;
+import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpMethod;
@@ -24,14 +25,27 @@ import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.handler.codec.http.QueryStringEncoder;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import zipkin2.Call;
+import zipkin2.Callback;
 import zipkin2.elasticsearch.BaseVersion;
+import zipkin2.elasticsearch.BulkItemMetrics;
 import zipkin2.elasticsearch.ElasticsearchStorage;
 import zipkin2.elasticsearch.internal.client.HttpCall;
 import zipkin2.elasticsearch.internal.client.HttpCall.BodyConverter;
+import zipkin2.internal.Nullable;
 
 import static zipkin2.Call.propagateIfFatal;
 import static zipkin2.elasticsearch.internal.JsonSerializers.OBJECT_MAPPER;
@@ -40,6 +54,11 @@ import static zipkin2.elasticsearch.internal.client.HttpCall.maybeRootCauseReaso
 // See https://www.elastic.co/guide/en/elasticsearch/reference/current/docs-bulk.html
 // exposed to re-use for testing writes of dependency links
 public final class BulkCallBuilder {
+  /** Documents failing for a retryable reason are sent at most this many times. */
+  static final int MAX_ATTEMPTS = 3;
+  static final long INITIAL_BACKOFF_MILLIS = 100L;
+  static final ScheduledExecutorService SCHEDULER = CommonPools.workerGroup();
+
   // This mapper is invoked under the assumption that bulk requests return errors even when the http
   // status is success. The status codes expected to be returned were undocumented as of version 7.2
   // https://www.elastic.co/guide/en/elasticsearch/reference/current/docs-bulk.html
@@ -50,15 +69,7 @@ public final class BulkCallBuilder {
         JsonNode root = OBJECT_MAPPER.readTree(parser);
         // only throw when we know it is an error
         if (!root.at("/errors").booleanValue() && !root.at("/error").isObject()) return null;
-
-        String message = maybeRootCauseReason(root);
-        if (message == null) message = contentString.get();
-        Number status = root.findPath("status").numberValue();
-        if (status != null && status.intValue() == 429) {
-          toThrow = new RejectedExecutionException(message);
-        } else {
-          toThrow = new RuntimeException(message);
-        }
+        toThrow = toException(root, contentString);
       } catch (RuntimeException | IOException possiblyParseException) { // All use of jackson throws
       }
       if (toThrow != null) throw toThrow;
@@ -70,11 +81,92 @@ public final class BulkCallBuilder {
     }
   };
 
+  // Like CHECK_FOR_ERRORS, except only an error of the whole request throws. Otherwise, documents
+  // which failed are returned, so that those with a retryable status can be sent again without the
+  // others.
+  static final BodyConverter<List<ItemFailure>> ITEM_FAILURES =
+    new BodyConverter<List<ItemFailure>>() {
+      @Override
+      public List<ItemFailure> convert(JsonParser parser, Supplier<String> contentString) {
+        List<ItemFailure> failures = new ArrayList<>();
+        RuntimeException toThrow = null;
+        try {
+          JsonNode root = OBJECT_MAPPER.readTree(parser);
+          if (root.at("/error").isObject()) {
+            toThrow = toException(root, contentString);
+          } else if (root.at("/errors").booleanValue()) {
+            JsonNode items = root.at("/items");
+            for (int i = 0, length = items.size(); i < length; i++) {
+              // Each item is keyed by its action, which is always "index" for us.
+              JsonNode item = items.get(i).elements().next();
+              JsonNode error = item.path("error");
+              if (error.isMissingNode()) continue;
+              String message = maybeRootCauseReason(item);
+              failures.add(new ItemFailure(i, item.path("status").intValue(),
+                error.path("type").asText("unknown"),
+                message != null ? message : error.toString()));
+            }
+          }
+        } catch (RuntimeException | IOException possiblyParseException) { // All jackson use throws
+        }
+        if (toThrow != null) throw toThrow;
+        return failures;
+      }
+
+      @Override public String toString() {
+        return "ItemFailures";
+      }
+    };
+
+  static RuntimeException toException(JsonNode node, Supplier<String> contentString) {
+    String message = maybeRootCauseReason(node);
+    if (message == null) message = contentString.get();
+    Number status = node.findPath("status").numberValue();
+    if (status != null && status.intValue() == 429) {
+      return new RejectedExecutionException(message);
+    }
+    return new RuntimeException(message);
+  }
+
+  /** A document which failed in a bulk request, by its position in that request. */
+  static final class ItemFailure {
+    final int position, status;
+    final String reason, message;
+
+    ItemFailure(int position, int status, String reason, String message) {
+      this.position = position;
+      this.status = status;
+      this.reason = reason;
+      this.message = message;
+    }
+
+    /** True when the cluster was busy (429) or shards were unavailable (503). */
+    boolean retryable() {
+      return status == 429 || status == 503;
+    }
+
+    RuntimeException toException() {
+      if (retryable()) return new RejectedExecutionException(message);
+      return new RuntimeException(message);
+    }
+
+    @Override public String toString() {
+      return "ItemFailure{position=" + position + ", status=" + status + ", reason=" + reason + "}";
+    }
+  }
+
+  /** Returns the delay before sending documents again, after the given count of attempts. */
+  static long backoffMillis(int attempts) {
+    long backoff = INITIAL_BACKOFF_MILLIS << Math.min(attempts - 1, 10);
+    // Add jitter, so that nodes rejected at the same time don't retry at the same time.
+    return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+  }
+
   final String tag;
   final boolean shouldAddType;
   final HttpCall.Factory http;
-  final String pipeline;
-  final boolean waitForRefresh;
+  final RequestHeaders headers;
+  final BulkItemMetrics metrics;
 
   // Mutated for each call to index
   final List<IndexEntry<?>> entries = new ArrayList<>();
@@ -82,9 +174,9 @@ public final class BulkCallBuilder {
   public BulkCallBuilder(ElasticsearchStorage es, BaseVersion version, String tag) {
     this.tag = tag;
     shouldAddType = version.supportsTypes();
-    http = Internal.instance.http(es);
-    pipeline = es.pipeline();
-    waitForRefresh = es.flushOnWrites();
+    http = Internal.instance.writeHttp(es);
+    headers = headers(es.pipeline(), es.flushOnWrites());
+    metrics = Internal.instance.bulkItemMetrics(es);
   }
 
   static <T> IndexEntry<T> newIndexEntry(String index, String typeName, T input,
@@ -107,24 +199,185 @@ public final class BulkCallBuilder {
   }
 
   /**
-   * Creates a bulk request when there is more than one object to store
+   * Creates a bulk request when there is more than one object to store. The call fails if any
+   * document failed. See {@link #buildRetrying()} to send failed documents again.
    */
   public HttpCall<Void> build() {
+    return http.newCall(request(entries), CHECK_FOR_ERRORS, tag);
+  }
+
+  /**
+   * Like {@link #build()}, except documents which failed for a retryable reason are sent again
+   * after a backoff, without those which were written.
+   */
+  public Call<Void> buildRetrying() {
+    return new BulkCall(this, List.copyOf(entries));
+  }
+
+  HttpCall.RequestSupplier request(List<IndexEntry<?>> entries) {
+    ByteBufAllocator alloc = RequestContext.mapCurrent(
+      RequestContext::alloc, () -> PooledByteBufAllocator.DEFAULT);
+    return new BulkRequestSupplier(entries, shouldAddType, headers, alloc);
+  }
+
+  static RequestHeaders headers(@Nullable String pipeline, boolean waitForRefresh) {
     QueryStringEncoder urlBuilder = new QueryStringEncoder("/_bulk");
     if (pipeline != null) urlBuilder.addParam("pipeline", pipeline);
     if (waitForRefresh) urlBuilder.addParam("refresh", "wait_for");
+    return RequestHeaders.of(
+      HttpMethod.POST, urlBuilder.toString(),
+      HttpHeaderNames.CONTENT_TYPE, MediaType.JSON_UTF_8);
+  }
 
-    ByteBufAllocator alloc = RequestContext.mapCurrent(
-      RequestContext::alloc, () -> PooledByteBufAllocator.DEFAULT);
+  /** Counts failures by reason, so that metrics are incremented once per reason. */
+  static final class FailureCounts {
+    final Map<String, int[]> retried = new LinkedHashMap<>(), failed = new LinkedHashMap<>();
+
+    void retried(ItemFailure failure) {
+      retried.computeIfAbsent(failure.reason, r -> new int[1])[0]++;
+    }
+
+    void failed(ItemFailure failure) {
+      failed.computeIfAbsent(failure.reason, r -> new int[1])[0]++;
+    }
+
+    void incrementMetrics(BulkItemMetrics metrics) {
+      for (Map.Entry<String, int[]> entry : retried.entrySet()) {
+        metrics.incrementRetried(entry.getKey(), entry.getValue()[0]);
+      }
+      for (Map.Entry<String, int[]> entry : failed.entrySet()) {
+        metrics.incrementFailed(entry.getKey(), entry.getValue()[0]);
+      }
+    }
+  }
+
+  /** Sends documents, then those which failed for a retryable reason, until none are left. */
+  static final class BulkCall extends Call.Base<Void> {
+    final BulkCallBuilder builder;
+    final List<IndexEntry<?>> entries;
+    volatile Call<List<ItemFailure>> current;
+
+    BulkCall(BulkCallBuilder builder, List<IndexEntry<?>> entries) {
+      this.builder = builder;
+      this.entries = entries;
+    }
+
+    @Override protected Void doExecute() throws IOException {
+      return executeAndWait(this::doEnqueue);
+    }
+
+    @Override protected void doEnqueue(Callback<Void> callback) {
+      send(entries, 1, callback, new ItemFailure[1]);
+    }
+
+    /**
+     * @param firstFailure holds the failure reported when done, preferring one not retryable
+     */
+    void send(List<IndexEntry<?>> entries, int attempts, Callback<Void> callback,
+      ItemFailure[] firstFailure) {
+      Call<List<ItemFailure>> call =
+        builder.http.newCall(builder.request(entries), ITEM_FAILURES, builder.tag);
+      current = call;
+      call.enqueue(new Callback<List<ItemFailure>>() {
+        @Override public void onSuccess(List<ItemFailure> failures) {
+          onResponse(entries, attempts, failures, callback, firstFailure);
+        }
+
+        @Override public void onError(Throwable t) {
+          callback.onError(t);
+        }
+      });
+    }
+
+    void onResponse(List<IndexEntry<?>> entries, int attempts, @Nullable List<ItemFailure> failures,
+      Callback<Void> callback, ItemFailure[] firstFailure) {
+      List<IndexEntry<?>> retry = new ArrayList<>();
+      ItemFailure firstRetried = null;
+      FailureCounts counts = new FailureCounts();
+      if (failures != null) {
+        for (ItemFailure failure : failures) {
+          if (failure.retryable() && attempts < MAX_ATTEMPTS) {
+            counts.retried(failure);
+            retry.add(entries.get(failure.position));
+            if (firstRetried == null) firstRetried = failure;
+            continue;
+          }
+          counts.failed(failure);
+          if (firstFailure[0] == null || (firstFailure[0].retryable() && !failure.retryable())) {
+            firstFailure[0] = failure;
+          }
+        }
+      }
+      counts.incrementMetrics(builder.metrics);
+
+      if (!retry.isEmpty()) {
+        ItemFailure pending = firstRetried;
+        if (isCanceled()) { // don't report documents which were never written as stored
+          callback.onError(canceled(retry.size(), pending));
+          return;
+        }
+        scheduleRetry(retry, attempts, callback, firstFailure, pending);
+      } else if (firstFailure[0] != null) {
+        callback.onError(firstFailure[0].toException());
+      } else {
+        callback.onSuccess(null);
+      }
+    }
+
+    // Nothing waits on the retry: it completes the callback itself, also when canceled meanwhile.
+    @SuppressWarnings("FutureReturnValueIgnored")
+    void scheduleRetry(List<IndexEntry<?>> retry, int attempts, Callback<Void> callback,
+      ItemFailure[] firstFailure, ItemFailure pending) {
+      SCHEDULER.schedule(() -> {
+        if (isCanceled()) {
+          callback.onError(canceled(retry.size(), pending));
+          return;
+        }
+        send(retry, attempts + 1, callback, firstFailure);
+      }, backoffMillis(attempts), TimeUnit.MILLISECONDS);
+    }
 
-    HttpCall.RequestSupplier request = new BulkRequestSupplier(
-      entries,
-      shouldAddType,
-      RequestHeaders.of(
-        HttpMethod.POST, urlBuilder.toString(),
-        HttpHeaderNames.CONTENT_TYPE, MediaType.JSON_UTF_8),
-      alloc);
-    return http.newCall(request, CHECK_FOR_ERRORS, tag);
+    static CancellationException canceled(int unwritten, ItemFailure pending) {
+      CancellationException result =
+        new CancellationException("Canceled before retrying " + unwritten + " documents");
+      result.addSuppressed(pending.toException());
+      return result;
+    }
+
+    @Override protected void doCancel() {
+      Call<List<ItemFailure>> current = this.current;
+      if (current != null) current.cancel();
+    }
+
+    @Override public BulkCall clone() {
+      return new BulkCall(builder, entries);
+    }
+
+    @Override public String toString() {
+      return "BulkCall{tag=" + builder.tag + ", documents=" + entries.size() + "}";
+    }
+  }
+
+  /** Enqueues the call and waits for it, for use in {@link Call.Base#doExecute()}. */
+  static Void executeAndWait(Consumer<Callback<Void>> enqueue) throws IOException {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    enqueue.accept(new Callback<Void>() {
+      @Override public void onSuccess(Void value) {
+        result.complete(null);
+      }
+
+      @Override public void onError(Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      Exceptions.throwUnsafely(cause);
+      return null; // Unreachable
+    }
   }
 
   static class BulkRequestSupplier implements HttpCall.RequestSupplier {
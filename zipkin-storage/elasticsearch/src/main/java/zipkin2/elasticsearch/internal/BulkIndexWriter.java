@@ -14,6 +14,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 import java.util.Map;
 import zipkin2.Annotation;
+import zipkin2.DependencyLink;
 import zipkin2.Endpoint;
 import zipkin2.Span;
 
@@ -52,6 +53,40 @@ public abstract class BulkIndexWriter<T> {
       }
     };
 
+  /** Writes the names of a span with a local service name, for listing them later. */
+  public static final BulkIndexWriter<Span> NAMES = new BulkIndexWriter<Span>() {
+    @Override public String writeDocument(Span input, ByteBufOutputStream sink) {
+      int startIndex = sink.buffer().writerIndex();
+      try (JsonGenerator writer = JsonSerializers.jsonGenerator(sink)) {
+        writeNames(input, writer);
+      } catch (IOException e) {
+        throw new AssertionError("Couldn't close generator for a memory stream.", e);
+      }
+      // Id is used to dedupe server side. Hashing avoids ambiguity when names include delimiters.
+      ByteBuf slice = sink.buffer().slice(startIndex, sink.buffer().writerIndex() - startIndex);
+      return md5(slice);
+    }
+  };
+
+  /** Writes a link of a day, replacing any with the same parent and child. */
+  public static final BulkIndexWriter<DependencyLink> DEPENDENCY_LINK =
+    new BulkIndexWriter<DependencyLink>() {
+      @Override public String writeDocument(DependencyLink link, ByteBufOutputStream sink) {
+        try (JsonGenerator writer = JsonSerializers.jsonGenerator(sink)) {
+          writer.writeStartObject();
+          writer.writeStringField("parent", link.parent());
+          writer.writeStringField("child", link.child());
+          writer.writeNumberField("callCount", link.callCount());
+          if (link.errorCount() > 0) writer.writeNumberField("errorCount", link.errorCount());
+          writer.writeEndObject();
+        } catch (IOException e) {
+          throw new AssertionError("Couldn't close generator for a memory stream.", e);
+        }
+        // Same ID as the zipkin-dependencies job, so that either replaces the other's link.
+        return link.parent() + "|" + link.child();
+      }
+    };
+
   static final Endpoint EMPTY_ENDPOINT = Endpoint.newBuilder().build();
 
   /**
@@ -129,6 +164,16 @@ public abstract class BulkIndexWriter<T> {
     }
   }
 
+  static void writeNames(Span span, JsonGenerator writer) throws IOException {
+    writer.writeStartObject();
+    writer.writeStringField("serviceName", span.localServiceName());
+    if (span.remoteServiceName() != null) {
+      writer.writeStringField("remoteServiceName", span.remoteServiceName());
+    }
+    if (span.name() != null) writer.writeStringField("spanName", span.name());
+    writer.writeEndObject();
+  }
+
   static void write(Map.Entry<String, String> tag, JsonGenerator writer) throws IOException {
     writer.writeStringField(tag.getKey(), tag.getValue());
   }
@@ -4,6 +4,7 @@
  */
 package zipkin2.elasticsearch.internal;
 
+import zipkin2.elasticsearch.BulkItemMetrics;
 import zipkin2.elasticsearch.ElasticsearchStorage;
 import zipkin2.elasticsearch.internal.client.HttpCall;
 
@@ -17,4 +18,9 @@ public abstract class Internal {
   public static Internal instance;
 
   public abstract HttpCall.Factory http(ElasticsearchStorage storage);
+
+  /** Like {@link #http(ElasticsearchStorage)}, except used for bulk writes. */
+  public abstract HttpCall.Factory writeHttp(ElasticsearchStorage storage);
+
+  public abstract BulkItemMetrics bulkItemMetrics(ElasticsearchStorage storage);
 }
@@ -11,6 +11,7 @@ import com.linecorp.armeria.client.UnprocessedRequestException;
 import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.common.AggregatedHttpRequest;
 import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpHeaders;
 import com.linecorp.armeria.common.HttpRequest;
@@ -19,6 +20,9 @@ import com.linecorp.armeria.common.HttpStatus;
 import com.linecorp.armeria.common.HttpStatusClass;
 import com.linecorp.armeria.common.RequestContext;
 import com.linecorp.armeria.common.RequestHeaders;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.SplitHttpResponse;
+import com.linecorp.armeria.common.stream.StreamMessage;
 import com.linecorp.armeria.common.util.Exceptions;
 import com.linecorp.armeria.common.util.SafeCloseable;
 import io.netty.util.concurrent.EventExecutor;
@@ -28,6 +32,7 @@ import java.io.InputStream;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.function.Supplier;
 import zipkin2.Call;
 import zipkin2.Callback;
@@ -83,7 +88,14 @@ public final class HttpCall<V> extends Call.Base<V> {
   }
 
   public static class Factory {
+    /**
+     * Enqueued streaming calls each hold a blocking task thread until their response is read. This
+     * bounds how many can, so that slow responses can't starve other blocking tasks.
+     */
+    static final int MAX_STREAMING_PARSES = 16;
+
     final WebClient httpClient;
+    final Semaphore streamingPermits = new Semaphore(MAX_STREAMING_PARSES);
 
     public Factory(WebClient httpClient) {
       this.httpClient = httpClient;
@@ -92,12 +104,27 @@ public final class HttpCall<V> extends Call.Base<V> {
     public <V> HttpCall<V> newCall(
       AggregatedHttpRequest request, BodyConverter<V> bodyConverter, String name) {
       return new HttpCall<>(
-        httpClient, new AggregatedRequestSupplier(request), bodyConverter, name);
+        httpClient, new AggregatedRequestSupplier(request), bodyConverter, name, null);
     }
 
     public <V> HttpCall<V> newCall(
       RequestSupplier request, BodyConverter<V> bodyConverter, String name) {
-      return new HttpCall<>(httpClient, request, bodyConverter, name);
+      return new HttpCall<>(httpClient, request, bodyConverter, name, null);
+    }
+
+    /**
+     * Like {@link #newCall(AggregatedHttpRequest, BodyConverter, String)}, except a successful
+     * response is converted as it arrives, releasing each chunk once parsed. This lowers the peak
+     * memory of large responses, such as search hits, but means {@code contentString} of the
+     * {@link BodyConverter} only returns the start of the response.
+     *
+     * <p>When {@link #MAX_STREAMING_PARSES} enqueued calls are already reading their responses,
+     * further ones are aggregated and converted like {@link #newCall}.
+     */
+    public <V> HttpCall<V> newStreamingCall(
+      AggregatedHttpRequest request, BodyConverter<V> bodyConverter, String name) {
+      return new HttpCall<>(httpClient, new AggregatedRequestSupplier(request), bodyConverter,
+        name, streamingPermits);
     }
   }
 
@@ -105,17 +132,21 @@ public final class HttpCall<V> extends Call.Base<V> {
   public final RequestSupplier request;
   final BodyConverter<V> bodyConverter;
   final String name;
+  /** Bounds concurrent streaming parses of enqueued calls, or null when not streaming. */
+  final Semaphore streamingPermits;
 
   final WebClient httpClient;
 
   volatile CompletableFuture<AggregatedHttpResponse> responseFuture;
+  volatile HttpResponse streamingResponse;
 
   HttpCall(WebClient httpClient, RequestSupplier request, BodyConverter<V> bodyConverter,
-    String name) {
+    String name, Semaphore streamingPermits) {
     this.httpClient = httpClient;
     this.name = name;
     this.request = request;
     this.bodyConverter = bodyConverter;
+    this.streamingPermits = streamingPermits;
   }
 
   @Override protected V doExecute() throws IOException {
@@ -128,21 +159,59 @@ public final class HttpCall<V> extends Call.Base<V> {
           """);
       }
     }
-    final AggregatedHttpResponse response;
+    if (streamingPermits != null) {
+      SplitHttpResponse response = sendStreamingRequest();
+      // Parse on the calling thread, as reading the body blocks until chunks arrive.
+      return parseStreamingResponse(join(headers(response)), response.body());
+    }
+    return parseResponse(join(sendRequest()), bodyConverter);
+  }
+
+  static <T> T join(CompletableFuture<T> future) {
     try {
-      response = sendRequest().join();
+      return future.join();
     } catch (CompletionException e) {
       propagateIfFatal(e);
       Exceptions.throwUnsafely(e.getCause());
       return null;  // Unreachable
     }
-    return parseResponse(response, bodyConverter);
   }
 
   @SuppressWarnings("FutureReturnValueIgnored")
   // TODO: errorprone wants us to check this future before returning, but what would be a sensible
   // check? Say it is somehow canceled, would we take action? Would callback.onError() be redundant?
   @Override protected void doEnqueue(Callback<V> callback) {
+    // Otherwise, too many threads are reading responses, so aggregate this one instead.
+    if (streamingPermits != null && streamingPermits.tryAcquire()) {
+      SplitHttpResponse response;
+      try {
+        response = sendStreamingRequest();
+      } catch (Throwable t) {
+        streamingPermits.release();
+        throw t;
+      }
+      // Reading the body blocks until chunks arrive, so it mustn't happen on the event loop.
+      headers(response).handleAsync((headers, t) -> {
+        V value = null;
+        Throwable error = t;
+        try {
+          if (error == null) value = parseStreamingResponse(headers, response.body());
+        } catch (Throwable t1) {
+          propagateIfFatal(t1);
+          error = t1;
+        } finally {
+          // Released before the callback, so that a call it makes can stream its response.
+          streamingPermits.release();
+        }
+        if (error != null) {
+          callback.onError(error);
+        } else {
+          callback.onSuccess(value);
+        }
+        return null;
+      }, CommonPools.blockingTaskExecutor());
+      return;
+    }
     sendRequest().handle((response, t) -> {
       if (t != null) {
         callback.onError(t);
@@ -164,28 +233,52 @@ public final class HttpCall<V> extends Call.Base<V> {
     if (responseFuture != null) {
       responseFuture.cancel(false);
     }
+    HttpResponse streamingResponse = this.streamingResponse;
+    if (streamingResponse != null) {
+      streamingResponse.abort();
+    }
   }
 
   @Override public HttpCall<V> clone() {
-    return new HttpCall<>(httpClient, request, bodyConverter, name);
+    return new HttpCall<>(httpClient, request, bodyConverter, name, streamingPermits);
   }
 
   @Override public String toString() {
     return "HttpCall(" + request + ")";
   }
 
-  CompletableFuture<AggregatedHttpResponse> sendRequest() {
-    final HttpResponse response;
+  HttpResponse executeRequest() {
     try (SafeCloseable ignored =
            Clients.withContextCustomizer(ctx -> ctx.logBuilder().name(name))) {
-      response = httpClient.execute(request.get());
+      return httpClient.execute(request.get());
     }
+  }
+
+  CompletableFuture<AggregatedHttpResponse> sendRequest() {
+    final HttpResponse response = executeRequest();
     CompletableFuture<AggregatedHttpResponse> responseFuture =
       RequestContext.mapCurrent(
         ctx -> response.aggregateWithPooledObjects(ctx.eventLoop(), ctx.alloc()),
         // This should never be used in practice since the module runs in an Armeria server.
         response::aggregate);
-    responseFuture = responseFuture.exceptionally(t -> {
+    responseFuture = rejectIfUnprocessed(responseFuture);
+    this.responseFuture = responseFuture;
+    return responseFuture;
+  }
+
+  /** Sends the request, leaving the body to be read as it arrives. */
+  SplitHttpResponse sendStreamingRequest() {
+    HttpResponse response = executeRequest();
+    this.streamingResponse = response;
+    return response.split();
+  }
+
+  static CompletableFuture<ResponseHeaders> headers(SplitHttpResponse response) {
+    return rejectIfUnprocessed(response.headers());
+  }
+
+  static <T> CompletableFuture<T> rejectIfUnprocessed(CompletableFuture<T> future) {
+    return future.exceptionally(t -> {
       if (t instanceof UnprocessedRequestException) {
         Throwable cause = t.getCause();
         // Go ahead and reduce the output in logs since this is usually a configuration or
@@ -200,8 +293,25 @@ public final class HttpCall<V> extends Call.Base<V> {
       }
       return null;
     });
-    this.responseFuture = responseFuture;
-    return responseFuture;
+  }
+
+  /**
+   * Converts a successful response as it arrives. Otherwise, the response is aggregated, as errors
+   * are small and their messages may need the whole content.
+   */
+  V parseStreamingResponse(ResponseHeaders headers, StreamMessage<HttpData> body)
+    throws IOException {
+    if (!headers.status().codeClass().equals(HttpStatusClass.SUCCESS)) {
+      return parseResponse(join(HttpResponse.of(headers, body).aggregate()), bodyConverter);
+    }
+
+    try (HttpDataInputStream stream = HttpDataInputStream.subscribe(body)) {
+      if (!stream.hasContent()) return null; // Same as an aggregated response with no content.
+
+      try (JsonParser parser = JSON_FACTORY.createParser(stream)) {
+        return bodyConverter.convert(parser, stream::contentPrefix);
+      }
+    }
   }
 
   V parseResponse(AggregatedHttpResponse response, BodyConverter<V> bodyConverter)
@@ -0,0 +1,165 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch.internal.client;
+
+import com.linecorp.armeria.common.ByteBufAccessMode;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.stream.StreamMessage;
+import com.linecorp.armeria.common.stream.SubscriptionOption;
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Reads a response body as it arrives, directly from the pooled buffers it was received into. Only
+ * one chunk is requested at a time, and each is released as soon as it is read. This means reading
+ * a large response, such as a trace with thousands of spans, only holds a chunk at a time instead
+ * of the whole response.
+ *
+ * <p>Reads block until data arrives, so this must not be read from an event loop.
+ *
+ * <p>As the response isn't retained, the first {@link #PREFIX_LENGTH} bytes are copied as they
+ * arrive. This allows {@link #contentPrefix()} to describe a response that couldn't be parsed.
+ */
+final class HttpDataInputStream extends InputStream implements Subscriber<HttpData> {
+  static HttpDataInputStream subscribe(StreamMessage<HttpData> body) {
+    HttpDataInputStream result = new HttpDataInputStream();
+    body.subscribe(result, SubscriptionOption.WITH_POOLED_OBJECTS);
+    return result;
+  }
+
+  static final Object END_OF_STREAM = new Object();
+  static final int PREFIX_LENGTH = 1024;
+
+  /** Holds {@link HttpData}, then either {@link #END_OF_STREAM} or the error of the stream. */
+  final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+  volatile Subscription subscription;
+  volatile boolean closed;
+
+  // Only accessed by the reading thread
+  HttpData current;
+  ByteBuf buf;
+  boolean done;
+  final byte[] prefix = new byte[PREFIX_LENGTH];
+  int prefixLength;
+  boolean truncated;
+
+  @Override public void onSubscribe(Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(1);
+  }
+
+  @Override public void onNext(HttpData data) {
+    queue.add(data);
+    if (closed) releaseQueued(); // the reader won't see this
+  }
+
+  @Override public void onError(Throwable t) {
+    queue.add(t);
+  }
+
+  @Override public void onComplete() {
+    queue.add(END_OF_STREAM);
+  }
+
+  /** Returns false when the stream completed without any data. Blocks until that is known. */
+  boolean hasContent() throws IOException {
+    return nextReadable();
+  }
+
+  @Override public int read() throws IOException {
+    if (!nextReadable()) return -1;
+    return buf.readByte() & 0xff;
+  }
+
+  @Override public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) return 0;
+    if (!nextReadable()) return -1;
+    int length = Math.min(len, buf.readableBytes());
+    buf.readBytes(b, off, length);
+    return length;
+  }
+
+  @Override public int available() {
+    return buf != null ? buf.readableBytes() : 0;
+  }
+
+  /** Releases the current chunk once read, and waits for the next until one is readable. */
+  boolean nextReadable() throws IOException {
+    if (closed) throw new IOException("closed");
+    while (buf == null || !buf.isReadable()) {
+      if (current != null) {
+        releaseCurrent();
+        subscription.request(1);
+      }
+      if (done) return false;
+
+      Object next;
+      try {
+        next = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+
+      if (next instanceof HttpData) {
+        current = (HttpData) next;
+        buf = current.byteBuf(ByteBufAccessMode.DUPLICATE);
+        copyPrefix(buf);
+      } else {
+        done = true;
+        if (next instanceof Throwable) throw new IOException((Throwable) next);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the start of the response received so far, suffixed with "..." when there was more.
+   * This must be called from the reading thread.
+   */
+  String contentPrefix() {
+    String result = new String(prefix, 0, prefixLength, StandardCharsets.UTF_8);
+    return truncated ? result + "..." : result;
+  }
+
+  void copyPrefix(ByteBuf buf) {
+    int length = Math.min(PREFIX_LENGTH - prefixLength, buf.readableBytes());
+    buf.getBytes(buf.readerIndex(), prefix, prefixLength, length);
+    prefixLength += length;
+    if (length < buf.readableBytes()) truncated = true;
+  }
+
+  /** Cancels the response if it wasn't read fully, and releases any chunks not yet read. */
+  @Override public void close() {
+    if (closed) return;
+    closed = true;
+    Subscription subscription = this.subscription;
+    if (!done && subscription != null) subscription.cancel();
+    releaseCurrent();
+    releaseQueued();
+  }
+
+  void releaseCurrent() {
+    if (current == null) return;
+    current.close();
+    current = null;
+    buf = null;
+  }
+
+  void releaseQueued() {
+    Object next;
+    while ((next = queue.poll()) != null) {
+      if (next instanceof HttpData) ((HttpData) next).close();
+    }
+  }
+}
@@ -23,23 +23,28 @@ public class SearchCallFactory {
     this.http = http;
   }
 
+  /** Search hits are converted as they arrive, as responses can include thousands of them. */
   public <V> HttpCall<V> newCall(SearchRequest request, HttpCall.BodyConverter<V> bodyConverter) {
     final AggregatedHttpRequest httpRequest;
     try {
       httpRequest = AggregatedHttpRequest.of(
         RequestHeaders.of(
-          HttpMethod.POST, lenientSearch(request.indices, request.type),
+          HttpMethod.POST, lenientSearch(request.indices, request.type, request.filterPath),
           HttpHeaderNames.CONTENT_TYPE, MediaType.JSON_UTF_8),
         HttpData.wrap(OBJECT_MAPPER.writeValueAsBytes(request)));
     } catch (JsonProcessingException e) {
       throw new AssertionError("Could not serialize SearchRequest to bytes.", e);
     }
-    return http.newCall(httpRequest, bodyConverter, request.tag());
+    return http.newStreamingCall(httpRequest, bodyConverter, request.tag());
   }
 
   /** Matches the behavior of {@code IndicesOptions#lenientExpandOpen()} */
-  String lenientSearch(List<String> indices, @Nullable String type) {
-    return '/' + String.join(",", indices) +
-      "/_search?allow_no_indices=true&expand_wildcards=open&ignore_unavailable=true";
+  String lenientSearch(List<String> indices, @Nullable String type,
+    @Nullable List<String> filterPath) {
+    // Parameters are in alphabetical order, which simplifies signing requests to AWS.
+    String path = '/' + String.join(",", indices)
+      + "/_search?allow_no_indices=true&expand_wildcards=open";
+    if (filterPath != null) path += "&filter_path=" + String.join(",", filterPath);
+    return path + "&ignore_unavailable=true";
   }
 }
@@ -31,13 +31,23 @@ public final class SearchRequest {
    */
   static final int MAX_RESULT_WINDOW = 10000; // the default elasticsearch allowed limit
 
+  /** A {@link #filterPath(String...) filter path} to only return the source documents of hits. */
+  public static final String HITS_SOURCE = "hits.hits._source";
+
+  /** A {@link #filterPath(String...) filter path} to only return the keys of aggregations. */
+  static final String AGGREGATION_KEYS = "aggregations.*.buckets.key";
+
   transient final List<String> indices;
   @Nullable transient final String type;
+  @Nullable transient List<String> filterPath;
 
   Integer size = MAX_RESULT_WINDOW;
   Boolean _source;
+  List<String> docvalue_fields;
   Object query;
   Map<String, Aggregation> aggs;
+  Collapse collapse;
+  List<Map<String, String>> sort;
 
   SearchRequest(List<String> indices, @Nullable String type) {
     this.indices = indices;
@@ -69,13 +79,51 @@ public final class SearchRequest {
   }
 
   public SearchRequest addAggregation(Aggregation agg) {
-    size = null; // we return aggs, not source data
+    size = 0; // we return aggs, not source data
     _source = false;
+    filterPath = List.of(AGGREGATION_KEYS);
     if (aggs == null) aggs = new LinkedHashMap<>();
     aggs.put(agg.field, agg);
     return this;
   }
 
+  /**
+   * Returns one result per distinct value of the field, sorted by the given field descending. The
+   * value of each result is returned as an array in its "fields" object.
+   *
+   * <p>See https://www.elastic.co/guide/en/elasticsearch/reference/current/collapse-search-results.html
+   */
+  public SearchRequest collapse(String field, int size, String sortField) {
+    this.size = size;
+    _source = false; // we return the collapsed value, not source data of the top hit
+    collapse = new Collapse(field);
+    sort = List.of(Map.of(sortField, "desc"));
+    return this;
+  }
+
+  /**
+   * Returns the given fields of each hit from doc values, instead of its source document. Values
+   * are returned as arrays in the "fields" object of each hit.
+   *
+   * <p>See https://www.elastic.co/guide/en/elasticsearch/reference/current/search-fields.html#docvalue-fields
+   */
+  public SearchRequest docvalueFields(String... fields) {
+    _source = false;
+    docvalue_fields = List.of(fields);
+    return this;
+  }
+
+  /**
+   * Limits the response to the given paths, for example dropping metadata such as "_index" and
+   * "_id" of each hit. The {@link HttpCall.BodyConverter} must not read anything else.
+   *
+   * <p>See https://www.elastic.co/guide/en/elasticsearch/reference/current/common-options.html#common-options-response-filtering
+   */
+  public SearchRequest filterPath(String... paths) {
+    filterPath = List.of(paths);
+    return this;
+  }
+
   public Integer getSize() {
     return size;
   }
@@ -84,6 +132,11 @@ public final class SearchRequest {
     return _source;
   }
 
+  @JsonProperty("docvalue_fields")
+  public List<String> getDocvalueFields() {
+    return docvalue_fields;
+  }
+
   public Object getQuery() {
     return query;
   }
@@ -92,7 +145,16 @@ public final class SearchRequest {
     return aggs;
   }
 
+  public Collapse getCollapse() {
+    return collapse;
+  }
+
+  public List<Map<String, String>> getSort() {
+    return sort;
+  }
+
   String tag() {
+    if (collapse != null) return "collapse";
     return aggs != null ? "aggregation" : "search";
   }
 
@@ -178,4 +240,16 @@ public final class SearchRequest {
       return bool;
     }
   }
+
+  static class Collapse {
+    final String field;
+
+    Collapse(String field) {
+      this.field = field;
+    }
+
+    public String getField() {
+      return field;
+    }
+  }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+import zipkin2.elasticsearch.internal.IndexNameFormatter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.TestObjects.DAY;
+import static zipkin2.TestObjects.TODAY;
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_SPAN;
+
+class DailyIndexNamesTest {
+  IndexNameFormatter formatter =
+    IndexNameFormatter.newBuilder().index("zipkin").dateSeparator('-').build();
+  DailyIndexNames names = new DailyIndexNames(formatter, '-', TYPE_SPAN);
+
+  @Test void get_sameAsFormatter() {
+    for (long timestamp : new long[] {TODAY, TODAY + DAY - 1, TODAY - DAY, 0L, -1L}) {
+      assertThat(names.get(timestamp))
+        .isEqualTo(formatter.formatTypeAndTimestampForInsert(TYPE_SPAN, '-', timestamp));
+    }
+  }
+
+  @Test void get_cachedForTheDay() {
+    assertThat(names.get(TODAY + 1000L)).isSameAs(names.get(TODAY + DAY / 2));
+  }
+
+  @Test void get_replacesDayInSameSlot() {
+    String today = names.get(TODAY);
+    String nextWeek = names.get(TODAY + DailyIndexNames.SLOTS * DAY);
+
+    assertThat(nextWeek)
+      .isEqualTo(formatter.formatTypeAndTimestampForInsert(TYPE_SPAN, '-', TODAY + 8 * DAY));
+    assertThat(names.get(TODAY)).isEqualTo(today).isNotSameAs(today);
+  }
+}
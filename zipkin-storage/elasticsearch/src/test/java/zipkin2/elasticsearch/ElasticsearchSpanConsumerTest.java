@@ -13,12 +13,18 @@ import com.linecorp.armeria.common.MediaType;
 import com.linecorp.armeria.common.ResponseHeaders;
 import com.linecorp.armeria.testing.junit5.server.mock.MockWebServerExtension;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import zipkin2.Call;
+import zipkin2.Callback;
 import zipkin2.Endpoint;
 import zipkin2.Span;
 import zipkin2.Span.Kind;
@@ -26,6 +32,7 @@ import zipkin2.codec.SpanBytesEncoder;
 import zipkin2.storage.SpanConsumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static zipkin2.TestObjects.TODAY;
 import static zipkin2.TestObjects.UTF_8;
@@ -66,11 +73,13 @@ class ElasticsearchSpanConsumerTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get tags template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     storage.ensureIndexTemplates();
     server.takeRequest(); // get version
     server.takeRequest(); // get span template
     server.takeRequest(); // get dependency template
     server.takeRequest(); // get tags template
+    server.takeRequest(); // get names template
   }
 
   @Test void addsTimestamp_millisIntoJson() throws Exception {
@@ -179,6 +188,7 @@ class ElasticsearchSpanConsumerTest {
     server.enqueue(SUCCESS_RESPONSE); // put span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get tags template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     storage.ensureIndexTemplates();
     server.takeRequest(); // get version
     server.takeRequest(); // get span template
@@ -275,6 +285,249 @@ class ElasticsearchSpanConsumerTest {
       .isEqualTo(server.takeRequest().request().contentUtf8());
   }
 
+  @Test void addsNames() throws Exception {
+    server.enqueue(SUCCESS_RESPONSE);
+
+    accept(Span.newBuilder().traceId("1").id("1").timestamp(1).name("get")
+      .localEndpoint(WEB_ENDPOINT).remoteEndpoint(APP_ENDPOINT).build());
+
+    assertThat(server.takeRequest().request().contentUtf8())
+      .contains("{\"index\":{\"_index\":\"zipkin:names-1970-01-01\",\"_type\":\"names\",\"_id\":")
+      .endsWith("""
+        {"serviceName":"web","remoteServiceName":"app","spanName":"get"}
+        """);
+  }
+
+  @Test void addsNames_notWithoutLocalServiceName() throws Exception {
+    server.enqueue(SUCCESS_RESPONSE);
+
+    accept(Span.newBuilder().traceId("1").id("1").timestamp(1).name("get").build());
+
+    assertThat(server.takeRequest().request().contentUtf8())
+      .doesNotContain("names");
+  }
+
+  @Test void addsNames_suppressesWhenSameDay() throws Exception {
+    server.enqueue(SUCCESS_RESPONSE);
+    server.enqueue(SUCCESS_RESPONSE);
+
+    Span s = Span.newBuilder().traceId("1").id("1").timestamp(1).name("get")
+      .localEndpoint(WEB_ENDPOINT).build();
+    accept(s);
+    accept(s.toBuilder().id(2).build());
+
+    server.takeRequest(); // skip first
+    // the names are in the same date range as the other, so it should not write them again
+    assertThat(server.takeRequest().request().contentUtf8())
+      .doesNotContain("names");
+  }
+
+  @Test void resendsOnlyRetryableItems() throws Exception {
+    Map<String, Integer> retried = new LinkedHashMap<>(), failed = new LinkedHashMap<>();
+    useBulkItemMetrics(retried, failed);
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8, """
+      {"took":0,"errors":true,"items":[
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"1","status":201}},
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"2","status":429,"error":{"type":"es_rejected_execution_exception","reason":"rejected execution"}}},
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"3","status":503,"error":{"type":"unavailable_shards_exception","reason":"primary shard is not active"}}}
+      ]}
+      """));
+    server.enqueue(SUCCESS_RESPONSE);
+
+    accept(Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build(),
+      Span.newBuilder().traceId("2").id("2").name("two").timestamp(1).build(),
+      Span.newBuilder().traceId("3").id("3").name("three").timestamp(1).build());
+
+    server.takeRequest(); // skip first
+    assertThat(server.takeRequest().request().contentUtf8())
+      .doesNotContain("\"name\":\"one\"")
+      .contains("\"name\":\"two\"")
+      .contains("\"name\":\"three\"");
+    assertThat(retried).containsOnly(
+      entry("es_rejected_execution_exception", 1), entry("unavailable_shards_exception", 1));
+    assertThat(failed).isEmpty();
+  }
+
+  @Test void failsWhenRetriesExhausted() throws Exception {
+    Map<String, Integer> retried = new LinkedHashMap<>(), failed = new LinkedHashMap<>();
+    useBulkItemMetrics(retried, failed);
+    AggregatedHttpResponse rejected = AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8,
+      """
+        {"took":0,"errors":true,"items":[
+          {"index":{"_index":"zipkin:span-1970-01-01","_id":"1","status":429,"error":{"type":"es_rejected_execution_exception","reason":"rejected execution"}}}
+        ]}
+        """);
+    for (int i = 0; i < 3; i++) server.enqueue(rejected);
+
+    try {
+      accept(Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build());
+      failBecauseExceptionWasNotThrown(RejectedExecutionException.class);
+    } catch (RejectedExecutionException expected) {
+      assertThat(expected).hasMessage("rejected execution");
+    }
+    assertThat(retried).containsOnly(entry("es_rejected_execution_exception", 2));
+    assertThat(failed).containsOnly(entry("es_rejected_execution_exception", 1));
+  }
+
+  /** Documents waiting to be sent again weren't written, so they can't be reported as stored. */
+  @Test void failsWhenCanceledBeforeRetry() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8, """
+      {"took":0,"errors":true,"items":[
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"1","status":429,"error":{"type":"es_rejected_execution_exception","reason":"rejected execution"}}}
+      ]}
+      """));
+
+    Call<Void> call = spanConsumer.accept(
+      List.of(Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build()));
+    CompletableFuture<Void> result = enqueue(call);
+    server.takeRequest();
+    call.cancel();
+
+    assertThat(result).failsWithin(1, TimeUnit.SECONDS);
+    assertThat(server.takeRequest(200, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  @Test void doesntResendItemsNotRetryable() throws Exception {
+    Map<String, Integer> retried = new LinkedHashMap<>(), failed = new LinkedHashMap<>();
+    useBulkItemMetrics(retried, failed);
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8, """
+      {"took":0,"errors":true,"items":[
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"1","status":201}},
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"2","status":400,"error":{"type":"mapper_parsing_exception","reason":"failed to parse"}}}
+      ]}
+      """));
+
+    try {
+      accept(Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build(),
+        Span.newBuilder().traceId("2").id("2").name("two").timestamp(1).build());
+      failBecauseExceptionWasNotThrown(RuntimeException.class);
+    } catch (RuntimeException expected) {
+      assertThat(expected).hasMessage("failed to parse");
+    }
+    server.takeRequest();
+    assertThat(server.takeRequest(100, TimeUnit.MILLISECONDS)).isNull();
+    assertThat(retried).isEmpty();
+    assertThat(failed).containsOnly(entry("mapper_parsing_exception", 1));
+  }
+
+  void useBulkItemMetrics(Map<String, Integer> retried, Map<String, Integer> failed)
+    throws Exception {
+    storage.close();
+    storage = storage.toBuilder().bulkItemMetrics(new BulkItemMetrics() {
+      @Override public void incrementRetried(String reason, int quantity) {
+        retried.merge(reason, quantity, Integer::sum);
+      }
+
+      @Override public void incrementFailed(String reason, int quantity) {
+        failed.merge(reason, quantity, Integer::sum);
+      }
+    }).build();
+    ensureIndexTemplate();
+  }
+
+  @Test void bulkLinger_sharesBulkRequest() throws Exception {
+    useBulkLinger(storage.toBuilder().bulkLinger(60_000).bulkMaxDocuments(2));
+    server.enqueue(SUCCESS_RESPONSE);
+
+    Span one = Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build();
+    Span two = Span.newBuilder().traceId("2").id("2").name("two").timestamp(1).build();
+    CompletableFuture<Void> first = enqueue(one);
+    CompletableFuture<Void> second = enqueue(two);
+    first.get(10, TimeUnit.SECONDS);
+    second.get(10, TimeUnit.SECONDS);
+
+    // reaching max documents sends both calls in one bulk, without waiting for the linger
+    assertThat(server.takeRequest().request().contentUtf8())
+      .contains("\"name\":\"one\"")
+      .contains("\"name\":\"two\"");
+    assertThat(server.takeRequest(100, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  @Test void bulkLinger_sendsAfterLinger() throws Exception {
+    useBulkLinger(storage.toBuilder().bulkLinger(10));
+    server.enqueue(SUCCESS_RESPONSE);
+
+    accept(Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build());
+
+    assertThat(server.takeRequest().request().contentUtf8())
+      .contains("\"name\":\"one\"");
+  }
+
+  @Test void bulkLinger_sendsPendingDocumentsOnClose() throws Exception {
+    useBulkLinger(storage.toBuilder().bulkLinger(60_000));
+    server.enqueue(SUCCESS_RESPONSE);
+
+    CompletableFuture<Void> result =
+      enqueue(Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build());
+    assertThat(result).isNotDone();
+
+    storage.close();
+
+    result.get(10, TimeUnit.SECONDS);
+    assertThat(server.takeRequest().request().contentUtf8())
+      .contains("\"name\":\"one\"");
+  }
+
+  @Test void bulkLinger_resendsOnlyRejectedItems() throws Exception {
+    useBulkLinger(storage.toBuilder().bulkLinger(10));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8, """
+      {"took":0,"errors":true,"items":[
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"1","status":201}},
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"2","status":429,"error":{"type":"es_rejected_execution_exception","reason":"rejected execution"}}}
+      ]}
+      """));
+    server.enqueue(SUCCESS_RESPONSE);
+
+    accept(Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build(),
+      Span.newBuilder().traceId("2").id("2").name("two").timestamp(1).build());
+
+    server.takeRequest(); // skip first
+    assertThat(server.takeRequest().request().contentUtf8())
+      .doesNotContain("\"name\":\"one\"")
+      .contains("\"name\":\"two\"");
+  }
+
+  @Test void bulkLinger_failsOnOtherItemErrors() throws Exception {
+    useBulkLinger(storage.toBuilder().bulkLinger(10));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8, """
+      {"took":0,"errors":true,"items":[
+        {"index":{"_index":"zipkin:span-1970-01-01","_id":"1","status":400,"error":{"type":"mapper_parsing_exception","reason":"failed to parse"}}}
+      ]}
+      """));
+
+    Span span = Span.newBuilder().traceId("1").id("1").name("one").timestamp(1).build();
+    try {
+      accept(span);
+      failBecauseExceptionWasNotThrown(RuntimeException.class);
+    } catch (RuntimeException expected) {
+      assertThat(expected).hasMessage("failed to parse");
+    }
+  }
+
+  void useBulkLinger(ElasticsearchStorage.Builder builder) throws Exception {
+    storage.close();
+    storage = builder.build();
+    ensureIndexTemplate();
+  }
+
+  CompletableFuture<Void> enqueue(Span... spans) {
+    return enqueue(spanConsumer.accept(List.of(spans)));
+  }
+
+  static CompletableFuture<Void> enqueue(Call<Void> call) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    call.enqueue(new Callback<Void>() {
+      @Override public void onSuccess(Void value) {
+        result.complete(value);
+      }
+
+      @Override public void onError(Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    return result;
+  }
+
   void accept(Span... spans) throws Exception {
     spanConsumer.accept(List.of(spans)).execute();
   }
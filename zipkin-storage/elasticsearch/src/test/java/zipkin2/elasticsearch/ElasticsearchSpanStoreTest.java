@@ -13,17 +13,24 @@ import com.linecorp.armeria.common.MediaType;
 import com.linecorp.armeria.common.ResponseHeaders;
 import com.linecorp.armeria.testing.junit5.server.mock.MockWebServerExtension;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import zipkin2.Span;
 import zipkin2.TestObjects;
 import zipkin2.storage.QueryRequest;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.TestObjects.CLIENT_SPAN;
 import static zipkin2.TestObjects.DAY;
 import static zipkin2.TestObjects.TODAY;
+import static zipkin2.codec.SpanBytesEncoder.JSON_V2;
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_NAMES;
 import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_SPAN;
 
 class ElasticsearchSpanStoreTest {
@@ -64,17 +71,359 @@ class ElasticsearchSpanStoreTest {
       .contains("\"traceId\":\"3041d36dc43227fd\"");
   }
 
+  @Test void getTrace_routesToCachedIndices() throws Exception {
+    long noon = TODAY + DAY / 2;
+    recordRead(CLIENT_SPAN, noon);
+
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPANS));
+    assertThat(spanStore.getTrace(CLIENT_SPAN.traceId()).execute()).isNotEmpty();
+
+    String index = storage.indexNameFormatter().formatTypeAndTimestamp(TYPE_SPAN, noon);
+    assertThat(server.takeRequest().request().path()).startsWith("/" + index + "/_search");
+  }
+
+  @Test void getTrace_onlyReturnsSource() throws Exception {
+    server.enqueue(EMPTY_RESPONSE);
+    spanStore.getTrace(CLIENT_SPAN.traceId()).execute();
+
+    assertThat(server.takeRequest().request().path())
+      .contains("&filter_path=hits.hits._source&");
+  }
+
+  /** Spans written by this node are only some of the trace, so they don't route lookups. */
+  @Test void getTrace_doesntRouteWrittenTraces() throws Exception {
+    storage.traceIdIndexCache().recordWrite(List.of(CLIENT_SPAN), new long[] {TODAY + DAY / 2});
+
+    server.enqueue(EMPTY_RESPONSE);
+    spanStore.getTrace(CLIENT_SPAN.traceId()).execute();
+
+    assertThat(server.takeRequest().request().path())
+      .startsWith("/" + storage.indexNameFormatter().formatType(TYPE_SPAN) + "/_search");
+  }
+
+  @Test void getTrace_recordsTraceReadFromAllIndices() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPANS));
+    List<Span> trace = spanStore.getTrace(CLIENT_SPAN.traceId()).execute();
+
+    assertThat(storage.traceIdIndexCache().timestampRanges)
+      .containsOnlyKeys(trace.get(0).traceId());
+  }
+
+  @Test void getTrace_fallsBackToAllIndicesWhenRoutedSearchFindsNothing() throws Exception {
+    recordRead(CLIENT_SPAN, TODAY + DAY / 2);
+
+    server.enqueue(EMPTY_RESPONSE);
+    server.enqueue(EMPTY_RESPONSE);
+    spanStore.getTrace(CLIENT_SPAN.traceId()).execute();
+
+    server.takeRequest(); // routed
+    assertThat(server.takeRequest().request().path())
+      .startsWith("/" + storage.indexNameFormatter().formatType(TYPE_SPAN) + "/_search");
+  }
+
+  @Test void getTracesByIds_fallsBackToAllIndicesOnlyForMissingTraces() throws Exception {
+    Span found = CLIENT_SPAN.toBuilder().traceId("0000000000000001").build();
+    Span missing = CLIENT_SPAN.toBuilder().traceId("0000000000000002").build();
+    recordRead(found, TODAY + DAY / 2);
+    recordRead(missing, TODAY + DAY / 2);
+
+    for (Span span : List.of(found, missing)) {
+      server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8,
+        "{\"hits\":{\"hits\":[{\"_source\":" + new String(JSON_V2.encode(span), UTF_8) + "}]}}"));
+    }
+    assertThat(spanStore.getTraces(List.of(found.traceId(), missing.traceId())).execute())
+      .containsExactly(List.of(found), List.of(missing));
+
+    server.takeRequest(); // routed
+    AggregatedHttpRequest fallback = server.takeRequest().request();
+    assertThat(fallback.path())
+      .startsWith("/" + storage.indexNameFormatter().formatType(TYPE_SPAN) + "/_search");
+    assertThat(fallback.contentUtf8())
+      .contains("{\"terms\":{\"traceId\":[\"0000000000000002\"]}}");
+  }
+
+  @Test void getTracesByIds_doesntFallBackWhenRoutedSearchFindsAll() throws Exception {
+    recordRead(CLIENT_SPAN, TODAY + DAY / 2);
+
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8,
+      "{\"hits\":{\"hits\":[{\"_source\":" + new String(JSON_V2.encode(CLIENT_SPAN), UTF_8)
+        + "}]}}"));
+    assertThat(spanStore.getTraces(List.of(CLIENT_SPAN.traceId())).execute()).hasSize(1);
+
+    server.takeRequest(); // routed
+    assertThat(server.takeRequest(100, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  @Test void getTraces_recordsTraceIndices() throws Exception {
+    Span span = CLIENT_SPAN.toBuilder().timestamp((TODAY + DAY / 2) * 1000L).build();
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.TRACE_IDS));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8,
+      "{\"hits\":{\"hits\":[{\"_source\":" + new String(JSON_V2.encode(span), UTF_8) + "}]}}"));
+
+    // Spans of the trace were read from all of today's index
+    QueryRequest request =
+      QueryRequest.newBuilder().endTs(TODAY + DAY / 2).lookback(1000L).limit(10).build();
+    spanStore.getTraces(request).execute();
+
+    assertThat(storage.traceIdIndexCache().timestampRanges).containsOnlyKeys(span.traceId());
+  }
+
+  /** Spans of traces near the edge of the indices searched could be in other indices. */
+  @Test void getTraces_doesntRecordTracesNearEdgeOfSearch() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.TRACE_IDS));
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPANS));
+
+    // The spans in the response are timestamped near epoch, so before the indices searched
+    QueryRequest request = QueryRequest.newBuilder().endTs(TODAY).lookback(TODAY).limit(10).build();
+    assertThat(spanStore.getTraces(request).execute()).isNotEmpty();
+
+    assertThat(storage.traceIdIndexCache().timestampRanges).isEmpty();
+  }
+
+  @Test void streamTraces_readsSpansAPageOfTraceIdsAtATime() throws Exception {
+    StringBuilder buckets = new StringBuilder();
+    for (int i = 1; i <= PagedTraces.TRACES_PER_PAGE + 1; i++) {
+      if (i > 1) buckets.append(',');
+      buckets.append("{\"key\":\"").append(String.format("%016x", i)).append("\"}");
+    }
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8,
+      "{\"aggregations\":{\"traceId_agg\":{\"buckets\":[" + buckets + "]}}}"));
+    Span first = CLIENT_SPAN.toBuilder().traceId("0000000000000001").build();
+    Span last = CLIENT_SPAN.toBuilder().traceId("0000000000000065").build();
+    for (Span span : List.of(first, last)) {
+      server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8,
+        "{\"hits\":{\"hits\":[{\"_source\":" + new String(JSON_V2.encode(span), UTF_8) + "}]}}"));
+    }
+
+    List<List<Span>> streamed = new ArrayList<>();
+    QueryRequest request = QueryRequest.newBuilder().endTs(TODAY).lookback(DAY).limit(1000).build();
+    spanStore.streamTraces(request, streamed::add).execute();
+
+    assertThat(streamed).containsExactly(List.of(first), List.of(last));
+    assertThat(server.takeRequest().request().contentUtf8()).contains("\"aggs\"");
+    assertThat(server.takeRequest().request().contentUtf8()) // first page
+      .contains("{\"terms\":{\"traceId\":[\"0000000000000001\",")
+      .doesNotContain("0000000000000065");
+    assertThat(server.takeRequest().request().contentUtf8()) // second page
+      .contains("{\"terms\":{\"traceId\":[\"0000000000000065\"]}}");
+  }
+
+  @Test void streamTraces_collapse_pagesCollapsedTraceIds() throws Exception {
+    storage.close();
+    storage = storage.toBuilder().collapseTraceSearch(true).build();
+    spanStore = new ElasticsearchSpanStore(storage);
+
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.COLLAPSED_TRACE_IDS));
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPANS));
+
+    List<List<Span>> streamed = new ArrayList<>();
+    QueryRequest request = QueryRequest.newBuilder().endTs(TODAY).lookback(TODAY).limit(10).build();
+    spanStore.streamTraces(request, streamed::add).execute();
+
+    assertThat(streamed).isNotEmpty();
+    assertThat(server.takeRequest().request().contentUtf8()).contains("\"collapse\"");
+    assertThat(server.takeRequest().request().contentUtf8())
+      .contains("{\"terms\":{\"traceId\":"
+        + "[\"7180c278b62e8f6a216a2aea45d08fc9\",\"0000000000000002\"]}}");
+  }
+
+  @Test void getTraces_collapse_findsTraceIdsThenReadsTheirSpans() throws Exception {
+    storage.close();
+    storage = storage.toBuilder().collapseTraceSearch(true).build();
+    spanStore = new ElasticsearchSpanStore(storage);
+
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.COLLAPSED_TRACE_IDS));
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPANS));
+
+    QueryRequest request = QueryRequest.newBuilder().endTs(TODAY).lookback(TODAY).limit(10).build();
+    assertThat(spanStore.getTraces(request).execute()).isNotEmpty();
+
+    AggregatedHttpRequest collapse = server.takeRequest().request();
+    assertThat(collapse.path()).contains("&filter_path=hits.hits.fields.traceId&");
+    assertThat(collapse.contentUtf8())
+      .contains(
+        "\"size\":10",
+        "\"collapse\":{\"field\":\"traceId\"}",
+        "\"sort\":[{\"timestamp_millis\":\"desc\"}]")
+      .doesNotContain("inner_hits");
+    assertThat(server.takeRequest().request().contentUtf8())
+      .contains("{\"terms\":{\"traceId\":"
+        + "[\"7180c278b62e8f6a216a2aea45d08fc9\",\"0000000000000002\"]}}");
+  }
+
+  /** Spans of a trace before (endTs - lookback) are read with the spans that matched. */
+  @Test void getTraces_collapse_readsSpansOutsideTimeRange() throws Exception {
+    storage.close();
+    storage = storage.toBuilder().collapseTraceSearch(true).build();
+    spanStore = new ElasticsearchSpanStore(storage);
+
+    long endTs = TODAY + DAY / 2, lookback = 1000L;
+    Span before = CLIENT_SPAN.toBuilder().id(1L).parentId(null)
+      .timestamp((endTs - lookback - 100L) * 1000L).build();
+    Span within = CLIENT_SPAN.toBuilder().id(2L).parentId(1L)
+      .timestamp((endTs - lookback + 100L) * 1000L).build();
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8,
+      "{\"hits\":{\"hits\":[{\"fields\":{\"traceId\":[\"" + CLIENT_SPAN.traceId()
+        + "\"]}}]}}"));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8,
+      "{\"hits\":{\"hits\":[{\"_source\":" + new String(JSON_V2.encode(before), UTF_8)
+        + "},{\"_source\":" + new String(JSON_V2.encode(within), UTF_8) + "}]}}"));
+
+    QueryRequest request =
+      QueryRequest.newBuilder().endTs(endTs).lookback(lookback).limit(10).build();
+    assertThat(spanStore.getTraces(request).execute()).containsExactly(List.of(before, within));
+
+    assertThat(server.takeRequest().request().contentUtf8()).contains("\"range\"");
+    AggregatedHttpRequest getSpans = server.takeRequest().request();
+    assertThat(getSpans.path()).startsWith(
+      "/" + storage.indexNameFormatter().formatTypeAndTimestamp(TYPE_SPAN, endTs) + "/_search");
+    assertThat(getSpans.contentUtf8())
+      .contains("\"terms\"")
+      .doesNotContain("\"range\"");
+  }
+
+  /** Spans are read by trace ID, so collapsing works with filters that only match some spans. */
+  @Test void getTraces_collapse_whenFilteringSpans() throws Exception {
+    storage.close();
+    storage = storage.toBuilder().collapseTraceSearch(true).build();
+    spanStore = new ElasticsearchSpanStore(storage);
+
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.COLLAPSED_TRACE_IDS));
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPANS));
+
+    QueryRequest request = QueryRequest.newBuilder().serviceName("frontend")
+      .endTs(TODAY).lookback(TODAY).limit(10).build();
+    spanStore.getTraces(request).execute();
+
+    assertThat(server.takeRequest().request().contentUtf8())
+      .contains("\"collapse\"", "\"localEndpoint.serviceName\":\"frontend\"")
+      .doesNotContain("\"aggs\"");
+  }
+
   @Test void serviceNames_defaultsTo24HrsAgo_6x() throws Exception {
     server.enqueue(AggregatedHttpResponse.of(
       HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES));
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES)); // names of first day
     spanStore.getServiceNames().execute();
 
     requestLimitedTo2DaysOfIndices_singleTypeIndex();
   }
 
+  @Test void serviceNames_onlyReturnsKeys() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES));
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES)); // names of first day
+    spanStore.getServiceNames().execute();
+
+    AggregatedHttpRequest request = server.takeRequest().request();
+    assertThat(request.path()).contains("&filter_path=aggregations.*.buckets.key&");
+    assertThat(request.contentUtf8()).startsWith("{\"size\":0,\"_source\":false,");
+  }
+
+  /** The names index is missing or empty after upgrading, until spans are written. */
+  @Test void serviceNames_aggregatesSpansWhenNamesIndexEmpty() throws Exception {
+    server.enqueue(EMPTY_RESPONSE); // names
+    server.enqueue(EMPTY_RESPONSE); // names of first day
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES));
+
+    assertThat(spanStore.getServiceNames().execute()).isNotEmpty();
+
+    server.takeRequest(); // names
+    server.takeRequest(); // names of first day
+    AggregatedHttpRequest request = server.takeRequest().request();
+    assertThat(request.path()).startsWith("/" + storage.indexNameFormatter().formatTypeAndTimestamp(
+      TYPE_SPAN, System.currentTimeMillis() - DAY));
+    assertThat(request.contentUtf8()).contains("localEndpoint.serviceName");
+  }
+
+  @Test void spanNames_aggregatesSpansWhenNamesIndexEmpty() throws Exception {
+    server.enqueue(EMPTY_RESPONSE); // span names of service
+    server.enqueue(EMPTY_RESPONSE); // names of first day
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPAN_NAMES));
+
+    assertThat(spanStore.getSpanNames("foo").execute()).isNotEmpty();
+
+    server.takeRequest(); // span names of service
+    server.takeRequest(); // names of first day
+    assertThat(server.takeRequest().request().contentUtf8())
+      .contains("\"localEndpoint.serviceName\":\"foo\"");
+  }
+
+  /** Services whose spans precede the names index are still found, until it covers the lookback. */
+  @Test void serviceNames_addsSpanAggregationUntilNamesIndexCoversLookback() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES));
+    server.enqueue(EMPTY_RESPONSE); // names of first day
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPAN_NAMES));
+
+    assertThat(spanStore.getServiceNames().execute())
+      .containsExactly("methodcall", "service", "yak");
+
+    server.takeRequest(); // names
+    assertThat(server.takeRequest().request().path()).startsWith(
+      "/" + storage.indexNameFormatter().formatTypeAndTimestamp(
+        TYPE_NAMES, System.currentTimeMillis() - DAY) + "/_search");
+    assertThat(server.takeRequest().request().contentUtf8()).contains("localEndpoint.serviceName");
+  }
+
+  @Test void spanNames_addsSpanAggregationUntilNamesIndexCoversLookback() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPAN_NAMES));
+    server.enqueue(EMPTY_RESPONSE); // names of first day
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES));
+
+    assertThat(spanStore.getSpanNames("foo").execute())
+      .containsExactly("methodcall", "service", "yak");
+  }
+
+  @Test void serviceNames_doesntAggregateSpansWhenNamesIndexCoversLookback() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES));
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES)); // names of first day
+
+    assertThat(spanStore.getServiceNames().execute()).containsExactly("yak", "service");
+
+    server.takeRequest(); // names
+    server.takeRequest(); // names of first day
+    assertThat(server.takeRequest(100, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  /** A service can have no remote services, which isn't a reason to aggregate spans. */
+  @Test void remoteServiceNames_doesntAggregateSpansWhenServicesIndexed() throws Exception {
+    server.enqueue(EMPTY_RESPONSE); // remote service names of service
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES)); // names of first day
+
+    assertThat(spanStore.getRemoteServiceNames("foo").execute()).isEmpty();
+
+    server.takeRequest(); // remote service names of service
+    server.takeRequest(); // names of first day
+    assertThat(server.takeRequest(100, TimeUnit.MILLISECONDS)).isNull();
+  }
+
   @Test void spanNames_defaultsTo24HrsAgo_6x() throws Exception {
     server.enqueue(AggregatedHttpResponse.of(
       HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SPAN_NAMES));
+    server.enqueue(AggregatedHttpResponse.of(
+      HttpStatus.OK, MediaType.JSON_UTF_8, TestResponses.SERVICE_NAMES)); // names of first day
     spanStore.getSpanNames("foo").execute();
 
     requestLimitedTo2DaysOfIndices_singleTypeIndex();
@@ -91,6 +440,9 @@ class ElasticsearchSpanStoreTest {
 
     QueryRequest request = QueryRequest.newBuilder().endTs(TODAY).lookback(DAY).limit(10).build();
     assertThat(spanStore.getTraces(request).execute()).isEmpty();
+    spanStore.streamTraces(request, trace -> {
+      throw new AssertionError();
+    }).execute();
     assertThat(spanStore.getServiceNames().execute()).isEmpty();
     assertThat(spanStore.getSpanNames("icecream").execute()).isEmpty();
 
@@ -102,11 +454,17 @@ class ElasticsearchSpanStoreTest {
     long yesterday = today - TimeUnit.DAYS.toMillis(1);
 
     // 24 hrs ago always will fall into 2 days (ex. if it is 4:00pm, 24hrs ago is a different day)
-    String indexesToSearch = storage.indexNameFormatter().formatTypeAndTimestamp(TYPE_SPAN, yesterday)
+    String indexesToSearch = storage.indexNameFormatter().formatTypeAndTimestamp(TYPE_NAMES, yesterday)
       + ","
-      + storage.indexNameFormatter().formatTypeAndTimestamp(TYPE_SPAN, today);
+      + storage.indexNameFormatter().formatTypeAndTimestamp(TYPE_NAMES, today);
 
     AggregatedHttpRequest request = server.takeRequest().request();
     assertThat(request.path()).startsWith("/" + indexesToSearch + "/_search");
   }
+
+  /** Records the trace of the span as if read from all span indices. */
+  void recordRead(Span span, long timestampMillis) {
+    storage.traceIdIndexCache().recordTrace()
+      .map(List.of(span.toBuilder().timestamp(timestampMillis * 1000L).build()));
+  }
 }
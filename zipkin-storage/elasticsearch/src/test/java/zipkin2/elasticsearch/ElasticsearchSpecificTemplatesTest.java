@@ -71,6 +71,19 @@ class ElasticsearchSpecificTemplatesTest {
           }
         }\
       """);
+
+    assertThat(template.names()).contains("""
+        "mappings": {
+          "names": {
+            "enabled": true,
+            "properties": {
+              "serviceName": { "type": "keyword", "norms": false },
+              "remoteServiceName": { "type": "keyword", "norms": false },
+              "spanName": { "type": "keyword", "norms": false }
+            }
+          }
+        }\
+      """);
   }
 
   @Test void version7() {
@@ -80,6 +93,8 @@ class ElasticsearchSpecificTemplatesTest {
     assertThat(template.autocomplete())
       .withFailMessage("Starting at v7.x, we delimit index and type with hyphen")
       .contains("\"index_patterns\": \"zipkin-autocomplete-*\"");
+    assertThat(template.names())
+      .contains("\"index_patterns\": \"zipkin-names-*\"");
     assertThat(template.autocomplete())
       .withFailMessage("7.x does not support the key index.mapper.dynamic")
       .doesNotContain("\"index.mapper.dynamic\": false");
@@ -103,6 +118,17 @@ class ElasticsearchSpecificTemplatesTest {
           }
         }\
       """);
+
+    assertThat(template.names()).contains("""
+        "mappings": {
+          "enabled": true,
+          "properties": {
+            "serviceName": { "type": "keyword", "norms": false },
+            "remoteServiceName": { "type": "keyword", "norms": false },
+            "spanName": { "type": "keyword", "norms": false }
+          }
+        }\
+      """);
   }
 
   @Test void version78_legacy() {
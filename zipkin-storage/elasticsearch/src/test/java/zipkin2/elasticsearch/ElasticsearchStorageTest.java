@@ -62,6 +62,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get tags template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     server.enqueue(SUCCESS_RESPONSE); // dependencies request
     server.enqueue(SUCCESS_RESPONSE); // dependencies request
 
@@ -73,6 +74,7 @@ class ElasticsearchStorageTest {
     server.takeRequest(); // get span template
     server.takeRequest(); // get dependency template
     server.takeRequest(); // get tags template
+    server.takeRequest(); // get names template
 
     assertThat(server.takeRequest().request().path())
       .startsWith("/zipkin*dependency-2016-10-01,zipkin*dependency-2016-10-02/_search");
@@ -116,6 +118,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get tags template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
 
     server.enqueue(HEALTH_RESPONSE);
 
@@ -192,6 +195,32 @@ class ElasticsearchStorageTest {
       "ElasticsearchStorage{initialEndpoints=%s, index=zipkin}".formatted(server.httpUri()));
   }
 
+  @Test void writeHttp_sameAsHttp_whenNoClientForWrites() {
+    WebClient client = WebClient.of(server.httpUri());
+    storage.close();
+    storage = ElasticsearchStorage.newBuilder(() -> client).build();
+
+    assertThat(storage.writeHttp()).isSameAs(storage.http());
+  }
+
+  @Test void writeHttp_usesClientForWrites() {
+    WebClient client = WebClient.of(server.httpUri());
+    WebClient writeClient = WebClient.of(server.httpUri());
+    storage.close();
+    storage = ElasticsearchStorage.newBuilder(new LazyHttpClient() {
+      @Override public WebClient get() {
+        return client;
+      }
+
+      @Override public WebClient getForWrites() {
+        return writeClient;
+      }
+    }).build();
+
+    assertThat(storage.http()).extracting("httpClient").isSameAs(client);
+    assertThat(storage.writeHttp()).extracting("httpClient").isSameAs(writeClient);
+  }
+
   /** Ensure that Zipkin doesn't include "include_type_name" parameter with unsupported versions */
   @Test void check_create_indexTemplate_resourcePath__version66() {
     server.enqueue(AggregatedHttpResponse.of(
@@ -199,6 +228,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get autocomplete template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     server.enqueue(SUCCESS_RESPONSE); // cluster health
 
     storage.check();
@@ -211,6 +241,8 @@ class ElasticsearchStorageTest {
       .startsWith("/_template/zipkin:dependency_template");
     assertThat(server.takeRequest().request().path()) // get autocomplete template
       .startsWith("/_template/zipkin:autocomplete_template");
+    assertThat(server.takeRequest().request().path()) // get names template
+      .startsWith("/_template/zipkin:names_template");
   }
 
   /** Ensure that Zipkin includes "include_type_name" parameter with 6.7 */
@@ -220,6 +252,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get autocomplete template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     server.enqueue(SUCCESS_RESPONSE); // cluster health
 
     storage.check();
@@ -232,6 +265,8 @@ class ElasticsearchStorageTest {
       .startsWith("/_template/zipkin:dependency_template?include_type_name=true");
     assertThat(server.takeRequest().request().path()) // get autocomplete template
       .startsWith("/_template/zipkin:autocomplete_template?include_type_name=true");
+    assertThat(server.takeRequest().request().path()) // get names template
+      .startsWith("/_template/zipkin:names_template?include_type_name=true");
   }
 
   /** Ensure that Zipkin doesn't include "include_type_name" parameter with version >7.0 */
@@ -241,6 +276,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get autocomplete template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     server.enqueue(SUCCESS_RESPONSE); // cluster health
 
     storage.check();
@@ -253,6 +289,8 @@ class ElasticsearchStorageTest {
       .startsWith("/_template/zipkin-dependency_template");
     assertThat(server.takeRequest().request().path()) // get autocomplete template
       .startsWith("/_template/zipkin-autocomplete_template");
+    assertThat(server.takeRequest().request().path()) // get names template
+      .startsWith("/_template/zipkin-names_template");
   }
 
   /** Ensure that Zipkin uses the legacy resource path when priority is not set. */
@@ -262,6 +300,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get autocomplete template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     server.enqueue(SUCCESS_RESPONSE); // cluster health
 
     storage.check();
@@ -274,6 +313,8 @@ class ElasticsearchStorageTest {
       .startsWith("/_template/zipkin-dependency_template");
     assertThat(server.takeRequest().request().path()) // get autocomplete template
       .startsWith("/_template/zipkin-autocomplete_template");
+    assertThat(server.takeRequest().request().path()) // get names template
+      .startsWith("/_template/zipkin-names_template");
   }
 
   /**
@@ -290,6 +331,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get autocomplete template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     server.enqueue(SUCCESS_RESPONSE); // cluster health
 
     storage.check();
@@ -302,6 +344,8 @@ class ElasticsearchStorageTest {
       .startsWith("/_index_template/zipkin-dependency_template");
     assertThat(server.takeRequest().request().path()) // get autocomplete template
       .startsWith("/_index_template/zipkin-autocomplete_template");
+    assertThat(server.takeRequest().request().path()) // get names template
+      .startsWith("/_index_template/zipkin-names_template");
   }
 
   /** Ensure that Zipkin uses the legacy resource path when priority is not set. */
@@ -311,6 +355,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get autocomplete template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     server.enqueue(SUCCESS_RESPONSE); // cluster health
 
     storage.check();
@@ -323,6 +368,8 @@ class ElasticsearchStorageTest {
       .startsWith("/_template/zipkin-dependency_template");
     assertThat(server.takeRequest().request().path()) // get autocomplete template
       .startsWith("/_template/zipkin-autocomplete_template");
+    assertThat(server.takeRequest().request().path()) // get names template
+      .startsWith("/_template/zipkin-names_template");
   }
 
   /**
@@ -339,6 +386,7 @@ class ElasticsearchStorageTest {
     server.enqueue(SUCCESS_RESPONSE); // get span template
     server.enqueue(SUCCESS_RESPONSE); // get dependency template
     server.enqueue(SUCCESS_RESPONSE); // get autocomplete template
+    server.enqueue(SUCCESS_RESPONSE); // get names template
     server.enqueue(SUCCESS_RESPONSE); // cluster health
 
     storage.check();
@@ -351,6 +399,8 @@ class ElasticsearchStorageTest {
       .startsWith("/_index_template/zipkin-dependency_template");
     assertThat(server.takeRequest().request().path()) // get autocomplete template
       .startsWith("/_index_template/zipkin-autocomplete_template");
+    assertThat(server.takeRequest().request().path()) // get names template
+      .startsWith("/_index_template/zipkin-names_template");
   }
 
   ElasticsearchStorage.Builder newBuilder() {
@@ -18,8 +18,9 @@ import zipkin2.elasticsearch.internal.JsonSerializers;
 public class InternalForTests {
   public static void writeDependencyLinks(ElasticsearchStorage es, List<DependencyLink> links,
     long midnightUTC) {
-    String index = ((ElasticsearchSpanConsumer) es.spanConsumer())
-      .formatTypeAndTimestampForInsert("dependency", midnightUTC);
+    es.ensureIndexTemplates();
+    String index = es.indexNameFormatter()
+      .formatTypeAndTimestampForInsert("dependency", es.indexTypeDelimiter(), midnightUTC);
     BulkCallBuilder indexer = new BulkCallBuilder(es, es.version(), "indexlinks");
     for (DependencyLink link : links)
       indexer.index(index, "dependency", link, DEPENDENCY_LINK_WRITER);
@@ -30,6 +31,15 @@ public class InternalForTests {
     }
   }
 
+  /** Deletes the names indices, as if spans were written before they existed. */
+  public static void clearNames(ElasticsearchStorage es) {
+    try {
+      es.clear(es.indexNameFormatter().formatType(VersionSpecificTemplates.TYPE_NAMES));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   static final BulkIndexWriter<DependencyLink> DEPENDENCY_LINK_WRITER =
     new BulkIndexWriter<DependencyLink>() {
       @Override public String writeDocument(DependencyLink link, ByteBufOutputStream sink) {
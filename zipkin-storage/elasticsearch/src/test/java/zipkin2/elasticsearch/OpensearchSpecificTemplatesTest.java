@@ -55,6 +55,17 @@ class OpensearchSpecificTemplatesTest {
           }
         }\
       """);
+
+    assertThat(template.names()).contains("""
+        "mappings": {
+          "enabled": true,
+          "properties": {
+            "serviceName": { "type": "keyword", "norms": false },
+            "remoteServiceName": { "type": "keyword", "norms": false },
+            "spanName": { "type": "keyword", "norms": false }
+          }
+        }\
+      """);
   }
 
   @Test void searchEnabled_minimalSpanIndexing_1x() {
@@ -0,0 +1,95 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.common.AggregatedHttpRequest;
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.testing.junit5.server.mock.MockWebServerExtension;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import zipkin2.elasticsearch.internal.IndexNameFormatter;
+import zipkin2.elasticsearch.internal.client.HttpCall;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.TestObjects.DAY;
+import static zipkin2.TestObjects.TODAY;
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_NAMES;
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_SPAN;
+
+class PrecreateIndicesTest {
+  static final long NOON = TODAY + DAY / 2;
+
+  @RegisterExtension static MockWebServerExtension server = new MockWebServerExtension();
+
+  IndexNameFormatter formatter =
+    IndexNameFormatter.newBuilder().index("zipkin").dateSeparator('-').build();
+  PrecreateIndices precreateIndices = new PrecreateIndices(
+    new HttpCall.Factory(WebClient.of(server.httpUri())), List.of(
+    new DailyIndexNames(formatter, '-', TYPE_SPAN),
+    new DailyIndexNames(formatter, '-', TYPE_NAMES)));
+
+  @Test void createsTomorrowsIndices() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.NOT_FOUND));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.NOT_FOUND));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+
+    precreateIndices.run(NOON);
+
+    String tomorrow = formatter.formatTypeAndTimestampForInsert(TYPE_SPAN, '-', NOON + DAY);
+    assertThat(server.takeRequest().request())
+      .extracting(AggregatedHttpRequest::method, AggregatedHttpRequest::path)
+      .containsExactly(HttpMethod.HEAD, "/" + tomorrow);
+    assertThat(server.takeRequest().request())
+      .extracting(AggregatedHttpRequest::method, AggregatedHttpRequest::path)
+      .containsExactly(HttpMethod.PUT, "/" + tomorrow);
+    assertThat(server.takeRequest().request().path()).isEqualTo("/"
+      + formatter.formatTypeAndTimestampForInsert(TYPE_NAMES, '-', NOON + DAY));
+    server.takeRequest(); // create names index
+  }
+
+  @Test void skipsIndicesWhichExist() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+
+    precreateIndices.run(NOON);
+
+    assertThat(server.takeRequest().request().method()).isEqualTo(HttpMethod.HEAD);
+    assertThat(server.takeRequest().request().method()).isEqualTo(HttpMethod.HEAD);
+    assertThat(server.takeRequest(100, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  @Test void onlyOncePerDay() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+
+    precreateIndices.run(NOON);
+    precreateIndices.run(NOON + TimeUnit.HOURS.toMillis(1));
+
+    server.takeRequest();
+    server.takeRequest();
+    assertThat(server.takeRequest(100, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  @Test void triesAgainAfterFailure() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.INTERNAL_SERVER_ERROR));
+
+    precreateIndices.run(NOON);
+    server.takeRequest();
+
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK));
+
+    precreateIndices.run(NOON + TimeUnit.HOURS.toMillis(1));
+    server.takeRequest();
+    server.takeRequest();
+    assertThat(precreateIndices.createdEpochDay).isEqualTo((NOON + DAY) / DAY);
+  }
+}
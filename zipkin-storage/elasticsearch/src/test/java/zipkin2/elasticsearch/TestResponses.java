@@ -134,6 +134,85 @@ final class TestResponses {
       }
     }
     """;
+  static final String TRACE_IDS =
+    """
+    {
+      "took": 1,
+      "timed_out": false,
+      "_shards": {
+        "total": 5,
+        "successful": 5,
+        "failed": 0
+      },
+      "hits": {
+        "total": 4,
+        "max_score": 0,
+        "hits": []
+      },
+      "aggregations": {
+        "traceId_agg": {
+          "doc_count_error_upper_bound": 0,
+          "sum_other_doc_count": 0,
+          "buckets": [
+            {
+              "key": "7180c278b62e8f6a216a2aea45d08fc9",
+              "doc_count": 4
+            }
+          ]
+        }
+      }
+    }
+    """;
+
+  /** Two traces, where the second has more spans than returned. */
+  static final String COLLAPSED_TRACE_IDS =
+    """
+    {
+      "took": 2,
+      "timed_out": false,
+      "_shards": {
+        "total": 5,
+        "successful": 5,
+        "failed": 0
+      },
+      "hits": {
+        "total": {
+          "value": 3,
+          "relation": "eq"
+        },
+        "max_score": null,
+        "hits": [
+          {
+            "_index": "zipkin-span-1970-01-01",
+            "_id": "7180c278b62e8f6a216a2aea45d08fc9-2a40476ca7a22f2c85ac18b9c1f3a99c",
+            "_score": null,
+            "fields": {
+              "traceId": [
+                "7180c278b62e8f6a216a2aea45d08fc9"
+              ]
+            },
+            "sort": [
+              2
+            ]
+          },
+          {
+            "_index": "zipkin-span-1970-01-01",
+            "_id": "0000000000000002-0dff45e0cdc67bc71a2cd6ab1b9c2e6b",
+            "_score": null,
+            "fields": {
+              "traceId": [
+                "0000000000000002"
+              ]
+            },
+            "sort": [
+              1
+            ]
+          }
+        ]
+      }
+    }
+    """;
+
   static final String SERVICE_NAMES =
     """
     {
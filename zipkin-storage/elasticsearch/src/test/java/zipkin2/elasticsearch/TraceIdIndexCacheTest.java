@@ -0,0 +1,115 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import zipkin2.Span;
+import zipkin2.elasticsearch.internal.IndexNameFormatter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+import static zipkin2.TestObjects.DAY;
+import static zipkin2.TestObjects.TODAY;
+import static zipkin2.elasticsearch.VersionSpecificTemplates.TYPE_SPAN;
+
+class TraceIdIndexCacheTest {
+  static final long NOON = TODAY + DAY / 2;
+
+  IndexNameFormatter formatter =
+    IndexNameFormatter.newBuilder().index("zipkin").dateSeparator('-').build();
+  TraceIdIndexCache cache = new TraceIdIndexCache(formatter, true, 2);
+
+  @Test void indices_nullOnMiss() {
+    assertThat(cache.indices(Set.of(CLIENT_SPAN.traceId()))).isNull();
+  }
+
+  @Test void recordWrite_ignoresUncachedTrace() {
+    cache.recordWrite(List.of(CLIENT_SPAN), new long[] {NOON});
+
+    assertThat(cache.timestampRanges).isEmpty();
+  }
+
+  @Test void recordWrite_widensCachedTrace() {
+    recordRead(CLIENT_SPAN, NOON);
+    cache.recordWrite(List.of(CLIENT_SPAN), new long[] {NOON - DAY});
+
+    assertThat(cache.indices(Set.of(CLIENT_SPAN.traceId()))).containsExactly(
+      formatter.formatTypeAndTimestamp(TYPE_SPAN, NOON - DAY),
+      formatter.formatTypeAndTimestamp(TYPE_SPAN, NOON));
+  }
+
+  /** Spans near midnight could have siblings written by other nodes into the adjacent day. */
+  @Test void indices_includeAdjacentDayNearMidnight() {
+    recordRead(CLIENT_SPAN, TODAY + 1000L);
+
+    assertThat(cache.indices(Set.of(CLIENT_SPAN.traceId()))).containsExactly(
+      formatter.formatTypeAndTimestamp(TYPE_SPAN, TODAY - DAY),
+      formatter.formatTypeAndTimestamp(TYPE_SPAN, TODAY));
+  }
+
+  @Test void indices_nullWhenAnyMiss() {
+    recordRead(CLIENT_SPAN, NOON);
+
+    assertThat(cache.indices(Set.of(CLIENT_SPAN.traceId(), "1"))).isNull();
+  }
+
+  @Test void evictsLeastRecentlyUsed() {
+    Span one = CLIENT_SPAN.toBuilder().traceId("1").build();
+    Span two = CLIENT_SPAN.toBuilder().traceId("2").build();
+    recordRead(CLIENT_SPAN, NOON);
+    recordRead(one, NOON);
+    cache.indices(Set.of(CLIENT_SPAN.traceId())); // access, so "1" is the eldest
+    recordRead(two, NOON);
+
+    assertThat(cache.timestampRanges)
+      .containsOnlyKeys(CLIENT_SPAN.traceId(), two.traceId());
+  }
+
+  @Test void recordTraces_usesSpanTimestamps() {
+    Span span = CLIENT_SPAN.toBuilder().timestamp(NOON * 1000L).build();
+    cache.recordTraces(List.of(List.of(span)), TODAY, TODAY + DAY - 1);
+
+    assertThat(cache.indices(Set.of(CLIENT_SPAN.traceId())))
+      .containsExactly(formatter.formatTypeAndTimestamp(TYPE_SPAN, NOON));
+  }
+
+  /** A search of today's index could have missed spans of this trace written yesterday. */
+  @Test void recordTraces_skipsTraceNearEdgeOfRead() {
+    Span span = CLIENT_SPAN.toBuilder().timestamp((TODAY + 1000L) * 1000L).build();
+    cache.recordTraces(List.of(List.of(span)), TODAY, TODAY + DAY - 1);
+
+    assertThat(cache.timestampRanges).isEmpty();
+  }
+
+  /** A span without a timestamp was indexed on the day it was written, which we can't know. */
+  @Test void recordTraces_skipsTraceWithoutTimestamps() {
+    Span noTimestamp = CLIENT_SPAN.toBuilder().timestamp(0L).clearAnnotations().id("3").build();
+    cache.recordTraces(List.of(List.of(CLIENT_SPAN, noTimestamp)), Long.MIN_VALUE, Long.MAX_VALUE);
+
+    assertThat(cache.timestampRanges).isEmpty();
+  }
+
+  @Test void key_truncatesWhenNotStrict() {
+    cache = new TraceIdIndexCache(formatter, false, 2);
+    recordRead(CLIENT_SPAN, NOON);
+
+    assertThat(cache.indices(Set.of(cache.key("0000000000000001216a2aea45d08fc9"))))
+      .containsExactly(formatter.formatTypeAndTimestamp(TYPE_SPAN, NOON));
+  }
+
+  @Test void zeroSize_disables() {
+    cache = new TraceIdIndexCache(formatter, true, 0);
+    recordRead(CLIENT_SPAN, NOON);
+
+    assertThat(cache.indices(Set.of(CLIENT_SPAN.traceId()))).isNull();
+  }
+
+  /** Records the trace of the span as if read from all span indices. */
+  void recordRead(Span span, long timestampMillis) {
+    cache.recordTrace().map(List.of(span.toBuilder().timestamp(timestampMillis * 1000L).build()));
+  }
+}
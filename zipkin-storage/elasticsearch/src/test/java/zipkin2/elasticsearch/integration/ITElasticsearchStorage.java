@@ -17,11 +17,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import zipkin2.Endpoint;
 import zipkin2.Span;
 import zipkin2.elasticsearch.ElasticsearchStorage;
 import zipkin2.elasticsearch.InternalForTests;
 import zipkin2.storage.StorageComponent;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.TestObjects.BACKEND;
+import static zipkin2.TestObjects.TODAY;
+import static zipkin2.TestObjects.newClientSpan;
+import static zipkin2.TestObjects.spanBuilder;
 import static zipkin2.elasticsearch.integration.ElasticsearchExtension.index;
 import static zipkin2.storage.ITDependencies.aggregateLinks;
 
@@ -53,6 +59,31 @@ abstract class ITElasticsearchStorage {
     }
   }
 
+  @Nested
+  class ITSpanStoreCollapseTraceSearch
+    extends zipkin2.storage.ITSpanStore<ElasticsearchStorage> {
+    @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
+      return elasticsearch().computeStorageBuilder().index(index(testInfo))
+        .collapseTraceSearch(true);
+    }
+
+    @Override public void clear() throws IOException {
+      storage.clear();
+    }
+
+    /** Spans before (endTs - lookback) are returned with the rest of their trace. */
+    @Test void getTraces_straddlingLookback(TestInfo testInfo) throws Exception {
+      String testSuffix = testSuffix(testInfo);
+      Span root = spanBuilder(testSuffix).id(1L).timestamp((TODAY + 100) * 1000L).build();
+      Span child = root.toBuilder().parentId(1L).id(2L).timestamp((TODAY + 200) * 1000L).build();
+      accept(root, child);
+
+      assertGetTracesReturns(
+        requestBuilder().endTs(TODAY + 250).lookback(100).build(),
+        List.of(root, child));
+    }
+  }
+
   @Nested
   class ITSpanStoreHeavy extends zipkin2.storage.ITSpanStoreHeavy<ElasticsearchStorage> {
     @Override protected StorageComponent.Builder newStorageBuilder(TestInfo testInfo) {
@@ -84,6 +115,30 @@ abstract class ITElasticsearchStorage {
     @Override public void clear() throws IOException {
       storage.clear();
     }
+
+    /** Names of spans written before upgrading are read until the names index covers lookback. */
+    @Test void getServiceNames_includesSpansWrittenBeforeNamesIndex(TestInfo testInfo)
+      throws Exception {
+      String testSuffix = testSuffix(testInfo);
+      Span preCatalog = spanBuilder(testSuffix).name("legacy-call")
+        .localEndpoint(Endpoint.newBuilder().serviceName("legacy" + testSuffix).build())
+        .remoteEndpoint(BACKEND)
+        .build();
+      accept(preCatalog);
+      InternalForTests.clearNames(storage);
+
+      Span postCatalog = newClientSpan(testSuffix);
+      accept(postCatalog);
+
+      assertThat(names().getServiceNames().execute())
+        .contains(preCatalog.localServiceName(), postCatalog.localServiceName());
+      assertThat(names().getSpanNames(preCatalog.localServiceName()).execute())
+        .containsExactly(preCatalog.name());
+      assertThat(names().getRemoteServiceNames(preCatalog.localServiceName()).execute())
+        .containsExactly(BACKEND.serviceName());
+      assertThat(names().getSpanNames(postCatalog.localServiceName()).execute())
+        .containsExactly(postCatalog.name());
+    }
   }
 
   @Nested
@@ -4,11 +4,16 @@
  */
 package zipkin2.elasticsearch.internal;
 
+import java.util.List;
 import java.util.concurrent.RejectedExecutionException;
 import org.junit.jupiter.api.Test;
+import zipkin2.elasticsearch.internal.BulkCallBuilder.ItemFailure;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static zipkin2.elasticsearch.internal.BulkCallBuilder.CHECK_FOR_ERRORS;
+import static zipkin2.elasticsearch.internal.BulkCallBuilder.ITEM_FAILURES;
 import static zipkin2.elasticsearch.internal.JsonSerializers.JSON_FACTORY;
 
 class BulkCallBuilderTest {
@@ -77,4 +82,133 @@ class BulkCallBuilderTest {
       .isInstanceOf(RuntimeException.class)
       .hasMessage("all shards failed");
   }
+
+  @Test void checkForErrors_nullWithoutErrors() throws Exception {
+    String response = "{\"took\":0,\"errors\":false,\"items\":[]}";
+
+    assertThat(CHECK_FOR_ERRORS.convert(JSON_FACTORY.createParser(response), () -> response))
+      .isNull();
+  }
+
+  @Test void itemFailures_overCapacityIsRetryable() throws Exception {
+    String response =
+      "{\"took\":0,\"errors\":true,\"items\":[{\"index\":{\"_index\":\"dev-zipkin:span-2019.04.18\",\"_type\":\"span\",\"_id\":\"2511\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution of org.elasticsearch.transport.TransportService$7@7ec1ea93 on EsThreadPoolExecutor[bulk, queue capacity = 200, org.elasticsearch.common.util.concurrent.EsThreadPoolExecutor@621571ba[Running, pool size = 4, active threads = 4, queued tasks = 200, completed tasks = 3838534]]\"}}}]}";
+
+    List<ItemFailure> failures =
+      ITEM_FAILURES.convert(JSON_FACTORY.createParser(response), () -> response);
+
+    assertThat(failures).singleElement().satisfies(failure -> {
+      assertThat(failure.position).isZero();
+      assertThat(failure.reason).isEqualTo("es_rejected_execution_exception");
+      assertThat(failure.retryable()).isTrue();
+      assertThat(failure.toException())
+        .isInstanceOf(RejectedExecutionException.class)
+        .hasMessage(
+          "rejected execution of org.elasticsearch.transport.TransportService$7@7ec1ea93 on EsThreadPoolExecutor[bulk, queue capacity = 200, org.elasticsearch.common.util.concurrent.EsThreadPoolExecutor@621571ba[Running, pool size = 4, active threads = 4, queued tasks = 200, completed tasks = 3838534]]");
+    });
+  }
+
+  @Test void itemFailures_positionsOfFailedItems() throws Exception {
+    String response = """
+      {"took":0,"errors":true,"items":[
+        {"index":{"_index":"zipkin:span-2019-04-18","_id":"1","status":201}},
+        {"index":{"_index":"zipkin:span-2019-04-18","_id":"2","status":429,"error":{"type":"es_rejected_execution_exception","reason":"rejected execution"}}},
+        {"index":{"_index":"zipkin:span-2019-04-18","_id":"3","status":201}},
+        {"index":{"_index":"zipkin:span-2019-04-18","_id":"4","status":400,"error":{"type":"mapper_parsing_exception","reason":"failed to parse"}}}
+      ]}
+      """;
+
+    assertThat(ITEM_FAILURES.convert(JSON_FACTORY.createParser(response), () -> response))
+      .extracting(f -> f.position, f -> f.status, f -> f.reason, ItemFailure::retryable)
+      .containsExactly(
+        tuple(1, 429, "es_rejected_execution_exception", true),
+        tuple(3, 400, "mapper_parsing_exception", false));
+  }
+
+  @Test void itemFailures_emptyWithoutErrors() throws Exception {
+    String response = """
+      {"took":0,"errors":false,"items":[
+        {"index":{"_index":"zipkin:span-2019-04-18","_id":"1","status":201}}
+      ]}
+      """;
+
+    assertThat(ITEM_FAILURES.convert(JSON_FACTORY.createParser(response), () -> response))
+      .isEmpty();
+  }
+
+  @Test void itemFailures_notRetryable() throws Exception {
+    String response = """
+      {"took":0,"errors":true,"items":[
+        {"index":{"_index":"zipkin:span-2019-04-18","_id":"1","status":400,"error":{"type":"mapper_parsing_exception","reason":"failed to parse"}}}
+      ]}
+      """;
+
+    assertThat(ITEM_FAILURES.convert(JSON_FACTORY.createParser(response), () -> response))
+      .singleElement()
+      .extracting(ItemFailure::toException)
+      .isExactlyInstanceOf(RuntimeException.class)
+      .hasFieldOrPropertyWithValue("message", "failed to parse");
+  }
+
+  @Test void backoffMillis_doublesWithJitter() {
+    for (int attempts = 1; attempts <= 3; attempts++) {
+      long backoff = BulkCallBuilder.INITIAL_BACKOFF_MILLIS << (attempts - 1);
+      assertThat(BulkCallBuilder.backoffMillis(attempts)).isBetween(backoff / 2, backoff);
+    }
+  }
+
+  @Test void itemFailures_throwsRuntimeExceptionAsRootCauseReasonWhenPresent() {
+    String response = """
+      {
+        "error": {
+          "root_cause": [
+            {
+              "type": "illegal_argument_exception",
+              "reason": "Fielddata is disabled on text fields by default. Set fielddata=true on [spanName] in order to load fielddata in memory by uninverting the inverted index. Note that this can however use significant memory. Alternatively use a keyword field instead."
+            }
+          ],
+          "type": "search_phase_execution_exception",
+          "reason": "all shards failed",
+          "phase": "query",
+          "grouped": true,
+          "failed_shards": [
+            {
+              "shard": 0,
+              "index": "zipkin-2017-05-14",
+              "node": "IqceAwZnSvyv0V0xALkEnQ",
+              "reason": {
+                "type": "illegal_argument_exception",
+                "reason": "Fielddata is disabled on text fields by default. Set fielddata=true on [spanName] in order to load fielddata in memory by uninverting the inverted index. Note that this can however use significant memory. Alternatively use a keyword field instead."
+              }
+            }
+          ]
+        },
+        "status": 400
+      }
+      """;
+
+    assertThatThrownBy(
+      () -> ITEM_FAILURES.convert(JSON_FACTORY.createParser(response), () -> response))
+      .isInstanceOf(RuntimeException.class)
+      .hasMessage("Fielddata is disabled on text fields by default. Set fielddata=true on [spanName] in order to load fielddata in memory by uninverting the inverted index. Note that this can however use significant memory. Alternatively use a keyword field instead.");
+  }
+
+  /** Errors of the whole request fail it, instead of being retried per item */
+  @Test void itemFailures_throwsRuntimeExceptionAsReasonWhenPresent() {
+    String response = """
+      {
+        "error": {
+          "type": "search_phase_execution_exception",
+          "reason": "all shards failed",
+          "phase": "query"
+        },
+        "status": 400
+      }
+      """;
+
+    assertThatThrownBy(
+      () -> ITEM_FAILURES.convert(JSON_FACTORY.createParser(response), () -> response))
+      .isInstanceOf(RuntimeException.class)
+      .hasMessage("all shards failed");
+  }
 }
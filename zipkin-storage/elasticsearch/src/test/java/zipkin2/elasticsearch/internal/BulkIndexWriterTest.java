@@ -10,6 +10,7 @@ import io.netty.buffer.Unpooled;
 import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import zipkin2.DependencyLink;
 import zipkin2.Span;
 import zipkin2.Span.Kind;
 import zipkin2.codec.SpanBytesDecoder;
@@ -48,6 +49,17 @@ class BulkIndexWriterTest {
       .isEqualTo("7180c278b62e8f6a216a2aea45d08fc9-bfe7a3c0d9ee83b1d218bd0f383f006a");
   }
 
+  @Test void dependencyLink_addsDocumentId() {
+    DependencyLink link = DependencyLink.newBuilder()
+      .parent("frontend").child("backend").callCount(3).errorCount(1).build();
+
+    String id = BulkIndexWriter.DEPENDENCY_LINK.writeDocument(link, buffer);
+
+    assertThat(id).isEqualTo("frontend|backend");
+    assertThat(buffer.buffer().toString(StandardCharsets.UTF_8)).isEqualTo(
+      "{\"parent\":\"frontend\",\"child\":\"backend\",\"callCount\":3,\"errorCount\":1}");
+  }
+
   @Test void spanSearchFields_skipsWhenNoData() {
     Span span = Span.newBuilder()
       .traceId("20")
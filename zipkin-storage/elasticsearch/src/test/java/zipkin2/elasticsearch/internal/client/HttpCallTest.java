@@ -4,6 +4,7 @@
  */
 package zipkin2.elasticsearch.internal.client; // to access package-private stuff
 
+import com.fasterxml.jackson.core.JsonToken;
 import com.linecorp.armeria.client.UnprocessedRequestException;
 import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.client.endpoint.EndpointGroupException;
@@ -11,7 +12,9 @@ import com.linecorp.armeria.common.AggregatedHttpRequest;
 import com.linecorp.armeria.common.AggregatedHttpResponse;
 import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpObject;
 import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.HttpStatus;
 import com.linecorp.armeria.common.RequestHeaders;
 import com.linecorp.armeria.common.ResponseHeaders;
@@ -265,6 +268,114 @@ class HttpCallTest {
     assertThat(request.contentUtf8()).isEqualTo("hello world");
   }
 
+  @Test void streamingCall_convertsChunkedResponse() throws Exception {
+    HttpCall.BodyConverter<String> converter = (parser, contentString) -> {
+      StringBuilder result = new StringBuilder();
+      parser.nextToken(); // start array
+      while (parser.nextToken() == JsonToken.VALUE_STRING) result.append(parser.getText());
+      return result.toString();
+    };
+
+    server.enqueue(chunkedResponse("[\"hello\",", "\" wor", "ld\"]"));
+    assertThat(http.newStreamingCall(REQUEST, converter, "test").execute())
+      .isEqualTo("hello world");
+
+    server.enqueue(chunkedResponse("[\"hello\",", "\" wor", "ld\"]"));
+    CompletableCallback<String> future = new CompletableCallback<>();
+    http.newStreamingCall(REQUEST, converter, "test").enqueue(future);
+    assertThat(future.join()).isEqualTo("hello world");
+  }
+
+  @Test void streamingCall_contentStringIsResponsePrefix() throws Exception {
+    HttpCall.BodyConverter<String> converter = (parser, contentString) -> {
+      while (parser.nextToken() != null) ; // read everything
+      return contentString.get();
+    };
+
+    server.enqueue(chunkedResponse("[\"hello\",", "\" wor", "ld\"]"));
+    assertThat(http.newStreamingCall(REQUEST, converter, "test").execute())
+      .isEqualTo("[\"hello\",\" world\"]");
+
+    String value = "a".repeat(HttpDataInputStream.PREFIX_LENGTH);
+    server.enqueue(chunkedResponse("[\"", value, "\"]"));
+    assertThat(http.newStreamingCall(REQUEST, converter, "test").execute())
+      .isEqualTo("[\"" + value.substring(2) + "...");
+  }
+
+  @Test void streamingCall_enqueue_releasesPermit() throws Exception {
+    server.enqueue(chunkedResponse("[\"hello\"]"));
+    CompletableCallback<Object> future = new CompletableCallback<>();
+    http.newStreamingCall(REQUEST, NULL, "test").enqueue(future);
+    future.join();
+
+    assertThat(http.streamingPermits.availablePermits())
+      .isEqualTo(HttpCall.Factory.MAX_STREAMING_PARSES);
+  }
+
+  @Test void streamingCall_enqueue_aggregatesWhenTooManyParsing() throws Exception {
+    HttpCall.BodyConverter<String> converter = (parser, contentString) -> {
+      parser.nextToken(); // start array
+      parser.nextToken();
+      return parser.getText() + " " + contentString.get();
+    };
+    http.streamingPermits.acquire(HttpCall.Factory.MAX_STREAMING_PARSES);
+
+    // The converter sees the whole content, as the response was aggregated
+    String value = "a".repeat(HttpDataInputStream.PREFIX_LENGTH);
+    server.enqueue(chunkedResponse("[\"", value, "\"]"));
+    CompletableCallback<String> future = new CompletableCallback<>();
+    http.newStreamingCall(REQUEST, converter, "test").enqueue(future);
+    assertThat(future.join()).isEqualTo(value + " [\"" + value + "\"]");
+
+    assertThat(http.streamingPermits.availablePermits()).isZero();
+  }
+
+  @Test void streamingCall_emptyContent() throws Exception {
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.OK, PLAIN_TEXT_UTF_8, ""));
+
+    HttpCall<String> call =
+      http.newStreamingCall(REQUEST, (parser, contentString) -> fail(), "test");
+    assertThat(call.execute()).isNull();
+  }
+
+  @Test void streamingCall_executionException_message() {
+    server.enqueue(AggregatedHttpResponse.of(
+      ResponseHeaders.of(HttpStatus.FORBIDDEN),
+      HttpData.ofUtf8(
+        "{\"Message\":\"User: anonymous is not authorized to perform: es:ESHttpGet\"}")));
+
+    assertThatThrownBy(() -> http.newStreamingCall(REQUEST, NULL, "test").execute())
+      .isInstanceOf(RuntimeException.class)
+      .hasMessage("User: anonymous is not authorized to perform: es:ESHttpGet");
+  }
+
+  @Test void streamingCall_executionException_404() {
+    server.enqueue(AggregatedHttpResponse.of(HttpStatus.NOT_FOUND));
+
+    assertThatThrownBy(() -> http.newStreamingCall(REQUEST, NULL, "test").execute())
+      .isInstanceOf(FileNotFoundException.class)
+      .hasMessage("/");
+  }
+
+  @Test void streamingCall_unprocessedRequest() {
+    http = new HttpCall.Factory(WebClient.builder(server.httpUri())
+      .decorator((client, ctx, req) -> {
+        throw UnprocessedRequestException.of(new EndpointGroupException("No endpoints"));
+      })
+      .build());
+
+    assertThatThrownBy(() -> http.newStreamingCall(REQUEST, NULL, "test").execute())
+      .isInstanceOf(RejectedExecutionException.class)
+      .hasMessage("No endpoints");
+  }
+
+  static HttpResponse chunkedResponse(String... chunks) {
+    HttpObject[] objects = new HttpObject[chunks.length + 1];
+    objects[0] = ResponseHeaders.of(HttpStatus.OK);
+    for (int i = 0; i < chunks.length; i++) objects[i + 1] = HttpData.ofUtf8(chunks[i]);
+    return HttpResponse.of(objects);
+  }
+
   // TODO(adriancole): Find a home for this generic conversion between Call and Java 8.
   static final class CompletableCallback<T> extends CompletableFuture<T> implements Callback<T> {
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.elasticsearch.internal.client;
+
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.stream.StreamMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static zipkin2.TestObjects.UTF_8;
+
+class HttpDataInputStreamTest {
+  @Test void readsAllChunks() throws IOException {
+    try (HttpDataInputStream stream = HttpDataInputStream.subscribe(
+      StreamMessage.of(HttpData.ofUtf8("hello"), HttpData.empty(), HttpData.ofUtf8(" world")))) {
+      assertThat(stream.hasContent()).isTrue();
+      assertThat(new String(stream.readAllBytes(), UTF_8)).isEqualTo("hello world");
+      assertThat(stream.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test void hasContent_falseWhenEmpty() throws IOException {
+    try (HttpDataInputStream stream = HttpDataInputStream.subscribe(StreamMessage.of())) {
+      assertThat(stream.hasContent()).isFalse();
+    }
+  }
+
+  @Test void releasesChunksAsRead() throws IOException {
+    ByteBuf hello = pooled("hello"), world = pooled(" world");
+
+    try (HttpDataInputStream stream = HttpDataInputStream.subscribe(
+      StreamMessage.of(HttpData.wrap(hello), HttpData.wrap(world)))) {
+      byte[] bytes = new byte[5];
+      assertThat(stream.read(bytes, 0, 5)).isEqualTo(5);
+      assertThat(hello.refCnt()).isOne(); // not yet known to be fully read
+
+      assertThat(stream.read()).isEqualTo(' ');
+      assertThat(hello.refCnt()).isZero();
+      assertThat(world.refCnt()).isOne();
+    }
+    assertThat(world.refCnt()).isZero();
+  }
+
+  @Test void close_releasesUnreadChunks() throws IOException {
+    ByteBuf hello = pooled("hello"), world = pooled(" world");
+
+    HttpDataInputStream stream = HttpDataInputStream.subscribe(
+      StreamMessage.of(HttpData.wrap(hello), HttpData.wrap(world)));
+    assertThat(stream.read()).isEqualTo('h');
+    stream.close();
+
+    assertThat(hello.refCnt()).isZero();
+    // The response releases chunks not yet requested when cancelled, on its event loop.
+    await().untilAsserted(() -> assertThat(world.refCnt()).isZero());
+    assertThatThrownBy(stream::read).isInstanceOf(IOException.class).hasMessage("closed");
+  }
+
+  @Test void contentPrefix_truncatesLongContent() throws IOException {
+    String content = "a".repeat(HttpDataInputStream.PREFIX_LENGTH - 1);
+    try (HttpDataInputStream stream = HttpDataInputStream.subscribe(
+      StreamMessage.of(HttpData.ofUtf8(content), HttpData.ofUtf8("bc")))) {
+      stream.readAllBytes();
+      assertThat(stream.contentPrefix()).isEqualTo(content + "b...");
+    }
+  }
+
+  @Test void contentPrefix_includesUnreadChunk() throws IOException {
+    try (HttpDataInputStream stream = HttpDataInputStream.subscribe(
+      StreamMessage.of(HttpData.ofUtf8("hello"), HttpData.ofUtf8(" world")))) {
+      assertThat(stream.read()).isEqualTo('h');
+      assertThat(stream.contentPrefix()).isEqualTo("hello");
+    }
+  }
+
+  @Test void propagatesError() {
+    StreamMessage<HttpData> body = StreamMessage.aborted(new IllegalStateException("oops"));
+
+    try (HttpDataInputStream stream = HttpDataInputStream.subscribe(body)) {
+      assertThatThrownBy(stream::read)
+        .isInstanceOf(IOException.class)
+        .hasCauseInstanceOf(IllegalStateException.class);
+    }
+  }
+
+  static ByteBuf pooled(String value) {
+    byte[] bytes = value.getBytes(UTF_8);
+    return PooledByteBufAllocator.DEFAULT.buffer(bytes.length).writeBytes(bytes);
+  }
+}
@@ -18,7 +18,14 @@ class SearchCallFactoryTest {
 
   /** Declaring queries alphabetically helps simplify amazon signature logic */
   @Test void lenientSearchOrdersQueryAlphabetically() {
-    assertThat(client.lenientSearch(List.of("zipkin:span-2016-10-01"), null))
+    assertThat(client.lenientSearch(List.of("zipkin:span-2016-10-01"), null, null))
         .endsWith("/_search?allow_no_indices=true&expand_wildcards=open&ignore_unavailable=true");
   }
+
+  @Test void lenientSearchOrdersFilterPathAlphabetically() {
+    assertThat(client.lenientSearch(List.of("zipkin:span-2016-10-01"), null,
+      List.of("hits.hits._source", "hits.total")))
+        .endsWith("/_search?allow_no_indices=true&expand_wildcards=open"
+          + "&filter_path=hits.hits._source,hits.total&ignore_unavailable=true");
+  }
 }
@@ -24,4 +24,19 @@ class SearchRequestTest {
     assertThat(OBJECT_MAPPER.writeValueAsString(request))
       .isEqualTo("{\"size\":10000}");
   }
+
+  @Test void docvalueFields_excludesSource() throws Exception {
+    request.docvalueFields("traceId");
+
+    assertThat(OBJECT_MAPPER.writeValueAsString(request))
+      .isEqualTo("{\"size\":10000,\"_source\":false,\"docvalue_fields\":[\"traceId\"]}");
+  }
+
+  @Test void addAggregation_onlyReturnsKeys() throws Exception {
+    request.addAggregation(Aggregation.terms("serviceName", 10));
+
+    assertThat(request.filterPath).containsExactly("aggregations.*.buckets.key");
+    assertThat(OBJECT_MAPPER.writeValueAsString(request))
+      .startsWith("{\"size\":0,\"_source\":false,\"aggs\":");
+  }
 }
@@ -4,6 +4,7 @@
  */
 package zipkin2.storage;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -21,6 +22,7 @@ import zipkin2.Endpoint;
 import zipkin2.Span;
 import zipkin2.TestObjects;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static zipkin2.Span.Kind.CLIENT;
 import static zipkin2.Span.Kind.SERVER;
@@ -748,6 +750,22 @@ public abstract class ITSpanStore<T extends StorageComponent> extends ITStorage<
       List.of(span2));
   }
 
+  @Test protected void streamTraces_passesEachTrace(TestInfo testInfo) throws Exception {
+    String testSuffix = testSuffix(testInfo);
+    Span span1 = spanBuilder(testSuffix).build();
+    Span span2 = span1.toBuilder().traceId(newTraceId()).timestamp((TODAY + 2) * 1000L).build();
+    Span span3 = span1.toBuilder().traceId(newTraceId()).timestamp((TODAY + 3) * 1000L).build();
+    accept(span1, span2, span3);
+
+    QueryRequest request = requestBuilder().serviceName(span1.localServiceName()).limit(2).build();
+    List<List<Span>> streamed = new ArrayList<>();
+    store().streamTraces(request, streamed::add).execute();
+
+    assertThat(sortTraces(streamed))
+      .containsExactlyInAnyOrderElementsOf(sortTraces(store().getTraces(request).execute()))
+      .hasSize(2);
+  }
+
   /** Traces whose root span has timestamps between (endTs - lookback) and endTs are returned */
   @Test protected void getTraces_endTsAndLookback(TestInfo testInfo) throws Exception {
     String testSuffix = testSuffix(testInfo);
@@ -4,12 +4,14 @@
  */
 package zipkin2.storage;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import zipkin2.Span;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static zipkin2.Span.Kind.SERVER;
 import static zipkin2.TestObjects.newClientSpan;
 import static zipkin2.TestObjects.newTraceId;
@@ -103,6 +105,20 @@ public abstract class ITTraces<T extends StorageComponent> extends ITStorage<T>
     assertGetTracesReturnsEmpty(shortTraceIds);
   }
 
+  @Test protected void streamTraces_passesEachTrace(TestInfo testInfo) throws Exception {
+    String testSuffix = testSuffix(testInfo);
+    Span span1 = spanBuilder(testSuffix).build(), span2 = spanBuilder(testSuffix).build();
+    List<String> traceIds = List.of(span1.traceId(), span2.traceId(), newTraceId());
+
+    accept(span1, span2);
+
+    List<List<Span>> streamed = new ArrayList<>();
+    traces().streamTraces(traceIds, streamed::add).execute();
+    assertThat(sortTraces(streamed))
+      .containsExactlyInAnyOrderElementsOf(sortTraces(traces().getTraces(traceIds).execute()))
+      .hasSize(2);
+  }
+
   /**
    * Ideally, storage backends can deduplicate identical documents as this will prevent some
    * analysis problems such as double-counting dependency links or other statistics. While this test
@@ -0,0 +1,386 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.internal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import zipkin2.Span;
+
+import static zipkin2.internal.Proto3Codec.exceptionReading;
+import static zipkin2.internal.Proto3Fields.Field.skipValue;
+import static zipkin2.internal.Proto3Fields.Field.wireType;
+import static zipkin2.internal.Proto3ZipkinFields.EndpointField.SERVICE_NAME_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SPAN;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.ANNOTATION_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.DEBUG;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.DEBUG_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.DURATION_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.ID_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.KIND_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.LOCAL_ENDPOINT_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.NAME_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.PARENT_ID_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.REMOTE_ENDPOINT_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.SHARED;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.SHARED_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.TAG_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.TIMESTAMP_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.SpanField.TRACE_ID_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.TagField.KEY_KEY;
+import static zipkin2.internal.Proto3ZipkinFields.TagField.VALUE_KEY;
+
+/**
+ * A span still in its proto3 encoding, for code that only needs a few fields, such as sampling or
+ * indexing, or that stores the encoded bytes as they are.
+ *
+ * <p>When created, the encoded span is scanned once to find its IDs, kind, name, timestamp,
+ * duration, service names and debug flag. Nothing is allocated for these until they are read.
+ * Annotations, tags and endpoint addresses are skipped until {@link #tags()} or {@link #decode()}
+ * is called.
+ *
+ * <p>The encoded bytes include the field key and length prefix, so that they are a valid proto3
+ * list of one span, like {@link zipkin2.codec.SpanBytesEncoder#PROTO3}.
+ */
+// @Immutable, except lazily computed fields, which are idempotent.
+public final class Proto3Span {
+  /** Returns a view of each span in the proto3 list, or an empty list if there were none. */
+  public static List<Proto3Span> readList(byte[] spans) {
+    return readList(spans, 0, spans.length);
+  }
+
+  /**
+   * Like {@link #readList(byte[])}, except the buffer's array is shared when it has one. Otherwise,
+   * its remaining bytes are copied once.
+   */
+  public static List<Proto3Span> readList(ByteBuffer spans) {
+    if (spans.hasArray()) {
+      return readList(spans.array(), spans.arrayOffset() + spans.position(), spans.remaining());
+    }
+    byte[] copy = new byte[spans.remaining()];
+    spans.duplicate().get(copy);
+    return readList(copy, 0, copy.length);
+  }
+
+  static List<Proto3Span> readList(byte[] array, int offset, int length) {
+    if (length == 0) return Collections.emptyList();
+    List<Proto3Span> result = new ArrayList<>();
+    ReadBuffer buffer = ReadBuffer.wrap(array, offset, length);
+    try {
+      while (buffer.pos() < length) {
+        result.add(read(buffer, array, offset));
+      }
+    } catch (RuntimeException e) {
+      throw exceptionReading("List<Span>", e);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /** Returns a view of a single proto3 encoded span, as written to storage. */
+  public static Proto3Span readOne(byte[] span) {
+    ReadBuffer buffer = ReadBuffer.wrap(span);
+    try {
+      Proto3Span result = read(buffer, span, 0);
+      if (buffer.available() > 0) {
+        throw new IllegalArgumentException("Malformed: more than one span");
+      }
+      return result;
+    } catch (RuntimeException e) {
+      throw exceptionReading("Span", e);
+    }
+  }
+
+  static Proto3Span read(ReadBuffer buffer, byte[] array, int arrayOffset) {
+    int start = buffer.pos();
+    int key = buffer.readVarint32();
+    if (key != SPAN.key) {
+      throw new IllegalArgumentException("Malformed: invalid key " + key + " at byte " + start);
+    }
+    int length = buffer.readVarint32();
+    buffer.require(length);
+    int valueStart = buffer.pos();
+    buffer.skip(length);
+    Proto3Span result = new Proto3Span(array, arrayOffset + start, buffer.pos() - start);
+    result.scan(arrayOffset + valueStart, length);
+    return result;
+  }
+
+  final byte[] array;
+  final int offset, length;
+
+  // Array positions of indexed length-delimited fields. Lengths are zero when absent.
+  int traceIdPos, traceIdLength, parentIdPos, parentIdLength, idPos, idLength;
+  int namePos, nameLength;
+  int localServiceNamePos, localServiceNameLength;
+  int remoteServiceNamePos, remoteServiceNameLength;
+  int kind;
+  long timestamp, duration;
+  boolean debug, hasTags;
+
+  // Lazily computed
+  String traceId, id;
+  Span span;
+
+  Proto3Span(byte[] array, int offset, int length) {
+    this.array = array;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /** Records the position of index fields, validating the structure of those skipped. */
+  void scan(int valueOffset, int valueLength) {
+    ReadBuffer buffer = ReadBuffer.wrap(array, valueOffset, valueLength);
+    while (buffer.pos() < valueLength) {
+      int nextKey = buffer.readVarint32();
+      switch (nextKey) {
+        case TRACE_ID_KEY:
+          traceIdLength = buffer.readVarint32();
+          traceIdPos = position(buffer, valueOffset, traceIdLength);
+          break;
+        case PARENT_ID_KEY:
+          parentIdLength = buffer.readVarint32();
+          parentIdPos = position(buffer, valueOffset, parentIdLength);
+          break;
+        case ID_KEY:
+          idLength = buffer.readVarint32();
+          idPos = position(buffer, valueOffset, idLength);
+          break;
+        case KIND_KEY:
+          kind = buffer.readVarint32();
+          break;
+        case NAME_KEY:
+          nameLength = buffer.readVarint32();
+          namePos = position(buffer, valueOffset, nameLength);
+          break;
+        case TIMESTAMP_KEY:
+          timestamp = buffer.readLongLe();
+          break;
+        case DURATION_KEY:
+          duration = buffer.readVarint64();
+          break;
+        case LOCAL_ENDPOINT_KEY:
+          scanEndpoint(buffer, valueOffset, true);
+          break;
+        case REMOTE_ENDPOINT_KEY:
+          scanEndpoint(buffer, valueOffset, false);
+          break;
+        case ANNOTATION_KEY:
+          skipMessage(buffer);
+          break;
+        case TAG_KEY:
+          hasTags = true;
+          skipMessage(buffer);
+          break;
+        case DEBUG_KEY:
+          debug = DEBUG.read(buffer);
+          break;
+        case SHARED_KEY:
+          SHARED.read(buffer); // only validated, as it isn't indexed
+          break;
+        default:
+          skip(buffer, nextKey);
+      }
+    }
+
+    // Validate what Span.Builder would, so that storage doesn't accept a span it can't read back.
+    if (traceIdLength != 8 && traceIdLength != 16) {
+      throw new IllegalArgumentException(
+        traceIdLength == 0 ? "Missing : traceId" : "Malformed: traceId length " + traceIdLength);
+    }
+    if (idLength != 8) {
+      throw new IllegalArgumentException(
+        idLength == 0 ? "Missing : id" : "Malformed: id length " + idLength);
+    }
+    if (parentIdLength != 0 && parentIdLength != 8) {
+      throw new IllegalArgumentException("Malformed: parentId length " + parentIdLength);
+    }
+    traceId(); // validates it isn't all zeros
+  }
+
+  /** Records the position of the endpoint's service name, skipping its other fields. */
+  void scanEndpoint(ReadBuffer buffer, int valueOffset, boolean local) {
+    int endPos = endPos(buffer);
+    while (buffer.pos() < endPos) {
+      int nextKey = buffer.readVarint32();
+      if (nextKey != SERVICE_NAME_KEY) {
+        skip(buffer, nextKey);
+        continue;
+      }
+      int serviceNameLength = buffer.readVarint32();
+      int serviceNamePos = position(buffer, valueOffset, serviceNameLength);
+      if (local) {
+        localServiceNamePos = serviceNamePos;
+        localServiceNameLength = serviceNameLength;
+      } else {
+        remoteServiceNamePos = serviceNamePos;
+        remoteServiceNameLength = serviceNameLength;
+      }
+    }
+    checkEndPos(buffer, endPos);
+  }
+
+  /** Skips a nested message, such as an annotation, checking its fields are well-formed. */
+  static void skipMessage(ReadBuffer buffer) {
+    int endPos = endPos(buffer);
+    while (buffer.pos() < endPos) {
+      skip(buffer, buffer.readVarint32());
+    }
+    checkEndPos(buffer, endPos);
+  }
+
+  static int endPos(ReadBuffer buffer) {
+    int length = buffer.readVarint32();
+    buffer.require(length);
+    return buffer.pos() + length;
+  }
+
+  static void checkEndPos(ReadBuffer buffer, int endPos) {
+    if (buffer.pos() != endPos) {
+      throw new IllegalArgumentException("Malformed: field overruns its message at byte " + endPos);
+    }
+  }
+
+  /** Skips the field value, returning its position in the array. */
+  static int position(ReadBuffer buffer, int valueOffset, int length) {
+    int result = valueOffset + buffer.pos();
+    buffer.require(length);
+    buffer.skip(length);
+    return result;
+  }
+
+  static void skip(ReadBuffer buffer, int key) {
+    if (!skipValue(buffer, wireType(key, buffer.pos()))) {
+      throw new IllegalArgumentException("Truncated: field at byte " + buffer.pos());
+    }
+  }
+
+  /** Like {@link Span#traceId()}: lowercase hex, without upper bits that are zero. */
+  public String traceId() {
+    String result = traceId;
+    if (result != null) return result;
+    return traceId = Span.normalizeTraceId(hex(traceIdPos, traceIdLength));
+  }
+
+  /** Like {@link Span#id()} */
+  public String id() {
+    String result = id;
+    if (result != null) return result;
+    return id = hex(idPos, idLength);
+  }
+
+  /** Like {@link Span#parentId()}, except a parent ID equal to the span ID isn't dropped. */
+  @Nullable public String parentId() {
+    return parentIdLength != 0 ? hex(parentIdPos, parentIdLength) : null;
+  }
+
+  /** Like {@link Span#kind()} */
+  @Nullable public Span.Kind kind() {
+    Span.Kind[] values = Span.Kind.values();
+    return kind > 0 && kind <= values.length ? values[kind - 1] : null;
+  }
+
+  /** Like {@link Span#name()} */
+  @Nullable public String name() {
+    return lowerCaseUtf8(namePos, nameLength);
+  }
+
+  /** Like {@link Span#localServiceName()} */
+  @Nullable public String localServiceName() {
+    return lowerCaseUtf8(localServiceNamePos, localServiceNameLength);
+  }
+
+  /** Like {@link Span#remoteServiceName()} */
+  @Nullable public String remoteServiceName() {
+    return lowerCaseUtf8(remoteServiceNamePos, remoteServiceNameLength);
+  }
+
+  /** Like {@link Span#timestampAsLong()} */
+  public long timestampAsLong() {
+    return timestamp > 0L ? timestamp : 0L;
+  }
+
+  /** Like {@link Span#durationAsLong()} */
+  public long durationAsLong() {
+    return duration > 0L ? duration : 0L;
+  }
+
+  /** Like {@link Span#debug()} */
+  @Nullable public Boolean debug() {
+    return debug ? true : null;
+  }
+
+  /** Like {@link Span#tags()}, except read from the encoded span each time. */
+  public Map<String, String> tags() {
+    if (!hasTags) return Collections.emptyMap();
+    Map<String, String> result = new LinkedHashMap<>();
+    ReadBuffer buffer = ReadBuffer.wrap(array, offset, length);
+    buffer.readVarint32(); // toss the key
+    buffer.readVarint32(); // and the length, as it was validated on creation
+    while (buffer.available() > 0) {
+      int nextKey = buffer.readVarint32();
+      if (nextKey != TAG_KEY) {
+        skip(buffer, nextKey);
+        continue;
+      }
+      int endPos = endPos(buffer);
+      String key = null, value = "";
+      while (buffer.pos() < endPos) {
+        int tagKey = buffer.readVarint32();
+        if (tagKey == KEY_KEY) {
+          key = buffer.readUtf8(buffer.readVarint32());
+        } else if (tagKey == VALUE_KEY) {
+          value = buffer.readUtf8(buffer.readVarint32());
+        } else {
+          skip(buffer, tagKey);
+        }
+      }
+      if (key != null) result.put(key, value);
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /** Decodes all fields of the span, once. */
+  public Span decode() {
+    Span result = span;
+    if (result != null) return result;
+    return span = Proto3Codec.readOne(ReadBuffer.wrap(array, offset, length));
+  }
+
+  /** The size of the encoded span, including its field key and length prefix. */
+  public int sizeInBytes() {
+    return length;
+  }
+
+  /** Writes the encoded span, including its field key and length prefix. */
+  public void writeTo(ByteBuffer out) {
+    out.put(array, offset, length);
+  }
+
+  /** Returns a copy of the encoded span, including its field key and length prefix. */
+  public byte[] toByteArray() {
+    byte[] result = new byte[length];
+    System.arraycopy(array, offset, result, 0, length);
+    return result;
+  }
+
+  String hex(int pos, int length) {
+    ReadBuffer buffer = ReadBuffer.wrap(array, pos, length);
+    return buffer.readBytesAsHex(length);
+  }
+
+  @Nullable String lowerCaseUtf8(int pos, int length) {
+    if (length == 0) return null;
+    String result = ReadBuffer.wrap(array, pos, length).readUtf8(length);
+    return result.toLowerCase(Locale.ROOT);
+  }
+
+  @Override public String toString() {
+    return "Proto3Span{traceId=" + traceId() + ", id=" + id() + "}";
+  }
+}
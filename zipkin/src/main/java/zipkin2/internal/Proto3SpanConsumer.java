@@ -0,0 +1,18 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.internal;
+
+import java.util.List;
+import zipkin2.Call;
+import zipkin2.storage.SpanConsumer;
+
+/**
+ * Implemented by a {@link SpanConsumer} that stores spans encoded in proto3. Collectors that
+ * receive proto3 pass the spans as they were encoded, avoiding a decode and re-encode of each.
+ */
+public interface Proto3SpanConsumer {
+  /** Like {@link SpanConsumer#accept(List)}, except the spans are still encoded. */
+  Call<Void> acceptProto3(List<Proto3Span> spans);
+}
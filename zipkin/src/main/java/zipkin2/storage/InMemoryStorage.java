@@ -4,7 +4,10 @@
  */
 package zipkin2.storage;
 
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -14,21 +17,27 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 import zipkin2.Call;
 import zipkin2.Callback;
 import zipkin2.DependencyLink;
 import zipkin2.Endpoint;
 import zipkin2.Span;
+import zipkin2.codec.SpanBytesEncoder;
 import zipkin2.internal.DependencyLinker;
+import zipkin2.internal.HexCodec;
+import zipkin2.internal.Nullable;
 
 /**
  * Test storage component that keeps all spans in memory, accepting them on the calling thread.
  *
- * <p>Internally, spans are indexed on 64-bit trace ID
+ * <p>Internally, spans are indexed on 64-bit trace ID. Trace IDs are held as primitive longs in
+ * open-addressed tables, as hex strings and their tree entries would otherwise dominate the heap.
  *
  * <p>Here's an example of some traces in memory:
  *
@@ -40,10 +49,10 @@ import zipkin2.internal.DependencyLinker;
  *    <bbbb,July 5> --> ( spanD(time:July 5, traceId:bbbb, service:biz, name:GET) )
  *    <bbbb,July 6> --> ( spanE(time:July 6, traceId:bbbb) service:foo, name:POST )
  *
- * traceIdToTraceIdTimeStamps:
- *    aaaa --> [ <aaaa,July 4> ]
- *    bbbb --> [ <bbbb,July 5>, <bbbb,July 6> ]
- *    cccc --> [ <cccc,July 4> ]
+ * traceIdToTimestamps:
+ *    aaaa --> [ July 4 ]
+ *    bbbb --> [ July 5, July 6 ]
+ *    cccc --> [ July 4 ]
  *
  * serviceToTraceIds:
  *    foo --> [ <aaaa>, <cccc>, <bbbb> ]
@@ -55,6 +64,15 @@ import zipkin2.internal.DependencyLinker;
  *    biz --> ( GET )
  *    foo --> ( GET, POST )
  * }</pre>
+ *
+ * <p>By default, all access is serialized on this object. When {@link Builder#concurrent(boolean)
+ * concurrent}, the above indexes are partitioned into stripes by lower 64-bits of the trace ID,
+ * each guarded by its own lock. Requests on different stripes don't contend with each other.
+ *
+ * <p>When {@link Builder#offHeapBytes(long) offHeapBytes} is set, the span values above are
+ * encoded into a ring of direct byte buffers, and only their handles are on the heap. Overwriting
+ * the oldest part of the ring evicts the traces it holds, in addition to {@link
+ * Builder#maxSpanCount(int) count}-based eviction.
  */
 public final class InMemoryStorage extends StorageComponent implements SpanStore, SpanConsumer,
   AutocompleteTags, ServiceAndSpanNames, Traces {
@@ -64,8 +82,9 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
   }
 
   public static final class Builder extends StorageComponent.Builder {
-    boolean strictTraceId = true, searchEnabled = true;
+    boolean strictTraceId = true, searchEnabled = true, concurrent;
     int maxSpanCount = 500000;
+    long maxAge, maxBytes, offHeapBytes;
     List<String> autocompleteKeys = Collections.emptyList();
 
     @Override public Builder strictTraceId(boolean strictTraceId) {
@@ -84,18 +103,83 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
       return this;
     }
 
-    /** Eldest traces are removed to ensure spans in memory don't exceed this value */
+    /**
+     * Eldest traces are removed to ensure spans in memory don't exceed this value.
+     *
+     * <p>Traces are evicted in generations of roughly a sixteenth of this value, so once full,
+     * the count of spans in memory varies between about 15/16ths of this value and this value.
+     */
     public Builder maxSpanCount(int maxSpanCount) {
       if (maxSpanCount <= 0) throw new IllegalArgumentException("maxSpanCount <= 0");
       this.maxSpanCount = maxSpanCount;
       return this;
     }
 
+    /**
+     * When positive, traces are evicted once this many milliseconds have passed since they were
+     * first received. The age is checked when spans are accepted, in generations of roughly a
+     * sixteenth of this value. Defaults to zero, which doesn't evict by age.
+     */
+    public Builder maxAge(long maxAge) {
+      if (maxAge < 0) throw new IllegalArgumentException("maxAge < 0");
+      this.maxAge = maxAge;
+      return this;
+    }
+
+    /**
+     * When positive, eldest traces are removed to ensure the estimated size of spans in memory
+     * doesn't exceed this many bytes. The size of a span is estimated as the length of its {@link
+     * SpanBytesEncoder#PROTO3 proto3} encoding, which excludes the overhead of indexes. Defaults
+     * to zero, which doesn't evict by size.
+     */
+    public Builder maxBytes(long maxBytes) {
+      if (maxBytes < 0) throw new IllegalArgumentException("maxBytes < 0");
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * When true, spans are partitioned into stripes by trace ID, so that ingestion and queries
+     * against different traces don't contend on the same lock. Queries such as {@link
+     * SpanStore#getTraces(QueryRequest)} visit each stripe in turn.
+     *
+     * <p>{@link #maxSpanCount(int)} and {@link #maxBytes(long)} are divided evenly across
+     * stripes, so eviction removes the oldest traces in the stripe receiving spans, as opposed to
+     * the oldest traces overall. Defaults to false.
+     */
+    public Builder concurrent(boolean concurrent) {
+      this.concurrent = concurrent;
+      return this;
+    }
+
+    /**
+     * When positive, spans are held outside the Java heap in their {@link SpanBytesEncoder#PROTO3
+     * proto3} encoding, within direct byte buffers totaling this many bytes. Spans are decoded
+     * each time they are read, so queries cost more CPU, but more spans fit in the same memory
+     * and they don't add to garbage collection pauses.
+     *
+     * <p>The buffers are used as a ring: when full, the oldest part is overwritten, evicting any
+     * traces with spans in it. Indexes remain on the heap, so {@link #maxSpanCount(int)} still
+     * applies and usually needs to be raised. When {@link #concurrent(boolean) concurrent}, this
+     * is divided evenly across stripes. Defaults to zero, which holds spans on the heap.
+     */
+    public Builder offHeapBytes(long offHeapBytes) {
+      if (offHeapBytes < 0) throw new IllegalArgumentException("offHeapBytes < 0");
+      this.offHeapBytes = offHeapBytes;
+      return this;
+    }
+
     @Override public InMemoryStorage build() {
-      return new InMemoryStorage(this);
+      int stripeCount = concurrent ? CONCURRENT_STRIPES : 1;
+      return new InMemoryStorage(this, stripeCount, stripeCount);
     }
   }
 
+  /** Power of two count of stripes used when {@link Builder#concurrent(boolean)}. */
+  static final int CONCURRENT_STRIPES = 16;
+  /** Each limit is divided by this to size a {@link Generation}. */
+  static final int GENERATIONS = 16;
+
   /**
    * Primary source of data is this map, which includes spans ordered descending by timestamp. All
    * other maps are derived from the span values here. This uses a list for the spans, so that it is
@@ -105,17 +189,21 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
   private final SortedMultimap<TraceIdTimestamp, Span> spansByTraceIdTimestamp =
     new SortedMultimap<TraceIdTimestamp, Span>(TIMESTAMP_DESCENDING) {
       @Override Collection<Span> valueContainer() {
-        return new LinkedHashSet<>();
+        return arena != null ? arena.newSpans() : new SpanSet();
       }
     };
 
-  /** This supports span lookup by {@link Span#traceId() lower 64-bits of the trace ID} */
-  private final SortedMultimap<String, TraceIdTimestamp> traceIdToTraceIdTimestamps =
-    new SortedMultimap<String, TraceIdTimestamp>(STRING_COMPARATOR) {
-      @Override Collection<TraceIdTimestamp> valueContainer() {
-        return new LinkedHashSet<>();
-      }
-    };
+  /**
+   * This supports span lookup by {@link Span#traceId() lower 64-bits of the trace ID}. Values are
+   * timestamps in insertion order, where the first element is the count of timestamps.
+   */
+  private final TraceIdMap<long[]> traceIdToTimestamps = new TraceIdMap<>();
+  /**
+   * Eviction drops the oldest generation of traces, which avoids a search for the oldest trace.
+   * Generations are in order received, and each trace is in the generation it was first received.
+   */
+  private final ArrayDeque<Generation> generations = new ArrayDeque<>();
+  private final TraceIdMap<Generation> traceIdToGeneration = new TraceIdMap<>();
   /** This is an index of {@link Span#traceId()} by {@link Endpoint#serviceName() service name} */
   private final ServiceNameToTraceIds serviceToTraceIds = new ServiceNameToTraceIds();
   /** This is an index of {@link Span#name()} by {@link Endpoint#serviceName() service name} */
@@ -144,49 +232,141 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
     };
 
   final boolean strictTraceId, searchEnabled;
-  final int maxSpanCount;
+  final int maxSpanCount, maxGenerationSpanCount;
+  final long maxAge, maxGenerationAge, maxBytes, maxGenerationBytes;
+  /** The estimated size of spans in this stripe, when {@link #maxBytes} is set. */
+  long byteCount;
   final Call<List<String>> autocompleteKeysCall;
   final Set<String> autocompleteKeys;
   final AtomicInteger acceptedSpanCount = new AtomicInteger();
+  /** Holds spans in this stripe when {@link Builder#offHeapBytes(long)} is set, or null. */
+  @Nullable final SpanArena arena;
+  /**
+   * Each stripe holds the indexes for a partition of lower 64-bit trace IDs, and is the lock that
+   * guards them. When not {@link Builder#concurrent(boolean) concurrent}, the only stripe is this.
+   */
+  final InMemoryStorage[] stripes;
 
-  InMemoryStorage(Builder builder) {
+  /**
+   * @param stripeCount count of {@link #stripes} to create, where one means this is a stripe.
+   * @param partitions count of stripes sharing the limits of the builder.
+   */
+  InMemoryStorage(Builder builder, int stripeCount, int partitions) {
     this.strictTraceId = builder.strictTraceId;
     this.searchEnabled = builder.searchEnabled;
-    this.maxSpanCount = builder.maxSpanCount;
+    this.maxSpanCount = (builder.maxSpanCount + partitions - 1) / partitions;
+    this.maxGenerationSpanCount = Math.max(1, maxSpanCount / GENERATIONS);
+    this.maxAge = builder.maxAge; // applies to each stripe as is
+    this.maxGenerationAge = Math.max(1L, maxAge / GENERATIONS);
+    this.maxBytes = builder.maxBytes / partitions;
+    this.maxGenerationBytes = Math.max(1L, maxBytes / GENERATIONS);
+    long offHeapBytes = builder.offHeapBytes / partitions;
     this.autocompleteKeysCall = Call.create(builder.autocompleteKeys);
     this.autocompleteKeys = new LinkedHashSet<>(builder.autocompleteKeys);
+    this.stripes = new InMemoryStorage[stripeCount];
+    if (stripeCount == 1) {
+      stripes[0] = this;
+      this.arena = offHeapBytes > 0 ? new SpanArena(offHeapBytes, new SpanArena.Evictor() {
+        @Override public void evict(long lowTraceId, long segment) {
+          if (traceReferencesSegment(lowTraceId, segment)) deleteTrace(lowTraceId);
+        }
+      }) : null;
+    } else {
+      this.arena = null;
+      for (int i = 0; i < stripeCount; i++) {
+        stripes[i] = new InMemoryStorage(builder, 1, partitions);
+      }
+    }
   }
 
   public int acceptedSpanCount() {
     return acceptedSpanCount.get();
   }
 
-  public synchronized void clear() {
+  public void clear() {
     acceptedSpanCount.set(0);
-    traceIdToTraceIdTimestamps.clear();
-    spansByTraceIdTimestamp.clear();
-    serviceToTraceIds.clear();
-    serviceToRemoteServiceNames.clear();
-    serviceToSpanNames.clear();
-    autocompleteTags.clear();
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        stripe.traceIdToTimestamps.clear();
+        stripe.generations.clear();
+        stripe.traceIdToGeneration.clear();
+        stripe.byteCount = 0L;
+        stripe.spansByTraceIdTimestamp.clear();
+        stripe.serviceToTraceIds.clear();
+        stripe.serviceToRemoteServiceNames.clear();
+        stripe.serviceToSpanNames.clear();
+        stripe.autocompleteTags.clear();
+        if (stripe.arena != null) stripe.arena.clear();
+      }
+    }
   }
 
   @Override public Call<Void> accept(List<Span> spans) {
     return new StoreSpansCall(spans);
   }
 
-  synchronized void doAccept(List<Span> spans) {
-    int delta = spans.size();
-    acceptedSpanCount.addAndGet(delta);
+  void doAccept(List<Span> spans) {
+    acceptedSpanCount.addAndGet(spans.size());
+    long timestampMillis = System.currentTimeMillis();
+    if (stripes.length == 1) {
+      stripes[0].storeSpans(spans, timestampMillis);
+      return;
+    }
 
-    int spansToRecover = (spansByTraceIdTimestamp.size() + delta) - maxSpanCount;
-    evictToRecoverSpans(spansToRecover);
+    // Partition the input so that each stripe is only locked once
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    List<Span>[] spansByStripe = new List[stripes.length];
     for (Span span : spans) {
+      int index = stripeIndex(lowTraceId(span.traceId()));
+      if (spansByStripe[index] == null) spansByStripe[index] = new ArrayList<>();
+      spansByStripe[index].add(span);
+    }
+    for (int i = 0; i < stripes.length; i++) {
+      if (spansByStripe[i] != null) stripes[i].storeSpans(spansByStripe[i], timestampMillis);
+    }
+  }
+
+  /** Stores spans received at the given epoch milliseconds. */
+  synchronized void storeSpans(List<Span> spans, long timestampMillis) {
+    int[] sizeInBytes = null; // only estimated when needed
+    long bytesToAdd = 0L;
+    if (arena != null || maxBytes > 0L) {
+      sizeInBytes = new int[spans.size()];
+      for (int i = 0; i < sizeInBytes.length; i++) {
+        bytesToAdd += sizeInBytes[i] = SpanBytesEncoder.PROTO3.sizeInBytes(spans.get(i));
+      }
+    }
+    evict(timestampMillis, spans.size(), bytesToAdd);
+    if (arena != null) arena.encode(spans, (int) bytesToAdd);
+
+    for (int i = 0, offset = 0; i < spans.size(); i++) {
+      Span span = spans.get(i);
       long timestamp = span.timestampAsLong() / 1000L;
-      String lowTraceId = lowTraceId(span.traceId());
+      long lowTraceId = lowTraceId(span.traceId());
       TraceIdTimestamp traceIdTimeStamp = new TraceIdTimestamp(lowTraceId, timestamp);
-      spansByTraceIdTimestamp.put(traceIdTimeStamp, span);
-      traceIdToTraceIdTimestamps.put(lowTraceId, traceIdTimeStamp);
+      // Make room first, as it can evict traces, including the one this span belongs to.
+      if (arena != null) {
+        arena.reserve(offset, sizeInBytes[i]);
+        offset += sizeInBytes[i];
+      }
+      Generation generation = traceIdToGeneration.get(lowTraceId);
+      if (generation == null) {
+        generation = newestGeneration(timestampMillis);
+        generation.lowTraceIds.add(lowTraceId);
+        traceIdToGeneration.put(lowTraceId, generation);
+      }
+      int spanCount = spansByTraceIdTimestamp.size();
+      if (spansByTraceIdTimestamp.put(traceIdTimeStamp, span)) {
+        traceIdToTimestamps.put(lowTraceId,
+          appendTimestamp(traceIdToTimestamps.get(lowTraceId), timestamp));
+      }
+      if (spansByTraceIdTimestamp.size() > spanCount) { // not a duplicate
+        generation.spanCount++;
+        if (maxBytes > 0L) {
+          generation.byteCount += sizeInBytes[i];
+          byteCount += sizeInBytes[i];
+        }
+      }
 
       if (!searchEnabled) continue;
       String serviceName = span.localServiceName();
@@ -239,60 +419,141 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
     }
   }
 
-  /** Returns the count of spans evicted. */
-  int evictToRecoverSpans(int spansToRecover) {
-    int spansEvicted = 0;
-    while (spansToRecover > 0) {
-      int spansInOldestTrace = deleteOldestTrace();
-      spansToRecover -= spansInOldestTrace;
-      spansEvicted += spansInOldestTrace;
+  /**
+   * Drops the oldest generations until there's room for the given spans and none have expired.
+   * This is proportional to the count of spans evicted, as opposed to the count of spans stored.
+   */
+  void evict(long timestampMillis, int spansToAdd, long bytesToAdd) {
+    while (!generations.isEmpty()) {
+      Generation oldest = generations.peekFirst();
+      if (spansByTraceIdTimestamp.size() + spansToAdd <= maxSpanCount
+        && (maxBytes == 0L || byteCount + bytesToAdd <= maxBytes)
+        && (maxAge == 0L || timestampMillis - oldest.lastReceivedMillis < maxAge)) {
+        return;
+      }
+      for (long lowTraceId : oldest.lowTraceIds.toArray()) {
+        deleteTrace(lowTraceId); // also removes the generation once empty
+      }
+    }
+  }
+
+  /** Returns the generation to add a new trace to, starting a new one if the current is full. */
+  Generation newestGeneration(long timestampMillis) {
+    Generation newest = generations.peekLast();
+    if (newest == null
+      || newest.spanCount >= maxGenerationSpanCount
+      || (maxBytes > 0L && newest.byteCount >= maxGenerationBytes)
+      || (maxAge > 0L && timestampMillis - newest.firstReceivedMillis >= maxGenerationAge)) {
+      generations.addLast(newest = new Generation(timestampMillis));
+    }
+    newest.lastReceivedMillis = timestampMillis;
+    return newest;
+  }
+
+  /** Returns true if any span of the trace is held in the given segment of the {@link #arena}. */
+  boolean traceReferencesSegment(long lowTraceId, long segment) {
+    long[] timestamps = traceIdToTimestamps.get(lowTraceId);
+    if (timestamps == null) return false; // already evicted
+    for (int i = 1, length = (int) timestamps[0]; i <= length; i++) {
+      Collection<Span> spans =
+        spansByTraceIdTimestamp.delegate.get(new TraceIdTimestamp(lowTraceId, timestamps[i]));
+      if (((SpanArena.Spans) spans).references(segment)) return true;
     }
-    return spansEvicted;
+    return false;
   }
 
-  /** Returns the count of spans evicted. */
-  private int deleteOldestTrace() {
+  /** Removes the trace and any index entries only it referenced. */
+  void deleteTrace(long lowTraceId) {
     int spansEvicted = 0;
-    String lowTraceId = spansByTraceIdTimestamp.delegate.lastKey().lowTraceId;
-    Collection<TraceIdTimestamp> traceIdTimeStamps = traceIdToTraceIdTimestamps.remove(lowTraceId);
-    for (TraceIdTimestamp traceIdTimeStamp : traceIdTimeStamps) {
-      Collection<Span> spans = spansByTraceIdTimestamp.remove(traceIdTimeStamp);
+    long bytesEvicted = 0L;
+    Set<String> serviceNames = searchEnabled ? new LinkedHashSet<>() : Collections.emptySet();
+    long[] timestamps = traceIdToTimestamps.remove(lowTraceId);
+    for (int i = 1, length = (int) timestamps[0]; i <= length; i++) {
+      Collection<Span> spans =
+        spansByTraceIdTimestamp.remove(new TraceIdTimestamp(lowTraceId, timestamps[i]));
       spansEvicted += spans.size();
+      if (maxBytes > 0L) bytesEvicted += sizeInBytes(spans);
+      if (!searchEnabled) continue;
+      for (Span span : spans) {
+        String serviceName = span.localServiceName();
+        if (serviceName != null) serviceNames.add(serviceName);
+      }
     }
-    if (searchEnabled) {
-      for (String orphanedService : serviceToTraceIds.removeServiceIfTraceId(lowTraceId)) {
-        serviceToRemoteServiceNames.remove(orphanedService);
-        serviceToSpanNames.remove(orphanedService);
+
+    // Only visit the services of this trace, instead of every service.
+    for (String serviceName : serviceNames) {
+      if (serviceToTraceIds.remove(serviceName, lowTraceId)) { // orphaned
+        serviceToRemoteServiceNames.remove(serviceName);
+        serviceToSpanNames.remove(serviceName);
       }
     }
-    return spansEvicted;
+
+    Generation generation = traceIdToGeneration.remove(lowTraceId);
+    generation.lowTraceIds.remove(lowTraceId);
+    generation.spanCount -= spansEvicted;
+    generation.byteCount -= bytesEvicted;
+    byteCount -= bytesEvicted;
+    if (generation.lowTraceIds.isEmpty()) generations.remove(generation);
+  }
+
+  static long sizeInBytes(Collection<Span> spans) {
+    if (spans instanceof SpanArena.Spans) return ((SpanArena.Spans) spans).sizeInBytes();
+    long result = 0L;
+    for (Span span : spans) result += SpanBytesEncoder.PROTO3.sizeInBytes(span);
+    return result;
   }
 
   @Override public Call<List<List<Span>>> getTraces(QueryRequest request) {
     return getTraces(request, strictTraceId);
   }
 
-  synchronized Call<List<List<Span>>> getTraces(QueryRequest request, boolean strictTraceId) {
-    Set<String> lowTraceIdsInRange = traceIdsDescendingByTimestamp(request);
-    if (lowTraceIdsInRange.isEmpty()) return Call.emptyList();
+  Call<List<List<Span>>> getTraces(QueryRequest request, boolean strictTraceId) {
+    if (!searchEnabled) return Call.emptyList();
+
+    // Stripes don't share trace IDs, so the most recent matches overall are within the most recent
+    // matches of each stripe. Merge them by their timestamp, then apply the limit again.
+    SortedMap<TraceIdTimestamp, List<List<Span>>> matches = new TreeMap<>(TIMESTAMP_DESCENDING);
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        stripe.addMatchingTraces(request, strictTraceId, matches);
+      }
+    }
 
     List<List<Span>> result = new ArrayList<>();
-    for (Iterator<String> lowTraceId = lowTraceIdsInRange.iterator();
-      lowTraceId.hasNext() && result.size() < request.limit(); ) {
-      List<Span> next = spansByTraceId(lowTraceId.next());
+    for (Iterator<List<List<Span>>> traces = matches.values().iterator();
+      traces.hasNext() && result.size() < request.limit(); ) {
+      result.addAll(traces.next());
+    }
+    return Call.create(result);
+  }
+
+  /**
+   * Adds up to {@link QueryRequest#limit()} traces in this stripe that match the request, keyed by
+   * the most recent timestamp of their lower 64-bit trace ID.
+   */
+  void addMatchingTraces(QueryRequest request, boolean strictTraceId,
+    Map<TraceIdTimestamp, List<List<Span>>> result) {
+    int count = 0;
+    for (Iterator<TraceIdTimestamp> latest = traceIdsDescendingByTimestamp(request);
+      latest.hasNext() && count < request.limit(); ) {
+      TraceIdTimestamp traceIdTimestamp = latest.next();
+      List<Span> next = spansByTraceId(traceIdTimestamp.lowTraceId);
       if (!request.test(next)) continue;
       if (!strictTraceId) {
-        result.add(next);
+        result.put(traceIdTimestamp, Collections.singletonList(next));
+        count++;
         continue;
       }
 
       // re-run the query as now spans are strictly grouped
+      List<List<Span>> strictTraces = new ArrayList<>();
       for (List<Span> strictTrace : strictByTraceId(next)) {
-        if (request.test(strictTrace)) result.add(strictTrace);
+        if (request.test(strictTrace)) strictTraces.add(strictTrace);
       }
+      if (strictTraces.isEmpty()) continue;
+      result.put(traceIdTimestamp, strictTraces);
+      count += strictTraces.size();
     }
-
-    return Call.create(result);
   }
 
   static Collection<List<Span>> strictByTraceId(List<Span> next) {
@@ -308,52 +569,93 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
   }
 
   /** Used for testing. Returns all traces unconditionally. */
-  public synchronized List<List<Span>> getTraces() {
+  public List<List<Span>> getTraces() {
     List<List<Span>> result = new ArrayList<>();
-    for (String lowTraceId : traceIdToTraceIdTimestamps.keySet()) {
-      List<Span> sameTraceId = spansByTraceId(lowTraceId);
-      if (strictTraceId) {
-        result.addAll(strictByTraceId(sameTraceId));
-      } else {
-        result.add(sameTraceId);
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        for (long lowTraceId : stripe.traceIdToTimestamps.keys()) {
+          List<Span> sameTraceId = stripe.spansByTraceId(lowTraceId);
+          if (strictTraceId) {
+            result.addAll(strictByTraceId(sameTraceId));
+          } else {
+            result.add(sameTraceId);
+          }
+        }
       }
     }
     return result;
   }
 
   /** Used for testing. Returns all dependency links unconditionally. */
-  public synchronized List<DependencyLink> getDependencies() {
-    return getDependencyLinks(traceIdToTraceIdTimestamps.keySet());
+  public List<DependencyLink> getDependencies() {
+    DependencyLinker linksBuilder = new DependencyLinker();
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        for (long lowTraceId : stripe.traceIdToTimestamps.keys()) {
+          linksBuilder.putTrace(stripe.spansByTraceId(lowTraceId));
+        }
+      }
+    }
+    return linksBuilder.link();
   }
 
-  Set<String> traceIdsDescendingByTimestamp(QueryRequest request) {
-    if (!searchEnabled) return Collections.emptySet();
+  /**
+   * Returns the most recent timestamp of each lower 64-bit trace ID matching the request. This is
+   * lazy, so callers that stop at a limit don't visit older traces.
+   */
+  Iterator<TraceIdTimestamp> traceIdsDescendingByTimestamp(QueryRequest request) {
+    if (!searchEnabled) return Collections.emptyIterator();
 
-    Collection<TraceIdTimestamp> traceIdTimestamps =
+    Iterator<TraceIdTimestamp> traceIdTimestamps =
       request.serviceName() != null
         ? traceIdTimestampsByServiceName(request.serviceName())
-        : spansByTraceIdTimestamp.keySet();
+        : spansByTraceIdTimestamp.keySet().iterator();
 
-    if (traceIdTimestamps == null || traceIdTimestamps.isEmpty()) return Collections.emptySet();
-
-    return lowTraceIdsInRange(traceIdTimestamps, request.endTs, request.lookback);
+    return new LatestInRange(traceIdTimestamps, request.endTs, request.lookback);
   }
 
-  static Set<String> lowTraceIdsInRange(
-    Collection<TraceIdTimestamp> descendingByTimestamp, long endTs, long lookback) {
-    long beginTs = endTs - lookback;
-    Set<String> result = new LinkedHashSet<>();
-    for (TraceIdTimestamp traceIdTimestamp : descendingByTimestamp) {
-      if (traceIdTimestamp.timestamp >= beginTs && traceIdTimestamp.timestamp <= endTs) {
-        result.add(traceIdTimestamp.lowTraceId);
+  /** Skips all but the most recent timestamp of each trace, and those outside the range. */
+  static final class LatestInRange implements Iterator<TraceIdTimestamp> {
+    Iterator<TraceIdTimestamp> descendingByTimestamp;
+    final long beginTs, endTs;
+    final TraceIdSet lowTraceIds = new TraceIdSet();
+    TraceIdTimestamp next;
+
+    LatestInRange(Iterator<TraceIdTimestamp> descendingByTimestamp, long endTs, long lookback) {
+      this.descendingByTimestamp = descendingByTimestamp;
+      this.beginTs = endTs - lookback;
+      this.endTs = endTs;
+    }
+
+    @Override public boolean hasNext() {
+      while (next == null && descendingByTimestamp.hasNext()) {
+        TraceIdTimestamp traceIdTimestamp = descendingByTimestamp.next();
+        if (traceIdTimestamp.timestamp < beginTs) { // the rest are older
+          descendingByTimestamp = Collections.emptyIterator();
+        } else if (traceIdTimestamp.timestamp <= endTs
+          && lowTraceIds.add(traceIdTimestamp.lowTraceId)) {
+          next = traceIdTimestamp;
+        }
       }
+      return next != null;
+    }
+
+    @Override public TraceIdTimestamp next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      TraceIdTimestamp result = next;
+      next = null;
+      return result;
     }
-    return Collections.unmodifiableSet(result);
   }
 
-  @Override public synchronized Call<List<Span>> getTrace(String traceId) {
+  @Override public Call<List<Span>> getTrace(String traceId) {
     traceId = Span.normalizeTraceId(traceId);
-    List<Span> spans = spansByTraceId(lowTraceId(traceId));
+    long lowTraceId = lowTraceId(traceId);
+    InMemoryStorage stripe = stripe(lowTraceId);
+    List<Span> spans;
+    synchronized (stripe) {
+      spans = stripe.spansByTraceId(lowTraceId);
+    }
     if (spans.isEmpty()) return Call.emptyList();
     if (!strictTraceId) return Call.create(spans);
 
@@ -367,21 +669,27 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
     return Call.create(filtered);
   }
 
-  @Override public synchronized Call<List<List<Span>>> getTraces(Iterable<String> traceIds) {
+  @Override public Call<List<List<Span>>> getTraces(Iterable<String> traceIds) {
     Set<String> normalized = new LinkedHashSet<>();
     for (String traceId : traceIds) {
       normalized.add(Span.normalizeTraceId(traceId));
     }
 
     // Our index is by lower-64 bit trace ID, so let's build trace IDs to fetch
-    Set<String> lower64Bit = new LinkedHashSet<>();
+    TraceIdSet seen = new TraceIdSet();
+    List<Long> lower64Bit = new ArrayList<>();
     for (String traceId : normalized) {
-      lower64Bit.add(lowTraceId(traceId));
+      long lowTraceId = lowTraceId(traceId);
+      if (seen.add(lowTraceId)) lower64Bit.add(lowTraceId);
     }
 
     List<List<Span>> result = new ArrayList<>();
-    for (String lowTraceId : lower64Bit) {
-      List<Span> sameTraceId = spansByTraceId(lowTraceId);
+    for (long lowTraceId : lower64Bit) {
+      InMemoryStorage stripe = stripe(lowTraceId);
+      List<Span> sameTraceId;
+      synchronized (stripe) {
+        sameTraceId = stripe.spansByTraceId(lowTraceId);
+      }
       if (strictTraceId) {
         for (List<Span> trace : strictByTraceId(sameTraceId)) {
           if (normalized.contains(trace.get(0).traceId())) {
@@ -396,56 +704,79 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
     return Call.create(result);
   }
 
-  @Override public synchronized Call<List<String>> getServiceNames() {
+  @Override public Call<List<String>> getServiceNames() {
     if (!searchEnabled) return Call.emptyList();
-    return Call.create(new ArrayList<>(serviceToTraceIds.keySet()));
+    Set<String> result = new TreeSet<>();
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        result.addAll(stripe.serviceToTraceIds.keySet());
+      }
+    }
+    return Call.create(new ArrayList<>(result));
   }
 
-  @Override public synchronized Call<List<String>> getRemoteServiceNames(String service) {
+  @Override public Call<List<String>> getRemoteServiceNames(String service) {
     if (service.isEmpty() || !searchEnabled) return Call.emptyList();
     service = service.toLowerCase(Locale.ROOT); // service names are always lowercase!
-    return Call.create(
-        new ArrayList<>(serviceToRemoteServiceNames.get(service)));
+    Set<String> result = new LinkedHashSet<>();
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        result.addAll(stripe.serviceToRemoteServiceNames.get(service));
+      }
+    }
+    return Call.create(new ArrayList<>(result));
   }
 
-  @Override public synchronized Call<List<String>> getSpanNames(String service) {
+  @Override public Call<List<String>> getSpanNames(String service) {
     if (service.isEmpty() || !searchEnabled) return Call.emptyList();
     service = service.toLowerCase(Locale.ROOT); // service names are always lowercase!
-    return Call.create(new ArrayList<>(serviceToSpanNames.get(service)));
+    Set<String> result = new LinkedHashSet<>();
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        result.addAll(stripe.serviceToSpanNames.get(service));
+      }
+    }
+    return Call.create(new ArrayList<>(result));
   }
 
-  @Override
-  public synchronized Call<List<DependencyLink>> getDependencies(long endTs, long lookback) {
+  // We don't have a query parameter for strictTraceId when fetching dependency links, so we
+  // ignore traceIdHigh. Otherwise, a single trace can appear as two, doubling callCount.
+  @Override public Call<List<DependencyLink>> getDependencies(long endTs, long lookback) {
     if (endTs <= 0) throw new IllegalArgumentException("endTs <= 0");
     if (lookback <= 0) throw new IllegalArgumentException("lookback <= 0");
 
-    Set<String> lowTraceIdsInRange =
-      lowTraceIdsInRange(spansByTraceIdTimestamp.keySet(), endTs, lookback);
-    List<DependencyLink> links = getDependencyLinks(lowTraceIdsInRange);
-    return Call.create(links);
-  }
-
-  // We don't have a query parameter for strictTraceId when fetching dependency links, so we
-  // ignore traceIdHigh. Otherwise, a single trace can appear as two, doubling callCount.
-  List<DependencyLink> getDependencyLinks(Set<String> lowTraceIdsInRange) {
-    if (lowTraceIdsInRange.isEmpty()) return Collections.emptyList();
     DependencyLinker linksBuilder = new DependencyLinker();
-    for (String lowTraceId : lowTraceIdsInRange) {
-      linksBuilder.putTrace(spansByTraceId(lowTraceId));
+    boolean empty = true;
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        Iterator<TraceIdTimestamp> latest =
+          new LatestInRange(stripe.spansByTraceIdTimestamp.keySet().iterator(), endTs, lookback);
+        while (latest.hasNext()) {
+          linksBuilder.putTrace(stripe.spansByTraceId(latest.next().lowTraceId));
+          empty = false;
+        }
+      }
     }
-    return linksBuilder.link();
+    if (empty) return Call.emptyList();
+    return Call.create(linksBuilder.link());
   }
 
-  @Override public synchronized Call<List<String>> getKeys() {
+  @Override public Call<List<String>> getKeys() {
     if (!searchEnabled) return Call.emptyList();
     return autocompleteKeysCall.clone();
   }
 
-  @Override public synchronized Call<List<String>> getValues(String key) {
+  @Override public Call<List<String>> getValues(String key) {
     if (key == null) throw new NullPointerException("key == null");
     if (key.isEmpty()) throw new IllegalArgumentException("key was empty");
     if (!searchEnabled) return Call.emptyList();
-    return Call.create(new ArrayList<>(autocompleteTags.get(key)));
+    Set<String> result = new LinkedHashSet<>();
+    for (InMemoryStorage stripe : stripes) {
+      synchronized (stripe) {
+        result.addAll(stripe.autocompleteTags.get(key));
+      }
+    }
+    return Call.create(new ArrayList<>(result));
   }
 
   static final Comparator<String> STRING_COMPARATOR = new Comparator<String>() {
@@ -465,7 +796,8 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
         long x = left.timestamp, y = right.timestamp;
         int result = Long.compare(x, y); // Long.compareTo is JRE 7+
         if (result != 0) return -result; // use negative as we are descending
-        return right.lowTraceId.compareTo(left.lowTraceId);
+        // unsigned comparison has the same order as the fixed-width hex of the trace ID
+        return Long.compareUnsigned(right.lowTraceId, left.lowTraceId);
       }
 
       @Override public String toString() {
@@ -473,30 +805,86 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
       }
     };
 
-  static final class ServiceNameToTraceIds extends SortedMultimap<String, String> {
-    ServiceNameToTraceIds() {
-      super(STRING_COMPARATOR);
+  // Not synchronized as every exposed method on the enclosing type locks the stripe it reads
+  static final class ServiceNameToTraceIds {
+    final SortedMap<String, TraceIdSet> delegate = new TreeMap<>(STRING_COMPARATOR);
+
+    Set<String> keySet() {
+      return delegate.keySet();
     }
 
-    @Override Set<String> valueContainer() {
-      return new LinkedHashSet<>();
+    void put(String serviceName, long lowTraceId) {
+      TraceIdSet lowTraceIds = delegate.get(serviceName);
+      if (lowTraceIds == null) delegate.put(serviceName, lowTraceIds = new TraceIdSet());
+      lowTraceIds.add(lowTraceId);
     }
 
-    /** Returns service names orphaned by removing the trace ID */
-    Set<String> removeServiceIfTraceId(String lowTraceId) {
-      Set<String> result = new LinkedHashSet<>();
-      for (Map.Entry<String, Collection<String>> entry : delegate.entrySet()) {
-        Collection<String> lowTraceIds = entry.getValue();
-        if (lowTraceIds.remove(lowTraceId) && lowTraceIds.isEmpty()) {
-          result.add(entry.getKey());
-        }
+    /** Returns the lower 64-bit trace IDs of the service, or null if there are none. */
+    TraceIdSet get(String serviceName) {
+      return delegate.get(serviceName);
+    }
+
+    void clear() {
+      delegate.clear();
+    }
+
+    /** Returns true if the service was orphaned by removing the trace ID. */
+    boolean remove(String serviceName, long lowTraceId) {
+      TraceIdSet lowTraceIds = delegate.get(serviceName);
+      if (lowTraceIds == null || !lowTraceIds.remove(lowTraceId) || !lowTraceIds.isEmpty()) {
+        return false;
       }
-      delegate.keySet().removeAll(result);
-      return result;
+      delegate.remove(serviceName);
+      return true;
     }
   }
 
-  // Not synchronized as every exposed method on the enclosing type is
+  /** Traces first received in a period of time, which are evicted together. */
+  static final class Generation {
+    final long firstReceivedMillis;
+    long lastReceivedMillis;
+    final TraceIdSet lowTraceIds = new TraceIdSet();
+    /** Spans and their estimated bytes, in the traces of this generation. */
+    int spanCount;
+    long byteCount;
+
+    Generation(long firstReceivedMillis) {
+      this.firstReceivedMillis = firstReceivedMillis;
+    }
+  }
+
+  /**
+   * Insertion-ordered set of spans sharing a trace ID and millisecond timestamp. Usually, there's
+   * only one, so this retains an array instead of the table and entries of a {@link
+   * LinkedHashSet}. The trade-off is a linear search for duplicates when adding.
+   */
+  static final class SpanSet extends AbstractCollection<Span> {
+    Span[] spans = new Span[1];
+    int size;
+
+    @Override public boolean add(Span span) {
+      for (int i = 0; i < size; i++) {
+        if (spans[i].equals(span)) return false;
+      }
+      if (size == spans.length) spans = Arrays.copyOf(spans, size * 2);
+      spans[size++] = span;
+      return true;
+    }
+
+    @Override public Iterator<Span> iterator() {
+      return Collections.unmodifiableList(Arrays.asList(spans).subList(0, size)).iterator();
+    }
+
+    @Override public Object[] toArray() { // used by ArrayList.addAll
+      return Arrays.copyOf(spans, size, Object[].class);
+    }
+
+    @Override public int size() {
+      return size;
+    }
+  }
+
+  // Not synchronized as every exposed method on the enclosing type locks the stripe it reads
   abstract static class SortedMultimap<K, V> {
     final SortedMap<K, Collection<V>> delegate;
     int size = 0;
@@ -515,12 +903,15 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
       return size;
     }
 
-    void put(K key, V value) {
+    /** Returns true if the key was added as a result of this call. */
+    boolean put(K key, V value) {
       Collection<V> valueContainer = delegate.get(key);
-      if (valueContainer == null) {
+      boolean newKey = valueContainer == null;
+      if (newKey) {
         delegate.put(key, valueContainer = valueContainer());
       }
       if (valueContainer.add(value)) size++;
+      return newKey;
     }
 
     Collection<V> remove(K key) {
@@ -540,25 +931,123 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
     }
   }
 
-  List<Span> spansByTraceId(String lowTraceId) {
+  List<Span> spansByTraceId(long lowTraceId) {
     List<Span> sameTraceId = new ArrayList<>();
-    for (TraceIdTimestamp traceIdTimestamp : traceIdToTraceIdTimestamps.get(lowTraceId)) {
-      sameTraceId.addAll(spansByTraceIdTimestamp.get(traceIdTimestamp));
+    long[] timestamps = traceIdToTimestamps.get(lowTraceId);
+    if (timestamps == null) return sameTraceId;
+    for (int i = 1, length = (int) timestamps[0]; i <= length; i++) {
+      sameTraceId.addAll(
+        spansByTraceIdTimestamp.get(new TraceIdTimestamp(lowTraceId, timestamps[i])));
     }
     return sameTraceId;
   }
 
-  Collection<TraceIdTimestamp> traceIdTimestampsByServiceName(String serviceName) {
-    List<TraceIdTimestamp> traceIdTimestamps = new ArrayList<>();
-    for (String lowTraceId : serviceToTraceIds.get(serviceName)) {
-      traceIdTimestamps.addAll(traceIdToTraceIdTimestamps.get(lowTraceId));
+  /** Returns the timestamps of each trace including the service, most recent first. */
+  Iterator<TraceIdTimestamp> traceIdTimestampsByServiceName(String serviceName) {
+    TraceIdSet lowTraceIds = serviceToTraceIds.get(serviceName);
+    if (lowTraceIds == null) return Collections.emptyIterator();
+    long[] traceIds = lowTraceIds.toArray();
+    int size = 0;
+    for (long lowTraceId : traceIds) size += (int) traceIdToTimestamps.get(lowTraceId)[0];
+
+    DescendingTimestamps result = new DescendingTimestamps(size);
+    for (long lowTraceId : traceIds) {
+      long[] timestamps = traceIdToTimestamps.get(lowTraceId);
+      for (int i = 1, length = (int) timestamps[0]; i <= length; i++) {
+        result.add(lowTraceId, timestamps[i]);
+      }
+    }
+    return result.heapify();
+  }
+
+  /**
+   * Iterates primitive trace ID timestamps in {@link #TIMESTAMP_DESCENDING} order, by removing
+   * them from a binary heap. Building the heap is linear and each read is logarithmic, so a query
+   * that stops at its limit doesn't sort every trace of a service.
+   */
+  static final class DescendingTimestamps implements Iterator<TraceIdTimestamp> {
+    final long[] lowTraceIds, timestamps;
+    int size;
+
+    DescendingTimestamps(int capacity) {
+      lowTraceIds = new long[capacity];
+      timestamps = new long[capacity];
+    }
+
+    void add(long lowTraceId, long timestamp) {
+      lowTraceIds[size] = lowTraceId;
+      timestamps[size++] = timestamp;
+    }
+
+    DescendingTimestamps heapify() {
+      for (int i = size / 2 - 1; i >= 0; i--) siftDown(i);
+      return this;
+    }
+
+    @Override public boolean hasNext() {
+      return size > 0;
+    }
+
+    @Override public TraceIdTimestamp next() {
+      if (size == 0) throw new NoSuchElementException();
+      TraceIdTimestamp result = new TraceIdTimestamp(lowTraceIds[0], timestamps[0]);
+      size--;
+      lowTraceIds[0] = lowTraceIds[size];
+      timestamps[0] = timestamps[size];
+      siftDown(0);
+      return result;
+    }
+
+    void siftDown(int i) {
+      while (true) {
+        int first = i, left = 2 * i + 1, right = left + 1;
+        if (left < size && before(left, first)) first = left;
+        if (right < size && before(right, first)) first = right;
+        if (first == i) return;
+        swap(i, first);
+        i = first;
+      }
+    }
+
+    /** Returns true if the entry at {@code i} is ordered before the one at {@code j}. */
+    boolean before(int i, int j) {
+      if (timestamps[i] != timestamps[j]) return timestamps[i] > timestamps[j];
+      return Long.compareUnsigned(lowTraceIds[i], lowTraceIds[j]) > 0;
+    }
+
+    void swap(int i, int j) {
+      long lowTraceId = lowTraceIds[i], timestamp = timestamps[i];
+      lowTraceIds[i] = lowTraceIds[j];
+      timestamps[i] = timestamps[j];
+      lowTraceIds[j] = lowTraceId;
+      timestamps[j] = timestamp;
     }
-    traceIdTimestamps.sort(TIMESTAMP_DESCENDING);
-    return traceIdTimestamps;
   }
 
-  static String lowTraceId(String traceId) {
-    return traceId.length() == 32 ? traceId.substring(16) : traceId;
+  /**
+   * Returns the input with the timestamp appended, growing it as needed. The first element of the
+   * result is the count of timestamps that follow it.
+   */
+  static long[] appendTimestamp(long[] timestamps, long timestamp) {
+    if (timestamps == null) return new long[] {1L, timestamp};
+    int length = (int) timestamps[0] + 1;
+    if (length == timestamps.length) timestamps = Arrays.copyOf(timestamps, length * 2);
+    timestamps[0] = length;
+    timestamps[length] = timestamp;
+    return timestamps;
+  }
+
+  static long lowTraceId(String traceId) {
+    return HexCodec.lowerHexToUnsignedLong(traceId);
+  }
+
+  InMemoryStorage stripe(long lowTraceId) {
+    return stripes[stripeIndex(lowTraceId)];
+  }
+
+  int stripeIndex(long lowTraceId) {
+    if (stripes.length == 1) return 0;
+    return TraceIdTable.hash(lowTraceId) & (stripes.length - 1);
   }
 
   @Override public InMemoryStorage traces() {
@@ -585,10 +1074,10 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
   }
 
   static final class TraceIdTimestamp {
-    final String lowTraceId;
+    final long lowTraceId;
     final long timestamp;
 
-    TraceIdTimestamp(String lowTraceId, long timestamp) {
+    TraceIdTimestamp(long lowTraceId, long timestamp) {
       this.lowTraceId = lowTraceId;
       this.timestamp = timestamp;
     }
@@ -597,13 +1086,13 @@ public final class InMemoryStorage extends StorageComponent implements SpanStore
       if (o == this) return true;
       if (!(o instanceof TraceIdTimestamp)) return false;
       TraceIdTimestamp that = (TraceIdTimestamp) o;
-      return lowTraceId.equals(that.lowTraceId) && timestamp == that.timestamp;
+      return lowTraceId == that.lowTraceId && timestamp == that.timestamp;
     }
 
     @Override public int hashCode() {
       int h$ = 1;
       h$ *= 1000003;
-      h$ ^= lowTraceId.hashCode();
+      h$ ^= (int) ((lowTraceId >>> 32) ^ lowTraceId);
       h$ *= 1000003;
       h$ ^= (int) ((timestamp >>> 32) ^ timestamp);
       return h$;
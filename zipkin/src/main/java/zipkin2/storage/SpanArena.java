@@ -0,0 +1,245 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.codec.SpanBytesEncoder;
+
+/**
+ * Holds {@link SpanBytesEncoder#PROTO3 proto3} encoded spans in direct byte buffers, which are used
+ * as a ring of fixed-size segments. Spans are decoded only when read.
+ *
+ * <p>Each record is the length of the encoded span, its lower 64-bit trace ID, then the encoded
+ * span. The handle of a record is the sequence number of the segment it is written to in the upper
+ * 32 bits, and its offset in the lower 32 bits.
+ *
+ * <p>When the ring is full, the oldest segment is overwritten. Before that happens, the {@link
+ * Evictor} is called for each record in it, so the owner can drop the traces that are still
+ * referenced from its indexes. This replaces a scan of the indexes with a sequential read. As the
+ * owner's indexes change during eviction, it must {@link #reserve(int, int) reserve} space for a
+ * span before adding it to a container from {@link #newSpans()}.
+ *
+ * <p>Spans are {@link #encode(List, int) encoded} a batch at a time into a buffer reused across
+ * batches, and copied from there into a segment. This avoids encoding a span once to compare it
+ * against existing records and again to write it.
+ *
+ * <p>Not thread-safe.
+ */
+final class SpanArena {
+  /** Segments aren't larger than this, so the oldest data is evicted incrementally. */
+  static final int MAX_SEGMENT_BYTES = 64 * 1024 * 1024;
+  /** Overwriting a segment evicts at most this fraction of the arena. */
+  static final int MIN_SEGMENTS = 8;
+  /** Record length and lower 64-bit trace ID. */
+  static final int HEADER_BYTES = 4 + 8;
+
+  interface Evictor {
+    /**
+     * Called for each record in a segment about to be overwritten, with the segment's sequence
+     * number.
+     */
+    void evict(long lowTraceId, long segment);
+  }
+
+  final Evictor evictor;
+  final int segmentBytes;
+  /** Lazily allocated to avoid reserving direct memory that isn't used yet. */
+  final ByteBuffer[] segments;
+  /** The end of data in each segment. */
+  final int[] limits;
+  long segment; // sequence number of the segment currently written
+  int position; // offset in the current segment
+  /** Holds the encoded spans of the current batch. */
+  byte[] scratch = new byte[0];
+  /** The span in {@link #scratch} to write on the next add, or a negative length if none. */
+  int reservedOffset, reservedLength = -1;
+
+  SpanArena(long capacity, Evictor evictor) {
+    if (capacity < MIN_SEGMENTS * HEADER_BYTES) {
+      throw new IllegalArgumentException("capacity too small");
+    }
+    int count =
+      (int) Math.max(MIN_SEGMENTS, (capacity + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES);
+    this.segmentBytes = (int) (capacity / count);
+    this.segments = new ByteBuffer[count];
+    this.limits = new int[count];
+    this.evictor = evictor;
+  }
+
+  /**
+   * Encodes the spans in order into a buffer reused across calls. {@code sizeInBytes} is the sum of
+   * their {@link SpanBytesEncoder#sizeInBytes(Span) encoded sizes}.
+   */
+  void encode(List<Span> spans, int sizeInBytes) {
+    if (scratch.length < sizeInBytes) scratch = new byte[sizeInBytes];
+    SpanBytesEncoder.PROTO3.encodeList(spans, scratch, 0);
+  }
+
+  /**
+   * Ensures the current segment can hold the span at the given offset of the last {@link
+   * #encode(List, int) encoded} batch, overwriting the oldest segment if not. The next span added
+   * to a container is written from there.
+   */
+  void reserve(int offset, int encodedBytes) {
+    int recordBytes = HEADER_BYTES + encodedBytes;
+    if (recordBytes > segmentBytes) {
+      throw new IllegalArgumentException("span of " + encodedBytes
+        + " bytes is larger than the off-heap segment size of " + segmentBytes + " bytes");
+    }
+    if (position + recordBytes > segmentBytes) nextSegment();
+    reservedOffset = offset;
+    reservedLength = encodedBytes;
+  }
+
+  /** Returns the handle of a record holding the reserved span. */
+  long append(long lowTraceId) {
+    int recordBytes = HEADER_BYTES + reservedLength;
+    ByteBuffer buffer = buffer(segment).duplicate();
+    long handle = (segment << 32) | position;
+    buffer.putInt(position, reservedLength);
+    buffer.putLong(position + 4, lowTraceId);
+    buffer.position(position + HEADER_BYTES);
+    buffer.put(scratch, reservedOffset, reservedLength);
+    position += recordBytes;
+    limits[index(segment)] = position;
+    return handle;
+  }
+
+  Span decode(long handle) {
+    ByteBuffer buffer = buffer(segmentOf(handle)).duplicate();
+    int offset = (int) handle;
+    int length = buffer.getInt(offset);
+    buffer.limit(offset + HEADER_BYTES + length).position(offset + HEADER_BYTES);
+    return SpanBytesDecoder.PROTO3.decodeOne(buffer);
+  }
+
+  /** Returns true if the record holds the same bytes as the reserved span. */
+  boolean recordEqualsReserved(long handle) {
+    ByteBuffer buffer = buffer(segmentOf(handle));
+    int offset = (int) handle;
+    if (buffer.getInt(offset) != reservedLength) return false;
+    for (int i = 0; i < reservedLength; i++) {
+      if (buffer.get(offset + HEADER_BYTES + i) != scratch[reservedOffset + i]) return false;
+    }
+    return true;
+  }
+
+  /** Returns the sequence number of the segment holding the record. */
+  static long segmentOf(long handle) {
+    return handle >>> 32;
+  }
+
+  /** Discards all records without calling the {@link Evictor}. */
+  void clear() {
+    Arrays.fill(limits, 0);
+    segment = 0L;
+    position = 0;
+    reservedLength = -1;
+  }
+
+  /** Moves to the next segment, evicting any records in it from the previous lap of the ring. */
+  void nextSegment() {
+    segment++;
+    position = 0;
+    int index = index(segment);
+    long previous = segment - segments.length;
+    if (previous >= 0L) {
+      ByteBuffer buffer = segments[index];
+      for (int offset = 0, limit = limits[index]; offset < limit; ) {
+        int length = buffer.getInt(offset);
+        evictor.evict(buffer.getLong(offset + 4), previous);
+        offset += HEADER_BYTES + length;
+      }
+    }
+    limits[index] = 0;
+  }
+
+  ByteBuffer buffer(long segment) {
+    int index = index(segment);
+    ByteBuffer result = segments[index];
+    if (result == null) result = segments[index] = ByteBuffer.allocateDirect(segmentBytes);
+    return result;
+  }
+
+  int index(long segment) {
+    return (int) (segment % segments.length);
+  }
+
+  /** Returns a new container for spans that share a trace ID and timestamp. */
+  Spans newSpans() {
+    return new Spans();
+  }
+
+  /** Like {@link InMemoryStorage.SpanSet}, except spans are held in this arena. */
+  final class Spans extends AbstractCollection<Span> {
+    long[] handles = new long[1];
+    int size;
+
+    /**
+     * Writes the {@link #reserve(int, int) reserved} encoding of the span into the arena, unless an
+     * identical one was already added.
+     */
+    @Override public boolean add(Span span) {
+      if (reservedLength < 0) throw new IllegalStateException("space wasn't reserved");
+      try {
+        for (int i = 0; i < size; i++) {
+          if (recordEqualsReserved(handles[i])) return false;
+        }
+        if (size == handles.length) handles = Arrays.copyOf(handles, size * 2);
+        handles[size++] = append(InMemoryStorage.lowTraceId(span.traceId()));
+        return true;
+      } finally {
+        reservedLength = -1;
+      }
+    }
+
+    /** Returns the sum of the encoded lengths of these spans, without decoding them. */
+    long sizeInBytes() {
+      long result = 0L;
+      for (int i = 0; i < size; i++) {
+        long handle = handles[i];
+        result += buffer(segmentOf(handle)).getInt((int) handle);
+      }
+      return result;
+    }
+
+    boolean references(long segment) {
+      for (int i = 0; i < size; i++) {
+        if (segmentOf(handles[i]) == segment) return true;
+      }
+      return false;
+    }
+
+    @Override public Iterator<Span> iterator() {
+      return new Iterator<Span>() {
+        int i;
+
+        @Override public boolean hasNext() {
+          return i < size;
+        }
+
+        @Override public Span next() {
+          if (!hasNext()) throw new NoSuchElementException();
+          return decode(handles[i++]);
+        }
+      };
+    }
+
+    @Override public int size() {
+      return size;
+    }
+  }
+
+  @Override public String toString() {
+    return "SpanArena{segments=" + segments.length + ", segmentBytes=" + segmentBytes + "}";
+  }
+}
@@ -27,6 +27,19 @@ public interface SpanStore {
    */
   Call<List<List<Span>>> getTraces(QueryRequest request);
 
+  /**
+   * Like {@link #getTraces(QueryRequest)}, except each trace is passed to the callback as it is
+   * read, instead of collected into a list. The call completes after the last trace is passed.
+   *
+   * <p>The default implementation reads all traces before passing them. Implementations that read
+   * traces one at a time should override this.
+   *
+   * @since 3.5
+   */
+  default Call<Void> streamTraces(QueryRequest request, TraceCallback callback) {
+    return getTraces(request).map(new StreamTraces(callback));
+  }
+
   /**
    * Retrieves spans that share a 128-bit trace id with no ordering expectation or empty if none are
    * found.
@@ -0,0 +1,30 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage;
+
+import java.util.List;
+import zipkin2.Call;
+import zipkin2.Span;
+
+/** Passes each trace of a buffered result to the callback, for storage that can't stream. */
+final class StreamTraces implements Call.Mapper<List<List<Span>>, Void> {
+  final TraceCallback callback;
+
+  StreamTraces(TraceCallback callback) {
+    if (callback == null) throw new NullPointerException("callback == null");
+    this.callback = callback;
+  }
+
+  @Override public Void map(List<List<Span>> input) {
+    for (int i = 0, length = input.size(); i < length; i++) {
+      callback.onTrace(input.get(i));
+    }
+    return null;
+  }
+
+  @Override public String toString() {
+    return "StreamTraces(" + callback + ")";
+  }
+}
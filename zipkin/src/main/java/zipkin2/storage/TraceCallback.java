@@ -0,0 +1,34 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage;
+
+import java.util.List;
+import zipkin2.Span;
+
+/**
+ * Receives traces one at a time, as a streaming query reads them from storage. This allows callers
+ * such as the query api to write each trace as it arrives, instead of holding all results in
+ * memory.
+ *
+ * <p>This may block, for example to wait for a client to consume traces already written. To
+ * allow that, callers {@linkplain zipkin2.Call#execute() execute} streaming queries on a thread
+ * that can block, such as a blocking task executor. Storage invokes the callback on the thread
+ * executing the query. When a streaming query is {@linkplain zipkin2.Call#enqueue enqueued}
+ * instead, the callback may run on an I/O thread of the storage client, so must not block.
+ *
+ * @see SpanStore#streamTraces(QueryRequest, TraceCallback)
+ * @see Traces#streamTraces(Iterable, TraceCallback)
+ * @since 3.5
+ */
+public interface TraceCallback {
+  /**
+   * Called for each trace found, in the order the query would have listed them.
+   *
+   * <p>Throwing an exception stops the query, which fails with it.
+   *
+   * @param trace spans that share a trace ID, never empty
+   */
+  void onTrace(List<Span> trace);
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage;
+
+/** A map keyed on lower 64-bit trace IDs that doesn't box them. Not thread-safe. */
+final class TraceIdMap<V> extends TraceIdTable {
+  Object[] values = new Object[MIN_CAPACITY];
+  V zeroValue; // null when absent
+
+  int size() {
+    return zeroValue != null ? size + 1 : size;
+  }
+
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @SuppressWarnings("unchecked") V get(long key) {
+    if (key == 0L) return zeroValue;
+    int slot = slot(key);
+    return slot >= 0 ? (V) values[slot] : null;
+  }
+
+  /** Returns the previous value, or null if there was none. */
+  @SuppressWarnings("unchecked") V put(long key, V value) {
+    if (value == null) throw new NullPointerException("value == null");
+    if (key == 0L) {
+      V previous = zeroValue;
+      zeroValue = value;
+      return previous;
+    }
+    int slot = slot(key);
+    if (slot >= 0) {
+      V previous = (V) values[slot];
+      values[slot] = value;
+      return previous;
+    }
+    slot = insert(~slot, key); // may resize values, so assign after
+    values[slot] = value;
+    return null;
+  }
+
+  /** Returns the removed value, or null if there was none. */
+  @SuppressWarnings("unchecked") V remove(long key) {
+    if (key == 0L) {
+      V previous = zeroValue;
+      zeroValue = null;
+      return previous;
+    }
+    int slot = slot(key);
+    if (slot < 0) return null;
+    V previous = (V) values[slot];
+    removeSlot(slot);
+    return previous;
+  }
+
+  @Override void clear() {
+    super.clear();
+    values = new Object[MIN_CAPACITY];
+    zeroValue = null;
+  }
+
+  /** Returns a copy of the trace IDs in this map, in no particular order. */
+  long[] keys() {
+    long[] result = new long[size()];
+    int i = zeroValue != null ? 1 : 0; // the zero key is already in the result
+    for (long key : keys) {
+      if (key != 0L) result[i++] = key;
+    }
+    return result;
+  }
+
+  @Override void resize(int capacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new long[capacity];
+    values = new Object[capacity];
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key == 0L) continue;
+      int slot = ~slot(key);
+      keys[slot] = key;
+      values[slot] = oldValues[i];
+    }
+  }
+
+  @Override void moveValue(int from, int to) {
+    values[to] = values[from];
+  }
+
+  @Override void clearValue(int slot) {
+    values[slot] = null;
+  }
+
+  @Override public String toString() {
+    return "TraceIdMap{size=" + size() + "}";
+  }
+}
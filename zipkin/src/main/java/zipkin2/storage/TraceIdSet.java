@@ -0,0 +1,70 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage;
+
+import java.util.Arrays;
+
+/** A set of lower 64-bit trace IDs that doesn't box them. Not thread-safe. */
+final class TraceIdSet extends TraceIdTable {
+  boolean containsZero;
+
+  int size() {
+    return containsZero ? size + 1 : size;
+  }
+
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+  boolean contains(long key) {
+    if (key == 0L) return containsZero;
+    return slot(key) >= 0;
+  }
+
+  boolean add(long key) {
+    if (key == 0L) {
+      if (containsZero) return false;
+      containsZero = true;
+      return true;
+    }
+    int slot = slot(key);
+    if (slot >= 0) return false;
+    insert(~slot, key);
+    return true;
+  }
+
+  boolean remove(long key) {
+    if (key == 0L) {
+      if (!containsZero) return false;
+      containsZero = false;
+      return true;
+    }
+    int slot = slot(key);
+    if (slot < 0) return false;
+    removeSlot(slot);
+    return true;
+  }
+
+  @Override void clear() {
+    super.clear();
+    containsZero = false;
+  }
+
+  /** Returns a copy of the trace IDs in this set, in no particular order. */
+  long[] toArray() {
+    long[] result = new long[size()];
+    int i = containsZero ? 1 : 0; // the zero key is already in the result
+    for (long key : keys) {
+      if (key != 0L) result[i++] = key;
+    }
+    return result;
+  }
+
+  @Override public String toString() {
+    long[] result = toArray();
+    Arrays.sort(result);
+    return "TraceIdSet" + Arrays.toString(result);
+  }
+}
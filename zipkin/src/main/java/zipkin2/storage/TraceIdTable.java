@@ -0,0 +1,84 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage;
+
+/**
+ * Open-addressed hash table of lower 64-bit trace IDs, used by {@link InMemoryStorage} indexes.
+ *
+ * <p>A hex string key plus its tree or hash entry retain over 100 bytes per trace ID. Here, a trace
+ * ID retains its 8 byte primitive, divided by the load factor. Removal shifts back colliding keys
+ * instead of leaving tombstones, so tables don't degrade as traces are evicted.
+ *
+ * <p>Zero is the marker of an empty slot, so subtypes track it separately. Not thread-safe.
+ */
+abstract class TraceIdTable {
+  static final int MIN_CAPACITY = 8; // must be a power of two
+
+  long[] keys = new long[MIN_CAPACITY];
+  /** Count of non-zero keys in the table. */
+  int size;
+
+  /** Returns the slot holding the key, or the complement of the empty slot it would go into. */
+  final int slot(long key) {
+    int mask = keys.length - 1;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      long existing = keys[i];
+      if (existing == key) return i;
+      if (existing == 0L) return ~i;
+    }
+  }
+
+  /** Adds the key into an empty slot, returning its slot after any resize. */
+  final int insert(int slot, long key) {
+    keys[slot] = key;
+    // resize at 75% load factor
+    if (++size <= (keys.length >>> 1) + (keys.length >>> 2)) return slot;
+    resize(keys.length << 1);
+    return slot(key);
+  }
+
+  /** Removes the key in the slot, shifting back any keys that probed past it. */
+  final void removeSlot(int slot) {
+    int mask = keys.length - 1;
+    for (int i = (slot + 1) & mask; keys[i] != 0L; i = (i + 1) & mask) {
+      // Move the key back when the empty slot is between its home slot and where it is now.
+      int home = hash(keys[i]) & mask;
+      if (((i - home) & mask) >= ((i - slot) & mask)) {
+        keys[slot] = keys[i];
+        moveValue(i, slot);
+        slot = i;
+      }
+    }
+    keys[slot] = 0L;
+    clearValue(slot);
+    size--;
+  }
+
+  void resize(int capacity) {
+    long[] oldKeys = keys;
+    keys = new long[capacity];
+    for (long key : oldKeys) {
+      if (key != 0L) keys[~slot(key)] = key;
+    }
+  }
+
+  void clear() {
+    keys = new long[MIN_CAPACITY];
+    size = 0;
+  }
+
+  /** Overridden by tables with values, to follow a key moved during removal. */
+  void moveValue(int from, int to) {
+  }
+
+  /** Overridden by tables with values, to release the value of a removed key. */
+  void clearValue(int slot) {
+  }
+
+  static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L; // spread sequential IDs, such as those used in tests
+    return (int) (h ^ (h >>> 32));
+  }
+}
@@ -46,4 +46,17 @@ public interface Traces {
    * @return traces matching the supplied trace IDs, in any order
    */
   Call<List<List<Span>>> getTraces(Iterable<String> traceIds);
+
+  /**
+   * Like {@link #getTraces(Iterable)}, except each trace is passed to the callback as it is read,
+   * instead of collected into a list. The call completes after the last trace is passed.
+   *
+   * <p>The default implementation reads all traces before passing them. Implementations that read
+   * traces one at a time should override this.
+   *
+   * @since 3.5
+   */
+  default Call<Void> streamTraces(Iterable<String> traceIds, TraceCallback callback) {
+    return getTraces(traceIds).map(new StreamTraces(callback));
+  }
 }
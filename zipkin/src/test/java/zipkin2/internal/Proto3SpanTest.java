@@ -0,0 +1,134 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.internal;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import zipkin2.Endpoint;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesEncoder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.data.MapEntry.entry;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+import static zipkin2.TestObjects.TRACE;
+
+class Proto3SpanTest {
+  @Test void readOne_indexFields() {
+    Proto3Span span = Proto3Span.readOne(SpanBytesEncoder.PROTO3.encode(CLIENT_SPAN));
+
+    assertThat(span.traceId()).isEqualTo(CLIENT_SPAN.traceId());
+    assertThat(span.parentId()).isEqualTo(CLIENT_SPAN.parentId());
+    assertThat(span.id()).isEqualTo(CLIENT_SPAN.id());
+    assertThat(span.kind()).isEqualTo(CLIENT_SPAN.kind());
+    assertThat(span.name()).isEqualTo(CLIENT_SPAN.name());
+    assertThat(span.timestampAsLong()).isEqualTo(CLIENT_SPAN.timestampAsLong());
+    assertThat(span.durationAsLong()).isEqualTo(CLIENT_SPAN.durationAsLong());
+    assertThat(span.localServiceName()).isEqualTo(CLIENT_SPAN.localServiceName());
+    assertThat(span.remoteServiceName()).isEqualTo(CLIENT_SPAN.remoteServiceName());
+    assertThat(span.debug()).isNull();
+    assertThat(span.tags()).isEqualTo(CLIENT_SPAN.tags());
+    assertThat(span.decode()).isEqualTo(CLIENT_SPAN);
+  }
+
+  @Test void readOne_absentFields() {
+    Span minimal = Span.newBuilder().traceId("1").id("2").debug(true).build();
+    Proto3Span span = Proto3Span.readOne(SpanBytesEncoder.PROTO3.encode(minimal));
+
+    assertThat(span.parentId()).isNull();
+    assertThat(span.kind()).isNull();
+    assertThat(span.name()).isNull();
+    assertThat(span.timestampAsLong()).isZero();
+    assertThat(span.durationAsLong()).isZero();
+    assertThat(span.localServiceName()).isNull();
+    assertThat(span.remoteServiceName()).isNull();
+    assertThat(span.debug()).isTrue();
+    assertThat(span.tags()).isEmpty();
+    assertThat(span.decode()).isEqualTo(minimal);
+  }
+
+  /** The encoding can come from another library, which doesn't normalize like we do. */
+  @Test void readOne_normalizesLikeSpan() {
+    byte[] encoded = SpanBytesEncoder.PROTO3.encode(CLIENT_SPAN.toBuilder()
+      .localEndpoint(Endpoint.newBuilder().serviceName("frontend").build())
+      .build());
+    // Uppercase the service name in the encoded bytes
+    for (int i = 0; i < encoded.length - 8; i++) {
+      if (new String(encoded, i, 8, UTF_8).equals("frontend")) {
+        System.arraycopy("FrontEnd".getBytes(UTF_8), 0, encoded, i, 8);
+      }
+    }
+
+    Proto3Span span = Proto3Span.readOne(encoded);
+    assertThat(span.localServiceName()).isEqualTo("frontend");
+    assertThat(span.decode().localServiceName()).isEqualTo("frontend");
+  }
+
+  @Test void readList_sharesBytes() {
+    byte[] encoded = SpanBytesEncoder.PROTO3.encodeList(TRACE);
+    List<Proto3Span> spans = Proto3Span.readList(encoded);
+
+    assertThat(spans).extracting(Proto3Span::decode).isEqualTo(TRACE);
+
+    ByteBuffer concatenated = ByteBuffer.allocate(encoded.length);
+    for (Proto3Span span : spans) span.writeTo(concatenated);
+    assertThat(concatenated.array()).isEqualTo(encoded);
+    assertThat(spans.get(1).toByteArray())
+      .isEqualTo(SpanBytesEncoder.PROTO3.encode(TRACE.get(1)));
+  }
+
+  @Test void readList_byteBuffer() {
+    byte[] encoded = SpanBytesEncoder.PROTO3.encodeList(TRACE);
+    ByteBuffer offset = ByteBuffer.allocate(encoded.length + 2);
+    offset.position(2);
+    offset.slice().put(encoded);
+    ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length).put(encoded);
+    direct.flip();
+
+    assertThat(Proto3Span.readList((ByteBuffer) offset.position(2)))
+      .extracting(Proto3Span::decode).isEqualTo(TRACE);
+    assertThat(Proto3Span.readList(direct))
+      .extracting(Proto3Span::decode).isEqualTo(TRACE);
+  }
+
+  @Test void readList_empty() {
+    assertThat(Proto3Span.readList(new byte[0])).isEmpty();
+  }
+
+  @Test void readOne_missingId() {
+    byte[] encoded = SpanBytesEncoder.PROTO3.encode(CLIENT_SPAN);
+    // Rewrite the span ID field number to an unknown one, so that it is skipped
+    for (int i = 0; i < encoded.length - 1; i++) {
+      if (encoded[i] == 0x1a && encoded[i + 1] == 8) {
+        encoded[i] = (byte) (15 << 3 | 2);
+        break;
+      }
+    }
+
+    assertThatThrownBy(() -> Proto3Span.readOne(encoded))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Missing : id reading Span from proto3");
+  }
+
+  @Test void readList_truncated() {
+    byte[] encoded = SpanBytesEncoder.PROTO3.encodeList(TRACE);
+    byte[] truncated = new byte[encoded.length - 1];
+    System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+    assertThatThrownBy(() -> Proto3Span.readList(truncated))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessageEndingWith("reading List<Span> from proto3");
+  }
+
+  @Test void tags_readLazily() {
+    Span span = CLIENT_SPAN.toBuilder().clearTags().putTag("a", "1").putTag("error", "").build();
+
+    assertThat(Proto3Span.readOne(SpanBytesEncoder.PROTO3.encode(span)).tags())
+      .containsExactly(entry("a", "1"), entry("error", ""));
+  }
+}
@@ -5,20 +5,28 @@
 package zipkin2.storage;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 import zipkin2.Component;
 import zipkin2.DependencyLink;
 import zipkin2.Endpoint;
 import zipkin2.Span;
+import zipkin2.codec.SpanBytesEncoder;
 
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static zipkin2.TestObjects.CLIENT_SPAN;
+import static zipkin2.TestObjects.FRONTEND;
 import static zipkin2.TestObjects.TODAY;
+import static zipkin2.TestObjects.TRACE;
 import static zipkin2.TestObjects.requestBuilder;
 
 class InMemoryStorageTest {
@@ -70,6 +78,184 @@ class InMemoryStorageTest {
       .containsExactly(earlyTraces);
   }
 
+  @Test void descendingTimestamps_ordersLikeComparator() {
+    Random random = new Random(1L);
+    List<InMemoryStorage.TraceIdTimestamp> expected = new ArrayList<>();
+    InMemoryStorage.DescendingTimestamps heap = new InMemoryStorage.DescendingTimestamps(1000);
+    for (int i = 0; i < 1000; i++) {
+      // few distinct timestamps and some negative trace IDs check the unsigned tie-break
+      long lowTraceId = random.nextLong(), timestamp = random.nextInt(100);
+      expected.add(new InMemoryStorage.TraceIdTimestamp(lowTraceId, timestamp));
+      heap.add(lowTraceId, timestamp);
+    }
+    expected.sort(InMemoryStorage.TIMESTAMP_DESCENDING);
+
+    List<InMemoryStorage.TraceIdTimestamp> actual = new ArrayList<>();
+    heap.heapify().forEachRemaining(actual::add);
+    assertThat(actual).containsExactlyElementsOf(expected);
+  }
+
+  @Test void getTraces_serviceName_mostRecentFirst() throws IOException {
+    List<Span> spans = IntStream.rangeClosed(1, 10).mapToObj(i -> CLIENT_SPAN.toBuilder()
+      .traceId(Integer.toHexString(i)).id(Integer.toHexString(i))
+      .timestamp((TODAY - 10 + (i * 7 % 10)) * 1000).build()).collect(toList());
+    storage.accept(spans).execute();
+
+    List<List<Span>> traces = storage.getTraces(requestBuilder()
+      .serviceName(CLIENT_SPAN.localServiceName()).limit(3).build()).execute();
+    assertThat(traces).extracting(t -> t.get(0).timestampAsLong())
+      .containsExactly((TODAY - 1) * 1000, (TODAY - 2) * 1000, (TODAY - 3) * 1000);
+  }
+
+  @Test void concurrent_getTraces_mergesStripesByTimestamp() throws IOException {
+    storage = InMemoryStorage.newBuilder().concurrent(true).build();
+
+    List<Span> spans = IntStream.rangeClosed(1, 100).mapToObj(i -> Span.newBuilder().name("get")
+      .traceId(Integer.toHexString(i)).id(Integer.toHexString(i))
+      .timestamp((TODAY - i) * 1000).duration(1L)
+      .localEndpoint(FRONTEND).build()).collect(toList());
+    storage.accept(spans).execute();
+
+    assertThat(storage.getTraces(requestBuilder().limit(10).build()).execute())
+      .containsExactlyElementsOf(spans.subList(0, 10).stream().map(List::of).toList());
+    assertThat(storage.getTraces(requestBuilder().serviceName("frontend").limit(10).build())
+      .execute())
+      .containsExactlyElementsOf(spans.subList(0, 10).stream().map(List::of).toList());
+  }
+
+  @Test void concurrent_acceptsFromManyThreads() throws Exception {
+    storage = InMemoryStorage.newBuilder().concurrent(true).build();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        int offset = thread * 1000;
+        futures.add(executor.submit(() -> {
+          for (int i = offset + 1; i <= offset + 1000; i++) {
+            storage.accept(List.of(CLIENT_SPAN.toBuilder()
+              .traceId(Integer.toHexString(i)).id(Integer.toHexString(i)).build())).execute();
+            storage.getTraces(requestBuilder().limit(1).build()).execute();
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) future.get();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(storage.acceptedSpanCount()).isEqualTo(4000);
+    assertThat(storage.getTraces()).hasSize(4000);
+    assertThat(storage.getServiceNames().execute()).containsExactly("frontend");
+  }
+
+  @Test void concurrent_maxSpanCountIsDividedAcrossStripes() throws IOException {
+    storage = InMemoryStorage.newBuilder().concurrent(true).maxSpanCount(160).build();
+
+    for (int i = 1; i <= 1000; i++) {
+      storage.accept(List.of(CLIENT_SPAN.toBuilder()
+        .traceId(Integer.toHexString(i)).id(Integer.toHexString(i)).build())).execute();
+    }
+
+    assertThat(storage.stripes).hasSize(InMemoryStorage.CONCURRENT_STRIPES)
+      .allSatisfy(stripe -> assertThat(stripe).extracting("spansByTraceIdTimestamp.size")
+        .satisfies(size -> assertThat((int) size).isLessThanOrEqualTo(10)));
+  }
+
+  @Test void maxSpanCount_evictsOldestGeneration() throws IOException {
+    storage = InMemoryStorage.newBuilder().maxSpanCount(160).build();
+
+    List<Span> spans = newSpans(1000);
+    for (Span span : spans) storage.accept(List.of(span)).execute();
+
+    // a generation is a sixteenth of the span count
+    assertThat(storage.getTraces())
+      .hasSizeBetween(150, 160)
+      .contains(List.of(spans.get(999)))
+      .doesNotContain(List.of(spans.get(0)));
+  }
+
+  @Test void maxAge_evictsTracesReceivedBeforeIt() {
+    storage = InMemoryStorage.newBuilder().maxAge(1000L).build();
+
+    List<Span> spans = newSpans(3);
+    storage.storeSpans(List.of(spans.get(0)), 0L);
+    storage.storeSpans(List.of(spans.get(1)), 500L);
+    storage.storeSpans(List.of(spans.get(2)), 1000L);
+
+    assertThat(storage.getTraces()).containsExactlyInAnyOrder(
+      List.of(spans.get(1)), List.of(spans.get(2)));
+  }
+
+  @Test void maxBytes_evictsOldestGeneration() throws IOException {
+    List<Span> spans = newSpans(1000);
+    long maxBytes = 160L * SpanBytesEncoder.PROTO3.sizeInBytes(spans.get(0));
+    storage = InMemoryStorage.newBuilder().maxBytes(maxBytes).build();
+
+    for (Span span : spans) storage.accept(List.of(span)).execute();
+
+    assertThat(storage.byteCount).isLessThanOrEqualTo(maxBytes);
+    assertThat(storage.getTraces())
+      .hasSizeBetween(150, 160)
+      .contains(List.of(spans.get(999)));
+  }
+
+  @Test void eviction_removesOrphanedServiceNames() throws IOException {
+    storage = InMemoryStorage.newBuilder().maxSpanCount(16).build();
+
+    storage.accept(List.of(CLIENT_SPAN.toBuilder()
+      .localEndpoint(Endpoint.newBuilder().serviceName("orphan").build()).build())).execute();
+    for (Span span : newSpans(16)) storage.accept(List.of(span)).execute();
+
+    assertThat(storage.getServiceNames().execute()).containsExactly("frontend");
+    assertThat(storage.getSpanNames("orphan").execute()).isEmpty();
+  }
+
+  /** Returns single-span traces with the same encoded size, each later than the last. */
+  static List<Span> newSpans(int count) {
+    return IntStream.range(0x1000, 0x1000 + count).mapToObj(i -> CLIENT_SPAN.toBuilder()
+      .traceId(Integer.toHexString(i)).id(Integer.toHexString(i))
+      .timestamp((TODAY * 1000L) + i).build()).toList();
+  }
+
+  @Test void offHeap_roundTripsSpans() throws IOException {
+    storage = InMemoryStorage.newBuilder().offHeapBytes(1 << 20).build();
+
+    storage.accept(TRACE).execute();
+    storage.accept(TRACE).execute(); // identical spans are only stored once
+
+    assertThat(storage.getTrace(CLIENT_SPAN.traceId()).execute())
+      .containsExactlyInAnyOrderElementsOf(TRACE);
+  }
+
+  @Test void offHeap_evictsTracesInOverwrittenSegment() throws IOException {
+    List<Span> spans = IntStream.rangeClosed(0x100, 0x159).mapToObj(i -> CLIENT_SPAN.toBuilder()
+      .traceId(Integer.toHexString(i)).id(Integer.toHexString(i)).build()).toList();
+    int recordBytes = SpanArena.HEADER_BYTES + SpanBytesEncoder.PROTO3.sizeInBytes(spans.get(0));
+    // the minimum eight segments of ten spans each
+    storage = InMemoryStorage.newBuilder().offHeapBytes(80L * recordBytes).build();
+
+    for (Span span : spans) storage.accept(List.of(span)).execute();
+
+    // the ninth segment overwrote the first
+    assertThat(storage.getTraces()).hasSize(80)
+      .containsExactlyInAnyOrderElementsOf(spans.subList(10, 90).stream().map(List::of).toList());
+    assertThat(storage.getTraces(requestBuilder().serviceName("frontend").limit(90).build())
+      .execute()).hasSize(80);
+  }
+
+  @Test void offHeap_storesBatchesOfDifferentSizes() throws IOException {
+    storage = InMemoryStorage.newBuilder().offHeapBytes(1 << 20).build();
+
+    storage.accept(List.of(TRACE.get(0))).execute();
+    storage.accept(TRACE).execute(); // a larger batch after a smaller one grows the buffer
+    storage.accept(List.of(TRACE.get(1))).execute();
+
+    assertThat(storage.getTrace(CLIENT_SPAN.traceId()).execute())
+      .containsExactlyInAnyOrderElementsOf(TRACE);
+  }
+
   /** Ensures we don't overload a partition due to key equality being conflated with order */
   @Test void differentiatesOnTraceIdWhenTimestampEqual() throws IOException {
     storage.accept(List.of(CLIENT_SPAN)).execute();
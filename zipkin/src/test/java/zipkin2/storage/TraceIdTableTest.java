@@ -0,0 +1,102 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.storage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TraceIdTableTest {
+  TraceIdSet set = new TraceIdSet();
+  TraceIdMap<String> map = new TraceIdMap<>();
+
+  @Test void set_addContainsRemove() {
+    assertThat(set.add(1L)).isTrue();
+    assertThat(set.add(1L)).isFalse();
+    assertThat(set.contains(1L)).isTrue();
+    assertThat(set.contains(2L)).isFalse();
+
+    assertThat(set.remove(1L)).isTrue();
+    assertThat(set.remove(1L)).isFalse();
+    assertThat(set.isEmpty()).isTrue();
+  }
+
+  /** Zero is the empty slot marker, but the lower 64-bits of a 128-bit trace ID can be zero. */
+  @Test void set_zero() {
+    assertThat(set.add(0L)).isTrue();
+    assertThat(set.add(0L)).isFalse();
+    set.add(3L);
+
+    assertThat(set.contains(0L)).isTrue();
+    assertThat(set.toArray()).containsExactlyInAnyOrder(0L, 3L);
+
+    assertThat(set.remove(0L)).isTrue();
+    assertThat(set.toArray()).containsExactly(3L);
+  }
+
+  @Test void map_zero() {
+    assertThat(map.put(0L, "a")).isNull();
+    assertThat(map.put(0L, "b")).isEqualTo("a");
+    map.put(3L, "c");
+
+    assertThat(map.get(0L)).isEqualTo("b");
+    assertThat(map.keys()).containsExactlyInAnyOrder(0L, 3L);
+
+    assertThat(map.remove(0L)).isEqualTo("b");
+    assertThat(map.keys()).containsExactly(3L);
+  }
+
+  @Test void clear() {
+    for (long i = 0; i < 100; i++) {
+      set.add(i);
+      map.put(i, "a");
+    }
+
+    set.clear();
+    map.clear();
+
+    assertThat(set.isEmpty()).isTrue();
+    assertThat(set.keys).hasSize(TraceIdTable.MIN_CAPACITY);
+    assertThat(map.isEmpty()).isTrue();
+    assertThat(map.values).hasSize(TraceIdTable.MIN_CAPACITY);
+  }
+
+  /** Sequential IDs collide more often, which exercises shifting back keys on removal. */
+  @Test void behavesLikeHashMap_sequentialIds() {
+    behavesLikeHashMap(new Random(0), 64);
+  }
+
+  @Test void behavesLikeHashMap_randomIds() {
+    behavesLikeHashMap(new Random(0), Long.MAX_VALUE);
+  }
+
+  void behavesLikeHashMap(Random random, long bound) {
+    Set<Long> expectedSet = new HashSet<>();
+    Map<Long, String> expectedMap = new HashMap<>();
+    for (int i = 0; i < 100_000; i++) {
+      long key = bound == Long.MAX_VALUE ? random.nextLong() : random.nextInt((int) bound);
+      if (random.nextInt(3) == 0) {
+        assertThat(set.remove(key)).isEqualTo(expectedSet.remove(key));
+        assertThat(map.remove(key)).isEqualTo(expectedMap.remove(key));
+      } else {
+        assertThat(set.add(key)).isEqualTo(expectedSet.add(key));
+        assertThat(map.put(key, "v" + i)).isEqualTo(expectedMap.put(key, "v" + i));
+      }
+    }
+
+    assertThat(set.size()).isEqualTo(expectedSet.size());
+    assertThat(set.toArray()).containsExactlyInAnyOrder(
+      expectedSet.stream().mapToLong(Long::longValue).toArray());
+    assertThat(map.size()).isEqualTo(expectedMap.size());
+    for (Map.Entry<Long, String> entry : expectedMap.entrySet()) {
+      assertThat(map.get(entry.getKey())).isEqualTo(entry.getValue());
+    }
+  }
+}